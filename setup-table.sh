@@ -7,6 +7,8 @@ REGION="us-east-1"
 READ_CAPACITY=5
 WRITE_CAPACITY=5
 TTL_ATTRIBUTE="expires"
+SHARD_INDEX=false
+KEY_LAYOUT="single-key"
 
 # Parse command line arguments
 while [[ $# -gt 0 ]]; do
@@ -31,6 +33,14 @@ while [[ $# -gt 0 ]]; do
       TTL_ATTRIBUTE="$2"
       shift 2
       ;;
+    --shard-index)
+      SHARD_INDEX=true
+      shift
+      ;;
+    --key-layout)
+      KEY_LAYOUT="$2"
+      shift 2
+      ;;
     --delete)
       DELETE=true
       shift
@@ -43,6 +53,8 @@ while [[ $# -gt 0 ]]; do
       echo "  --read-capacity N      Read capacity units (default: 5)"
       echo "  --write-capacity N     Write capacity units (default: 5)"
       echo "  --ttl-attribute NAME   TTL attribute name (default: expires)"
+      echo "  --shard-index          Create the base_key-index GSI for read-replica sharding"
+      echo "  --key-layout LAYOUT    single-key or tenant-partitioned (default: single-key)"
       echo "  --delete               Delete the table instead of creating it"
       echo "  --help                 Display this help message"
       exit 0
@@ -79,11 +91,36 @@ else
   # Create the table if it doesn't exist
   if [[ $TABLE_EXISTS == "not_found" ]]; then
     echo "Creating DynamoDB table: $TABLE_NAME"
+    THROUGHPUT="ReadCapacityUnits=$READ_CAPACITY,WriteCapacityUnits=$WRITE_CAPACITY"
+    INDEXES=()
+    if [ "$KEY_LAYOUT" = "tenant-partitioned" ]; then
+      # pk = tenant#country#bucket, sk = cache key; tenant-index lists a tenant across countries
+      ATTRIBUTES=(AttributeName=pk,AttributeType=S AttributeName=sk,AttributeType=S
+                  AttributeName=tenant,AttributeType=S AttributeName=country_code,AttributeType=S)
+      KEY_SCHEMA=(AttributeName=pk,KeyType=HASH AttributeName=sk,KeyType=RANGE)
+      INDEXES+=("IndexName=tenant-index,KeySchema=[{AttributeName=tenant,KeyType=HASH},{AttributeName=country_code,KeyType=RANGE}],Projection={ProjectionType=INCLUDE,NonKeyAttributes=[size]},ProvisionedThroughput={$THROUGHPUT}")
+    elif [ "$KEY_LAYOUT" = "single-key" ]; then
+      ATTRIBUTES=(AttributeName=key,AttributeType=S)
+      KEY_SCHEMA=(AttributeName=key,KeyType=HASH)
+    else
+      echo "Error: unknown key layout: $KEY_LAYOUT"
+      exit 1
+    fi
+    if [ "$SHARD_INDEX" = true ]; then
+      # Read-replica copies (key#0..key#N-1) carry base_key so all of them can be found
+      ATTRIBUTES+=(AttributeName=base_key,AttributeType=S)
+      INDEXES+=("IndexName=base_key-index,KeySchema=[{AttributeName=base_key,KeyType=HASH}],Projection={ProjectionType=KEYS_ONLY},ProvisionedThroughput={$THROUGHPUT}")
+    fi
+    INDEX_ARGS=()
+    if [ ${#INDEXES[@]} -gt 0 ]; then
+      INDEX_ARGS=(--global-secondary-indexes "${INDEXES[@]}")
+    fi
     aws dynamodb create-table \
       --table-name $TABLE_NAME \
-      --attribute-definitions AttributeName=key,AttributeType=S \
-      --key-schema AttributeName=key,KeyType=HASH \
-      --provisioned-throughput ReadCapacityUnits=$READ_CAPACITY,WriteCapacityUnits=$WRITE_CAPACITY \
+      --attribute-definitions "${ATTRIBUTES[@]}" \
+      --key-schema "${KEY_SCHEMA[@]}" \
+      "${INDEX_ARGS[@]}" \
+      --provisioned-throughput $THROUGHPUT \
       --region $REGION
     
     echo "Waiting for table creation to complete..."
@@ -0,0 +1,57 @@
+package com.coupang.dcache.benchmark;
+
+import com.coupang.dcache.CacheKeyGenerator;
+import com.coupang.dcache.HttpCacheConfig;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures key generation cost for every {@link HttpCacheConfig.CacheKeyStrategy}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CacheKeyGeneratorBenchmark {
+
+    @Param({"SIMPLE", "WITH_HEADERS", "WITH_METHOD", "HASHED"})
+    private HttpCacheConfig.CacheKeyStrategy strategy;
+
+    @Param({"false", "true"})
+    private boolean withTenant;
+
+    private String url;
+    private Map<String, String> headers;
+    private String tenant;
+    private String countryCode;
+
+    @Setup
+    public void setUp() {
+        url = "https://api.example.com/v1/products/123456?fields=name,price,stock&locale=en_US";
+        headers = new HashMap<>();
+        headers.put("Accept", "application/json");
+        headers.put("Accept-Language", "en-US");
+        headers.put("X-Client-Version", "4.12.0");
+        headers.put("X-Device-Type", "mobile");
+        tenant = withTenant ? "tenant-42" : null;
+        countryCode = withTenant ? "KR" : null;
+    }
+
+    @Benchmark
+    public String generateKey() {
+        switch (strategy) {
+            case WITH_HEADERS:
+                return CacheKeyGenerator.generateKeyWithHeadersAndTenant(url, headers, tenant, countryCode);
+            case WITH_METHOD:
+                return CacheKeyGenerator.generateKeyWithMethodAndTenant(url, "GET", headers, tenant, countryCode);
+            case HASHED:
+                return CacheKeyGenerator.generateHashedKey(
+                        CacheKeyGenerator.generateKeyWithMethodAndTenant(url, "GET", headers, tenant, countryCode));
+            case SIMPLE:
+            default:
+                return CacheKeyGenerator.generateKeyWithTenantAndCountry(url, tenant, countryCode);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.coupang.dcache.benchmark;
+
+import com.coupang.dcache.DynamoDbCache;
+import com.coupang.dcache.DynamoDbCacheConfig;
+import com.coupang.dcache.InMemoryDynamoDbClient;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the client-side overhead of {@link DynamoDbCache} (request building,
+ * item mapping, expiry checks) against the in-process DynamoDB stand-in, so
+ * results are not dominated by network latency.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DynamoDbCacheBenchmark {
+    private static final int KEY_COUNT = 10_000;
+
+    @Param({"1024", "65536"})
+    private int valueSize;
+
+    private DynamoDbCache cache;
+    private byte[] value;
+
+    @State(Scope.Thread)
+    public static class KeyState {
+        public ZipfianKeys keys;
+
+        @Setup
+        public void setUp() {
+            keys = new ZipfianKeys(KEY_COUNT, 0.99, Thread.currentThread().getId());
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        cache = new DynamoDbCache(DynamoDbCacheConfig.builder()
+                .tableName("benchmark-cache")
+                .region("us-east-1")
+                .withDynamoDbClient(new InMemoryDynamoDbClient())
+                .build());
+        value = new byte[valueSize];
+        for (int i = 0; i < KEY_COUNT; i++) {
+            cache.put("key-" + i, value, 3600);
+        }
+    }
+
+    @Benchmark
+    public Optional<byte[]> get(KeyState keys) {
+        return cache.get(keys.keys.next());
+    }
+
+    @Benchmark
+    public void put(KeyState keys) {
+        cache.put(keys.keys.next(), value, 3600);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Optional<byte[]> get16Threads(KeyState keys) {
+        return cache.get(keys.keys.next());
+    }
+}
@@ -0,0 +1,100 @@
+package com.coupang.dcache.benchmark;
+
+import com.coupang.dcache.GuavaCache;
+import com.coupang.dcache.GuavaCacheConfig;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link GuavaCache} get/put throughput under contention with a
+ * Zipfian key distribution. Mixed operations run at 90% reads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GuavaCacheBenchmark {
+    private static final int KEY_COUNT = 100_000;
+
+    @State(Scope.Benchmark)
+    public static class CacheState {
+        @Param({"10000", "100000"})
+        public long maximumSize;
+
+        public GuavaCache cache;
+        public byte[] value;
+
+        @Setup
+        public void setUp() {
+            cache = new GuavaCache(GuavaCacheConfig.builder()
+                    .defaultTtl(3600)
+                    .maximumSize(maximumSize)
+                    .build());
+            value = new byte[1024];
+            ZipfianKeys warmup = new ZipfianKeys(KEY_COUNT, 0.99, 1);
+            for (int i = 0; i < maximumSize; i++) {
+                cache.put(warmup.next(), value, 3600);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class KeyState {
+        public ZipfianKeys keys;
+        public int counter;
+
+        @Setup
+        public void setUp() {
+            keys = new ZipfianKeys(KEY_COUNT, 0.99, Thread.currentThread().getId());
+        }
+    }
+
+    private static Object mixed(CacheState state, KeyState keys) {
+        String key = keys.keys.next();
+        if (++keys.counter % 10 == 0) {
+            state.cache.put(key, state.value, 3600);
+            return key;
+        }
+        Optional<byte[]> result = state.cache.get(key);
+        if (!result.isPresent()) {
+            state.cache.put(key, state.value, 3600);
+        }
+        return result;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object mixed01Thread(CacheState state, KeyState keys) {
+        return mixed(state, keys);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object mixed04Threads(CacheState state, KeyState keys) {
+        return mixed(state, keys);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Object mixed16Threads(CacheState state, KeyState keys) {
+        return mixed(state, keys);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public Object mixed64Threads(CacheState state, KeyState keys) {
+        return mixed(state, keys);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Optional<byte[]> get16Threads(CacheState state, KeyState keys) {
+        return state.cache.get(keys.keys.next());
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void put16Threads(CacheState state, KeyState keys) {
+        state.cache.put(keys.keys.next(), state.value, 3600);
+    }
+}
@@ -0,0 +1,63 @@
+package com.coupang.dcache.benchmark;
+
+import com.coupang.dcache.CacheEntry;
+import com.coupang.dcache.serializer.JsonCacheEntrySerializer;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link JsonCacheEntrySerializer} round trips across body sizes from 1 KB to 1 MB.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JsonCacheEntrySerializerBenchmark {
+
+    @Param({"1024", "16384", "131072", "1048576"})
+    private int bodySize;
+
+    private final JsonCacheEntrySerializer serializer = new JsonCacheEntrySerializer();
+    private CacheEntry entry;
+    private byte[] serialized;
+
+    @Setup
+    public void setUp() {
+        byte[] body = new byte[bodySize];
+        new Random(42).nextBytes(body);
+
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Content-Type", "application/json");
+        headers.put("Cache-Control", "max-age=3600");
+
+        entry = CacheEntry.builder()
+                .key("tenant:tenant-42:country:KR:https://api.example.com/v1/products/123456")
+                .tenant("tenant-42")
+                .countryCode("KR")
+                .statusCode(200)
+                .headers(headers)
+                .body(body)
+                .expires(Instant.now().plusSeconds(3600))
+                .build();
+        serialized = serializer.serialize(entry);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return serializer.serialize(entry);
+    }
+
+    @Benchmark
+    public CacheEntry deserialize() {
+        return serializer.deserialize(serialized);
+    }
+
+    @Benchmark
+    public CacheEntry roundTrip() {
+        return serializer.deserialize(serializer.serialize(entry));
+    }
+}
@@ -0,0 +1,42 @@
+package com.coupang.dcache.benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Pre-sampled sequence of keys following a Zipfian distribution, so that
+ * sampling cost does not show up in the measured operation.
+ */
+final class ZipfianKeys {
+    private static final int SEQUENCE_LENGTH = 1 << 16;
+
+    private final String[] sequence;
+    private int position;
+
+    ZipfianKeys(int keyCount, double skew, long seed) {
+        String[] keys = new String[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            keys[i] = "key-" + i;
+        }
+
+        double[] cumulative = new double[keyCount];
+        double sum = 0;
+        for (int i = 0; i < keyCount; i++) {
+            sum += 1.0 / Math.pow(i + 1, skew);
+            cumulative[i] = sum;
+        }
+
+        Random random = new Random(seed);
+        sequence = new String[SEQUENCE_LENGTH];
+        for (int i = 0; i < SEQUENCE_LENGTH; i++) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+            sequence[i] = keys[index >= 0 ? index : Math.min(-index - 1, keyCount - 1)];
+        }
+    }
+
+    String next() {
+        String key = sequence[position];
+        position = (position + 1) & (SEQUENCE_LENGTH - 1);
+        return key;
+    }
+}
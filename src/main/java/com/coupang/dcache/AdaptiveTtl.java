@@ -0,0 +1,362 @@
+package com.coupang.dcache;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Chooses TTLs from how often values actually change at the origin.
+ * <p>
+ * Every refresh of a key is observed with a hash of its new value. Comparing
+ * it with the hash of the previous refresh tells whether the value changed in
+ * between. Changes are modelled as a Poisson process per group of keys, whose
+ * rate is estimated from the refreshes that saw a change and the time between
+ * refreshes, with older refreshes weighted down. An entry with TTL {@code T}
+ * is then expected to be stale during {@code 1 - (1 - e^-λT) / λT} of its
+ * lifetime, and the TTL is the longest that keeps this under the configured
+ * ratio, within the configured bounds. Groups with too few refreshes keep the
+ * TTL they were given; groups never seen to change get the maximum TTL.
+ * <p>
+ * The last hash of each key and the estimate of each group are kept for a
+ * bounded number of keys and groups, dropping the least recently refreshed.
+ * With a persist path, they are saved periodically and on {@link #close()}
+ * and loaded on start. One instance can be shared by several
+ * {@link CachingHttpClient}s and by {@code @Cacheable} methods through
+ * {@link HttpCacheConfig.Builder#adaptiveTtl(AdaptiveTtl)}; its owner closes it.
+ * Thread-safe.
+ */
+public class AdaptiveTtl implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdaptiveTtl.class);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final int FORMAT_VERSION = 1;
+    private static final Pattern ID_SEGMENT = Pattern.compile("/(?=[^/?#]*\\d)[^/?#]+");
+
+    private final AdaptiveTtlConfig config;
+    private final Ticker ticker;
+    private final double decay;
+    // The λT at which the expected stale share equals the target
+    private final double targetExposure;
+    private final ConcurrentMap<String, KeyState> keys;
+    private final ConcurrentMap<String, GroupState> groups;
+    private final ScheduledExecutorService persister;
+    private final AtomicLong observations = new AtomicLong();
+    private final AtomicLong changes = new AtomicLong();
+
+    public AdaptiveTtl(AdaptiveTtlConfig config) {
+        this.config = config;
+        this.ticker = config.getTicker();
+        this.decay = 1 - 1.0 / config.getHistory();
+        this.targetExposure = exposureFor(config.getMaxStaleRatio());
+        this.keys = CacheBuilder.newBuilder().maximumSize(config.getMaxEntries())
+                .<String, KeyState>build().asMap();
+        this.groups = CacheBuilder.newBuilder().maximumSize(config.getMaxEntries())
+                .<String, GroupState>build().asMap();
+        if (config.getPersistPath() == null) {
+            this.persister = null;
+        } else {
+            load(config.getPersistPath());
+            long interval = config.getPersistInterval().toMillis();
+            this.persister = config.getExecutionStrategy().newScheduler("dcache-adaptive-ttl");
+            persister.scheduleWithFixedDelay(this::saveQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Returns the TTL for the next write of a key.
+     *
+     * @param key The cache key
+     * @param defaultTtl The TTL in seconds to use until enough refreshes of the key's group were seen
+     * @return The TTL in seconds
+     */
+    public int ttl(String key, int defaultTtl) {
+        GroupState group = groups.get(config.getGroupBy().apply(key));
+        if (group == null || group.count < config.getMinObservations()) {
+            return defaultTtl;
+        }
+        double rate = group.rate();
+        long maxTtl = config.getMaxTtl().getSeconds();
+        long ttl = rate <= 0 ? maxTtl : (long) Math.min(maxTtl, targetExposure / rate);
+        return (int) Math.max(config.getMinTtl().getSeconds(), ttl);
+    }
+
+    /**
+     * Observes a value fetched from the origin for a key.
+     *
+     * @param key The cache key
+     * @param value The value, typically a response body
+     */
+    public void observe(String key, byte[] value) {
+        observe(key, hash(value));
+    }
+
+    /**
+     * Observes the hash of a value fetched from the origin for a key.
+     *
+     * @param key The cache key
+     * @param hash A hash of the value, equal for equal values
+     */
+    public void observe(String key, long hash) {
+        long now = ticker.read();
+        KeyState previous = keys.put(key, new KeyState(hash, now));
+        if (previous == null) {
+            return;
+        }
+        double interval = (now - previous.fetchedAt) / 1e9;
+        if (interval <= 0) {
+            return;
+        }
+        boolean changed = previous.hash != hash;
+        observations.incrementAndGet();
+        if (changed) {
+            changes.incrementAndGet();
+        }
+        groups.compute(config.getGroupBy().apply(key), (group, state) -> (state == null ? GroupState.EMPTY : state)
+                .observe(changed, interval, decay, config.getHistory()));
+    }
+
+    /**
+     * Returns the estimated change rate of a key's group.
+     *
+     * @param key The cache key
+     * @return The expected number of changes per second, or NaN if the group was never refreshed
+     */
+    public double getChangeRate(String key) {
+        GroupState group = groups.get(config.getGroupBy().apply(key));
+        return group == null ? Double.NaN : group.rate();
+    }
+
+    /**
+     * Returns the number of refreshes compared with a previous value.
+     *
+     * @return The number of observed refreshes
+     */
+    public long getObservations() {
+        return observations.get();
+    }
+
+    /**
+     * Returns the number of refreshes that returned a different value.
+     *
+     * @return The number of observed changes
+     */
+    public long getChanges() {
+        return changes.get();
+    }
+
+    public long getTrackedKeys() {
+        return keys.size();
+    }
+
+    public long getTrackedGroups() {
+        return groups.size();
+    }
+
+    /**
+     * Saves the learned state to the persist path, replacing the previous file.
+     *
+     * @throws IOException If the file cannot be written
+     * @throws IllegalStateException If no persist path is configured
+     */
+    public void save() throws IOException {
+        Path path = config.getPersistPath();
+        if (path == null) {
+            throw new IllegalStateException("No persist path configured");
+        }
+        long now = ticker.read();
+        ObjectNode root = OBJECT_MAPPER.createObjectNode();
+        root.put("version", FORMAT_VERSION);
+        root.put("savedAt", System.currentTimeMillis());
+        ObjectNode keyNodes = root.putObject("keys");
+        keys.forEach((key, state) -> keyNodes.putObject(key)
+                .put("hash", state.hash)
+                .put("ageMillis", TimeUnit.NANOSECONDS.toMillis(now - state.fetchedAt)));
+        ObjectNode groupNodes = root.putObject("groups");
+        groups.forEach((group, state) -> groupNodes.putObject(group)
+                .put("count", state.count)
+                .put("weight", state.weight)
+                .put("changes", state.changes)
+                .put("interval", state.interval));
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        try {
+            OBJECT_MAPPER.writeValue(temp.toFile(), root);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Stops periodic saving and saves the learned state a last time.
+     */
+    @Override
+    public void close() {
+        if (persister != null) {
+            persister.shutdown();
+            saveQuietly();
+        }
+    }
+
+    /**
+     * Maps a URL key to its template by replacing path segments containing a
+     * digit with {@code {}} and dropping the query, so that
+     * {@code https://api/products/123?lang=ko} and
+     * {@code https://api/products/456} share {@code https://api/products/{}}.
+     * Keys with tenant and country prefixes keep them.
+     *
+     * @param key The cache key
+     * @return The key's group
+     */
+    public static String urlTemplate(String key) {
+        int query = key.indexOf('?');
+        String url = query < 0 ? key : key.substring(0, query);
+        // The host may contain digits too
+        int scheme = url.indexOf("://");
+        int path = url.indexOf('/', scheme < 0 ? 0 : scheme + 3);
+        if (path < 0) {
+            return url;
+        }
+        return url.substring(0, path) + ID_SEGMENT.matcher(url.substring(path)).replaceAll("/{}");
+    }
+
+    private static long hash(byte[] value) {
+        return Hashing.murmur3_128().hashBytes(value == null ? new byte[0] : value).asLong();
+    }
+
+    /**
+     * Solves {@code 1 - (1 - e^-x) / x = ratio} for x by bisection; the left
+     * side grows from 0 to 1 with x.
+     */
+    static double exposureFor(double ratio) {
+        double low = 0;
+        double high = 1;
+        while (staleRatio(high) < ratio) {
+            high *= 2;
+        }
+        for (int i = 0; i < 100; i++) {
+            double mid = (low + high) / 2;
+            if (staleRatio(mid) < ratio) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static double staleRatio(double exposure) {
+        return 1 - -Math.expm1(-exposure) / exposure;
+    }
+
+    private void saveQuietly() {
+        try {
+            save();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Failed to save adaptive TTL state to {}", config.getPersistPath(), e);
+        }
+    }
+
+    private void load(Path path) {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try {
+            JsonNode root = OBJECT_MAPPER.readTree(path.toFile());
+            if (root.path("version").asInt() != FORMAT_VERSION) {
+                LOGGER.warn("Ignoring adaptive TTL state of unknown version in {}", path);
+                return;
+            }
+            // Time spent stopped counts towards the age of each key's last value
+            long downtimeMillis = Math.max(0, System.currentTimeMillis() - root.path("savedAt").asLong());
+            long now = ticker.read();
+            for (Iterator<Map.Entry<String, JsonNode>> it = root.path("keys").fields(); it.hasNext(); ) {
+                Map.Entry<String, JsonNode> key = it.next();
+                long ageMillis = key.getValue().path("ageMillis").asLong() + downtimeMillis;
+                keys.put(key.getKey(), new KeyState(key.getValue().path("hash").asLong(),
+                        now - TimeUnit.MILLISECONDS.toNanos(ageMillis)));
+            }
+            for (Iterator<Map.Entry<String, JsonNode>> it = root.path("groups").fields(); it.hasNext(); ) {
+                Map.Entry<String, JsonNode> group = it.next();
+                JsonNode state = group.getValue();
+                groups.put(group.getKey(), new GroupState(state.path("count").asInt(),
+                        state.path("weight").asDouble(), state.path("changes").asDouble(),
+                        state.path("interval").asDouble()));
+            }
+            LOGGER.info("Loaded adaptive TTL state of {} keys and {} groups from {}", keys.size(), groups.size(), path);
+        } catch (IOException | UncheckedIOException e) {
+            LOGGER.warn("Failed to load adaptive TTL state from {}, starting empty", path, e);
+        }
+    }
+
+    private static final class KeyState {
+        final long hash;
+        final long fetchedAt;
+
+        KeyState(long hash, long fetchedAt) {
+            this.hash = hash;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+
+    /**
+     * Decayed sums over the refreshes of a group. Immutable, so that readers
+     * never see a half-applied observation.
+     */
+    private static final class GroupState {
+        static final GroupState EMPTY = new GroupState(0, 0, 0, 0);
+
+        // Refreshes seen, up to the history length
+        final int count;
+        final double weight;
+        final double changes;
+        // Sum of the times between refreshes, in seconds
+        final double interval;
+
+        GroupState(int count, double weight, double changes, double interval) {
+            this.count = count;
+            this.weight = weight;
+            this.changes = changes;
+            this.interval = interval;
+        }
+
+        GroupState observe(boolean changed, double elapsed, double decay, int history) {
+            return new GroupState(Math.min(count + 1, history), weight * decay + 1,
+                    changes * decay + (changed ? 1 : 0), interval * decay + elapsed);
+        }
+
+        /**
+         * Estimates the change rate from refreshes that each only tell
+         * whether at least one change happened, correcting for the changes
+         * hidden behind others (Cho and Garcia-Molina).
+         */
+        double rate() {
+            if (changes <= 0 || interval <= 0) {
+                return 0;
+            }
+            double unchanged = (weight - changes + 0.5) / (weight + 0.5);
+            return -Math.log(unchanged) / (interval / weight);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.coupang.dcache;
+
+import com.google.common.base.Ticker;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Configuration of {@link AdaptiveTtl}, which learns how often the value of a
+ * key changes and picks TTLs that keep the share of stale hits under a target.
+ */
+public class AdaptiveTtlConfig {
+    private final Duration minTtl;
+    private final Duration maxTtl;
+    private final double maxStaleRatio;
+    private final int history;
+    private final int minObservations;
+    private final long maxEntries;
+    private final Function<String, String> groupBy;
+    private final Path persistPath;
+    private final Duration persistInterval;
+    private final ExecutionStrategy executionStrategy;
+    private final Ticker ticker;
+
+    private AdaptiveTtlConfig(Builder builder) {
+        this.minTtl = builder.minTtl;
+        this.maxTtl = builder.maxTtl;
+        this.maxStaleRatio = builder.maxStaleRatio;
+        this.history = builder.history;
+        this.minObservations = builder.minObservations;
+        this.maxEntries = builder.maxEntries;
+        this.groupBy = builder.groupBy;
+        this.persistPath = builder.persistPath;
+        this.persistInterval = builder.persistInterval;
+        this.executionStrategy = builder.executionStrategy;
+        this.ticker = builder.ticker;
+    }
+
+    public Duration getMinTtl() {
+        return minTtl;
+    }
+
+    public Duration getMaxTtl() {
+        return maxTtl;
+    }
+
+    public double getMaxStaleRatio() {
+        return maxStaleRatio;
+    }
+
+    public int getHistory() {
+        return history;
+    }
+
+    public int getMinObservations() {
+        return minObservations;
+    }
+
+    public long getMaxEntries() {
+        return maxEntries;
+    }
+
+    public Function<String, String> getGroupBy() {
+        return groupBy;
+    }
+
+    public Path getPersistPath() {
+        return persistPath;
+    }
+
+    public Duration getPersistInterval() {
+        return persistInterval;
+    }
+
+    public ExecutionStrategy getExecutionStrategy() {
+        return executionStrategy;
+    }
+
+    public Ticker getTicker() {
+        return ticker;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private Duration minTtl = Duration.ofMinutes(1);
+        private Duration maxTtl = Duration.ofDays(1);
+        private double maxStaleRatio = 0.05;
+        private int history = 16;
+        private int minObservations = 3;
+        private long maxEntries = 100_000;
+        private Function<String, String> groupBy = Function.identity();
+        private Path persistPath;
+        private Duration persistInterval = Duration.ofMinutes(5);
+        private ExecutionStrategy executionStrategy = ExecutionStrategy.defaultStrategy();
+        private Ticker ticker = Ticker.systemTicker();
+
+        /**
+         * Shortest TTL chosen, however often values change.
+         */
+        public Builder minTtl(Duration minTtl) {
+            this.minTtl = minTtl;
+            return this;
+        }
+
+        /**
+         * Longest TTL chosen, also used for values never seen to change.
+         */
+        public Builder maxTtl(Duration maxTtl) {
+            this.maxTtl = maxTtl;
+            return this;
+        }
+
+        /**
+         * Target share of the time an entry is served after its origin value
+         * has changed. With 0.05, an entry is expected to be stale during 5%
+         * of its lifetime.
+         */
+        public Builder maxStaleRatio(double maxStaleRatio) {
+            this.maxStaleRatio = maxStaleRatio;
+            return this;
+        }
+
+        /**
+         * Number of recent refreshes the change rate is mostly based on.
+         * Older refreshes are weighted down geometrically, so the rate
+         * follows values whose behavior changes.
+         */
+        public Builder history(int history) {
+            this.history = history;
+            return this;
+        }
+
+        /**
+         * Number of refreshes of a group before its learned TTL replaces the
+         * configured one.
+         */
+        public Builder minObservations(int minObservations) {
+            this.minObservations = minObservations;
+            return this;
+        }
+
+        /**
+         * Maximum number of keys, and of groups, whose state is kept. The
+         * least recently refreshed are dropped first. Each takes about 100
+         * bytes plus its key.
+         */
+        public Builder maxEntries(long maxEntries) {
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        /**
+         * Maps a cache key to the group whose change rate it shares, such as
+         * {@link AdaptiveTtl#urlTemplate(String)}. Defaults to one group per
+         * key. Grouping learns faster and for keys refreshed only once.
+         */
+        public Builder groupBy(Function<String, String> groupBy) {
+            this.groupBy = groupBy;
+            return this;
+        }
+
+        /**
+         * File the learned state is saved to and loaded from on start, so
+         * that it survives restarts. Null keeps it in memory only.
+         */
+        public Builder persistPath(Path persistPath) {
+            this.persistPath = persistPath;
+            return this;
+        }
+
+        /**
+         * How often the learned state is saved, in addition to on close.
+         */
+        public Builder persistInterval(Duration persistInterval) {
+            this.persistInterval = persistInterval;
+            return this;
+        }
+
+        /**
+         * Threads saving the learned state. Defaults to virtual threads on
+         * Java 21+ and bounded pools otherwise.
+         */
+        public Builder executionStrategy(ExecutionStrategy executionStrategy) {
+            this.executionStrategy = executionStrategy;
+            return this;
+        }
+
+        public Builder ticker(Ticker ticker) {
+            this.ticker = ticker;
+            return this;
+        }
+
+        public AdaptiveTtlConfig build() {
+            if (minTtl == null || minTtl.getSeconds() < 1) {
+                throw new IllegalArgumentException("Minimum TTL must be at least one second");
+            }
+            if (maxTtl == null || maxTtl.compareTo(minTtl) < 0 || maxTtl.getSeconds() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Maximum TTL must be between the minimum TTL and "
+                        + Integer.MAX_VALUE + " seconds");
+            }
+            if (maxStaleRatio <= 0 || maxStaleRatio >= 1) {
+                throw new IllegalArgumentException("Maximum stale ratio must be in (0, 1)");
+            }
+            if (history < 1) {
+                throw new IllegalArgumentException("History must be positive");
+            }
+            if (minObservations < 1 || minObservations > history) {
+                throw new IllegalArgumentException("Minimum observations must be between 1 and the history");
+            }
+            if (maxEntries <= 0) {
+                throw new IllegalArgumentException("Maximum entries must be positive");
+            }
+            if (groupBy == null) {
+                throw new IllegalArgumentException("Group function is required");
+            }
+            if (persistPath != null && (persistInterval == null || persistInterval.isZero()
+                    || persistInterval.isNegative())) {
+                throw new IllegalArgumentException("Persist interval must be positive");
+            }
+            return new AdaptiveTtlConfig(this);
+        }
+    }
+}
@@ -1,6 +1,12 @@
 package com.coupang.dcache;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
 
 /**
  * Interface for a simple cache with TTL support.
@@ -15,6 +21,45 @@ public interface Cache {
      */
     void put(String key, byte[] value, int ttl);
 
+    /**
+     * Put an item in the cache with a TTL and a write priority. Caches that
+     * do not limit their write rate ignore the priority.
+     *
+     * @param key The cache key
+     * @param value The value to cache
+     * @param ttl Time to live in seconds
+     * @param priority The priority of the write
+     */
+    default void put(String key, byte[] value, int ttl, WritePriority priority) {
+        put(key, value, ttl);
+    }
+
+    /**
+     * Put an item whose value never changes under its key, such as a body
+     * chunk shared by several entries, so that the write only ever extends
+     * its TTL. Caches that can compare expiry times override this to skip
+     * the write when the cached item already outlives the new TTL; others
+     * overwrite it like {@link #put(String, byte[], int)}.
+     *
+     * @param key The cache key
+     * @param value The value to cache
+     * @param ttl Minimum time to live in seconds
+     */
+    default void putExtendingTtl(String key, byte[] value, int ttl) {
+        put(key, value, ttl);
+    }
+
+    /**
+     * Put several items in the cache with the same TTL. Caches that can
+     * write several keys in one round trip override this.
+     *
+     * @param values The values to cache by key
+     * @param ttl Time to live in seconds
+     */
+    default void putAll(Map<String, byte[]> values, int ttl) {
+        values.forEach((key, value) -> put(key, value, ttl));
+    }
+
     /**
      * Get an item from the cache.
      *
@@ -23,6 +68,61 @@ public interface Cache {
      */
     Optional<byte[]> get(String key);
 
+    /**
+     * Get several items from the cache. Caches that can read several keys in
+     * one round trip override this.
+     *
+     * @param keys The cache keys
+     * @return The cached value of each key found; keys not found or expired are left out
+     */
+    default Map<String, byte[]> getAll(Collection<String> keys) {
+        Map<String, byte[]> values = new HashMap<>();
+        for (String key : keys) {
+            get(key).ifPresent(value -> values.put(key, value));
+        }
+        return values;
+    }
+
+    /**
+     * Checks which keys are cached without returning their values, e.g. to
+     * tell whether all chunks of a body are there before reading them one by
+     * one. Caches that can check several keys in one round trip override this.
+     *
+     * @param keys The cache keys
+     * @return The keys found; keys not found or expired are left out
+     */
+    default Set<String> presentKeys(Collection<String> keys) {
+        Set<String> present = new HashSet<>();
+        for (String key : keys) {
+            if (get(key).isPresent()) {
+                present.add(key);
+            }
+        }
+        return present;
+    }
+
+    /**
+     * Get an item from the cache, loading and caching it on a miss. Caches
+     * that coordinate loading override this so that concurrent misses call
+     * the loader once.
+     *
+     * @param key The cache key
+     * @param ttl Time to live in seconds of a loaded value
+     * @param loader Loads the value on a miss; a null value is returned but not cached
+     * @return The cached or loaded value
+     */
+    default byte[] getOrLoad(String key, int ttl, Supplier<byte[]> loader) {
+        Optional<byte[]> cached = get(key);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+        byte[] value = loader.get();
+        if (value != null) {
+            put(key, value, ttl);
+        }
+        return value;
+    }
+
     /**
      * Remove an item from the cache.
      *
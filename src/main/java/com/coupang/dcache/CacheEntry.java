@@ -1,11 +1,13 @@
 package com.coupang.dcache;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.time.Instant;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -38,6 +40,20 @@ public class CacheEntry {
     @JsonProperty("expires")
     private long expires;
 
+    // Set when the body is stored in separate chunk entries, see ChunkedBodyWriter
+    @JsonProperty("chunks")
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    private int chunks;
+
+    @JsonProperty("chunk_id")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String chunkId;
+
+    // Set instead of chunk_id when chunks are stored by content hash and shared between entries
+    @JsonProperty("chunk_hashes")
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private List<String> chunkHashes;
+
     // Default constructor for Jackson
     public CacheEntry() {
     }
@@ -51,6 +67,9 @@ public class CacheEntry {
         this.body = builder.body;
         this.timestamp = builder.timestamp.toEpochMilli();
         this.expires = builder.expires.getEpochSecond();
+        this.chunks = builder.chunks;
+        this.chunkId = builder.chunkId;
+        this.chunkHashes = builder.chunkHashes;
     }
 
     /**
@@ -125,6 +144,24 @@ public class CacheEntry {
         return expires;
     }
 
+    /**
+     * @return The number of chunk entries holding the body, or 0 if the body is inline
+     */
+    public int getChunks() {
+        return chunks;
+    }
+
+    public String getChunkId() {
+        return chunkId;
+    }
+
+    /**
+     * @return The content hash of each chunk if the body is stored in shared body entries, otherwise null
+     */
+    public List<String> getChunkHashes() {
+        return chunkHashes;
+    }
+
     /**
      * Creates a new builder for a cache entry.
      *
@@ -146,6 +183,9 @@ public class CacheEntry {
         private byte[] body;
         private Instant timestamp = Instant.now();
         private Instant expires;
+        private int chunks;
+        private String chunkId;
+        private List<String> chunkHashes;
 
         private Builder() {
         }
@@ -190,6 +230,21 @@ public class CacheEntry {
             return this;
         }
 
+        public Builder chunks(int chunks) {
+            this.chunks = chunks;
+            return this;
+        }
+
+        public Builder chunkId(String chunkId) {
+            this.chunkId = chunkId;
+            return this;
+        }
+
+        public Builder chunkHashes(List<String> chunkHashes) {
+            this.chunkHashes = chunkHashes;
+            return this;
+        }
+
         public CacheEntry build() {
             return new CacheEntry(this);
         }
@@ -11,11 +11,49 @@ import java.util.stream.Collectors;
  * Utility for generating cache keys from HTTP requests.
  */
 public class CacheKeyGenerator {
+    private static final String TENANT_PREFIX = "tenant:";
+    private static final String COUNTRY_PREFIX = "country:";
     
     private CacheKeyGenerator() {
         // Private constructor to prevent instantiation
     }
     
+    /**
+     * Generates the cache key of a request using the configured strategy. The
+     * request's tenant and country code, or the configured defaults, prefix
+     * the key unless excluded by the configuration; with {@code HASHED} only
+     * the URL and headers are hashed, so the prefix stays readable.
+     *
+     * @param request The HTTP request
+     * @param config The cache configuration
+     * @return The cache key
+     */
+    public static String generateKey(HttpRequest request, HttpCacheConfig config) {
+        String tenant = null;
+        if (config.isIncludeTenantInKey()) {
+            tenant = request.getTenant() != null ? request.getTenant() : config.getDefaultTenant();
+        }
+        String countryCode = null;
+        if (config.isIncludeCountryCodeInKey()) {
+            countryCode = request.getCountryCode() != null ? request.getCountryCode() : config.getDefaultCountryCode();
+        }
+
+        switch (config.getCacheKeyStrategy()) {
+            case WITH_HEADERS:
+                return generateKeyWithHeadersAndTenant(request.getUrl(), request.getHeaders(), tenant, countryCode);
+            case WITH_METHOD:
+                return generateKeyWithMethodAndTenant(request.getUrl(), request.getMethod(), request.getHeaders(),
+                        tenant, countryCode);
+            case HASHED:
+                return generateKeyWithTenantAndCountry(
+                        generateHashedKey(generateKeyWithHeaders(request.getUrl(), request.getHeaders())),
+                        tenant, countryCode);
+            case SIMPLE:
+            default:
+                return generateKeyWithTenantAndCountry(request.getUrl(), tenant, countryCode);
+        }
+    }
+
     /**
      * Generates a simple cache key from the URL.
      *
@@ -233,4 +271,37 @@ public class CacheKeyGenerator {
         
         return params;
     }
-} 
\ No newline at end of file
+    
+    /**
+     * Extracts the tenant from a key generated with a tenant prefix.
+     *
+     * @param key The cache key
+     * @return The tenant identifier, or null if the key has no tenant prefix
+     */
+    public static String parseTenant(String key) {
+        if (!key.startsWith(TENANT_PREFIX)) {
+            return null;
+        }
+        int end = key.indexOf(':', TENANT_PREFIX.length());
+        return end == -1 ? null : key.substring(TENANT_PREFIX.length(), end);
+    }
+    
+    /**
+     * Extracts the country code from a key generated with a country prefix.
+     *
+     * @param key The cache key
+     * @return The country code, or null if the key has no country prefix
+     */
+    public static String parseCountryCode(String key) {
+        int start = 0;
+        String tenant = parseTenant(key);
+        if (tenant != null) {
+            start = TENANT_PREFIX.length() + tenant.length() + 1;
+        }
+        if (!key.startsWith(COUNTRY_PREFIX, start)) {
+            return null;
+        }
+        int end = key.indexOf(':', start + COUNTRY_PREFIX.length());
+        return end == -1 ? null : key.substring(start + COUNTRY_PREFIX.length(), end);
+    }
+}
@@ -0,0 +1,375 @@
+package com.coupang.dcache;
+
+import com.coupang.dcache.serializer.CacheEntrySerializer;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HTTP client that serves requests from a {@link Cache} and fetches misses
+ * from the origin through a pooled Apache HttpClient.
+ * <p>
+ * Keys are generated by {@link CacheKeyGenerator#generateKey(HttpRequest, HttpCacheConfig)}
+ * and responses are stored as {@link CacheEntry} values using the configured
+ * serializer, the same format {@code @Cacheable} methods use. Only GET
+ * responses with a cacheable status code and without
+ * {@code Cache-Control: no-store} or {@code private} are stored; HEAD requests
+ * always go to the origin, since keys do not carry the method and an empty
+ * HEAD body must never be served to a GET. Responses to requests carrying
+ * {@code Authorization} or {@code Cookie}, and responses setting a cookie, are
+ * only stored when marked {@code public} or {@code s-maxage} (RFC 7234,
+ * section 3). Bodies
+ * larger than the configured chunk size are stored in chunk entries (see
+ * {@link ChunkedBodyWriter}); bodies larger than the maximum cacheable size
+ * are not stored. With body deduplication, bodies larger than the inline
+ * size are stored once per distinct content in {@code __body#<sha256>}
+ * entries shared by every key, tenant and country with the same body.
+ * <p>
+ * {@link #executeStreaming(HttpRequest)} never holds a whole origin body in
+ * memory: it is cached chunk by chunk while the caller reads it. A cached
+ * body is only served once all its chunks were found by one
+ * {@link Cache#presentKeys}, so a missing chunk falls back to the origin
+ * instead of failing the response halfway, and is then read a few chunks at
+ * a time.
+ * <p>
+ * With a {@link WriteAdmissionConfig}, a cacheable response is only stored
+ * once its key has been requested often enough. The decision is made for the
+ * whole body before any chunk is written.
+ * <p>
+ * With an {@link AdaptiveTtl}, the TTL of each write is learned from how
+ * often earlier origin bodies of the key, or of its group, changed; the
+ * request or default TTL only applies until enough refreshes were seen.
+ */
+public class CachingHttpClient implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CachingHttpClient.class);
+    private static final Set<String> CACHEABLE_METHODS = Set.of("GET");
+    // Make a response private to the user unless it is explicitly shared
+    private static final Set<String> CREDENTIAL_HEADERS = Set.of("authorization", "cookie");
+    // Status codes cacheable by default (RFC 7231, section 6.1)
+    private static final Set<Integer> CACHEABLE_STATUS_CODES = Set.of(200, 203, 204, 300, 301, 404, 405, 410, 414, 501);
+    // Describe the origin connection rather than the response
+    private static final Set<String> HOP_BY_HOP_HEADERS = Set.of("connection", "keep-alive", "transfer-encoding");
+    // Set by HttpClient itself from the entity
+    private static final Set<String> ENTITY_HEADERS = Set.of("content-length", "transfer-encoding");
+
+    private final Cache cache;
+    private final HttpCacheConfig config;
+    private final CacheEntrySerializer serializer;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final WriteAdmission writeAdmission;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Creates a new CachingHttpClient with a connection pool sized by the configuration.
+     *
+     * @param cache The cache to serve from
+     * @param config The key strategy, TTL, serializer and connection pool settings
+     */
+    public CachingHttpClient(Cache cache, HttpCacheConfig config) {
+        this.cache = cache;
+        this.config = config;
+        this.serializer = config.getSerializer();
+        this.writeAdmission = config.getWriteAdmission() == null ? null : new WriteAdmission(config.getWriteAdmission());
+        this.connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(config.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(config.getMaxConnectionsPerRoute());
+        long keepAliveMillis = config.getKeepAlive().toMillis();
+        ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+            long requested = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return requested > 0 ? Math.min(requested, keepAliveMillis) : keepAliveMillis;
+        };
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy(keepAliveStrategy)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout((int) config.getConnectTimeout().toMillis())
+                        .setSocketTimeout((int) config.getSocketTimeout().toMillis())
+                        .setConnectionRequestTimeout((int) config.getConnectionRequestTimeout().toMillis())
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(keepAliveMillis, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * Executes a request, serving it from the cache when possible.
+     *
+     * @param request The HTTP request
+     * @return The response, with {@link HttpResponse#isFromCache()} set on hits
+     * @throws IOException If the origin request fails
+     */
+    public HttpResponse execute(HttpRequest request) throws IOException {
+        String method = request.getMethod().toUpperCase(Locale.ROOT);
+        if (config.isBypassCache() || !CACHEABLE_METHODS.contains(method)) {
+            return fetch(request);
+        }
+
+        String key = CacheKeyGenerator.generateKey(request, config);
+        Optional<CacheEntry> cached = lookup(key);
+        if (cached.isPresent()) {
+            CacheEntry entry = cached.get();
+            if (entry.getChunks() == 0) {
+                hits.incrementAndGet();
+                return entry.toHttpResponse();
+            }
+            Optional<byte[]> body = readChunks(key, entry);
+            if (body.isPresent()) {
+                hits.incrementAndGet();
+                return HttpResponse.builder()
+                        .statusCode(entry.getStatusCode())
+                        .headers(entry.getHeaders())
+                        .body(body.get())
+                        .timestamp(Instant.ofEpochMilli(entry.getTimestamp()))
+                        .fromCache(true)
+                        .build();
+            }
+        }
+        misses.incrementAndGet();
+
+        HttpResponse response = fetch(request);
+        if (isCacheable(request, response.getStatusCode(), response.getHeaders())
+                && admit(key, response.getBody().length)) {
+            ChunkedBodyWriter writer = writer(key, request, response.getStatusCode(), response.getHeaders(),
+                    response.getTimestamp());
+            writer.write(response.getBody(), 0, response.getBody().length);
+            writer.commit();
+        }
+        return response;
+    }
+
+    /**
+     * Executes a request like {@link #execute(HttpRequest)}, but streams the
+     * body instead of reading it into memory. On a miss the body is cached
+     * while the caller reads it, and only if the caller reads it to the end.
+     *
+     * @param request The HTTP request
+     * @return The response, which the caller must close
+     * @throws IOException If the origin request fails
+     */
+    public StreamingHttpResponse executeStreaming(HttpRequest request) throws IOException {
+        String method = request.getMethod().toUpperCase(Locale.ROOT);
+        if (config.isBypassCache() || !CACHEABLE_METHODS.contains(method)) {
+            return stream(request, null);
+        }
+
+        String key = CacheKeyGenerator.generateKey(request, config);
+        Optional<CacheEntry> cached = lookup(key);
+        if (cached.isPresent()) {
+            CacheEntry entry = cached.get();
+            Optional<InputStream> body = entry.getChunks() == 0
+                    ? Optional.of(new ByteArrayInputStream(entry.getBody() == null ? new byte[0] : entry.getBody()))
+                    : ChunkedBodyInputStream.open(cache, key, entry);
+            if (body.isPresent()) {
+                hits.incrementAndGet();
+                return new StreamingHttpResponse(entry.getStatusCode(), entry.getHeaders(), body.get(), true, null);
+            }
+        }
+        misses.incrementAndGet();
+        return stream(request, key);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return The policy deciding which responses are cached, or null if all cacheable responses are
+     */
+    public WriteAdmission getWriteAdmission() {
+        return writeAdmission;
+    }
+
+    /**
+     * @return The number of origin connections currently leased from the pool
+     */
+    public int getLeasedConnections() {
+        return connectionManager.getTotalStats().getLeased();
+    }
+
+    /**
+     * @return The number of idle origin connections kept for reuse
+     */
+    public int getAvailableConnections() {
+        return connectionManager.getTotalStats().getAvailable();
+    }
+
+    @Override
+    public void close() throws IOException {
+        httpClient.close();
+    }
+
+    private Optional<CacheEntry> lookup(String key) {
+        try {
+            Optional<byte[]> cached = cache.get(key);
+            if (cached.isPresent()) {
+                LOGGER.debug("Cache hit for key: {}", key);
+                return Optional.of(serializer.deserialize(cached.get()));
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("Error reading cached response for key: {}", key, e);
+        }
+        return Optional.empty();
+    }
+
+    private Optional<byte[]> readChunks(String key, CacheEntry entry) {
+        Optional<InputStream> body = ChunkedBodyInputStream.open(cache, key, entry);
+        if (body.isEmpty()) {
+            return Optional.empty();
+        }
+        try (InputStream in = body.get()) {
+            return Optional.of(in.readAllBytes());
+        } catch (IOException e) {
+            LOGGER.debug("Incomplete cached body for key: {}", key, e);
+            return Optional.empty();
+        }
+    }
+
+    private HttpResponse fetch(HttpRequest request) throws IOException {
+        try (CloseableHttpResponse response = httpClient.execute(toApacheRequest(request))) {
+            // Reading the entity fully releases the connection back to the pool
+            byte[] body = response.getEntity() == null ? new byte[0] : EntityUtils.toByteArray(response.getEntity());
+            return HttpResponse.builder()
+                    .statusCode(response.getStatusLine().getStatusCode())
+                    .headers(headers(response))
+                    .body(body)
+                    .fromCache(false)
+                    .build();
+        }
+    }
+
+    /**
+     * @param key The cache key, or null if the response must not be cached
+     */
+    private StreamingHttpResponse stream(HttpRequest request, String key) throws IOException {
+        CloseableHttpResponse response = httpClient.execute(toApacheRequest(request));
+        try {
+            int statusCode = response.getStatusLine().getStatusCode();
+            Map<String, String> headers = headers(response);
+            HttpEntity entity = response.getEntity();
+            InputStream body = entity == null ? new ByteArrayInputStream(new byte[0]) : entity.getContent();
+            // A declared length over the limit is not cached; an unknown length (-1) is checked while streaming
+            if (key != null && isCacheable(request, statusCode, headers)
+                    && (entity == null || entity.getContentLength() <= config.getMaxCacheableSize())
+                    && admit(key, entity == null ? 0
+                            : entity.getContentLength() < 0 ? config.getMaxCacheableSize() : entity.getContentLength())) {
+                ChunkedBodyWriter writer = writer(key, request, statusCode, headers, Instant.now());
+                if (entity == null) {
+                    writer.commit();
+                } else {
+                    body = new TeeInputStream(body, writer);
+                }
+            }
+            return new StreamingHttpResponse(statusCode, headers, body, false, response);
+        } catch (IOException | RuntimeException e) {
+            response.close();
+            throw e;
+        }
+    }
+
+    private HttpUriRequest toApacheRequest(HttpRequest request) {
+        RequestBuilder builder = RequestBuilder.create(request.getMethod()).setUri(request.getUrl());
+        request.getHeaders().forEach((name, value) -> {
+            if (!ENTITY_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+                builder.addHeader(name, value);
+            }
+        });
+        if (request.getBody() != null) {
+            builder.setEntity(new ByteArrayEntity(request.getBody()));
+        }
+        return builder.build();
+    }
+
+    private static Map<String, String> headers(CloseableHttpResponse response) {
+        Map<String, String> headers = new HashMap<>();
+        for (Header header : response.getAllHeaders()) {
+            if (!HOP_BY_HOP_HEADERS.contains(header.getName().toLowerCase(Locale.ROOT))) {
+                headers.merge(header.getName(), header.getValue(), (first, second) -> first + ", " + second);
+            }
+        }
+        return headers;
+    }
+
+    private boolean isCacheable(HttpRequest request, int statusCode, Map<String, String> headers) {
+        if (!CACHEABLE_STATUS_CODES.contains(statusCode)) {
+            return false;
+        }
+        String directives = header(headers, "Cache-Control").toLowerCase(Locale.ROOT);
+        if (directives.contains("no-store") || directives.contains("private")) {
+            return false;
+        }
+        if (directives.contains("public") || directives.contains("s-maxage")) {
+            return true;
+        }
+        boolean credentials = request.getHeaders().keySet().stream()
+                .anyMatch(name -> CREDENTIAL_HEADERS.contains(name.toLowerCase(Locale.ROOT)));
+        return !credentials && header(headers, "Set-Cookie").isEmpty();
+    }
+
+    private static String header(Map<String, String> headers, String name) {
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (header.getKey().equalsIgnoreCase(name)) {
+                return header.getValue();
+            }
+        }
+        return "";
+    }
+
+    private boolean admit(String key, long size) {
+        return writeAdmission == null || writeAdmission.admit(key, size);
+    }
+
+    private ChunkedBodyWriter writer(String key, HttpRequest request, int statusCode, Map<String, String> headers,
+                                     Instant timestamp) {
+        int ttl = request.getTtl() != null ? request.getTtl() : config.getDefaultTtl();
+        AdaptiveTtl adaptiveTtl = config.getAdaptiveTtl();
+        if (adaptiveTtl != null) {
+            ttl = adaptiveTtl.ttl(key, ttl);
+        }
+        CacheEntry.Builder entry = CacheEntry.builder()
+                .key(key)
+                .tenant(CacheKeyGenerator.parseTenant(key))
+                .countryCode(CacheKeyGenerator.parseCountryCode(key))
+                .statusCode(statusCode)
+                .headers(headers)
+                .timestamp(timestamp)
+                .expires(Instant.now().plusSeconds(ttl));
+        // Failing to cache never fails the request: the writer logs and gives up
+        ChunkedBodyWriter writer = new ChunkedBodyWriter(cache, serializer, key, entry, ttl, config.getChunkSize(),
+                config.getMaxCacheableSize(), config.isDedupBodies(), config.getInlineBodySize());
+        if (adaptiveTtl != null) {
+            writer.onBodyHash(hash -> adaptiveTtl.observe(key, hash));
+        }
+        return writer;
+    }
+}
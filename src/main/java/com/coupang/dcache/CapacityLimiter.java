@@ -0,0 +1,201 @@
+package com.coupang.dcache;
+
+import com.google.common.base.Ticker;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Client-side limiter keeping a node within its share of a table's
+ * provisioned read and write capacity.
+ * <p>
+ * Read and write capacity each have a token bucket refilled at the node's
+ * share of the provisioned units per second. A call is admitted while its
+ * bucket is positive, and the capacity it actually consumed, as reported by
+ * {@code ReturnConsumedCapacity}, is taken afterwards. Large items therefore
+ * cost what they really cost, and the bucket may go into debt that later
+ * calls wait out. {@link WritePriority#LOW} writes additionally require a
+ * reserve to be left in the bucket.
+ */
+public class CapacityLimiter {
+    private final TokenBucket reads;
+    private final TokenBucket writes;
+    private final double lowPriorityReserve;
+    private final AtomicLong rejectedReads = new AtomicLong();
+    private final AtomicLong rejectedWrites = new AtomicLong();
+    private final AtomicLong shedLowPriorityWrites = new AtomicLong();
+
+    public CapacityLimiter(CapacityLimiterConfig config) {
+        this.reads = new TokenBucket(config.getReadCapacityUnits(), config.getBurstSeconds(), config.getTicker());
+        this.writes = new TokenBucket(config.getWriteCapacityUnits(), config.getBurstSeconds(), config.getTicker());
+        this.lowPriorityReserve = config.getLowPriorityReserve();
+    }
+
+    /**
+     * Asks whether a read may be sent now.
+     *
+     * @return true if the read may proceed
+     */
+    public boolean tryAcquireRead() {
+        if (reads.available(0)) {
+            return true;
+        }
+        rejectedReads.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Asks whether a write of the given priority may be sent now.
+     *
+     * @param priority The write priority
+     * @return true if the write may proceed
+     */
+    public boolean tryAcquireWrite(WritePriority priority) {
+        if (priority == WritePriority.LOW) {
+            if (writes.available(lowPriorityReserve)) {
+                return true;
+            }
+            shedLowPriorityWrites.incrementAndGet();
+            return false;
+        }
+        if (writes.available(0)) {
+            return true;
+        }
+        rejectedWrites.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Takes capacity consumed by a read from the read bucket.
+     *
+     * @param units The consumed read capacity units
+     */
+    public void consumeRead(double units) {
+        reads.take(units);
+    }
+
+    /**
+     * Takes capacity consumed by a write from the write bucket.
+     *
+     * @param units The consumed write capacity units
+     */
+    public void consumeWrite(double units) {
+        writes.take(units);
+    }
+
+    /**
+     * Sets the fraction of the provisioned capacity this node may use.
+     *
+     * @param share The share, in (0, 1]
+     */
+    public void setShare(double share) {
+        double bounded = Math.max(Double.MIN_VALUE, Math.min(1.0, share));
+        reads.setShare(bounded);
+        writes.setShare(bounded);
+    }
+
+    public double getShare() {
+        return reads.getShare();
+    }
+
+    public double getAvailableReadUnits() {
+        return reads.getTokens();
+    }
+
+    public double getAvailableWriteUnits() {
+        return writes.getTokens();
+    }
+
+    public long getRejectedReads() {
+        return rejectedReads.get();
+    }
+
+    public long getRejectedWrites() {
+        return rejectedWrites.get();
+    }
+
+    public long getShedLowPriorityWrites() {
+        return shedLowPriorityWrites.get();
+    }
+
+    private static final class TokenBucket {
+        private final double unitsPerSecond;
+        private final double burstSeconds;
+        private final Ticker ticker;
+        private final ReentrantLock lock = new ReentrantLock();
+        private double share = 1.0;
+        private double tokens;
+        private long refilledAt;
+
+        TokenBucket(double unitsPerSecond, double burstSeconds, Ticker ticker) {
+            this.unitsPerSecond = unitsPerSecond;
+            this.burstSeconds = burstSeconds;
+            this.ticker = ticker;
+            this.tokens = capacity();
+            this.refilledAt = ticker.read();
+        }
+
+        boolean available(double reserve) {
+            lock.lock();
+            try {
+                refill();
+                return tokens > reserve * capacity();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void take(double units) {
+            lock.lock();
+            try {
+                refill();
+                // May go negative: the debt is paid back before the next call is admitted
+                tokens -= units;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void setShare(double share) {
+            lock.lock();
+            try {
+                refill();
+                this.share = share;
+                tokens = Math.min(tokens, capacity());
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        double getShare() {
+            lock.lock();
+            try {
+                return share;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        double getTokens() {
+            lock.lock();
+            try {
+                refill();
+                return tokens;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private double capacity() {
+            return unitsPerSecond * share * burstSeconds;
+        }
+
+        private void refill() {
+            long now = ticker.read();
+            double seconds = (double) (now - refilledAt) / TimeUnit.SECONDS.toNanos(1);
+            refilledAt = now;
+            tokens = Math.min(capacity(), tokens + seconds * unitsPerSecond * share);
+        }
+    }
+}
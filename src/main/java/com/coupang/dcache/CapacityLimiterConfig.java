@@ -0,0 +1,159 @@
+package com.coupang.dcache;
+
+import com.google.common.base.Ticker;
+
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Configuration for {@link CapacityLimiter}.
+ */
+public class CapacityLimiterConfig {
+    private final double readCapacityUnits;
+    private final double writeCapacityUnits;
+    private final double burstSeconds;
+    private final double lowPriorityReserve;
+    private final Duration coordinationInterval;
+    private final String nodeId;
+    private final Ticker ticker;
+
+    private CapacityLimiterConfig(Builder builder) {
+        this.readCapacityUnits = builder.readCapacityUnits;
+        this.writeCapacityUnits = builder.writeCapacityUnits;
+        this.burstSeconds = builder.burstSeconds;
+        this.lowPriorityReserve = builder.lowPriorityReserve;
+        this.coordinationInterval = builder.coordinationInterval;
+        this.nodeId = builder.nodeId;
+        this.ticker = builder.ticker;
+    }
+
+    public double getReadCapacityUnits() {
+        return readCapacityUnits;
+    }
+
+    public double getWriteCapacityUnits() {
+        return writeCapacityUnits;
+    }
+
+    public double getBurstSeconds() {
+        return burstSeconds;
+    }
+
+    public double getLowPriorityReserve() {
+        return lowPriorityReserve;
+    }
+
+    public Duration getCoordinationInterval() {
+        return coordinationInterval;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public Ticker getTicker() {
+        return ticker;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Creates a builder using the table's provisioned capacity from an {@link HttpCacheConfig}.
+     *
+     * @param config The HTTP cache configuration
+     * @return A builder with read and write capacity set
+     */
+    public static Builder builder(HttpCacheConfig config) {
+        return new Builder()
+                .readCapacityUnits(config.getReadCapacityUnits())
+                .writeCapacityUnits(config.getWriteCapacityUnits());
+    }
+
+    public static class Builder {
+        private double readCapacityUnits;
+        private double writeCapacityUnits;
+        private double burstSeconds = 1.0;
+        private double lowPriorityReserve = 0.5;
+        private Duration coordinationInterval;
+        private String nodeId = UUID.randomUUID().toString();
+        private Ticker ticker = Ticker.systemTicker();
+
+        /**
+         * Provisioned read capacity units per second of the table.
+         */
+        public Builder readCapacityUnits(double readCapacityUnits) {
+            this.readCapacityUnits = readCapacityUnits;
+            return this;
+        }
+
+        /**
+         * Provisioned write capacity units per second of the table.
+         */
+        public Builder writeCapacityUnits(double writeCapacityUnits) {
+            this.writeCapacityUnits = writeCapacityUnits;
+            return this;
+        }
+
+        /**
+         * Seconds of unused capacity a node may save up for bursts.
+         */
+        public Builder burstSeconds(double burstSeconds) {
+            this.burstSeconds = burstSeconds;
+            return this;
+        }
+
+        /**
+         * Fraction of the write bucket that must be available for a
+         * {@link WritePriority#LOW} write, so background writes stop before
+         * foreground writes are throttled.
+         */
+        public Builder lowPriorityReserve(double lowPriorityReserve) {
+            this.lowPriorityReserve = lowPriorityReserve;
+            return this;
+        }
+
+        /**
+         * Enables fleet coordination: every interval, each node registers in a
+         * control item and limits itself to its share of the capacity.
+         * Null keeps the whole capacity for this node.
+         */
+        public Builder coordinationInterval(Duration coordinationInterval) {
+            this.coordinationInterval = coordinationInterval;
+            return this;
+        }
+
+        /**
+         * Identifier of this node in the control item.
+         */
+        public Builder nodeId(String nodeId) {
+            this.nodeId = nodeId;
+            return this;
+        }
+
+        public Builder ticker(Ticker ticker) {
+            this.ticker = ticker;
+            return this;
+        }
+
+        public CapacityLimiterConfig build() {
+            if (readCapacityUnits <= 0 || writeCapacityUnits <= 0) {
+                throw new IllegalArgumentException("Read and write capacity units must be positive");
+            }
+            if (burstSeconds <= 0) {
+                throw new IllegalArgumentException("Burst seconds must be positive");
+            }
+            if (lowPriorityReserve < 0 || lowPriorityReserve >= 1) {
+                throw new IllegalArgumentException("Low priority reserve must be in [0, 1)");
+            }
+            if (coordinationInterval != null && (coordinationInterval.isZero() || coordinationInterval.isNegative())) {
+                throw new IllegalArgumentException("Coordination interval must be positive");
+            }
+            if (nodeId == null || nodeId.isEmpty()) {
+                throw new IllegalArgumentException("Node ID is required");
+            }
+            return new CapacityLimiterConfig(this);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.coupang.dcache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Streams a body stored by {@link ChunkedBodyWriter} in chunk entries, either
+ * its own or shared by content hash.
+ * <p>
+ * Before the stream is opened, all chunk keys are checked with one
+ * {@link Cache#presentKeys}, which transfers no values, so that a body with
+ * any chunk evicted or expired is a miss served by the origin rather than a
+ * response that fails halfway through. Chunks are then read as the caller
+ * reads, {@value #WINDOW_CHUNKS} at a time with one {@link Cache#getAll}, so
+ * at most that many are held in memory. A chunk that disappears between the
+ * check and its read still fails the stream with an {@link IOException}.
+ */
+class ChunkedBodyInputStream extends InputStream {
+    private static final int WINDOW_CHUNKS = 4;
+
+    private final Cache cache;
+    private final String key;
+    private final List<String> keys;
+    private final byte[][] window = new byte[WINDOW_CHUNKS][];
+    private int windowStart;
+    private int windowEnd;
+    private int next;
+    private byte[] current;
+    private int position;
+
+    private ChunkedBodyInputStream(Cache cache, String key, List<String> keys) {
+        this.cache = cache;
+        this.key = key;
+        this.keys = keys;
+    }
+
+    /**
+     * Opens the body of a chunked entry.
+     *
+     * @return The stream, or empty if any chunk is no longer cached
+     */
+    static Optional<InputStream> open(Cache cache, String key, CacheEntry entry) {
+        List<String> keys = new ArrayList<>(entry.getChunks());
+        for (int i = 0; i < entry.getChunks(); i++) {
+            keys.add(ChunkedBodyWriter.chunkKey(key, entry, i));
+        }
+        // A shared chunk may appear more than once in a body
+        LinkedHashSet<String> distinct = new LinkedHashSet<>(keys);
+        if (!cache.presentKeys(distinct).containsAll(distinct)) {
+            return Optional.empty();
+        }
+        return Optional.of(new ChunkedBodyInputStream(cache, key, keys));
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureData()) {
+            return -1;
+        }
+        return current[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureData()) {
+            return -1;
+        }
+        int n = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return current == null ? 0 : current.length - position;
+    }
+
+    @Override
+    public void close() {
+        current = null;
+        next = keys.size();
+        Arrays.fill(window, null);
+    }
+
+    private boolean ensureData() throws IOException {
+        while (current == null || position == current.length) {
+            if (next >= keys.size()) {
+                current = null;
+                return false;
+            }
+            if (next == windowEnd) {
+                loadWindow();
+            }
+            current = window[next - windowStart];
+            window[next - windowStart] = null;
+            position = 0;
+            next++;
+        }
+        return true;
+    }
+
+    private void loadWindow() throws IOException {
+        windowStart = next;
+        windowEnd = Math.min(next + WINDOW_CHUNKS, keys.size());
+        List<String> wanted = keys.subList(windowStart, windowEnd);
+        Map<String, byte[]> found = cache.getAll(new LinkedHashSet<>(wanted));
+        for (int i = 0; i < wanted.size(); i++) {
+            window[i] = found.get(wanted.get(i));
+            if (window[i] == null) {
+                // Evicted or expired since the stream was opened: the body cannot be completed
+                throw new IOException("Chunk " + (windowStart + i) + " of cached body is missing for key: " + key);
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.coupang.dcache;
+
+import com.coupang.dcache.serializer.CacheEntrySerializer;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.LongConsumer;
+
+/**
+ * Writes a response body into a {@link Cache} while it is being received.
+ * <p>
+ * Bodies up to one chunk are stored inline in the {@link CacheEntry}. Larger
+ * bodies are written as {@code <key>#chunk#<chunkId>#<n>} entries as soon as
+ * each chunk is full, so at most one chunk is buffered. On {@link #commit()},
+ * the entry under {@code key} is written last and names the chunk id and
+ * count. Readers therefore never see a partial body: until the commit there
+ * is no entry, and a later write uses a new chunk id rather than overwriting
+ * chunks a reader may be streaming. Chunks get a longer TTL than the entry, so
+ * they do not expire before the entry that points to them.
+ * <p>
+ * When deduplicating, only bodies up to the inline size are stored inline.
+ * Other bodies are cut into chunks the same way, but each chunk is stored as
+ * a {@code __body#<sha256>} entry and the entry lists the chunk hashes, so
+ * every key with the same body shares the same chunk entries. Chunks are
+ * written with {@link Cache#putExtendingTtl}, so an entry with a short TTL
+ * never cuts short a chunk that a longer-lived entry also uses, and since a
+ * chunk entry always holds the same bytes, overwriting it cannot disturb a
+ * reader.
+ * <p>
+ * Exceeding the maximum cacheable size or calling {@link #abort()} stops the
+ * write and removes the chunks written so far; the entry is never written.
+ * Shared chunks are left to expire, as other entries may use them.
+ * Not thread-safe: one writer is fed by one reader of the origin body.
+ */
+class ChunkedBodyWriter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChunkedBodyWriter.class);
+    static final int CHUNK_TTL_MARGIN = 60;
+    private static final String CHUNK_INFIX = "#chunk#";
+    private static final String BODY_PREFIX = "__body#";
+
+    private final Cache cache;
+    private final CacheEntrySerializer serializer;
+    private final String key;
+    private final CacheEntry.Builder entry;
+    private final int ttl;
+    private final int chunkSize;
+    private final int inlineSize;
+    private final long maxSize;
+    private final boolean dedup;
+    private final String chunkId = UUID.randomUUID().toString();
+    private final List<String> chunkHashes = new ArrayList<>();
+    private ByteArrayOutputStream buffer;
+    private Hasher bodyHasher;
+    private LongConsumer bodyHashListener;
+    private long size;
+    private int chunks;
+    private boolean done;
+
+    /**
+     * @param entry The entry to write on commit, without its body
+     * @param ttl The TTL of the entry in seconds
+     * @param chunkSize The maximum size of an inline body and of each chunk
+     * @param maxSize The maximum body size to cache
+     */
+    ChunkedBodyWriter(Cache cache, CacheEntrySerializer serializer, String key, CacheEntry.Builder entry,
+                      int ttl, int chunkSize, long maxSize) {
+        this(cache, serializer, key, entry, ttl, chunkSize, maxSize, false, chunkSize);
+    }
+
+    /**
+     * @param dedup Whether chunks are stored by content hash and shared between entries
+     * @param inlineSize The maximum size of an inline body when deduplicating
+     */
+    ChunkedBodyWriter(Cache cache, CacheEntrySerializer serializer, String key, CacheEntry.Builder entry,
+                      int ttl, int chunkSize, long maxSize, boolean dedup, int inlineSize) {
+        this.cache = cache;
+        this.serializer = serializer;
+        this.key = key;
+        this.entry = entry;
+        this.ttl = ttl;
+        this.chunkSize = chunkSize;
+        this.maxSize = maxSize;
+        this.dedup = dedup;
+        this.inlineSize = dedup ? inlineSize : chunkSize;
+        this.buffer = new ByteArrayOutputStream(Math.min(chunkSize, 8192));
+    }
+
+    static String chunkKey(String key, String chunkId, int index) {
+        return key + CHUNK_INFIX + chunkId + "#" + index;
+    }
+
+    static String bodyKey(String hash) {
+        return BODY_PREFIX + hash;
+    }
+
+    /**
+     * Returns the key of a chunk of an entry's body.
+     */
+    static String chunkKey(String key, CacheEntry entry, int index) {
+        List<String> hashes = entry.getChunkHashes();
+        return hashes == null || hashes.isEmpty() ? chunkKey(key, entry.getChunkId(), index) : bodyKey(hashes.get(index));
+    }
+
+    /**
+     * Tests whether a key holds a chunk of a body rather than an entry.
+     */
+    static boolean isChunkKey(String key) {
+        return key.startsWith(BODY_PREFIX) || key.contains(CHUNK_INFIX);
+    }
+
+    /**
+     * Hashes the whole body as it is written and passes the hash to a
+     * listener once the body is complete, even if caching it fails.
+     */
+    void onBodyHash(LongConsumer listener) {
+        this.bodyHasher = Hashing.murmur3_128().newHasher();
+        this.bodyHashListener = listener;
+    }
+
+    void write(byte[] data, int offset, int length) {
+        if (done) {
+            return;
+        }
+        if (bodyHasher != null) {
+            bodyHasher.putBytes(data, offset, length);
+        }
+        size += length;
+        if (size > maxSize) {
+            LOGGER.debug("Body of {} exceeds {} bytes, not caching", key, maxSize);
+            abort();
+            return;
+        }
+        try {
+            while (length > 0) {
+                // A full buffer is only written once more data arrives, so a body of exactly one chunk stays inline
+                if (buffer.size() == chunkSize) {
+                    writeChunk();
+                }
+                int n = Math.min(length, chunkSize - buffer.size());
+                buffer.write(data, offset, n);
+                offset += n;
+                length -= n;
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("Error caching body chunk for key: {}", key, e);
+            abort();
+        }
+    }
+
+    /**
+     * Writes the remaining data and the entry.
+     *
+     * @return true if the body was cached
+     */
+    boolean commit() {
+        if (done) {
+            return false;
+        }
+        done = true;
+        if (bodyHashListener != null) {
+            bodyHashListener.accept(bodyHasher.hash().asLong());
+        }
+        try {
+            if (chunks == 0 && buffer.size() <= inlineSize) {
+                entry.body(buffer.toByteArray());
+            } else {
+                if (buffer.size() > 0) {
+                    writeChunk();
+                }
+                entry.body(new byte[0]).chunks(chunks);
+                if (dedup) {
+                    entry.chunkHashes(chunkHashes);
+                } else {
+                    entry.chunkId(chunkId);
+                }
+            }
+            buffer = null;
+            cache.put(key, serializer.serialize(entry.build()), ttl);
+            return true;
+        } catch (RuntimeException e) {
+            LOGGER.warn("Error caching response for key: {}", key, e);
+            removeChunks();
+            return false;
+        }
+    }
+
+    /**
+     * Stops the write and removes the chunks written so far.
+     */
+    void abort() {
+        if (done) {
+            return;
+        }
+        done = true;
+        buffer = null;
+        removeChunks();
+    }
+
+    boolean isDone() {
+        return done;
+    }
+
+    private void writeChunk() {
+        byte[] chunk = buffer.toByteArray();
+        if (dedup) {
+            String hash = Base64.getUrlEncoder().withoutPadding().encodeToString(
+                Hashing.sha256().hashBytes(chunk).asBytes());
+            // Never shortens the TTL of a chunk a longer-lived entry also points to
+            cache.putExtendingTtl(bodyKey(hash), chunk, ttl + CHUNK_TTL_MARGIN);
+            chunkHashes.add(hash);
+        } else {
+            cache.put(chunkKey(key, chunkId, chunks), chunk, ttl + CHUNK_TTL_MARGIN);
+        }
+        chunks++;
+        buffer.reset();
+    }
+
+    private void removeChunks() {
+        if (dedup) {
+            return;
+        }
+        for (int i = 0; i < chunks; i++) {
+            try {
+                cache.invalidate(chunkKey(key, chunkId, i));
+            } catch (RuntimeException e) {
+                // Left to expire with their TTL
+                LOGGER.debug("Failed to remove chunk {} of key: {}", i, key, e);
+            }
+        }
+    }
+}
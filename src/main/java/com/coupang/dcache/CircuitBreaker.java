@@ -0,0 +1,275 @@
+package com.coupang.dcache;
+
+import com.google.common.base.Ticker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Circuit breaker for calls to a remote cache tier.
+ * <p>
+ * Outcomes are counted in a sliding window of ten buckets. When enough calls
+ * in the window failed or were slow, the circuit opens and calls are refused
+ * without touching the remote tier. After the open duration a few trial
+ * calls are let through (half-open); if all succeed the circuit closes,
+ * otherwise it opens again. Independently, throttling sheds puts for a
+ * while, so reads keep their share of the remote tier's capacity.
+ */
+public class CircuitBreaker {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CircuitBreaker.class);
+    private static final int BUCKETS = 10;
+
+    /**
+     * States of the circuit.
+     */
+    public enum State {
+        /**
+         * Calls go through and their outcomes are counted.
+         */
+        CLOSED,
+        /**
+         * Calls are refused.
+         */
+        OPEN,
+        /**
+         * A limited number of trial calls go through.
+         */
+        HALF_OPEN
+    }
+
+    private final CircuitBreakerConfig config;
+    private final Ticker ticker;
+    private final long bucketNanos;
+    private final long slowCallNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final long[] bucketStarts = new long[BUCKETS];
+    private final int[] calls = new int[BUCKETS];
+    private final int[] failures = new int[BUCKETS];
+    private final int[] slowCalls = new int[BUCKETS];
+    private volatile State state = State.CLOSED;
+    private long openedAt;
+    private int trialPermits;
+    private int trialSuccesses;
+    private volatile long shedPutsUntil;
+    private long rejectedCalls;
+    private long shedPuts;
+
+    public CircuitBreaker(CircuitBreakerConfig config) {
+        this.config = config;
+        this.ticker = config.getTicker();
+        this.bucketNanos = Math.max(1, config.getWindow().toNanos() / BUCKETS);
+        this.slowCallNanos = config.getSlowCallDuration().toNanos();
+        this.shedPutsUntil = ticker.read();
+    }
+
+    /**
+     * Asks whether a call may go to the remote tier. A permitted call must
+     * report its outcome with {@link #onSuccess} or {@link #onFailure}.
+     *
+     * @return true if the call may proceed
+     */
+    public boolean tryAcquire() {
+        lock.lock();
+        try {
+            if (state == State.OPEN && ticker.read() - openedAt >= config.getOpenDuration().toNanos()) {
+                transition(State.HALF_OPEN);
+                trialPermits = config.getHalfOpenCalls();
+                trialSuccesses = 0;
+            }
+            if (state == State.CLOSED) {
+                return true;
+            }
+            if (state == State.HALF_OPEN && trialPermits > 0) {
+                trialPermits--;
+                return true;
+            }
+            rejectedCalls++;
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Like {@link #tryAcquire()}, but also refuses puts while they are shed.
+     *
+     * @return true if the put may proceed
+     */
+    public boolean tryAcquirePut() {
+        if (ticker.read() - shedPutsUntil < 0) {
+            lock.lock();
+            try {
+                shedPuts++;
+            } finally {
+                lock.unlock();
+            }
+            return false;
+        }
+        return tryAcquire();
+    }
+
+    /**
+     * Reports a successful call.
+     *
+     * @param nanos The duration of the call
+     */
+    public void onSuccess(long nanos) {
+        record(false, nanos >= slowCallNanos);
+    }
+
+    /**
+     * Reports a failed call.
+     *
+     * @param nanos The duration of the call
+     * @param throttled Whether the remote tier rejected the call for lack of capacity
+     */
+    public void onFailure(long nanos, boolean throttled) {
+        if (throttled) {
+            shedPutsUntil = ticker.read() + config.getPutShedDuration().toNanos();
+            LOGGER.debug("Remote cache throttled, shedding puts for {}", config.getPutShedDuration());
+        }
+        record(true, nanos >= slowCallNanos);
+    }
+
+    public State getState() {
+        lock.lock();
+        try {
+            // Report an expired open state as half-open without consuming a trial call
+            if (state == State.OPEN && ticker.read() - openedAt >= config.getOpenDuration().toNanos()) {
+                return State.HALF_OPEN;
+            }
+            return state;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns whether calls are currently refused. Suitable as a runtime
+     * bypass condition, see {@link HttpCacheConfig.Builder#bypassCacheWhen}.
+     *
+     * @return true while the circuit is open
+     */
+    public boolean isOpen() {
+        return getState() == State.OPEN;
+    }
+
+    /**
+     * Returns whether puts are currently shed because of throttling.
+     *
+     * @return true while puts are shed
+     */
+    public boolean isSheddingPuts() {
+        return ticker.read() - shedPutsUntil < 0;
+    }
+
+    /**
+     * Returns the number of calls refused because the circuit was open.
+     *
+     * @return The number of refused calls
+     */
+    public long getRejectedCalls() {
+        lock.lock();
+        try {
+            return rejectedCalls;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of puts refused because of throttling.
+     *
+     * @return The number of shed puts
+     */
+    public long getShedPuts() {
+        lock.lock();
+        try {
+            return shedPuts;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void record(boolean failed, boolean slow) {
+        lock.lock();
+        try {
+            if (state == State.HALF_OPEN) {
+                if (failed || slow) {
+                    transition(State.OPEN);
+                } else if (++trialSuccesses >= config.getHalfOpenCalls()) {
+                    transition(State.CLOSED);
+                }
+                return;
+            }
+            if (state == State.OPEN) {
+                // Outcome of a call permitted before the circuit opened
+                return;
+            }
+
+            long now = ticker.read();
+            int bucket = bucket(now);
+            calls[bucket]++;
+            if (failed) {
+                failures[bucket]++;
+            }
+            if (slow) {
+                slowCalls[bucket]++;
+            }
+
+            int totalCalls = 0;
+            int totalFailures = 0;
+            int totalSlowCalls = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                if (now - bucketStarts[i] < bucketNanos * BUCKETS) {
+                    totalCalls += calls[i];
+                    totalFailures += failures[i];
+                    totalSlowCalls += slowCalls[i];
+                }
+            }
+            if (totalCalls >= config.getMinCalls()
+                    && (totalFailures >= config.getFailureRateThreshold() * totalCalls
+                    || totalSlowCalls >= config.getSlowCallRateThreshold() * totalCalls)) {
+                LOGGER.warn("Opening circuit to remote cache: {} of {} calls failed, {} slow",
+                        totalFailures, totalCalls, totalSlowCalls);
+                transition(State.OPEN);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the bucket covering the given time, resetting it if it held an older period.
+     */
+    private int bucket(long now) {
+        long period = Math.floorDiv(now, bucketNanos);
+        int bucket = (int) Math.floorMod(period, (long) BUCKETS);
+        long start = period * bucketNanos;
+        if (bucketStarts[bucket] != start || calls[bucket] == 0) {
+            bucketStarts[bucket] = start;
+            calls[bucket] = 0;
+            failures[bucket] = 0;
+            slowCalls[bucket] = 0;
+        }
+        return bucket;
+    }
+
+    private void transition(State next) {
+        if (next == State.OPEN) {
+            openedAt = ticker.read();
+        }
+        if (next == State.CLOSED) {
+            for (int i = 0; i < BUCKETS; i++) {
+                calls[i] = 0;
+                failures[i] = 0;
+                slowCalls[i] = 0;
+            }
+        }
+        if (state != next) {
+            LOGGER.info("Remote cache circuit {} -> {}", state, next);
+        }
+        state = next;
+    }
+}
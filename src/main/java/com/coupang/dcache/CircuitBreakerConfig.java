@@ -0,0 +1,171 @@
+package com.coupang.dcache;
+
+import com.google.common.base.Ticker;
+
+import java.time.Duration;
+
+/**
+ * Configuration for {@link CircuitBreaker}.
+ */
+public class CircuitBreakerConfig {
+    private final Duration window;
+    private final int minCalls;
+    private final double failureRateThreshold;
+    private final Duration slowCallDuration;
+    private final double slowCallRateThreshold;
+    private final Duration openDuration;
+    private final int halfOpenCalls;
+    private final Duration putShedDuration;
+    private final Ticker ticker;
+
+    private CircuitBreakerConfig(Builder builder) {
+        this.window = builder.window;
+        this.minCalls = builder.minCalls;
+        this.failureRateThreshold = builder.failureRateThreshold;
+        this.slowCallDuration = builder.slowCallDuration;
+        this.slowCallRateThreshold = builder.slowCallRateThreshold;
+        this.openDuration = builder.openDuration;
+        this.halfOpenCalls = builder.halfOpenCalls;
+        this.putShedDuration = builder.putShedDuration;
+        this.ticker = builder.ticker;
+    }
+
+    public Duration getWindow() {
+        return window;
+    }
+
+    public int getMinCalls() {
+        return minCalls;
+    }
+
+    public double getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    public Duration getSlowCallDuration() {
+        return slowCallDuration;
+    }
+
+    public double getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    public Duration getOpenDuration() {
+        return openDuration;
+    }
+
+    public int getHalfOpenCalls() {
+        return halfOpenCalls;
+    }
+
+    public Duration getPutShedDuration() {
+        return putShedDuration;
+    }
+
+    public Ticker getTicker() {
+        return ticker;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private Duration window = Duration.ofSeconds(10);
+        private int minCalls = 20;
+        private double failureRateThreshold = 0.5;
+        private Duration slowCallDuration = Duration.ofMillis(100);
+        private double slowCallRateThreshold = 0.8;
+        private Duration openDuration = Duration.ofSeconds(30);
+        private int halfOpenCalls = 5;
+        private Duration putShedDuration = Duration.ofSeconds(5);
+        private Ticker ticker = Ticker.systemTicker();
+
+        /**
+         * Length of the sliding window over which error and latency rates are computed.
+         */
+        public Builder window(Duration window) {
+            this.window = window;
+            return this;
+        }
+
+        /**
+         * Minimum number of calls in the window before the circuit may open.
+         */
+        public Builder minCalls(int minCalls) {
+            this.minCalls = minCalls;
+            return this;
+        }
+
+        /**
+         * Fraction of failed calls in the window that opens the circuit.
+         */
+        public Builder failureRateThreshold(double failureRateThreshold) {
+            this.failureRateThreshold = failureRateThreshold;
+            return this;
+        }
+
+        /**
+         * Calls taking longer than this count as slow.
+         */
+        public Builder slowCallDuration(Duration slowCallDuration) {
+            this.slowCallDuration = slowCallDuration;
+            return this;
+        }
+
+        /**
+         * Fraction of slow calls in the window that opens the circuit.
+         */
+        public Builder slowCallRateThreshold(double slowCallRateThreshold) {
+            this.slowCallRateThreshold = slowCallRateThreshold;
+            return this;
+        }
+
+        /**
+         * How long the circuit stays open before letting trial calls through.
+         */
+        public Builder openDuration(Duration openDuration) {
+            this.openDuration = openDuration;
+            return this;
+        }
+
+        /**
+         * Number of trial calls in the half-open state; all must succeed to close the circuit.
+         */
+        public Builder halfOpenCalls(int halfOpenCalls) {
+            this.halfOpenCalls = halfOpenCalls;
+            return this;
+        }
+
+        /**
+         * How long puts are shed after the remote tier reports throttling.
+         */
+        public Builder putShedDuration(Duration putShedDuration) {
+            this.putShedDuration = putShedDuration;
+            return this;
+        }
+
+        public Builder ticker(Ticker ticker) {
+            this.ticker = ticker;
+            return this;
+        }
+
+        public CircuitBreakerConfig build() {
+            if (window == null || window.isZero() || window.isNegative()) {
+                throw new IllegalArgumentException("Window must be positive");
+            }
+            if (minCalls <= 0 || halfOpenCalls <= 0) {
+                throw new IllegalArgumentException("Min calls and half-open calls must be positive");
+            }
+            if (failureRateThreshold <= 0 || failureRateThreshold > 1
+                    || slowCallRateThreshold <= 0 || slowCallRateThreshold > 1) {
+                throw new IllegalArgumentException("Rate thresholds must be in (0, 1]");
+            }
+            if (slowCallDuration == null || openDuration == null || putShedDuration == null
+                    || openDuration.isNegative() || putShedDuration.isNegative()) {
+                throw new IllegalArgumentException("Durations must not be negative");
+            }
+            return new CircuitBreakerConfig(this);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.coupang.dcache;
+
+import com.google.common.hash.Hashing;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Approximate set of keys that supports removal.
+ * <p>
+ * Each key sets k of m 4-bit counters, chosen by double hashing a 128-bit
+ * murmur3 hash. {@link #mightContain(String)} never returns false for a key
+ * that was added and not removed, and returns true for other keys with about
+ * the configured false-positive rate while the filter holds no more than the
+ * expected number of keys. Counters are packed 16 to a long and updated
+ * with compare-and-set, so the filter is thread-safe without locks.
+ * <p>
+ * A counter that reaches 15 stays there, since its true count is then
+ * unknown; removal can therefore leave stale positives, but never turns a
+ * key that is still present into a negative unless a key that was never
+ * added is removed. {@link #remove(String)} ignores keys the filter does not
+ * contain to keep that from happening.
+ */
+public final class CountingBloomFilter {
+    private static final int COUNTER_BITS = 4;
+    private static final int COUNTERS_PER_WORD = Long.SIZE / COUNTER_BITS;
+    private static final long MAX_COUNT = (1L << COUNTER_BITS) - 1;
+
+    private final AtomicLongArray words;
+    private final long counters;
+    private final int hashes;
+    private final long expectedKeys;
+    private final double targetFalsePositiveRate;
+    private final AtomicLong size = new AtomicLong();
+
+    /**
+     * Creates a filter sized for a number of keys and a false-positive rate.
+     *
+     * @param expectedKeys The number of keys the filter is sized for
+     * @param falsePositiveRate The false-positive rate at that number of keys, in (0, 1)
+     */
+    public CountingBloomFilter(long expectedKeys, double falsePositiveRate) {
+        if (expectedKeys <= 0) {
+            throw new IllegalArgumentException("Expected keys must be positive");
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False-positive rate must be in (0, 1)");
+        }
+        double optimal = Math.ceil(-expectedKeys * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        long wordCount = (long) Math.ceil(optimal / COUNTERS_PER_WORD);
+        if (wordCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Filter for " + expectedKeys + " keys is too large");
+        }
+        this.words = new AtomicLongArray((int) wordCount);
+        this.counters = wordCount * COUNTERS_PER_WORD;
+        this.hashes = Math.max(1, (int) Math.round((double) counters / expectedKeys * Math.log(2)));
+        this.expectedKeys = expectedKeys;
+        this.targetFalsePositiveRate = falsePositiveRate;
+    }
+
+    /**
+     * Adds a key. Adding a key twice needs two removals to remove it.
+     */
+    public void add(String key) {
+        long[] hash = hash(key);
+        for (int i = 0; i < hashes; i++) {
+            increment(index(hash, i));
+        }
+        size.incrementAndGet();
+    }
+
+    /**
+     * Removes a key added before.
+     *
+     * @return false if the filter did not contain the key, which was then left alone
+     */
+    public boolean remove(String key) {
+        long[] hash = hash(key);
+        if (!mightContain(hash)) {
+            return false;
+        }
+        for (int i = 0; i < hashes; i++) {
+            decrement(index(hash, i));
+        }
+        size.decrementAndGet();
+        return true;
+    }
+
+    /**
+     * Tests whether a key may have been added.
+     *
+     * @return false only if the key is certainly not in the filter
+     */
+    public boolean mightContain(String key) {
+        return mightContain(hash(key));
+    }
+
+    /**
+     * Removes all keys.
+     */
+    public void clear() {
+        for (int i = 0; i < words.length(); i++) {
+            words.set(i, 0);
+        }
+        size.set(0);
+    }
+
+    /**
+     * Returns the number of keys added and not removed, counting repeated adds.
+     *
+     * @return The approximate number of keys
+     */
+    public long getApproximateSize() {
+        return Math.max(0, size.get());
+    }
+
+    public long getExpectedKeys() {
+        return expectedKeys;
+    }
+
+    public double getTargetFalsePositiveRate() {
+        return targetFalsePositiveRate;
+    }
+
+    /**
+     * Estimates the false-positive rate at the current number of keys.
+     *
+     * @return The expected share of absent keys reported as present
+     */
+    public double getFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-(double) hashes * getApproximateSize() / counters), hashes);
+    }
+
+    /**
+     * Returns the heap used by the counters.
+     *
+     * @return The size of the counter array in bytes
+     */
+    public long getMemoryBytes() {
+        return (long) words.length() * Long.BYTES;
+    }
+
+    public int getHashCount() {
+        return hashes;
+    }
+
+    private boolean mightContain(long[] hash) {
+        for (int i = 0; i < hashes; i++) {
+            if (count(index(hash, i)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long[] hash(String key) {
+        ByteBuffer bytes = ByteBuffer.wrap(Hashing.murmur3_128().hashString(key, StandardCharsets.UTF_8).asBytes())
+                .order(ByteOrder.LITTLE_ENDIAN);
+        return new long[] {bytes.getLong(0), bytes.getLong(8)};
+    }
+
+    private long index(long[] hash, int i) {
+        return ((hash[0] + i * hash[1]) & Long.MAX_VALUE) % counters;
+    }
+
+    private long count(long index) {
+        return (words.get((int) (index / COUNTERS_PER_WORD)) >>> shift(index)) & MAX_COUNT;
+    }
+
+    private void increment(long index) {
+        int word = (int) (index / COUNTERS_PER_WORD);
+        int shift = shift(index);
+        while (true) {
+            long current = words.get(word);
+            if (((current >>> shift) & MAX_COUNT) == MAX_COUNT
+                    || words.compareAndSet(word, current, current + (1L << shift))) {
+                return;
+            }
+        }
+    }
+
+    private void decrement(long index) {
+        int word = (int) (index / COUNTERS_PER_WORD);
+        int shift = shift(index);
+        while (true) {
+            long current = words.get(word);
+            long count = (current >>> shift) & MAX_COUNT;
+            if (count == 0 || count == MAX_COUNT || words.compareAndSet(word, current, current - (1L << shift))) {
+                return;
+            }
+        }
+    }
+
+    private static int shift(long index) {
+        return (int) (index % COUNTERS_PER_WORD) * COUNTER_BITS;
+    }
+}
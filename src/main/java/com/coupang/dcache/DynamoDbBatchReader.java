@@ -0,0 +1,107 @@
+package com.coupang.dcache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Reads items with BatchGetItem, splitting into chunks of 100 and retrying
+ * unprocessed keys with exponential backoff. Keys still unprocessed after the
+ * last attempt are left out, so callers see them as misses. Returns the read
+ * capacity consumed, for callers that meter it.
+ */
+final class DynamoDbBatchReader {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DynamoDbBatchReader.class);
+    static final int MAX_BATCH_SIZE = RequestBatchingConfig.MAX_BATCH_SIZE;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long BASE_BACKOFF_MILLIS = 10;
+
+    private DynamoDbBatchReader() {
+        // Private constructor to prevent instantiation
+    }
+
+    /**
+     * Reads all keys from the table.
+     *
+     * @param client The DynamoDB client
+     * @param tableName The table name
+     * @param keys The primary keys, without duplicates
+     * @param items Receives each item found
+     * @return The read capacity units reported as consumed, 0 if none were reported
+     */
+    static double read(DynamoDbClient client, String tableName, List<Map<String, AttributeValue>> keys,
+                       Consumer<Map<String, AttributeValue>> items) {
+        return read(client, tableName, keys, null, null, items);
+    }
+
+    /**
+     * Reads only some attributes of the items. DynamoDB still charges each
+     * item's full size, but the values are neither sent nor held.
+     *
+     * @param projection The projection expression, or null for whole items
+     * @param names The attribute names it refers to, or null
+     */
+    static double read(DynamoDbClient client, String tableName, List<Map<String, AttributeValue>> keys,
+                       String projection, Map<String, String> names, Consumer<Map<String, AttributeValue>> items) {
+        double consumed = 0;
+        for (int from = 0; from < keys.size(); from += MAX_BATCH_SIZE) {
+            List<Map<String, AttributeValue>> chunk = keys.subList(from, Math.min(from + MAX_BATCH_SIZE, keys.size()));
+            consumed += readChunk(client, tableName, KeysAndAttributes.builder()
+                .keys(chunk)
+                .projectionExpression(projection)
+                .expressionAttributeNames(names)
+                .build(), items);
+        }
+        return consumed;
+    }
+
+    private static double readChunk(DynamoDbClient client, String tableName, KeysAndAttributes chunk,
+                                    Consumer<Map<String, AttributeValue>> items) {
+        Map<String, KeysAndAttributes> pending = Collections.singletonMap(tableName, chunk);
+        double consumed = 0;
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            if (attempt > 0) {
+                sleep(BASE_BACKOFF_MILLIS << (attempt - 1));
+            }
+            BatchGetItemResponse response = client.batchGetItem(BatchGetItemRequest.builder()
+                    .requestItems(pending)
+                    .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                    .build());
+            if (response.hasConsumedCapacity()) {
+                for (ConsumedCapacity capacity : response.consumedCapacity()) {
+                    if (capacity.capacityUnits() != null) {
+                        consumed += capacity.capacityUnits();
+                    }
+                }
+            }
+            response.responses().getOrDefault(tableName, List.of()).forEach(items);
+            if (!response.hasUnprocessedKeys() || response.unprocessedKeys().isEmpty()) {
+                return consumed;
+            }
+            pending = response.unprocessedKeys();
+        }
+        LOGGER.debug("Keys of {} remain unprocessed after {} attempts, treating them as misses",
+            tableName, MAX_ATTEMPTS);
+        return consumed;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while retrying batch read", e);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.coupang.dcache;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes items with BatchWriteItem, splitting into chunks of 25 and
+ * retrying unprocessed items with exponential backoff. Returns the write
+ * capacity consumed, for callers that meter it.
+ */
+final class DynamoDbBatchWriter {
+    static final int MAX_BATCH_SIZE = 25;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long BASE_BACKOFF_MILLIS = 20;
+
+    private DynamoDbBatchWriter() {
+        // Private constructor to prevent instantiation
+    }
+
+    /**
+     * Writes all requests to the table.
+     *
+     * @param client The DynamoDB client
+     * @param tableName The table name
+     * @param requests The put and delete requests
+     * @return The write capacity units reported as consumed, 0 if none were reported
+     */
+    static double write(DynamoDbClient client, String tableName, List<WriteRequest> requests) {
+        double consumed = 0;
+        for (int from = 0; from < requests.size(); from += MAX_BATCH_SIZE) {
+            List<WriteRequest> chunk = requests.subList(from, Math.min(from + MAX_BATCH_SIZE, requests.size()));
+            consumed += writeChunk(client, tableName, chunk);
+        }
+        return consumed;
+    }
+
+    private static double writeChunk(DynamoDbClient client, String tableName, List<WriteRequest> chunk) {
+        Map<String, List<WriteRequest>> pending = Collections.singletonMap(tableName, chunk);
+        double consumed = 0;
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            BatchWriteItemResponse response = client.batchWriteItem(BatchWriteItemRequest.builder()
+                    .requestItems(pending)
+                    .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                    .build());
+            if (response.hasConsumedCapacity()) {
+                for (ConsumedCapacity capacity : response.consumedCapacity()) {
+                    if (capacity.capacityUnits() != null) {
+                        consumed += capacity.capacityUnits();
+                    }
+                }
+            }
+            if (!response.hasUnprocessedItems() || response.unprocessedItems().isEmpty()) {
+                return consumed;
+            }
+            pending = response.unprocessedItems();
+            sleep(BASE_BACKOFF_MILLIS << attempt);
+        }
+        throw new IllegalStateException("Unprocessed items remain after " + MAX_ATTEMPTS + " attempts");
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while retrying batch write", e);
+        }
+    }
+}
@@ -1,48 +1,331 @@
 package com.coupang.dcache;
 
+import com.coupang.dcache.invalidation.InvalidationListener;
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.Longs;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import software.amazon.awssdk.core.SdkBytes;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * DynamoDB-based cache implementation.
+ * <p>
+ * When a {@link ShardingPolicy} assigns more than one shard to a key, the value
+ * is stored under {@code key#0..key#N-1} and reads pick one copy at random.
+ * <p>
+ * Tags are kept in index items {@code __tag#<tag>#<bucket>} holding a string
+ * set of keys. Only tagged puts and tag invalidations touch them, so tags
+ * add no round trip to the read path.
+ * <p>
+ * With {@link DynamoDbKeyLayout#TENANT_PARTITIONED}, entries are grouped by
+ * tenant and country so that {@link #invalidateTenant(String, String)} and
+ * {@link #getTenantUsage(String, String)} use {@code Query} instead of {@code Scan}.
+ * <p>
+ * With a {@link WriteBehindConfig}, puts only enqueue the value; a background
+ * flusher writes coalesced batches with {@code BatchWriteItem}. Reads on this
+ * node see buffered values. Call {@link #flush()} before shutting down.
+ * <p>
+ * With a read timeout, a read that exceeds its budget is abandoned and
+ * reported as a miss. With hedging, a read slower than a percentile of recent
+ * read latencies sends a second {@code GetItem} (to another replica when the
+ * key is sharded) and the first answer wins.
+ * <p>
+ * With a {@link CircuitBreakerConfig}, reads and puts are skipped while the
+ * remote tier is failing or slow, and puts are shed first when DynamoDB
+ * throttles. Invalidations always go through.
+ * <p>
+ * With a {@link CapacityLimiterConfig}, reads and puts are admitted against
+ * token buckets of this node's share of the provisioned capacity. The share
+ * can be coordinated across nodes through the control item {@code __capacity}.
+ * Write-behind flushes are {@link WritePriority#LOW} writes, and are dropped
+ * rather than written into the reserve kept for foreground puts.
+ * <p>
+ * {@link #getOrLoad(String, int, Supplier)} calls the loader once per key on
+ * this node. With a {@link FillLeaseConfig}, it also calls it once per key
+ * across the fleet: the node whose conditional {@code PutItem} creates the
+ * {@code key#lease} item loads the value, and the others poll for it with
+ * backoff. A lease whose holder died expires, and the next poller takes over.
+ * <p>
+ * With a {@link RequestBatchingConfig}, gets made within a short window are
+ * sent together as one {@code BatchGetItem} of up to 100 distinct keys, and
+ * puts as {@code BatchWriteItem} calls. Callers still block until their own
+ * result arrives. Hedging does not apply to batched reads.
+ * <p>
+ * With a {@link KeyFilterConfig}, a {@link CountingBloomFilter} of the keys
+ * in the table answers gets for keys that are certainly absent without a
+ * read. Puts add keys; invalidations leave them, since removing a key from a
+ * counting filter can hide live keys sharing its counters. Keys other nodes
+ * write are added as the configured invalidation bus announces them. A
+ * parallel scan fills the filter before it is first consulted, and periodic
+ * scans rebuild it without expired and removed keys.
+ * <p>
+ * With a {@link WriteAdmissionConfig}, a put is only written once its key has
+ * been seen often enough (see {@link WriteAdmission}), so keys requested once
+ * cost no write capacity. Values filled under a fill lease are always written,
+ * since other nodes are waiting for them.
+ * <p>
+ * With {@code skipUnchangedWrites}, items carry a {@code content_hash} of
+ * their value and the {@code written_at} time of their write. A put first
+ * tries an {@code UpdateItem} that only extends {@code expires}, conditioned
+ * on an unchanged hash; if the value changed it writes the full item. Both
+ * writes are conditioned on {@code written_at}, so an older put never
+ * overwrites a newer one. {@code written_at} is the writing node's wall
+ * clock, so with clock skew between nodes a put can be dropped as older
+ * than one that actually preceded it. DynamoDB bills the update by the size
+ * of the item and charges a failed condition as well, so this saves request
+ * bandwidth rather than write capacity.
+ * <p>
+ * {@link #getAll(Collection)} reads several keys with {@code BatchGetItem},
+ * 100 keys per call, whether or not single gets are batched.
  */
-public class DynamoDbCache implements Cache {
+public class DynamoDbCache implements TaggableCache {
     private static final Logger LOGGER = LoggerFactory.getLogger(DynamoDbCache.class);
-    
+    private static final String SHARD_SEPARATOR = "#";
+    private static final String TAG_PREFIX = "__tag#";
+    private static final String CAPACITY_KEY = "__capacity";
+    private static final String CAPACITY_NODE_PREFIX = "node_";
+    private static final String LEASE_SUFFIX = "#lease";
+
     private final DynamoDbClient dynamoDbClient;
     private final String tableName;
+    private final ShardingPolicy shardingPolicy;
+    private final String shardIndexName;
+    private final int tagBuckets;
+    private final int tagRetention;
+    private final DynamoDbKeyLayout keyLayout;
+    private final int partitionBuckets;
+    private final String tenantIndexName;
+    private final WriteBehindBuffer writeBehind;
+    private final long readTimeoutNanos;
+    private final double hedgePercentile;
+    private final long hedgeMinDelayNanos;
+    private final ExecutorService readExecutor;
+    private final RequestBatcher<String, Map<String, AttributeValue>> readBatcher;
+    private final RequestBatcher<WriteBehindBuffer.PendingWrite, Void> writeBatcher;
+    private final FillLeaseConfig fillLease;
+    private final WriteAdmission writeAdmission;
+    private final boolean skipUnchangedWrites;
+    private final AtomicLong conditionalWrites = new AtomicLong();
+    private final AtomicLong unchangedWrites = new AtomicLong();
+    private final AtomicLong staleWrites = new AtomicLong();
+    private final AtomicLong shedBufferedWrites = new AtomicLong();
+    private final KeyFilterConfig keyFilterConfig;
+    private volatile CountingBloomFilter keyFilter;
+    private volatile CountingBloomFilter rebuildingKeyFilter;
+    private final ReentrantLock keyFilterRebuildLock = new ReentrantLock();
+    private volatile boolean keyFilterReady;
+    private final ScheduledExecutorService keyFilterRebuilder;
+    private final ExecutorService keyFilterScanner;
+    private final AtomicLong filteredReads = new AtomicLong();
+    private final ConcurrentMap<String, CompletableFuture<byte[]>> fills = new ConcurrentHashMap<>();
+    private final AtomicLong leaseFills = new AtomicLong();
+    private final AtomicLong leaseWaits = new AtomicLong();
+    private final AtomicLong leaseTimeouts = new AtomicLong();
+    private final boolean ownsReadExecutor;
+    private final CircuitBreaker circuitBreaker;
+    private final CapacityLimiter capacityLimiter;
+    private final ScheduledExecutorService capacityCoordinator;
+    private final String nodeId;
+    private final long coordinationIntervalSeconds;
+    private final LatencyTracker readLatency = new LatencyTracker(1024);
+    private final AtomicLong readTimeouts = new AtomicLong();
+    private final AtomicLong hedgedReads = new AtomicLong();
 
     public DynamoDbCache(DynamoDbCacheConfig config) {
         this.dynamoDbClient = config.getDynamoDbClient();
         this.tableName = config.getTableName();
+        this.shardingPolicy = config.getShardingPolicy();
+        this.shardIndexName = config.getShardIndexName();
+        this.tagBuckets = config.getTagBuckets();
+        this.tagRetention = config.getTagRetention();
+        this.keyLayout = config.getKeyLayout();
+        this.partitionBuckets = config.getPartitionBuckets();
+        this.tenantIndexName = config.getTenantIndexName();
+        this.writeBehind = config.getWriteBehind() == null ? null
+            : new WriteBehindBuffer(config.getWriteBehind(), this::flushBuffered, config.getExecutionStrategy());
+        this.readTimeoutNanos = config.getReadTimeout() == null ? 0 : config.getReadTimeout().toNanos();
+        this.hedgePercentile = config.getHedgePercentile();
+        this.hedgeMinDelayNanos = config.getHedgeMinDelay().toNanos();
+        this.circuitBreaker = config.getCircuitBreaker() == null ? null : new CircuitBreaker(config.getCircuitBreaker());
+        this.fillLease = config.getFillLease();
+        this.writeAdmission = config.getWriteAdmission() == null ? null : new WriteAdmission(config.getWriteAdmission());
+        this.skipUnchangedWrites = config.isSkipUnchangedWrites();
+        this.keyFilterConfig = config.getKeyFilter();
+        if (keyFilterConfig != null) {
+            this.keyFilter = newKeyFilter();
+            if (keyFilterConfig.getInvalidationBus() != null) {
+                keyFilterConfig.getInvalidationBus().subscribe(new InvalidationListener() {
+                    @Override
+                    public void onInvalidate(Collection<String> keys) {
+                        // A changed key may now be in the table; a removed one only costs a read
+                        keys.forEach(DynamoDbCache.this::addToKeyFilter);
+                    }
+
+                    @Override
+                    public void onInvalidateAll() {
+                        // Removed keys are dropped by the next scan
+                    }
+                });
+            }
+        }
+        if (keyFilterConfig != null) {
+            this.keyFilterRebuilder = config.getExecutionStrategy().newScheduler("dcache-key-filter");
+            this.keyFilterScanner = config.getExecutionStrategy().newExecutor("dcache-key-filter-scan");
+        } else {
+            this.keyFilterRebuilder = null;
+            this.keyFilterScanner = null;
+        }
+        RequestBatchingConfig batching = config.getRequestBatching();
+        this.readBatcher = batching == null ? null
+            : new RequestBatcher<>("dcache-read-batch", batching, this::readBatch, config.getExecutionStrategy());
+        this.writeBatcher = batching == null || !batching.isBatchPuts() ? null
+            : new RequestBatcher<>("dcache-write-batch", batching, this::writeBatch, config.getExecutionStrategy());
+        CapacityLimiterConfig limiterConfig = config.getCapacityLimiter();
+        this.capacityLimiter = limiterConfig == null ? null : new CapacityLimiter(limiterConfig);
+        this.nodeId = limiterConfig == null ? null : limiterConfig.getNodeId();
+        if (limiterConfig != null && limiterConfig.getCoordinationInterval() != null) {
+            this.coordinationIntervalSeconds = Math.max(1, limiterConfig.getCoordinationInterval().getSeconds());
+            this.capacityCoordinator = config.getExecutionStrategy().newScheduler("dcache-capacity");
+        } else {
+            this.coordinationIntervalSeconds = 0;
+            this.capacityCoordinator = null;
+        }
+        this.ownsReadExecutor = config.getReadExecutor() == null;
+        if (readTimeoutNanos == 0 && hedgePercentile == 0) {
+            this.readExecutor = null;
+        } else if (!ownsReadExecutor) {
+            this.readExecutor = config.getReadExecutor();
+        } else {
+            this.readExecutor = config.getExecutionStrategy().newExecutor("dcache-read");
+        }
+        if (keyFilterRebuilder != null && keyFilterConfig.getRebuildInterval() != null) {
+            keyFilterRebuilder.scheduleWithFixedDelay(this::rebuildKeyFilter, 0,
+                keyFilterConfig.getRebuildInterval().toMillis(), TimeUnit.MILLISECONDS);
+        } else if (keyFilterRebuilder != null) {
+            // Even the only writer scans once, or items written before a restart would read as absent
+            keyFilterRebuilder.execute(this::rebuildKeyFilter);
+        }
+        if (capacityCoordinator != null) {
+            long intervalMillis = limiterConfig.getCoordinationInterval().toMillis();
+            // Jittered start, so a fleet restarting together does not update the control item at once
+            capacityCoordinator.scheduleWithFixedDelay(this::coordinateCapacity,
+                ThreadLocalRandom.current().nextLong(intervalMillis), intervalMillis, TimeUnit.MILLISECONDS);
+        }
     }
 
     @Override
     public void put(String key, byte[] value, int ttl) {
+        put(key, value, ttl, WritePriority.NORMAL);
+    }
+
+    @Override
+    public void put(String key, byte[] value, int ttl, WritePriority priority) {
+        if (admit(key, value)) {
+            write(key, value, ttl, priority);
+        }
+    }
+
+    /**
+     * Writes the item only if it is absent or expires before this TTL would,
+     * with one conditional {@code PutItem}. Buffered and batched writes are
+     * bypassed, since they cannot carry the condition.
+     */
+    @Override
+    public void putExtendingTtl(String key, byte[] value, int ttl) {
+        if (admit(key, value)) {
+            write(key, value, ttl, WritePriority.NORMAL, true);
+        }
+    }
+
+    private void write(String key, byte[] value, int ttl, WritePriority priority) {
+        write(key, value, ttl, priority, false);
+    }
+
+    private void write(String key, byte[] value, int ttl, WritePriority priority, boolean extendOnly) {
+        long expires = Instant.now().plusSeconds(ttl).getEpochSecond();
+        boolean knownAbsent = skipUnchangedWrites && keyFilterReady && !keyFilter.mightContain(key);
+        // Before the write, so a concurrent get never misses a key that is in the table
+        addToKeyFilter(key);
+        if (keyFilterConfig != null && keyFilterConfig.getInvalidationBus() != null) {
+            keyFilterConfig.getInvalidationBus().publish(key);
+        }
+        if (writeBehind != null && !extendOnly
+                && writeBehind.offer(key, value, expires) != WriteBehindBuffer.Offer.REJECTED) {
+            return;
+        }
+        if (capacityLimiter != null && !capacityLimiter.tryAcquireWrite(priority)) {
+            LOGGER.debug("Write capacity exhausted, skipped {} priority put for key: {}", priority, key);
+            return;
+        }
+        if (circuitBreaker != null && !circuitBreaker.tryAcquirePut()) {
+            LOGGER.debug("Remote cache unavailable, skipped put for key: {}", key);
+            return;
+        }
+        long start = System.nanoTime();
         try {
-            long expires = Instant.now().plusSeconds(ttl).getEpochSecond();
-            
-            Map<String, AttributeValue> item = new HashMap<>();
-            item.put("key", AttributeValue.builder().s(key).build());
-            item.put("value", AttributeValue.builder().b(SdkBytes.fromByteArray(value)).build());
-            item.put("expires", AttributeValue.builder().n(String.valueOf(expires)).build());
+            int shards = shardingPolicy.shardCount(key);
 
-            PutItemRequest request = PutItemRequest.builder()
-                .tableName(tableName)
-                .item(item)
-                .build();
+            if (extendOnly && shards == 1) {
+                extendingPut(key, value, expires);
+            } else if (writeBatcher != null) {
+                writeBatcher.submit(key, new WriteBehindBuffer.PendingWrite(key, value, expires)).join();
+            } else if (shards == 1 && skipUnchangedWrites) {
+                conditionalPut(key, value, expires, knownAbsent);
+            } else if (shards == 1) {
+                PutItemRequest.Builder request = PutItemRequest.builder()
+                    .tableName(tableName)
+                    .item(item(key, key, value, expires));
+                if (capacityLimiter != null) {
+                    request.returnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
+                }
 
-            dynamoDbClient.putItem(request);
-            LOGGER.debug("Cached value for key: {}, TTL: {} seconds", key, ttl);
+                PutItemResponse response = dynamoDbClient.putItem(request.build());
+                meterWrite(response == null ? null : response.consumedCapacity(), 1, value.length);
+            } else {
+                double consumed = DynamoDbBatchWriter.write(dynamoDbClient, tableName, putRequests(key, value, expires));
+                meterWrite(consumed, shards, value.length);
+            }
+            LOGGER.debug("Cached value for key: {}, TTL: {} seconds, shards: {}", key, ttl, shards);
+            if (circuitBreaker != null) {
+                circuitBreaker.onSuccess(System.nanoTime() - start);
+            }
         } catch (Exception e) {
+            if (circuitBreaker != null) {
+                circuitBreaker.onFailure(System.nanoTime() - start, isThrottling(e));
+            }
             LOGGER.error("Error putting value in cache for key: {}", key, e);
             throw new RuntimeException("Failed to put value in cache", e);
         }
@@ -51,22 +334,24 @@ public class DynamoDbCache implements Cache {
     @Override
     public Optional<byte[]> get(String key) {
         try {
-            Map<String, AttributeValue> keyMap = new HashMap<>();
-            keyMap.put("key", AttributeValue.builder().s(key).build());
-
-            GetItemRequest request = GetItemRequest.builder()
-                .tableName(tableName)
-                .key(keyMap)
-                .build();
-
-            GetItemResponse response = dynamoDbClient.getItem(request);
-            if (!response.hasItem()) {
+            if (writeBehind != null) {
+                WriteBehindBuffer.PendingWrite buffered = writeBehind.get(key);
+                if (buffered != null && Instant.now().getEpochSecond() <= buffered.expires) {
+                    return Optional.of(buffered.value);
+                }
+            }
+            if (keyFilterReady && !keyFilter.mightContain(key)) {
+                filteredReads.incrementAndGet();
+                return Optional.empty();
+            }
+            GetItemResponse response = guardedGetItem(key);
+            if (response == null || !response.hasItem()) {
                 return Optional.empty();
             }
 
             Map<String, AttributeValue> item = response.item();
             long expires = Long.parseLong(item.get("expires").n());
-            
+
             if (Instant.now().getEpochSecond() > expires) {
                 // Item has expired, remove it
                 invalidate(key);
@@ -81,18 +366,324 @@ public class DynamoDbCache implements Cache {
         }
     }
 
+    /**
+     * Reads several keys with {@code BatchGetItem}. Buffered writes and the
+     * key filter are consulted first, like for single gets; the remaining
+     * keys count as one read against the circuit breaker and the capacity
+     * limiter.
+     */
     @Override
-    public void invalidate(String key) {
+    public Map<String, byte[]> getAll(Collection<String> keys) {
+        Map<String, byte[]> values = new HashMap<>();
+        Map<String, String> toRead = new LinkedHashMap<>();
+        long now = Instant.now().getEpochSecond();
+        for (String key : keys) {
+            WriteBehindBuffer.PendingWrite buffered = writeBehind == null ? null : writeBehind.get(key);
+            if (buffered != null && now <= buffered.expires) {
+                values.put(key, buffered.value);
+            } else if (keyFilterReady && !keyFilter.mightContain(key)) {
+                filteredReads.incrementAndGet();
+            } else {
+                toRead.put(key, storageKey(key));
+            }
+        }
+        if (toRead.isEmpty()) {
+            return values;
+        }
+        if (capacityLimiter != null && !capacityLimiter.tryAcquireRead()) {
+            LOGGER.debug("Read capacity exhausted, treating {} keys as misses", toRead.size());
+            return values;
+        }
+        if (circuitBreaker != null && !circuitBreaker.tryAcquire()) {
+            return values;
+        }
+        long start = System.nanoTime();
         try {
-            Map<String, AttributeValue> keyMap = new HashMap<>();
-            keyMap.put("key", AttributeValue.builder().s(key).build());
+            Map<String, Map<String, AttributeValue>> items = readBatch(toRead);
+            if (circuitBreaker != null) {
+                circuitBreaker.onSuccess(System.nanoTime() - start);
+            }
+            items.forEach((key, item) -> {
+                // Expired items are left for DynamoDB's TTL to delete
+                if (Long.parseLong(item.get("expires").n()) >= now) {
+                    values.put(key, item.get("value").b().asByteArray());
+                }
+            });
+        } catch (RuntimeException e) {
+            if (circuitBreaker != null) {
+                circuitBreaker.onFailure(System.nanoTime() - start, isThrottling(e));
+            }
+            LOGGER.error("Error getting {} values from cache", toRead.size(), e);
+        }
+        return values;
+    }
 
-            DeleteItemRequest request = DeleteItemRequest.builder()
+    /**
+     * Checks several keys with a {@code BatchGetItem} that only projects the
+     * key and expiry, so no value is transferred. DynamoDB still charges
+     * each item's full size. Guarded like {@link #getAll(Collection)}; keys
+     * that could not be checked are left out.
+     */
+    @Override
+    public Set<String> presentKeys(Collection<String> keys) {
+        Set<String> present = new HashSet<>();
+        Map<String, String> toRead = new LinkedHashMap<>();
+        long now = Instant.now().getEpochSecond();
+        for (String key : keys) {
+            WriteBehindBuffer.PendingWrite buffered = writeBehind == null ? null : writeBehind.get(key);
+            if (buffered != null && now <= buffered.expires) {
+                present.add(key);
+            } else if (keyFilterReady && !keyFilter.mightContain(key)) {
+                filteredReads.incrementAndGet();
+            } else {
+                toRead.put(key, storageKey(key));
+            }
+        }
+        if (toRead.isEmpty()) {
+            return present;
+        }
+        if (capacityLimiter != null && !capacityLimiter.tryAcquireRead()) {
+            LOGGER.debug("Read capacity exhausted, treating {} keys as misses", toRead.size());
+            return present;
+        }
+        if (circuitBreaker != null && !circuitBreaker.tryAcquire()) {
+            return present;
+        }
+        long start = System.nanoTime();
+        try {
+            Map<String, Map<String, AttributeValue>> items = readBatch(toRead, true);
+            if (circuitBreaker != null) {
+                circuitBreaker.onSuccess(System.nanoTime() - start);
+            }
+            items.forEach((key, item) -> {
+                if (Long.parseLong(item.get("expires").n()) >= now) {
+                    present.add(key);
+                }
+            });
+        } catch (RuntimeException e) {
+            if (circuitBreaker != null) {
+                circuitBreaker.onFailure(System.nanoTime() - start, isThrottling(e));
+            }
+            LOGGER.error("Error checking {} keys in cache", toRead.size(), e);
+        }
+        return present;
+    }
+
+    @Override
+    public byte[] getOrLoad(String key, int ttl, Supplier<byte[]> loader) {
+        Optional<byte[]> cached = get(key);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+
+        CompletableFuture<byte[]> fill = new CompletableFuture<>();
+        CompletableFuture<byte[]> inFlight = fills.putIfAbsent(key, fill);
+        if (inFlight != null) {
+            try {
+                return inFlight.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        try {
+            // Leases are remote calls too: while the remote tier is failing, load without one
+            boolean lease = fillLease != null && (circuitBreaker == null || !circuitBreaker.isOpen());
+            byte[] value = lease ? leasedLoad(key, ttl, loader) : load(key, ttl, loader, false);
+            fill.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            fill.completeExceptionally(e);
+            throw e;
+        } finally {
+            fills.remove(key, fill);
+        }
+    }
+
+    /**
+     * Returns the number of values this node loaded while holding a fill lease.
+     *
+     * @return The number of leased loads
+     */
+    public long getLeaseFills() {
+        return leaseFills.get();
+    }
+
+    /**
+     * Returns the number of misses served by waiting for another node's fill.
+     *
+     * @return The number of waits that found the value
+     */
+    public long getLeaseWaits() {
+        return leaseWaits.get();
+    }
+
+    /**
+     * Returns the number of waits for another node's fill that timed out, after
+     * which this node called the loader itself.
+     *
+     * @return The number of timed out waits
+     */
+    public long getLeaseTimeouts() {
+        return leaseTimeouts.get();
+    }
+
+    /**
+     * @param leased Whether this node holds the fill lease, so the value is written without admission
+     */
+    private byte[] load(String key, int ttl, Supplier<byte[]> loader, boolean leased) {
+        byte[] value = loader.get();
+        if (value != null && (leased || admit(key, value))) {
+            write(key, value, ttl, WritePriority.NORMAL);
+        }
+        return value;
+    }
+
+    private byte[] leasedLoad(String key, int ttl, Supplier<byte[]> loader) {
+        long deadline = System.nanoTime() + fillLease.getWaitTimeout().toNanos();
+        long delayNanos = fillLease.getPollInitialDelay().toNanos();
+        while (true) {
+            if (capacityLimiter != null && !capacityLimiter.tryAcquireWrite(WritePriority.NORMAL)) {
+                LOGGER.debug("Write capacity exhausted, loading key {} without a fill lease", key);
+                return load(key, ttl, loader, false);
+            }
+            long holderLeaseUntil;
+            try {
+                holderLeaseUntil = acquireLease(key);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Failed to acquire fill lease for key: {}, loading without it", key, e);
+                return load(key, ttl, loader, false);
+            }
+            if (holderLeaseUntil == 0) {
+                leaseFills.incrementAndGet();
+                try {
+                    return load(key, ttl, loader, true);
+                } finally {
+                    // With write-behind the value is not visible yet: let the lease run out instead
+                    if (writeBehind == null) {
+                        releaseLease(key);
+                    }
+                }
+            }
+
+            // Another node is filling: poll until its lease runs out, then try to take over
+            while (System.currentTimeMillis() < holderLeaseUntil) {
+                if (System.nanoTime() + delayNanos > deadline) {
+                    leaseTimeouts.incrementAndGet();
+                    LOGGER.debug("Timed out waiting for fill of key: {}", key);
+                    return load(key, ttl, loader, false);
+                }
+                try {
+                    TimeUnit.NANOSECONDS.sleep(delayNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for fill of key: " + key, e);
+                }
+                delayNanos = Math.min(delayNanos * 2, fillLease.getPollMaxDelay().toNanos());
+                Optional<byte[]> filled = get(key);
+                if (filled.isPresent()) {
+                    leaseWaits.incrementAndGet();
+                    return filled.get();
+                }
+            }
+            // Released or expired: read at least once before taking over, the value is most likely there
+            Optional<byte[]> filled = get(key);
+            if (filled.isPresent()) {
+                leaseWaits.incrementAndGet();
+                return filled.get();
+            }
+        }
+    }
+
+    /**
+     * Creates the lease item of a key unless another node holds an unexpired lease.
+     *
+     * @return 0 if this node now holds the lease, otherwise the epoch millis
+     *         at which the other node's lease ends
+     */
+    private long acquireLease(String key) {
+        long now = System.currentTimeMillis();
+        long leaseUntil = now + fillLease.getLeaseDuration().toMillis();
+        Map<String, AttributeValue> item = new HashMap<>(keyMap(key + LEASE_SUFFIX));
+        item.put("holder", AttributeValue.builder().s(fillLease.getNodeId()).build());
+        item.put("lease_until", AttributeValue.builder().n(String.valueOf(leaseUntil)).build());
+        // Lets DynamoDB TTL remove leases of nodes that died
+        item.put("expires", AttributeValue.builder().n(String.valueOf(leaseUntil / 1000 + 1)).build());
+        try {
+            PutItemRequest.Builder request = PutItemRequest.builder()
                 .tableName(tableName)
-                .key(keyMap)
-                .build();
+                .item(item)
+                .conditionExpression("attribute_not_exists(lease_until) OR lease_until < :now")
+                .expressionAttributeValues(Map.of(":now", AttributeValue.builder().n(String.valueOf(now)).build()));
+            if (capacityLimiter != null) {
+                request.returnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
+            }
+            PutItemResponse response = dynamoDbClient.putItem(request.build());
+            meterWrite(response == null ? null : response.consumedCapacity(), 1, 0);
+            return 0;
+        } catch (ConditionalCheckFailedException e) {
+            // A failed condition still consumes a write unit
+            meterWrite(0, 1, 0);
+            if (capacityLimiter != null) {
+                capacityLimiter.consumeRead(1);
+            }
+            GetItemResponse lease = dynamoDbClient.getItem(GetItemRequest.builder()
+                .tableName(tableName)
+                .key(keyMap(key + LEASE_SUFFIX))
+                .consistentRead(true)
+                .build());
+            // Released in the meantime: the caller reads the value before taking over
+            return lease.hasItem() ? Long.parseLong(lease.item().get("lease_until").n()) : now;
+        }
+    }
+
+    private void releaseLease(String key) {
+        try {
+            meterWrite(0, 1, 0);
+            dynamoDbClient.deleteItem(DeleteItemRequest.builder()
+                .tableName(tableName)
+                .key(keyMap(key + LEASE_SUFFIX))
+                .conditionExpression("holder = :holder")
+                .expressionAttributeValues(Map.of(":holder", AttributeValue.builder().s(fillLease.getNodeId()).build()))
+                .build());
+        } catch (ConditionalCheckFailedException e) {
+            LOGGER.debug("Fill lease of key {} expired and was taken over", key);
+        } catch (Exception e) {
+            // Expires on its own
+            LOGGER.warn("Failed to release fill lease of key: {}", key, e);
+        }
+    }
 
-            dynamoDbClient.deleteItem(request);
+    @Override
+    public void invalidate(String key) {
+        try {
+            if (writeBehind != null) {
+                writeBehind.remove(key);
+            }
+            int shards = shardingPolicy.shardCount(key);
+
+            if (shards == 1 && shardIndexName == null) {
+                DeleteItemRequest.Builder request = DeleteItemRequest.builder()
+                    .tableName(tableName)
+                    .key(keyMap(key));
+                if (capacityLimiter != null) {
+                    request.returnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
+                }
+
+                DeleteItemResponse response = dynamoDbClient.deleteItem(request.build());
+                meterWrite(response == null ? null : response.consumedCapacity(), 1, 0);
+            } else {
+                Set<String> storageKeys = new LinkedHashSet<>(shardStorageKeys(key, shards));
+                if (shardIndexName != null) {
+                    storageKeys.addAll(indexedStorageKeys(key));
+                }
+                List<WriteRequest> deletes = new ArrayList<>();
+                for (String storageKey : storageKeys) {
+                    deletes.add(WriteRequest.builder()
+                        .deleteRequest(DeleteRequest.builder().key(keyMap(storageKey)).build())
+                        .build());
+                }
+                meterWrite(DynamoDbBatchWriter.write(dynamoDbClient, tableName, deletes), deletes.size(), 0);
+            }
             LOGGER.debug("Invalidated cache for key: {}", key);
         } catch (Exception e) {
             LOGGER.error("Error invalidating cache for key: {}", key, e);
@@ -103,6 +694,12 @@ public class DynamoDbCache implements Cache {
     @Override
     public void invalidateAll() {
         try {
+            if (writeBehind != null) {
+                writeBehind.clear();
+            }
+            if (keyFilter != null) {
+                keyFilter.clear();
+            }
             // Note: This is a simple implementation that scans and deletes all items
             // In production, you might want to use a more efficient approach
             ScanRequest scanRequest = ScanRequest.builder()
@@ -111,8 +708,11 @@ public class DynamoDbCache implements Cache {
 
             ScanResponse response = dynamoDbClient.scan(scanRequest);
             for (Map<String, AttributeValue> item : response.items()) {
-                String key = item.get("key").s();
-                invalidate(key);
+                String key = keyLayout.storageKey(item);
+                dynamoDbClient.deleteItem(DeleteItemRequest.builder()
+                    .tableName(tableName)
+                    .key(keyMap(key))
+                    .build());
             }
             LOGGER.debug("Invalidated all cache entries");
         } catch (Exception e) {
@@ -120,4 +720,1087 @@ public class DynamoDbCache implements Cache {
             throw new RuntimeException("Failed to invalidate all cache entries", e);
         }
     }
-} 
\ No newline at end of file
+
+    @Override
+    public void put(String key, byte[] value, int ttl, Collection<String> tags) {
+        if (circuitBreaker != null && (circuitBreaker.isOpen() || circuitBreaker.isSheddingPuts())) {
+            LOGGER.debug("Remote cache unavailable, skipped tagged put for key: {}", key);
+            return;
+        }
+        if (!admit(key, value)) {
+            return;
+        }
+        try {
+            // Index first: if the value write fails, the index only holds an orphan key
+            long tagExpires = Instant.now().plusSeconds(Math.max(ttl, tagRetention)).getEpochSecond();
+            for (String tag : tags) {
+                Map<String, String> names = new HashMap<>();
+                names.put("#keys", "keys");
+                names.put("#expires", "expires");
+                Map<String, AttributeValue> values = new HashMap<>();
+                values.put(":keys", AttributeValue.builder().ss(key).build());
+                values.put(":expires", AttributeValue.builder().n(String.valueOf(tagExpires)).build());
+
+                dynamoDbClient.updateItem(UpdateItemRequest.builder()
+                    .tableName(tableName)
+                    .key(keyMap(tagKey(tag, tagBucket(key))))
+                    .updateExpression("ADD #keys :keys SET #expires = :expires")
+                    .expressionAttributeNames(names)
+                    .expressionAttributeValues(values)
+                    .build());
+            }
+        } catch (Exception e) {
+            LOGGER.error("Error indexing tags {} for key: {}", tags, key, e);
+            throw new RuntimeException("Failed to index cache tags", e);
+        }
+        write(key, value, ttl, WritePriority.NORMAL);
+    }
+
+    @Override
+    public Set<String> invalidateTag(String tag) {
+        try {
+            Map<String, Set<String>> keysByBucket = readTag(tag);
+            Set<String> keys = new LinkedHashSet<>();
+            keysByBucket.values().forEach(keys::addAll);
+
+            List<WriteRequest> deletes = new ArrayList<>();
+            for (String key : keys) {
+                if (writeBehind != null) {
+                    writeBehind.remove(key);
+                }
+                for (String storageKey : shardStorageKeys(key, shardingPolicy.shardCount(key))) {
+                    deletes.add(WriteRequest.builder()
+                        .deleteRequest(DeleteRequest.builder().key(keyMap(storageKey)).build())
+                        .build());
+                }
+            }
+            DynamoDbBatchWriter.write(dynamoDbClient, tableName, deletes);
+
+            // Remove only the keys we purged, so keys tagged concurrently stay indexed
+            for (Map.Entry<String, Set<String>> bucket : keysByBucket.entrySet()) {
+                Map<String, AttributeValue> values = new HashMap<>();
+                values.put(":keys", AttributeValue.builder().ss(bucket.getValue()).build());
+                dynamoDbClient.updateItem(UpdateItemRequest.builder()
+                    .tableName(tableName)
+                    .key(keyMap(bucket.getKey()))
+                    .updateExpression("DELETE #keys :keys")
+                    .expressionAttributeNames(Collections.singletonMap("#keys", "keys"))
+                    .expressionAttributeValues(values)
+                    .build());
+            }
+            LOGGER.debug("Invalidated {} cache entries for tag: {}", keys.size(), tag);
+            return keys;
+        } catch (Exception e) {
+            LOGGER.error("Error invalidating cache for tag: {}", tag, e);
+            throw new RuntimeException("Failed to invalidate cache tag", e);
+        }
+    }
+
+    /**
+     * Writes all buffered puts now. Does nothing unless write-behind is enabled.
+     *
+     * @throws RuntimeException If some buffered entries could not be written
+     */
+    public void flush() {
+        if (writeBehind != null) {
+            writeBehind.flush();
+        }
+    }
+
+    /**
+     * Sends pending batches, stops the write-behind flusher, writes all
+     * buffered puts and stops the internal read executor.
+     */
+    public void close() {
+        if (readBatcher != null) {
+            readBatcher.close();
+        }
+        if (writeBatcher != null) {
+            writeBatcher.close();
+        }
+        if (writeBehind != null) {
+            writeBehind.close();
+        }
+        if (readExecutor != null && ownsReadExecutor) {
+            readExecutor.shutdownNow();
+        }
+        if (capacityCoordinator != null) {
+            capacityCoordinator.shutdownNow();
+        }
+        if (keyFilterRebuilder != null) {
+            keyFilterRebuilder.shutdownNow();
+            keyFilterScanner.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the number of puts that found the same value in the table and
+     * only extended its expiry.
+     *
+     * @return The number of unchanged writes, 0 without {@code skipUnchangedWrites}
+     */
+    public long getUnchangedWrites() {
+        return unchangedWrites.get();
+    }
+
+    /**
+     * Returns the share of conditional puts that found the same value in the table.
+     *
+     * @return The unchanged rate in [0, 1], 0 before the first conditional put
+     */
+    public double getUnchangedWriteRate() {
+        long total = conditionalWrites.get();
+        return total == 0 ? 0 : (double) unchangedWrites.get() / total;
+    }
+
+    /**
+     * Returns the number of puts skipped because a newer write of the key was already in the table.
+     *
+     * @return The number of stale writes, 0 without {@code skipUnchangedWrites}
+     */
+    public long getStaleWrites() {
+        return staleWrites.get();
+    }
+
+    /**
+     * Returns the policy deciding which puts are written.
+     *
+     * @return The write admission, with its admitted and rejected counts, or null if none is configured
+     */
+    public WriteAdmission getWriteAdmission() {
+        return writeAdmission;
+    }
+
+    /**
+     * Returns the filter of keys in the table, for its size and false-positive rate.
+     *
+     * @return The key filter, or null if none is configured
+     */
+    public CountingBloomFilter getKeyFilter() {
+        return keyFilter;
+    }
+
+    /**
+     * Returns whether the key filter has been filled by a scan and is consulted.
+     */
+    boolean isKeyFilterReady() {
+        return keyFilterReady;
+    }
+
+    /**
+     * Returns the number of gets answered as misses by the key filter, without a read.
+     *
+     * @return The number of filtered gets, 0 without a key filter
+     */
+    public long getFilteredReads() {
+        return filteredReads.get();
+    }
+
+    /**
+     * Rebuilds the key filter from a parallel scan of the table's keys and
+     * replaces the current filter with it. Keys put or invalidated during the
+     * scan are applied to both filters. Rebuilds run one at a time, as keys
+     * are only applied to the latest one.
+     */
+    void rebuildKeyFilter() {
+        keyFilterRebuildLock.lock();
+        try {
+            rebuildKeyFilterLocked();
+        } finally {
+            keyFilterRebuildLock.unlock();
+        }
+    }
+
+    private void rebuildKeyFilterLocked() {
+        CountingBloomFilter rebuilt = newKeyFilter();
+        rebuildingKeyFilter = rebuilt;
+        try {
+            int segments = keyFilterConfig.getScanSegments();
+            List<CompletableFuture<Void>> scans = new ArrayList<>(segments);
+            for (int segment = 0; segment < segments; segment++) {
+                int current = segment;
+                scans.add(CompletableFuture.runAsync(() -> scanKeys(current, segments, rebuilt), keyFilterScanner));
+            }
+            CompletableFuture.allOf(scans.toArray(new CompletableFuture[0])).join();
+            keyFilter = rebuilt;
+            keyFilterReady = true;
+            LOGGER.debug("Rebuilt key filter with {} keys, estimated false-positive rate {}",
+                rebuilt.getApproximateSize(), rebuilt.getFalsePositiveRate());
+        } catch (Exception e) {
+            LOGGER.warn("Failed to rebuild key filter, keeping the current one", e);
+        } finally {
+            rebuildingKeyFilter = null;
+        }
+    }
+
+    private void scanKeys(int segment, int segments, CountingBloomFilter filter) {
+        long now = Instant.now().getEpochSecond();
+        ScanRequest request = ScanRequest.builder()
+            .tableName(tableName)
+            .segment(segment)
+            .totalSegments(segments)
+            .projectionExpression("#key, base_key, #expires")
+            .expressionAttributeNames(Map.of("#key", keyLayout.storageKeyAttribute(), "#expires", "expires"))
+            .build();
+        for (ScanResponse page : dynamoDbClient.scanPaginator(request)) {
+            for (Map<String, AttributeValue> item : page.items()) {
+                String storageKey = keyLayout.storageKey(item);
+                AttributeValue expires = item.get("expires");
+                if (isInternalKey(storageKey) || expires != null && Long.parseLong(expires.n()) < now) {
+                    continue;
+                }
+                AttributeValue baseKey = item.get("base_key");
+                filter.add(baseKey != null ? baseKey.s() : storageKey);
+            }
+        }
+    }
+
+    /**
+     * Tells tag index items, the capacity control item and fill leases from cache entries.
+     */
+    private static boolean isInternalKey(String storageKey) {
+        return storageKey.startsWith(TAG_PREFIX) || storageKey.equals(CAPACITY_KEY)
+            || storageKey.endsWith(LEASE_SUFFIX);
+    }
+
+    private boolean admit(String key, byte[] value) {
+        // Chunks are admitted with the entry naming them, by the caching HTTP client
+        if (writeAdmission == null || ChunkedBodyWriter.isChunkKey(key) || writeAdmission.admit(key, value.length)) {
+            return true;
+        }
+        LOGGER.debug("Key {} not seen often enough yet, skipped put", key);
+        return false;
+    }
+
+    private CountingBloomFilter newKeyFilter() {
+        return new CountingBloomFilter(keyFilterConfig.getExpectedKeys(), keyFilterConfig.getFalsePositiveRate());
+    }
+
+    /**
+     * Adds a key unless the filter already reports it, so overwrites of hot
+     * keys do not saturate their counters. Keys are never removed: a key
+     * that is invalidated, or not written after all, stays a positive until
+     * the next rebuild, which only costs a read. Removing could instead take
+     * a counter shared with a live key to zero and hide it.
+     */
+    private void addToKeyFilter(String key) {
+        if (keyFilter == null) {
+            return;
+        }
+        addIfAbsent(keyFilter, key);
+        CountingBloomFilter rebuilding = rebuildingKeyFilter;
+        if (rebuilding != null) {
+            addIfAbsent(rebuilding, key);
+        }
+    }
+
+    private static void addIfAbsent(CountingBloomFilter filter, String key) {
+        if (!filter.mightContain(key)) {
+            filter.add(key);
+        }
+    }
+
+    /**
+     * Returns the limiter keeping this node within its share of the table's capacity.
+     *
+     * @return The capacity limiter, or null if none is configured
+     */
+    public CapacityLimiter getCapacityLimiter() {
+        return capacityLimiter;
+    }
+
+    /**
+     * Registers this node in the capacity control item and sets the limiter's
+     * share to one over the number of nodes seen within three intervals.
+     */
+    void coordinateCapacity() {
+        try {
+            long now = Instant.now().getEpochSecond();
+            // A node missing three updates is dropped, and the item outlives the last node by as much
+            long staleAfter = 3 * coordinationIntervalSeconds;
+            long cutoff = now - staleAfter;
+            Map<String, String> names = new HashMap<>();
+            names.put("#node", CAPACITY_NODE_PREFIX + nodeId);
+            names.put("#expires", "expires");
+            Map<String, AttributeValue> values = new HashMap<>();
+            values.put(":now", AttributeValue.builder().n(String.valueOf(now)).build());
+            values.put(":expires", AttributeValue.builder().n(String.valueOf(now + staleAfter)).build());
+            dynamoDbClient.updateItem(UpdateItemRequest.builder()
+                .tableName(tableName)
+                .key(keyMap(CAPACITY_KEY))
+                .updateExpression("SET #node = :now, #expires = :expires")
+                .expressionAttributeNames(names)
+                .expressionAttributeValues(values)
+                .build());
+
+            GetItemResponse response = dynamoDbClient.getItem(GetItemRequest.builder()
+                .tableName(tableName)
+                .key(keyMap(CAPACITY_KEY))
+                .consistentRead(true)
+                .build());
+            int activeNodes = 0;
+            List<String> staleNodes = new ArrayList<>();
+            for (Map.Entry<String, AttributeValue> attribute : response.item().entrySet()) {
+                if (attribute.getKey().startsWith(CAPACITY_NODE_PREFIX)) {
+                    if (Long.parseLong(attribute.getValue().n()) >= cutoff) {
+                        activeNodes++;
+                    } else {
+                        staleNodes.add(attribute.getKey());
+                    }
+                }
+            }
+            if (!staleNodes.isEmpty()) {
+                Map<String, String> staleNames = new HashMap<>();
+                for (int i = 0; i < staleNodes.size(); i++) {
+                    staleNames.put("#n" + i, staleNodes.get(i));
+                }
+                dynamoDbClient.updateItem(UpdateItemRequest.builder()
+                    .tableName(tableName)
+                    .key(keyMap(CAPACITY_KEY))
+                    .updateExpression("REMOVE " + String.join(", ", staleNames.keySet()))
+                    .expressionAttributeNames(staleNames)
+                    .build());
+            }
+            capacityLimiter.setShare(1.0 / Math.max(1, activeNodes));
+            LOGGER.debug("Capacity share set to 1/{}", Math.max(1, activeNodes));
+        } catch (Exception e) {
+            LOGGER.warn("Failed to coordinate capacity share, keeping {}", capacityLimiter.getShare(), e);
+        }
+    }
+
+    /**
+     * Returns the number of puts waiting in the write-behind buffer.
+     *
+     * @return The number of buffered keys, 0 without write-behind
+     */
+    public int getPendingWrites() {
+        return writeBehind == null ? 0 : writeBehind.getPendingCount();
+    }
+
+    /**
+     * Returns the number of puts discarded because the write-behind buffer
+     * was full, their batch could not be written, or it was shed for lack
+     * of write capacity.
+     *
+     * @return The number of lost writes, 0 without write-behind
+     */
+    public long getDroppedWrites() {
+        return writeBehind == null ? 0
+            : writeBehind.getDroppedCount() + writeBehind.getFailedCount() + shedBufferedWrites.get();
+    }
+
+    /**
+     * Returns the number of buffered puts replaced by a later put of the same
+     * key before being written.
+     *
+     * @return The number of coalesced writes, 0 without write-behind
+     */
+    public long getCoalescedWrites() {
+        return writeBehind == null ? 0 : writeBehind.getCoalescedCount();
+    }
+
+    /**
+     * Returns a percentile of recent {@code GetItem} latencies.
+     *
+     * @param percentile The percentile, in (0, 1]
+     * @return The latency in microseconds, or 0 before the first read
+     */
+    public long getReadLatencyMicros(double percentile) {
+        return readLatency.percentileMicros(percentile);
+    }
+
+    /**
+     * Returns the number of reads abandoned because they exceeded the read timeout.
+     *
+     * @return The number of timed-out reads
+     */
+    public long getReadTimeouts() {
+        return readTimeouts.get();
+    }
+
+    /**
+     * Returns the number of reads that sent a second, hedged {@code GetItem}.
+     *
+     * @return The number of hedged reads
+     */
+    public long getHedgedReads() {
+        return hedgedReads.get();
+    }
+
+    /**
+     * Returns the number of {@code BatchGetItem} batches sent for single-key gets.
+     *
+     * @return The number of read batches, 0 without request batching
+     */
+    public long getReadBatches() {
+        return readBatcher == null ? 0 : readBatcher.getBatchCount();
+    }
+
+    /**
+     * Returns the number of gets sent as part of a batch.
+     *
+     * @return The number of batched gets, 0 without request batching
+     */
+    public long getBatchedReads() {
+        return readBatcher == null ? 0 : readBatcher.getRequestCount();
+    }
+
+    /**
+     * Returns the number of batched gets that shared the read of the same key
+     * in their batch.
+     *
+     * @return The number of de-duplicated gets, 0 without request batching
+     */
+    public long getDeduplicatedReads() {
+        return readBatcher == null ? 0 : readBatcher.getDeduplicatedCount();
+    }
+
+    /**
+     * Returns the number of batches sent for puts.
+     *
+     * @return The number of write batches, 0 unless puts are batched
+     */
+    public long getWriteBatches() {
+        return writeBatcher == null ? 0 : writeBatcher.getBatchCount();
+    }
+
+    /**
+     * Returns the number of puts sent as part of a batch.
+     *
+     * @return The number of batched puts, 0 unless puts are batched
+     */
+    public long getBatchedWrites() {
+        return writeBatcher == null ? 0 : writeBatcher.getRequestCount();
+    }
+
+    private String storageKey(String key) {
+        int shards = shardingPolicy.shardCount(key);
+        return shards == 1 ? key : shardKey(key, ThreadLocalRandom.current().nextInt(shards));
+    }
+
+    /**
+     * Reads a key through the circuit breaker, when one is configured.
+     *
+     * @return The response, or null if the read was refused or timed out
+     */
+    private GetItemResponse guardedGetItem(String key) throws Exception {
+        if (capacityLimiter != null && !capacityLimiter.tryAcquireRead()) {
+            LOGGER.debug("Read capacity exhausted, treating key {} as a miss", key);
+            return null;
+        }
+        if (circuitBreaker == null) {
+            return readItem(key);
+        }
+        if (!circuitBreaker.tryAcquire()) {
+            return null;
+        }
+        long start = System.nanoTime();
+        try {
+            GetItemResponse response = readItem(key);
+            if (response == null) {
+                circuitBreaker.onFailure(System.nanoTime() - start, false);
+            } else {
+                circuitBreaker.onSuccess(System.nanoTime() - start);
+            }
+            return response;
+        } catch (Exception e) {
+            circuitBreaker.onFailure(System.nanoTime() - start, isThrottling(e));
+            throw e;
+        }
+    }
+
+    private GetItemResponse readItem(String key) throws Exception {
+        if (readBatcher != null) {
+            return batchedGetItem(key);
+        }
+        return readExecutor == null ? getItem(storageKey(key)) : boundedGetItem(key);
+    }
+
+    /**
+     * Reads a key as part of the current read batch, within the read timeout.
+     *
+     * @return The response, or null if no answer arrived in time
+     */
+    private GetItemResponse batchedGetItem(String key) throws Exception {
+        CompletableFuture<Map<String, AttributeValue>> item = readBatcher.submit(key, storageKey(key));
+        try {
+            Map<String, AttributeValue> found = readTimeoutNanos == 0
+                ? item.get()
+                : item.get(readTimeoutNanos, TimeUnit.NANOSECONDS);
+            return found == null ? GetItemResponse.builder().build() : GetItemResponse.builder().item(found).build();
+        } catch (TimeoutException e) {
+            readTimeouts.incrementAndGet();
+            LOGGER.debug("Batched read of key {} exceeded its budget, treating as a miss", key);
+            return null;
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    /**
+     * Reads one batch of keys with {@code BatchGetItem}.
+     *
+     * @param batch The storage key to read for each cache key
+     * @return The item found for each cache key
+     */
+    private Map<String, Map<String, AttributeValue>> readBatch(Map<String, String> batch) {
+        return readBatch(batch, false);
+    }
+
+    /**
+     * @param keysOnly Whether to read only the key and expiry of each item
+     */
+    private Map<String, Map<String, AttributeValue>> readBatch(Map<String, String> batch, boolean keysOnly) {
+        Map<String, List<String>> keysByStorageKey = new LinkedHashMap<>();
+        batch.forEach((key, storageKey) ->
+            keysByStorageKey.computeIfAbsent(storageKey, k -> new ArrayList<>(1)).add(key));
+        List<Map<String, AttributeValue>> primaryKeys = new ArrayList<>(keysByStorageKey.size());
+        for (String storageKey : keysByStorageKey.keySet()) {
+            primaryKeys.add(keyMap(storageKey));
+        }
+
+        Map<String, Map<String, AttributeValue>> items = new HashMap<>();
+        String projection = keysOnly ? "#key, #expires" : null;
+        Map<String, String> names = keysOnly
+            ? Map.of("#key", keyLayout.storageKeyAttribute(), "#expires", "expires") : null;
+        long start = System.nanoTime();
+        double consumed = DynamoDbBatchReader.read(dynamoDbClient, tableName, primaryKeys, projection, names, item -> {
+            for (String key : keysByStorageKey.getOrDefault(keyLayout.storageKey(item), List.of())) {
+                items.put(key, item);
+            }
+        });
+        readLatency.record(System.nanoTime() - start);
+        if (capacityLimiter != null) {
+            // Eventually consistent reads of up to 4 KB when DynamoDB does not report it
+            capacityLimiter.consumeRead(consumed > 0 ? consumed : 0.5 * primaryKeys.size());
+        }
+        return items;
+    }
+
+    private Map<String, Void> writeBatch(Map<String, WriteBehindBuffer.PendingWrite> batch) {
+        writeBuffered(new ArrayList<>(batch.values()));
+        return Collections.emptyMap();
+    }
+
+    private static boolean isThrottling(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ProvisionedThroughputExceededException
+                    || cause instanceof RequestLimitExceededException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the circuit breaker guarding the remote tier.
+     *
+     * @return The circuit breaker, or null if none is configured
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    private GetItemResponse getItem(String storageKey) {
+        return getItem(storageKey, 0);
+    }
+
+    /**
+     * Reads an item, aborting the call after {@code timeoutNanos} when it
+     * is positive.
+     */
+    private GetItemResponse getItem(String storageKey, long timeoutNanos) {
+        long start = System.nanoTime();
+        GetItemRequest.Builder request = GetItemRequest.builder()
+            .tableName(tableName)
+            .key(keyMap(storageKey));
+        if (capacityLimiter != null) {
+            request.returnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
+        }
+        if (timeoutNanos > 0) {
+            request.overrideConfiguration(o -> o.apiCallTimeout(Duration.ofNanos(timeoutNanos)));
+        }
+        GetItemResponse response = dynamoDbClient.getItem(request.build());
+        readLatency.record(System.nanoTime() - start);
+        if (capacityLimiter != null && response != null) {
+            ConsumedCapacity consumed = response.consumedCapacity();
+            // Eventually consistent read of up to 4 KB when DynamoDB does not report it
+            capacityLimiter.consumeRead(consumed != null && consumed.capacityUnits() != null
+                ? consumed.capacityUnits() : 0.5);
+        }
+        return response;
+    }
+
+    /**
+     * Reads a key within the read timeout, hedging when enabled. Each read
+     * runs as a task of the read executor, interrupted once it is no longer
+     * needed, and also carries the remaining budget as its API call timeout,
+     * so the SDK aborts the HTTP request rather than leave it holding a
+     * thread.
+     *
+     * @return The response, or null if no answer arrived in time or the
+     *         read executor is saturated
+     */
+    private GetItemResponse boundedGetItem(String key) throws Exception {
+        long deadline = readTimeoutNanos == 0 ? Long.MAX_VALUE : System.nanoTime() + readTimeoutNanos;
+        CompletableFuture<GetItemResponse> first = new CompletableFuture<>();
+        Future<?> primary = null;
+        Future<?> hedge = null;
+        try {
+            primary = submitRead(key, deadline, first);
+            if (hedgePercentile > 0) {
+                long hedgeDelay = Math.max(hedgeMinDelayNanos, readLatency.percentile(hedgePercentile));
+                long wait = Math.min(hedgeDelay, deadline - System.nanoTime());
+                try {
+                    return first.get(wait, TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    if (deadline - System.nanoTime() <= 0) {
+                        throw e;
+                    }
+                    hedgedReads.incrementAndGet();
+                    try {
+                        hedge = submitRead(key, deadline, first);
+                    } catch (RejectedExecutionException rejected) {
+                        LOGGER.debug("Hedged read of key {} rejected, waiting for the first read", key);
+                    }
+                }
+            }
+            long remaining = deadline - System.nanoTime();
+            return deadline == Long.MAX_VALUE
+                ? first.get()
+                : first.get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            readTimeouts.incrementAndGet();
+            LOGGER.debug("Read of key {} exceeded its budget, treating as a miss", key);
+            return null;
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Read executor saturated, treating key {} as a miss", key);
+            return null;
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } finally {
+            if (primary != null) {
+                primary.cancel(true);
+            }
+            if (hedge != null) {
+                hedge.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Submits a read whose outcome completes {@code result}, unless another
+     * read has already completed it.
+     */
+    private Future<?> submitRead(String key, long deadline, CompletableFuture<GetItemResponse> result) {
+        return readExecutor.submit(() -> {
+            try {
+                long timeout = 0;
+                if (deadline != Long.MAX_VALUE) {
+                    timeout = deadline - System.nanoTime();
+                    if (timeout <= 0) {
+                        // Queued past the deadline: the caller has given up
+                        return;
+                    }
+                }
+                result.complete(getItem(storageKey(key), timeout));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+    }
+
+    /**
+     * Writes a batch drained from the write-behind buffer as a background
+     * write, shed when capacity is down to the low-priority reserve.
+     */
+    private void flushBuffered(List<WriteBehindBuffer.PendingWrite> batch) {
+        if (capacityLimiter != null && !capacityLimiter.tryAcquireWrite(WritePriority.LOW)) {
+            shedBufferedWrites.addAndGet(batch.size());
+            LOGGER.debug("Write capacity low, dropped {} buffered cache entries", batch.size());
+            return;
+        }
+        writeBuffered(batch);
+    }
+
+    private void writeBuffered(List<WriteBehindBuffer.PendingWrite> batch) {
+        List<WriteRequest> writes = new ArrayList<>(batch.size());
+        for (WriteBehindBuffer.PendingWrite write : batch) {
+            writes.addAll(putRequests(write.key, write.value, write.expires));
+        }
+        double consumed = DynamoDbBatchWriter.write(dynamoDbClient, tableName, writes);
+        if (capacityLimiter != null) {
+            capacityLimiter.consumeWrite(consumed > 0 ? consumed : writes.size());
+        }
+    }
+
+    private void meterWrite(ConsumedCapacity consumed, int items, int valueSize) {
+        meterWrite(consumed != null && consumed.capacityUnits() != null ? consumed.capacityUnits() : 0,
+            items, valueSize);
+    }
+
+    /**
+     * Takes consumed write capacity from the limiter, estimating one unit
+     * per started KB and item when DynamoDB did not report it.
+     */
+    private void meterWrite(double consumed, int items, int valueSize) {
+        if (capacityLimiter != null) {
+            capacityLimiter.consumeWrite(consumed > 0 ? consumed : items * Math.ceil((valueSize + 1) / 1024.0));
+        }
+    }
+
+    /**
+     * Extends the expiry of an item holding the same value, or writes the
+     * full item if the value changed, unless a newer write is in the table.
+     * A key the filter knows is absent goes straight to the full write.
+     */
+    private void conditionalPut(String key, byte[] value, long expires, boolean knownAbsent) {
+        conditionalWrites.incrementAndGet();
+        Map<String, AttributeValue> item = item(key, key, value, expires);
+        if (!knownAbsent && extendUnchanged(key, item, value.length)) {
+            return;
+        }
+        try {
+            PutItemRequest.Builder request = PutItemRequest.builder()
+                .tableName(tableName)
+                .item(item)
+                .conditionExpression("attribute_not_exists(#writtenAt) OR #writtenAt <= :writtenAt")
+                .expressionAttributeNames(Map.of("#writtenAt", "written_at"))
+                .expressionAttributeValues(Map.of(":writtenAt", item.get("written_at")));
+            if (capacityLimiter != null) {
+                request.returnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
+            }
+            PutItemResponse response = dynamoDbClient.putItem(request.build());
+            meterWrite(response == null ? null : response.consumedCapacity(), 1, value.length);
+        } catch (ConditionalCheckFailedException e) {
+            // Billed by the size of the item in the table, assumed to be about that of this one
+            meterWrite(0, 1, value.length);
+            staleWrites.incrementAndGet();
+            LOGGER.debug("Newer value of key {} already written, skipped put", key);
+        }
+    }
+
+    /**
+     * Only extends the expiry of an item holding the same value.
+     *
+     * @param valueSize Size of the value, by which the update is billed unless DynamoDB reports it
+     * @return False if the item is new, changed or newer in the table
+     */
+    private boolean extendUnchanged(String key, Map<String, AttributeValue> item, int valueSize) {
+        try {
+            UpdateItemRequest.Builder request = UpdateItemRequest.builder()
+                .tableName(tableName)
+                .key(keyMap(key))
+                .updateExpression("SET #expires = :expires, #writtenAt = :writtenAt")
+                .conditionExpression("#hash = :hash AND #writtenAt <= :writtenAt")
+                .expressionAttributeNames(Map.of(
+                    "#expires", "expires", "#writtenAt", "written_at", "#hash", "content_hash"))
+                .expressionAttributeValues(Map.of(
+                    ":expires", item.get("expires"), ":writtenAt", item.get("written_at"),
+                    ":hash", item.get("content_hash")));
+            if (capacityLimiter != null) {
+                request.returnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
+            }
+            UpdateItemResponse response = dynamoDbClient.updateItem(request.build());
+            meterWrite(response == null ? null : response.consumedCapacity(), 1, valueSize);
+            unchangedWrites.incrementAndGet();
+            LOGGER.debug("Value of key {} unchanged, extended its expiry", key);
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            // A failed condition is still billed by the item size, and reports no consumed capacity
+            meterWrite(0, 1, valueSize);
+            return false;
+        }
+    }
+
+    /**
+     * Writes an item unless the table already holds it with a later expiry.
+     */
+    private void extendingPut(String key, byte[] value, long expires) {
+        Map<String, AttributeValue> item = item(key, key, value, expires);
+        try {
+            PutItemRequest.Builder request = PutItemRequest.builder()
+                .tableName(tableName)
+                .item(item)
+                .conditionExpression("attribute_not_exists(#expires) OR #expires < :expires")
+                .expressionAttributeNames(Map.of("#expires", "expires"))
+                .expressionAttributeValues(Map.of(":expires", item.get("expires")));
+            if (capacityLimiter != null) {
+                request.returnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
+            }
+            PutItemResponse response = dynamoDbClient.putItem(request.build());
+            meterWrite(response == null ? null : response.consumedCapacity(), 1, value.length);
+        } catch (ConditionalCheckFailedException e) {
+            // Billed by the size of the stored item, the same value as this one
+            meterWrite(0, 1, value.length);
+            LOGGER.debug("Key {} already outlives this write, skipped put", key);
+        }
+    }
+
+    /**
+     * Returns a 64-bit hash of a value, enough to tell a refreshed value from
+     * the one it replaces.
+     */
+    private static String contentHash(byte[] value) {
+        return Base64.getEncoder().withoutPadding().encodeToString(
+            Longs.toByteArray(Hashing.murmur3_128().hashBytes(value).asLong()));
+    }
+
+    private List<WriteRequest> putRequests(String key, byte[] value, long expires) {
+        int shards = shardingPolicy.shardCount(key);
+        List<WriteRequest> writes = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            String storageKey = shards == 1 ? key : shardKey(key, shard);
+            writes.add(WriteRequest.builder()
+                .putRequest(PutRequest.builder().item(item(storageKey, key, value, expires)).build())
+                .build());
+        }
+        return writes;
+    }
+
+    /**
+     * Removes every entry of a tenant across all countries.
+     *
+     * @param tenant The tenant
+     * @return The number of items removed
+     * @see #invalidateTenant(String, String)
+     */
+    public long invalidateTenant(String tenant) {
+        return invalidateTenant(tenant, null);
+    }
+
+    /**
+     * Removes every entry of a tenant, using {@code Query} and batched deletes.
+     * Requires {@link DynamoDbKeyLayout#TENANT_PARTITIONED}; flushing all
+     * countries at once also requires the tenant index.
+     *
+     * @param tenant The tenant
+     * @param countryCode The country code, {@link DynamoDbKeyLayout#NONE} for keys
+     *                    without a country, or null for all countries
+     * @return The number of items removed
+     */
+    public long invalidateTenant(String tenant, String countryCode) {
+        try {
+            if (writeBehind != null) {
+                writeBehind.removeIf(key -> tenant.equals(CacheKeyGenerator.parseTenant(key))
+                    && (countryCode == null || countryCode.equals(countryOrNone(key))));
+            }
+            long[] removed = new long[1];
+            forEachTenantPage(tenant, countryCode, null, items -> {
+                List<WriteRequest> deletes = new ArrayList<>(items.size());
+                for (Map<String, AttributeValue> item : items) {
+                    deletes.add(WriteRequest.builder()
+                        .deleteRequest(DeleteRequest.builder().key(keyMap(keyLayout.storageKey(item))).build())
+                        .build());
+                }
+                DynamoDbBatchWriter.write(dynamoDbClient, tableName, deletes);
+                removed[0] += items.size();
+            });
+            LOGGER.debug("Invalidated {} cache entries for tenant: {}, country: {}", removed[0], tenant, countryCode);
+            return removed[0];
+        } catch (UnsupportedOperationException e) {
+            throw e;
+        } catch (Exception e) {
+            LOGGER.error("Error invalidating cache for tenant: {}, country: {}", tenant, countryCode, e);
+            throw new RuntimeException("Failed to invalidate tenant", e);
+        }
+    }
+
+    /**
+     * Returns the number of entries and value bytes a tenant occupies. Fill
+     * leases and the chunks of streamed bodies are not counted.
+     * Has the same requirements as {@link #invalidateTenant(String, String)}.
+     *
+     * @param tenant The tenant
+     * @param countryCode The country code, or null for all countries
+     * @return The tenant's usage
+     */
+    public TenantUsage getTenantUsage(String tenant, String countryCode) {
+        long[] usage = new long[2];
+        forEachTenantPage(tenant, countryCode, "#size", items -> {
+            for (Map<String, AttributeValue> item : items) {
+                String storageKey = keyLayout.storageKey(item);
+                if (isInternalKey(storageKey) || ChunkedBodyWriter.isChunkKey(storageKey)) {
+                    continue;
+                }
+                usage[0]++;
+                AttributeValue size = item.get("size");
+                if (size != null) {
+                    usage[1] += Long.parseLong(size.n());
+                }
+            }
+        });
+        return new TenantUsage(tenant, countryCode, usage[0], usage[1]);
+    }
+
+    /**
+     * Pages through the items of a tenant, per bucket of the given country or
+     * through the tenant index for all countries.
+     */
+    private void forEachTenantPage(String tenant, String countryCode, String projection,
+                                   Consumer<List<Map<String, AttributeValue>>> consumer) {
+        if (keyLayout != DynamoDbKeyLayout.TENANT_PARTITIONED) {
+            throw new UnsupportedOperationException("Tenant operations require the TENANT_PARTITIONED key layout");
+        }
+
+        List<QueryRequest> requests = new ArrayList<>();
+        Map<String, String> names = new HashMap<>();
+        if (projection != null) {
+            names.put("#size", "size");
+        }
+        if (countryCode != null) {
+            String prefix = DynamoDbKeyLayout.partitionPrefix(tenant, countryCode);
+            names.put("#pk", "pk");
+            for (int bucket = 0; bucket < partitionBuckets; bucket++) {
+                requests.add(QueryRequest.builder()
+                    .tableName(tableName)
+                    .keyConditionExpression("#pk = :pk")
+                    .expressionAttributeNames(names)
+                    .expressionAttributeValues(Map.of(":pk", AttributeValue.builder().s(prefix + bucket).build()))
+                    .projectionExpression(projection(projection))
+                    .build());
+            }
+        } else {
+            if (tenantIndexName == null) {
+                throw new UnsupportedOperationException("Tenant-wide operations require the tenant index");
+            }
+            names.put("#tenant", "tenant");
+            requests.add(QueryRequest.builder()
+                .tableName(tableName)
+                .indexName(tenantIndexName)
+                .keyConditionExpression("#tenant = :tenant")
+                .expressionAttributeNames(names)
+                .expressionAttributeValues(Map.of(":tenant", AttributeValue.builder().s(tenant).build()))
+                .projectionExpression(projection(projection))
+                .build());
+        }
+
+        for (QueryRequest request : requests) {
+            for (QueryResponse page : dynamoDbClient.queryPaginator(request)) {
+                if (!page.items().isEmpty()) {
+                    consumer.accept(page.items());
+                }
+            }
+        }
+    }
+
+    private static String countryOrNone(String key) {
+        String countryCode = CacheKeyGenerator.parseCountryCode(key);
+        return countryCode != null ? countryCode : DynamoDbKeyLayout.NONE;
+    }
+
+    private static String projection(String extra) {
+        return extra == null ? "pk, sk" : "pk, sk, " + extra;
+    }
+
+    /**
+     * Reads all index buckets of a tag.
+     *
+     * @return The keys per non-empty bucket item key
+     */
+    private Map<String, Set<String>> readTag(String tag) {
+        List<Map<String, AttributeValue>> bucketKeys = new ArrayList<>(tagBuckets);
+        for (int bucket = 0; bucket < tagBuckets; bucket++) {
+            bucketKeys.add(keyMap(tagKey(tag, bucket)));
+        }
+
+        Map<String, Set<String>> keysByBucket = new HashMap<>();
+        // BatchGetItem takes at most 100 keys; every bucket is read, however many rounds it takes
+        for (int from = 0; from < bucketKeys.size(); from += DynamoDbBatchReader.MAX_BATCH_SIZE) {
+            Map<String, KeysAndAttributes> pending = Collections.singletonMap(tableName, KeysAndAttributes.builder()
+                .keys(bucketKeys.subList(from, Math.min(from + DynamoDbBatchReader.MAX_BATCH_SIZE, bucketKeys.size())))
+                .projectionExpression("#key, #keys")
+                .expressionAttributeNames(Map.of("#key", keyLayout.storageKeyAttribute(), "#keys", "keys"))
+                .build());
+            while (!pending.isEmpty()) {
+                BatchGetItemResponse response = dynamoDbClient.batchGetItem(BatchGetItemRequest.builder()
+                    .requestItems(pending)
+                    .build());
+                for (Map<String, AttributeValue> item : response.responses().getOrDefault(tableName, List.of())) {
+                    AttributeValue keys = item.get("keys");
+                    if (keys != null && keys.hasSs() && !keys.ss().isEmpty()) {
+                        keysByBucket.put(keyLayout.storageKey(item), new LinkedHashSet<>(keys.ss()));
+                    }
+                }
+                pending = response.hasUnprocessedKeys() ? response.unprocessedKeys() : Collections.emptyMap();
+            }
+        }
+        return keysByBucket;
+    }
+
+    private int tagBucket(String key) {
+        return Math.floorMod(key.hashCode(), tagBuckets);
+    }
+
+    private static String tagKey(String tag, int bucket) {
+        return TAG_PREFIX + tag + SHARD_SEPARATOR + bucket;
+    }
+
+    /**
+     * Returns the storage keys of all copies the sharding policy keeps for a key.
+     */
+    private static List<String> shardStorageKeys(String key, int shards) {
+        if (shards == 1) {
+            return Collections.singletonList(key);
+        }
+        List<String> storageKeys = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            storageKeys.add(shardKey(key, shard));
+        }
+        return storageKeys;
+    }
+
+    /**
+     * Finds every copy of a key through the shard index, including copies
+     * left over from a higher shard count.
+     */
+    private Set<String> indexedStorageKeys(String key) {
+        Set<String> storageKeys = new LinkedHashSet<>();
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":baseKey", AttributeValue.builder().s(key).build());
+        QueryRequest request = QueryRequest.builder()
+            .tableName(tableName)
+            .indexName(shardIndexName)
+            .keyConditionExpression("base_key = :baseKey")
+            .expressionAttributeValues(values)
+            .build();
+        for (QueryResponse page : dynamoDbClient.queryPaginator(request)) {
+            page.items().forEach(item -> storageKeys.add(keyLayout.storageKey(item)));
+        }
+        return storageKeys;
+    }
+
+    private Map<String, AttributeValue> item(String storageKey, String key, byte[] value, long expires) {
+        Map<String, AttributeValue> item = keyMap(storageKey);
+        if (!storageKey.equals(key)) {
+            // Lets the optional shard index find every copy of a key
+            item.put("base_key", AttributeValue.builder().s(key).build());
+        }
+        item.put("value", AttributeValue.builder().b(SdkBytes.fromByteArray(value)).build());
+        item.put("expires", AttributeValue.builder().n(String.valueOf(expires)).build());
+        if (skipUnchangedWrites) {
+            item.put("content_hash", AttributeValue.builder().s(contentHash(value)).build());
+            item.put("written_at", AttributeValue.builder().n(String.valueOf(System.currentTimeMillis())).build());
+        }
+        if (keyLayout == DynamoDbKeyLayout.TENANT_PARTITIONED) {
+            String tenant = CacheKeyGenerator.parseTenant(key);
+            String countryCode = CacheKeyGenerator.parseCountryCode(key);
+            if (tenant != null) {
+                item.put("tenant", AttributeValue.builder().s(tenant).build());
+            }
+            // Always set so that the tenant index, which sorts on country_code, sees the item
+            item.put("country_code", AttributeValue.builder()
+                .s(countryCode != null ? countryCode : DynamoDbKeyLayout.NONE).build());
+            item.put("size", AttributeValue.builder().n(String.valueOf(value.length)).build());
+        }
+        return item;
+    }
+
+    private Map<String, AttributeValue> keyMap(String storageKey) {
+        return keyLayout.primaryKey(storageKey, partitionBuckets);
+    }
+
+    private static String shardKey(String key, int shard) {
+        return key + SHARD_SEPARATOR + shard;
+    }
+}
@@ -2,6 +2,9 @@ package com.coupang.dcache;
 
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+
 /**
  * Configuration for DynamoDB-based cache.
  */
@@ -9,11 +12,51 @@ public class DynamoDbCacheConfig {
     private final String tableName;
     private final String region;
     private final DynamoDbClient dynamoDbClient;
+    private final ShardingPolicy shardingPolicy;
+    private final String shardIndexName;
+    private final int tagBuckets;
+    private final int tagRetention;
+    private final DynamoDbKeyLayout keyLayout;
+    private final int partitionBuckets;
+    private final String tenantIndexName;
+    private final WriteBehindConfig writeBehind;
+    private final Duration readTimeout;
+    private final double hedgePercentile;
+    private final Duration hedgeMinDelay;
+    private final ExecutorService readExecutor;
+    private final ExecutionStrategy executionStrategy;
+    private final CircuitBreakerConfig circuitBreaker;
+    private final FillLeaseConfig fillLease;
+    private final RequestBatchingConfig requestBatching;
+    private final KeyFilterConfig keyFilter;
+    private final WriteAdmissionConfig writeAdmission;
+    private final boolean skipUnchangedWrites;
+    private final CapacityLimiterConfig capacityLimiter;
 
     private DynamoDbCacheConfig(Builder builder) {
         this.tableName = builder.tableName;
         this.region = builder.region;
         this.dynamoDbClient = builder.dynamoDbClient;
+        this.shardingPolicy = builder.shardingPolicy;
+        this.shardIndexName = builder.shardIndexName;
+        this.tagBuckets = builder.tagBuckets;
+        this.tagRetention = builder.tagRetention;
+        this.keyLayout = builder.keyLayout;
+        this.partitionBuckets = builder.partitionBuckets;
+        this.tenantIndexName = builder.tenantIndexName;
+        this.writeBehind = builder.writeBehind;
+        this.readTimeout = builder.readTimeout;
+        this.hedgePercentile = builder.hedgePercentile;
+        this.hedgeMinDelay = builder.hedgeMinDelay;
+        this.readExecutor = builder.readExecutor;
+        this.executionStrategy = builder.executionStrategy;
+        this.circuitBreaker = builder.circuitBreaker;
+        this.fillLease = builder.fillLease;
+        this.requestBatching = builder.requestBatching;
+        this.keyFilter = builder.keyFilter;
+        this.writeAdmission = builder.writeAdmission;
+        this.skipUnchangedWrites = builder.skipUnchangedWrites;
+        this.capacityLimiter = builder.capacityLimiter;
     }
 
     public String getTableName() {
@@ -28,6 +71,86 @@ public class DynamoDbCacheConfig {
         return dynamoDbClient;
     }
 
+    public ShardingPolicy getShardingPolicy() {
+        return shardingPolicy;
+    }
+
+    public String getShardIndexName() {
+        return shardIndexName;
+    }
+
+    public int getTagBuckets() {
+        return tagBuckets;
+    }
+
+    public int getTagRetention() {
+        return tagRetention;
+    }
+
+    public DynamoDbKeyLayout getKeyLayout() {
+        return keyLayout;
+    }
+
+    public int getPartitionBuckets() {
+        return partitionBuckets;
+    }
+
+    public String getTenantIndexName() {
+        return tenantIndexName;
+    }
+
+    public WriteBehindConfig getWriteBehind() {
+        return writeBehind;
+    }
+
+    public Duration getReadTimeout() {
+        return readTimeout;
+    }
+
+    public double getHedgePercentile() {
+        return hedgePercentile;
+    }
+
+    public Duration getHedgeMinDelay() {
+        return hedgeMinDelay;
+    }
+
+    public ExecutorService getReadExecutor() {
+        return readExecutor;
+    }
+
+    public ExecutionStrategy getExecutionStrategy() {
+        return executionStrategy;
+    }
+
+    public CircuitBreakerConfig getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public FillLeaseConfig getFillLease() {
+        return fillLease;
+    }
+
+    public RequestBatchingConfig getRequestBatching() {
+        return requestBatching;
+    }
+
+    public KeyFilterConfig getKeyFilter() {
+        return keyFilter;
+    }
+
+    public WriteAdmissionConfig getWriteAdmission() {
+        return writeAdmission;
+    }
+
+    public boolean isSkipUnchangedWrites() {
+        return skipUnchangedWrites;
+    }
+
+    public CapacityLimiterConfig getCapacityLimiter() {
+        return capacityLimiter;
+    }
+
     public static Builder builder() {
         return new Builder();
     }
@@ -36,6 +159,26 @@ public class DynamoDbCacheConfig {
         private String tableName;
         private String region;
         private DynamoDbClient dynamoDbClient;
+        private ShardingPolicy shardingPolicy = ShardingPolicy.none();
+        private String shardIndexName;
+        private int tagBuckets = 4;
+        private int tagRetention = 604800; // 7 days
+        private DynamoDbKeyLayout keyLayout = DynamoDbKeyLayout.SINGLE_KEY;
+        private int partitionBuckets = 8;
+        private String tenantIndexName;
+        private WriteBehindConfig writeBehind;
+        private Duration readTimeout;
+        private double hedgePercentile;
+        private Duration hedgeMinDelay = Duration.ofMillis(1);
+        private ExecutorService readExecutor;
+        private ExecutionStrategy executionStrategy = ExecutionStrategy.defaultStrategy();
+        private CircuitBreakerConfig circuitBreaker;
+        private FillLeaseConfig fillLease;
+        private RequestBatchingConfig requestBatching;
+        private KeyFilterConfig keyFilter;
+        private WriteAdmissionConfig writeAdmission;
+        private boolean skipUnchangedWrites;
+        private CapacityLimiterConfig capacityLimiter;
 
         public Builder tableName(String tableName) {
             this.tableName = tableName;
@@ -52,6 +195,196 @@ public class DynamoDbCacheConfig {
             return this;
         }
 
+        /**
+         * Keeps multiple read replicas of matching keys to spread reads over partitions.
+         */
+        public Builder shardingPolicy(ShardingPolicy shardingPolicy) {
+            this.shardingPolicy = shardingPolicy;
+            return this;
+        }
+
+        /**
+         * Name of the optional GSI on {@code base_key}. When set, invalidation finds
+         * every copy of a key through the index, including copies left over after
+         * the shard count of a prefix was lowered.
+         */
+        public Builder shardIndexName(String shardIndexName) {
+            this.shardIndexName = shardIndexName;
+            return this;
+        }
+
+        /**
+         * Number of index items each tag's key set is spread over, to stay
+         * below the 400 KB item size limit for tags with many keys. A tag
+         * invalidation reads the buckets with one {@code BatchGetItem} per
+         * 100 of them.
+         */
+        public Builder tagBuckets(int tagBuckets) {
+            this.tagBuckets = tagBuckets;
+            return this;
+        }
+
+        /**
+         * Lifetime in seconds of tag index items, refreshed on every tagged put.
+         * Must be longer than the longest TTL of a tagged entry.
+         */
+        public Builder tagRetention(int tagRetention) {
+            this.tagRetention = tagRetention;
+            return this;
+        }
+
+        /**
+         * Primary key layout of the table; must match the table's key schema.
+         */
+        public Builder keyLayout(DynamoDbKeyLayout keyLayout) {
+            this.keyLayout = keyLayout;
+            return this;
+        }
+
+        /**
+         * Number of partition keys each tenant and country is spread over
+         * with {@link DynamoDbKeyLayout#TENANT_PARTITIONED}.
+         */
+        public Builder partitionBuckets(int partitionBuckets) {
+            this.partitionBuckets = partitionBuckets;
+            return this;
+        }
+
+        /**
+         * Name of the optional GSI on {@code tenant}, needed to flush or measure
+         * a tenant across all countries.
+         */
+        public Builder tenantIndexName(String tenantIndexName) {
+            this.tenantIndexName = tenantIndexName;
+            return this;
+        }
+
+        /**
+         * Enables write-behind: puts are buffered and written in batches by a
+         * background flusher instead of on the caller's thread.
+         */
+        public Builder writeBehind(WriteBehindConfig writeBehind) {
+            this.writeBehind = writeBehind;
+            return this;
+        }
+
+        /**
+         * Latency budget of a read. A read still running after this is
+         * abandoned and reported as a miss, so the caller goes to origin.
+         */
+        public Builder readTimeout(Duration readTimeout) {
+            this.readTimeout = readTimeout;
+            return this;
+        }
+
+        /**
+         * Enables hedged reads: a read not answered within this percentile of
+         * recent read latencies (e.g. 0.95) sends a second {@code GetItem}
+         * and the first answer wins. 0 disables hedging.
+         */
+        public Builder hedgePercentile(double hedgePercentile) {
+            this.hedgePercentile = hedgePercentile;
+            return this;
+        }
+
+        /**
+         * Lower bound of the hedge delay, so a very fast percentile cannot
+         * double the read traffic.
+         */
+        public Builder hedgeMinDelay(Duration hedgeMinDelay) {
+            this.hedgeMinDelay = hedgeMinDelay;
+            return this;
+        }
+
+        /**
+         * Executor running bounded and hedged reads. Defaults to an executor
+         * created by the execution strategy.
+         */
+        public Builder readExecutor(ExecutorService readExecutor) {
+            this.readExecutor = readExecutor;
+            return this;
+        }
+
+        /**
+         * Threads for reads with deadlines, write-behind flushes and capacity
+         * coordination. Defaults to virtual threads on Java 21+ and bounded
+         * pools otherwise.
+         */
+        public Builder executionStrategy(ExecutionStrategy executionStrategy) {
+            this.executionStrategy = executionStrategy;
+            return this;
+        }
+
+        /**
+         * Guards reads and puts with a circuit breaker: while it is open they
+         * are skipped (reads report a miss), and puts are shed on throttling.
+         */
+        public Builder circuitBreaker(CircuitBreakerConfig circuitBreaker) {
+            this.circuitBreaker = circuitBreaker;
+            return this;
+        }
+
+        /**
+         * Limits reads and puts to this node's share of the table's provisioned
+         * capacity, metered from the capacity DynamoDB reports as consumed.
+         */
+        public Builder capacityLimiter(CapacityLimiterConfig capacityLimiter) {
+            this.capacityLimiter = capacityLimiter;
+            return this;
+        }
+
+        /**
+         * Makes {@link DynamoDbCache#getOrLoad} call the loader on one node per
+         * key and expiry: the node holding a {@code key#lease} item loads the
+         * value while the others wait for it.
+         */
+        public Builder fillLease(FillLeaseConfig fillLease) {
+            this.fillLease = fillLease;
+            return this;
+        }
+
+        /**
+         * Sends gets made within a short window as one {@code BatchGetItem},
+         * and puts as {@code BatchWriteItem} calls, without changing callers.
+         */
+        public Builder requestBatching(RequestBatchingConfig requestBatching) {
+            this.requestBatching = requestBatching;
+            return this;
+        }
+
+        /**
+         * Keeps a filter of the keys in the table, so gets for keys that are
+         * certainly absent return a miss without a read.
+         */
+        public Builder keyFilter(KeyFilterConfig keyFilter) {
+            this.keyFilter = keyFilter;
+            return this;
+        }
+
+        /**
+         * Writes a put only once its key has been seen often enough, so values
+         * requested once cost no write capacity.
+         */
+        public Builder writeAdmission(WriteAdmissionConfig writeAdmission) {
+            this.writeAdmission = writeAdmission;
+            return this;
+        }
+
+        /**
+         * Stores a hash of each value, so a put of an unchanged value only
+         * extends the item's expiry, and conditions puts on their write time
+         * so an older put never overwrites a newer one. Applies to puts of
+         * unsharded keys that are neither buffered nor batched: write-behind
+         * and request batching bypass both the hash check and the condition.
+         * Write times are the nodes' wall clocks, which must agree for the
+         * ordering to hold. The update is billed by the item size like a full
+         * write, so this saves bandwidth rather than write capacity.
+         */
+        public Builder skipUnchangedWrites(boolean skipUnchangedWrites) {
+            this.skipUnchangedWrites = skipUnchangedWrites;
+            return this;
+        }
+
         public DynamoDbCacheConfig build() {
             if (tableName == null || tableName.isEmpty()) {
                 throw new IllegalArgumentException("Table name is required");
@@ -62,6 +395,30 @@ public class DynamoDbCacheConfig {
             if (dynamoDbClient == null) {
                 throw new IllegalArgumentException("DynamoDB client is required");
             }
+            if (shardingPolicy == null) {
+                throw new IllegalArgumentException("Sharding policy is required");
+            }
+            if (keyLayout == null) {
+                throw new IllegalArgumentException("Key layout is required");
+            }
+            if (partitionBuckets < 1) {
+                throw new IllegalArgumentException("Partition buckets must be positive");
+            }
+            if (tagBuckets < 1 || tagRetention <= 0) {
+                throw new IllegalArgumentException("Tag buckets and tag retention must be positive");
+            }
+            if (readTimeout != null && (readTimeout.isZero() || readTimeout.isNegative())) {
+                throw new IllegalArgumentException("Read timeout must be positive");
+            }
+            if (hedgePercentile < 0 || hedgePercentile >= 1) {
+                throw new IllegalArgumentException("Hedge percentile must be in [0, 1)");
+            }
+            if (executionStrategy == null) {
+                throw new IllegalArgumentException("Execution strategy is required");
+            }
+            if (hedgeMinDelay == null || hedgeMinDelay.isNegative()) {
+                throw new IllegalArgumentException("Hedge min delay must not be negative");
+            }
             return new DynamoDbCacheConfig(this);
         }
     }
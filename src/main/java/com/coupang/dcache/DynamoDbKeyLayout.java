@@ -0,0 +1,90 @@
+package com.coupang.dcache;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Primary key layouts supported by {@link DynamoDbCache}.
+ */
+public enum DynamoDbKeyLayout {
+    /**
+     * Single hash key {@code key} holding the cache key.
+     */
+    SINGLE_KEY,
+
+    /**
+     * Composite key: partition key {@code pk = tenant#country#bucket} and sort
+     * key {@code sk} holding the cache key. Tenant and country are taken from
+     * the {@code tenant:X:country:Y:} key prefix written by
+     * {@link CacheKeyGenerator}. All entries of a tenant and country can then
+     * be listed with a {@code Query} per bucket instead of a full {@code Scan};
+     * the bucket spreads a large tenant over several partitions.
+     */
+    TENANT_PARTITIONED;
+
+    /**
+     * Partition key value used for keys without a tenant or country.
+     */
+    public static final String NONE = "_";
+
+    /**
+     * Returns the primary key attributes of the item stored under a storage key.
+     *
+     * @param storageKey The storage key (cache key, shard copy or index item key)
+     * @param partitionBuckets The number of buckets per tenant and country
+     * @return The primary key attributes
+     */
+    public Map<String, AttributeValue> primaryKey(String storageKey, int partitionBuckets) {
+        Map<String, AttributeValue> key = new HashMap<>();
+        if (this == SINGLE_KEY) {
+            key.put("key", AttributeValue.builder().s(storageKey).build());
+        } else {
+            String partitionKey = partitionKey(CacheKeyGenerator.parseTenant(storageKey),
+                    CacheKeyGenerator.parseCountryCode(storageKey), storageKey, partitionBuckets);
+            key.put("pk", AttributeValue.builder().s(partitionKey).build());
+            key.put("sk", AttributeValue.builder().s(storageKey).build());
+        }
+        return key;
+    }
+
+    /**
+     * Returns the name of the attribute holding the storage key.
+     *
+     * @return "key" or "sk"
+     */
+    public String storageKeyAttribute() {
+        return this == SINGLE_KEY ? "key" : "sk";
+    }
+
+    /**
+     * Reads the storage key from an item or a key map.
+     *
+     * @param item The item attributes
+     * @return The storage key
+     */
+    public String storageKey(Map<String, AttributeValue> item) {
+        return item.get(storageKeyAttribute()).s();
+    }
+
+    /**
+     * Computes the {@code tenant#country#bucket} partition key.
+     *
+     * @param tenant The tenant, or null
+     * @param countryCode The country code, or null
+     * @param storageKey The storage key, hashed to choose the bucket
+     * @param partitionBuckets The number of buckets per tenant and country
+     * @return The partition key
+     */
+    static String partitionKey(String tenant, String countryCode, String storageKey, int partitionBuckets) {
+        return partitionPrefix(tenant, countryCode) + Math.floorMod(storageKey.hashCode(), partitionBuckets);
+    }
+
+    /**
+     * Returns the partition key without its bucket, e.g. {@code acme#KR#}.
+     */
+    static String partitionPrefix(String tenant, String countryCode) {
+        return (tenant != null ? tenant : NONE) + "#" + (countryCode != null ? countryCode : NONE) + "#";
+    }
+}
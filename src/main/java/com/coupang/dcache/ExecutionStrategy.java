@@ -0,0 +1,199 @@
+package com.coupang.dcache;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Threads the library's background work runs on: bounded and hedged reads,
+ * write-behind flushes, capacity coordination and invalidation delivery.
+ * <p>
+ * On Java 21+ {@link #virtualThreads()} runs every task on its own virtual
+ * thread, so blocking DynamoDB and socket calls do not hold a platform
+ * thread. The library targets Java 17, so virtual threads are created by
+ * reflection; on older runtimes {@link #defaultStrategy()} falls back to
+ * {@link #boundedPool(int)}. The cache path only blocks under
+ * {@link java.util.concurrent.locks.ReentrantLock}, never inside
+ * {@code synchronized}, so virtual threads are not pinned to their carrier
+ * during I/O.
+ */
+public final class ExecutionStrategy {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExecutionStrategy.class);
+    private static final int DEFAULT_MAX_THREADS = 256;
+    private static final int QUEUED_TASKS_PER_THREAD = 4;
+    private static final VirtualThreads VIRTUAL_THREADS = VirtualThreads.load();
+
+    private final boolean virtual;
+    private final int maxThreads;
+
+    private ExecutionStrategy(boolean virtual, int maxThreads) {
+        this.virtual = virtual;
+        this.maxThreads = maxThreads;
+    }
+
+    /**
+     * Uses virtual threads when the runtime supports them, otherwise a
+     * bounded pool of {@value #DEFAULT_MAX_THREADS} daemon threads per executor
+     * (see {@link #boundedPool(int)}).
+     *
+     * @return The default strategy
+     */
+    public static ExecutionStrategy defaultStrategy() {
+        return isVirtualThreadSupported() ? virtualThreads() : boundedPool(DEFAULT_MAX_THREADS);
+    }
+
+    /**
+     * Runs each task on a new virtual thread.
+     *
+     * @return The virtual-thread strategy
+     * @throws UnsupportedOperationException If the runtime is older than Java 21
+     */
+    public static ExecutionStrategy virtualThreads() {
+        if (!isVirtualThreadSupported()) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+        }
+        return new ExecutionStrategy(true, 0);
+    }
+
+    /**
+     * Runs tasks on pools of at most {@code maxThreads} daemon platform
+     * threads. Up to {@value #QUEUED_TASKS_PER_THREAD} further tasks per
+     * thread wait in the pool's queue; beyond
+     * that, tasks are rejected with a
+     * {@link java.util.concurrent.RejectedExecutionException}, which callers
+     * treat as a miss or run on their own thread, rather than pile up
+     * behind a slow table.
+     *
+     * @param maxThreads The maximum number of threads per executor
+     * @return The bounded-pool strategy
+     */
+    public static ExecutionStrategy boundedPool(int maxThreads) {
+        if (maxThreads <= 0) {
+            throw new IllegalArgumentException("Max threads must be positive");
+        }
+        return new ExecutionStrategy(false, maxThreads);
+    }
+
+    public static boolean isVirtualThreadSupported() {
+        return VIRTUAL_THREADS != null;
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * @return The maximum number of threads per executor, or 0 when unbounded
+     */
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    /**
+     * Creates threads for long-running loops, such as connection readers.
+     *
+     * @param name The thread name prefix, e.g. {@code dcache-read}
+     * @return A factory of daemon threads named {@code <name>-<n>}
+     */
+    public ThreadFactory threadFactory(String name) {
+        if (virtual) {
+            return VIRTUAL_THREADS.factory(name + "-");
+        }
+        return new ThreadFactoryBuilder()
+                .setNameFormat(name + "-%d")
+                .setDaemon(true)
+                .build();
+    }
+
+    /**
+     * Creates an executor for short blocking tasks.
+     *
+     * @param name The thread name prefix
+     * @return A thread-per-task executor for virtual threads, otherwise a
+     *         bounded pool with a bounded queue
+     */
+    public ExecutorService newExecutor(String name) {
+        if (virtual) {
+            return VIRTUAL_THREADS.perTaskExecutor(threadFactory(name));
+        }
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(maxThreads * QUEUED_TASKS_PER_THREAD), threadFactory(name));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Creates a single-threaded scheduler for periodic and delayed work.
+     *
+     * @param name The thread name prefix
+     * @return The scheduler
+     */
+    public ScheduledExecutorService newScheduler(String name) {
+        return Executors.newSingleThreadScheduledExecutor(threadFactory(name));
+    }
+
+    @Override
+    public String toString() {
+        return virtual ? "ExecutionStrategy[virtual]" : "ExecutionStrategy[bounded=" + maxThreads + "]";
+    }
+
+    /**
+     * Java 21 virtual thread API, looked up reflectively.
+     */
+    private static final class VirtualThreads {
+        private final Method ofVirtual;
+        private final Method name;
+        private final Method factory;
+        private final Method newThreadPerTaskExecutor;
+
+        private VirtualThreads(Method ofVirtual, Method name, Method factory, Method newThreadPerTaskExecutor) {
+            this.ofVirtual = ofVirtual;
+            this.name = name;
+            this.factory = factory;
+            this.newThreadPerTaskExecutor = newThreadPerTaskExecutor;
+        }
+
+        static VirtualThreads load() {
+            try {
+                Class<?> builder = Class.forName("java.lang.Thread$Builder");
+                Method ofVirtual = Thread.class.getMethod("ofVirtual");
+                // Java 19 and 20 have the API but throw unless preview features are enabled
+                ofVirtual.invoke(null);
+                return new VirtualThreads(
+                        ofVirtual,
+                        builder.getMethod("name", String.class, long.class),
+                        builder.getMethod("factory"),
+                        Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class));
+            } catch (ReflectiveOperationException e) {
+                LOGGER.debug("Virtual threads are not available, using platform threads");
+                return null;
+            }
+        }
+
+        ThreadFactory factory(String prefix) {
+            try {
+                Object builder = name.invoke(ofVirtual.invoke(null), prefix, 0L);
+                return (ThreadFactory) factory.invoke(builder);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Failed to create virtual thread factory", e);
+            }
+        }
+
+        ExecutorService perTaskExecutor(ThreadFactory threadFactory) {
+            try {
+                return (ExecutorService) newThreadPerTaskExecutor.invoke(null, threadFactory);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Failed to create virtual thread executor", e);
+            }
+        }
+    }
+}
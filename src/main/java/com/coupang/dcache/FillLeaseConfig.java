@@ -0,0 +1,113 @@
+package com.coupang.dcache;
+
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Configuration of the fleet-wide fill lease used by
+ * {@link DynamoDbCache#getOrLoad(String, int, java.util.function.Supplier)}.
+ */
+public class FillLeaseConfig {
+    private final Duration leaseDuration;
+    private final Duration waitTimeout;
+    private final Duration pollInitialDelay;
+    private final Duration pollMaxDelay;
+    private final String nodeId;
+
+    private FillLeaseConfig(Builder builder) {
+        this.leaseDuration = builder.leaseDuration;
+        this.waitTimeout = builder.waitTimeout;
+        this.pollInitialDelay = builder.pollInitialDelay;
+        this.pollMaxDelay = builder.pollMaxDelay;
+        this.nodeId = builder.nodeId;
+    }
+
+    public Duration getLeaseDuration() {
+        return leaseDuration;
+    }
+
+    public Duration getWaitTimeout() {
+        return waitTimeout;
+    }
+
+    public Duration getPollInitialDelay() {
+        return pollInitialDelay;
+    }
+
+    public Duration getPollMaxDelay() {
+        return pollMaxDelay;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private Duration leaseDuration = Duration.ofSeconds(5);
+        private Duration waitTimeout = Duration.ofSeconds(10);
+        private Duration pollInitialDelay = Duration.ofMillis(10);
+        private Duration pollMaxDelay = Duration.ofMillis(200);
+        private String nodeId = UUID.randomUUID().toString();
+
+        /**
+         * How long a node may fill a key before other nodes take over. Should
+         * exceed the slowest expected origin call.
+         */
+        public Builder leaseDuration(Duration leaseDuration) {
+            this.leaseDuration = leaseDuration;
+            return this;
+        }
+
+        /**
+         * Maximum time a node waits for another node's fill before calling
+         * the origin itself.
+         */
+        public Builder waitTimeout(Duration waitTimeout) {
+            this.waitTimeout = waitTimeout;
+            return this;
+        }
+
+        /**
+         * First delay between two reads of a key being filled by another
+         * node; it doubles up to {@link #pollMaxDelay(Duration)}.
+         */
+        public Builder pollInitialDelay(Duration pollInitialDelay) {
+            this.pollInitialDelay = pollInitialDelay;
+            return this;
+        }
+
+        public Builder pollMaxDelay(Duration pollMaxDelay) {
+            this.pollMaxDelay = pollMaxDelay;
+            return this;
+        }
+
+        /**
+         * Identifier of this node in lease items.
+         */
+        public Builder nodeId(String nodeId) {
+            this.nodeId = nodeId;
+            return this;
+        }
+
+        public FillLeaseConfig build() {
+            if (leaseDuration == null || leaseDuration.isZero() || leaseDuration.isNegative()) {
+                throw new IllegalArgumentException("Lease duration must be positive");
+            }
+            if (waitTimeout == null || waitTimeout.isNegative()) {
+                throw new IllegalArgumentException("Wait timeout must not be negative");
+            }
+            if (pollInitialDelay == null || pollMaxDelay == null || pollInitialDelay.isZero()
+                    || pollInitialDelay.isNegative() || pollMaxDelay.compareTo(pollInitialDelay) < 0) {
+                throw new IllegalArgumentException("Poll delays must be positive and max delay at least the initial delay");
+            }
+            if (nodeId == null || nodeId.isEmpty()) {
+                throw new IllegalArgumentException("Node ID is required");
+            }
+            return new FillLeaseConfig(this);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.coupang.dcache;
+
+import com.google.common.hash.Hashing;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-min sketch of how often keys were seen, with 4-bit counters.
+ * <p>
+ * Each key increments one counter in each of four rows, and its estimate is
+ * the smallest of them, so estimates are never too low and only too high
+ * when other keys collide in every row. Counters saturate at 15. Once per
+ * window all counters are halved, so the estimates follow recent traffic:
+ * a key seen n times in the last window counts at least n / 2.
+ */
+final class FrequencySketch {
+    static final int MAX_COUNT = 15;
+    private static final int ROWS = 4;
+    private static final int COUNTER_BITS = 4;
+    private static final int COUNTERS_PER_WORD = Long.SIZE / COUNTER_BITS;
+    // Keeps the low three bits of every 4-bit counter after a right shift
+    private static final long HALVING_MASK = 0x7777777777777777L;
+
+    private final AtomicLongArray words;
+    private final int rowMask;
+    private final int rowWidth;
+    private final long windowNanos;
+    private final AtomicLong nextReset;
+
+    /**
+     * @param expectedKeys The number of distinct keys per window the sketch is sized for
+     * @param windowNanos The time between two halvings
+     */
+    FrequencySketch(long expectedKeys, long windowNanos) {
+        this.rowWidth = (int) Math.min(1 << 30, Long.highestOneBit(Math.max(COUNTERS_PER_WORD, expectedKeys - 1)) << 1);
+        this.rowMask = rowWidth - 1;
+        this.words = new AtomicLongArray(ROWS * rowWidth / COUNTERS_PER_WORD);
+        this.windowNanos = windowNanos;
+        this.nextReset = new AtomicLong(System.nanoTime() + windowNanos);
+    }
+
+    /**
+     * Counts one sighting of a key.
+     *
+     * @return The estimated number of sightings, including this one
+     */
+    int increment(String key) {
+        ageIfDue();
+        long[] hash = hash(key);
+        int estimate = MAX_COUNT;
+        for (int row = 0; row < ROWS; row++) {
+            estimate = Math.min(estimate, increment(index(hash, row)));
+        }
+        return estimate;
+    }
+
+    /**
+     * Returns the estimated number of sightings of a key.
+     */
+    int estimate(String key) {
+        long[] hash = hash(key);
+        int estimate = MAX_COUNT;
+        for (int row = 0; row < ROWS; row++) {
+            int index = index(hash, row);
+            estimate = Math.min(estimate, (int) ((words.get(index / COUNTERS_PER_WORD) >>> shift(index)) & MAX_COUNT));
+        }
+        return estimate;
+    }
+
+    long getMemoryBytes() {
+        return (long) words.length() * Long.BYTES;
+    }
+
+    /**
+     * Halves every counter.
+     */
+    void age() {
+        for (int i = 0; i < words.length(); i++) {
+            long current;
+            do {
+                current = words.get(i);
+            } while (!words.compareAndSet(i, current, (current >>> 1) & HALVING_MASK));
+        }
+    }
+
+    private void ageIfDue() {
+        long due = nextReset.get();
+        long now = System.nanoTime();
+        // Only the caller that moves the deadline ages the counters
+        if (now - due >= 0 && nextReset.compareAndSet(due, now + windowNanos)) {
+            age();
+        }
+    }
+
+    private int increment(int index) {
+        int word = index / COUNTERS_PER_WORD;
+        int shift = shift(index);
+        while (true) {
+            long current = words.get(word);
+            int count = (int) ((current >>> shift) & MAX_COUNT);
+            if (count == MAX_COUNT) {
+                return count;
+            }
+            if (words.compareAndSet(word, current, current + (1L << shift))) {
+                return count + 1;
+            }
+        }
+    }
+
+    private static long[] hash(String key) {
+        ByteBuffer bytes = ByteBuffer.wrap(Hashing.murmur3_128().hashString(key, StandardCharsets.UTF_8).asBytes())
+                .order(ByteOrder.LITTLE_ENDIAN);
+        return new long[] {bytes.getLong(0), bytes.getLong(8)};
+    }
+
+    private int index(long[] hash, int row) {
+        long combined = hash[0] + row * hash[1];
+        return row * rowWidth + (int) ((combined ^ (combined >>> 32)) & rowMask);
+    }
+
+    private static int shift(int index) {
+        return (index % COUNTERS_PER_WORD) * COUNTER_BITS;
+    }
+}
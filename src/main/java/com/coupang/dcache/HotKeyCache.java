@@ -0,0 +1,203 @@
+package com.coupang.dcache;
+
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Cache decorator that detects hot keys on the read path and pins their
+ * values into a small local cache with a short TTL, so that reads of those
+ * keys no longer reach the delegate (e.g. a single DynamoDB partition).
+ */
+public class HotKeyCache implements Cache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HotKeyCache.class);
+
+    private final Cache delegate;
+    private final HotKeyDetector detector;
+    private final com.google.common.cache.Cache<String, byte[]> pinned;
+
+    /**
+     * Creates a new HotKeyCache.
+     *
+     * @param delegate The cache to protect from hot keys
+     * @param config The hot-key configuration
+     */
+    public HotKeyCache(Cache delegate, HotKeyCacheConfig config) {
+        this.delegate = delegate;
+        this.detector = new HotKeyDetector(
+                config.getTrackedKeys(),
+                config.getWindow().toNanos(),
+                config.getHotThreshold(),
+                config.getMinHits(),
+                config.getTicker());
+        this.pinned = CacheBuilder.newBuilder()
+                .maximumSize(config.getLocalMaximumSize())
+                .expireAfterWrite(config.getLocalTtl(), TimeUnit.SECONDS)
+                .ticker(config.getTicker())
+                .build();
+    }
+
+    @Override
+    public void put(String key, byte[] value, int ttl) {
+        delegate.put(key, value, ttl);
+        updatePinned(key, value, ttl);
+    }
+
+    @Override
+    public void put(String key, byte[] value, int ttl, WritePriority priority) {
+        delegate.put(key, value, ttl, priority);
+        updatePinned(key, value, ttl);
+    }
+
+    @Override
+    public void putAll(Map<String, byte[]> values, int ttl) {
+        delegate.putAll(values, ttl);
+        values.forEach((key, value) -> updatePinned(key, value, ttl));
+    }
+
+    @Override
+    public void putExtendingTtl(String key, byte[] value, int ttl) {
+        delegate.putExtendingTtl(key, value, ttl);
+        // The value never changes, so a pinned copy stays valid
+    }
+
+    @Override
+    public Optional<byte[]> get(String key) {
+        boolean hot = detector.record(key);
+
+        byte[] local = pinned.getIfPresent(key);
+        if (local != null) {
+            return Optional.of(local);
+        }
+
+        Optional<byte[]> value = delegate.get(key);
+        value.ifPresent(v -> pin(key, v, hot));
+        return value;
+    }
+
+    /**
+     * Serves pinned keys locally and reads the others from the delegate in
+     * one {@link Cache#getAll(Collection)}, pinning those that are hot.
+     */
+    @Override
+    public Map<String, byte[]> getAll(Collection<String> keys) {
+        Map<String, byte[]> values = new HashMap<>();
+        List<String> unpinned = new ArrayList<>();
+        Set<String> hot = new HashSet<>();
+        for (String key : keys) {
+            if (detector.record(key)) {
+                hot.add(key);
+            }
+            byte[] local = pinned.getIfPresent(key);
+            if (local != null) {
+                values.put(key, local);
+            } else {
+                unpinned.add(key);
+            }
+        }
+        if (!unpinned.isEmpty()) {
+            delegate.getAll(unpinned).forEach((key, value) -> {
+                values.put(key, value);
+                pin(key, value, hot.contains(key));
+            });
+        }
+        return values;
+    }
+
+    /**
+     * Serves a pinned value locally, and otherwise loads through the
+     * delegate, so that its own coordination of concurrent misses, such as a
+     * fleet-wide fill lease, still applies.
+     */
+    @Override
+    public byte[] getOrLoad(String key, int ttl, Supplier<byte[]> loader) {
+        boolean hot = detector.record(key);
+        byte[] local = pinned.getIfPresent(key);
+        if (local != null) {
+            return local;
+        }
+        byte[] value = delegate.getOrLoad(key, ttl, loader);
+        if (value != null) {
+            pin(key, value, hot);
+        }
+        return value;
+    }
+
+    @Override
+    public Set<String> presentKeys(Collection<String> keys) {
+        Set<String> present = new HashSet<>();
+        List<String> unpinned = new ArrayList<>();
+        for (String key : keys) {
+            if (pinned.getIfPresent(key) != null) {
+                present.add(key);
+            } else {
+                unpinned.add(key);
+            }
+        }
+        if (!unpinned.isEmpty()) {
+            present.addAll(delegate.presentKeys(unpinned));
+        }
+        return present;
+    }
+
+    @Override
+    public void invalidate(String key) {
+        pinned.invalidate(key);
+        delegate.invalidate(key);
+    }
+
+    @Override
+    public void invalidateAll() {
+        pinned.invalidateAll();
+        delegate.invalidateAll();
+    }
+
+    private void pin(String key, byte[] value, boolean hot) {
+        if (hot) {
+            pinned.put(key, value);
+            LOGGER.debug("Pinned hot key: {}", key);
+        }
+    }
+
+    /**
+     * Keeps the pinned copy in step with writes made through this node.
+     */
+    private void updatePinned(String key, byte[] value, int ttl) {
+        if (pinned.getIfPresent(key) != null) {
+            if (ttl > 0) {
+                pinned.put(key, value);
+            } else {
+                pinned.invalidate(key);
+            }
+        }
+    }
+
+    /**
+     * Returns the keys currently detected as hot, hottest first.
+     *
+     * @return The hot keys with their estimated read counts
+     */
+    public List<HotKeyDetector.HotKey> getHotKeys() {
+        return detector.getHotKeys();
+    }
+
+    /**
+     * Returns the keys whose values are currently pinned locally.
+     *
+     * @return The pinned keys
+     */
+    public Set<String> getPinnedKeys() {
+        return Set.copyOf(pinned.asMap().keySet());
+    }
+}
@@ -0,0 +1,139 @@
+package com.coupang.dcache;
+
+import com.google.common.base.Ticker;
+
+import java.time.Duration;
+
+/**
+ * Configuration for {@link HotKeyCache}.
+ */
+public class HotKeyCacheConfig {
+    private final Duration window;
+    private final int trackedKeys;
+    private final double hotThreshold;
+    private final long minHits;
+    private final int localTtl;
+    private final long localMaximumSize;
+    private final Ticker ticker;
+
+    private HotKeyCacheConfig(Builder builder) {
+        this.window = builder.window;
+        this.trackedKeys = builder.trackedKeys;
+        this.hotThreshold = builder.hotThreshold;
+        this.minHits = builder.minHits;
+        this.localTtl = builder.localTtl;
+        this.localMaximumSize = builder.localMaximumSize;
+        this.ticker = builder.ticker;
+    }
+
+    public Duration getWindow() {
+        return window;
+    }
+
+    public int getTrackedKeys() {
+        return trackedKeys;
+    }
+
+    public double getHotThreshold() {
+        return hotThreshold;
+    }
+
+    public long getMinHits() {
+        return minHits;
+    }
+
+    public int getLocalTtl() {
+        return localTtl;
+    }
+
+    public long getLocalMaximumSize() {
+        return localMaximumSize;
+    }
+
+    public Ticker getTicker() {
+        return ticker;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private Duration window = Duration.ofSeconds(10);
+        private int trackedKeys = 100;
+        private double hotThreshold = 0.01; // 1% of reads in the window
+        private long minHits = 50;
+        private int localTtl = 5; // 5 seconds
+        private long localMaximumSize = 1000;
+        private Ticker ticker = Ticker.systemTicker();
+
+        /**
+         * Length of the sliding window over which reads are counted.
+         */
+        public Builder window(Duration window) {
+            this.window = window;
+            return this;
+        }
+
+        /**
+         * Number of keys tracked by the top-K sketch.
+         */
+        public Builder trackedKeys(int trackedKeys) {
+            this.trackedKeys = trackedKeys;
+            return this;
+        }
+
+        /**
+         * Fraction of all reads in the window a key needs to be considered hot.
+         */
+        public Builder hotThreshold(double hotThreshold) {
+            this.hotThreshold = hotThreshold;
+            return this;
+        }
+
+        /**
+         * Minimum number of reads in the window a key needs to be considered hot.
+         */
+        public Builder minHits(long minHits) {
+            this.minHits = minHits;
+            return this;
+        }
+
+        /**
+         * TTL in seconds of values pinned into the local hot-key cache.
+         */
+        public Builder localTtl(int localTtl) {
+            this.localTtl = localTtl;
+            return this;
+        }
+
+        /**
+         * Maximum number of values pinned into the local hot-key cache.
+         */
+        public Builder localMaximumSize(long localMaximumSize) {
+            this.localMaximumSize = localMaximumSize;
+            return this;
+        }
+
+        public Builder ticker(Ticker ticker) {
+            this.ticker = ticker;
+            return this;
+        }
+
+        public HotKeyCacheConfig build() {
+            if (window == null || window.isZero() || window.isNegative()) {
+                throw new IllegalArgumentException("Window must be positive");
+            }
+            if (trackedKeys <= 0) {
+                throw new IllegalArgumentException("Tracked keys must be positive");
+            }
+            if (hotThreshold <= 0 || hotThreshold > 1) {
+                throw new IllegalArgumentException("Hot threshold must be in (0, 1]");
+            }
+            if (localTtl <= 0) {
+                throw new IllegalArgumentException("Local TTL must be positive");
+            }
+            return new HotKeyCacheConfig(this);
+        }
+    }
+}
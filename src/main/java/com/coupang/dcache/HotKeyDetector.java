@@ -0,0 +1,369 @@
+package com.coupang.dcache;
+
+import com.google.common.base.Ticker;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Streaming top-K detector for frequently read keys.
+ * <p>
+ * Uses the space-saving algorithm over a sliding window made of two tumbling
+ * windows: the previous window's counts are weighted by how much of it still
+ * overlaps the sliding window. Memory is bounded by the configured capacity.
+ * <p>
+ * Keys are spread by hash over up to {@value #MAX_STRIPES} stripes, each
+ * with its own lock and a share of the capacity, so concurrent reads of
+ * different keys rarely contend; small capacities use a single stripe to
+ * keep the counts precise. Within a stripe the counters sit in buckets of
+ * equal count, ordered by count (the Stream-Summary structure), so
+ * incrementing a counter and finding the one to evict are O(1). The read
+ * total a key is compared against sums the stripes' totals without their
+ * locks, so it may miss a few concurrent reads.
+ */
+public class HotKeyDetector {
+    private static final int MAX_STRIPES = 16;
+    private static final int MIN_KEYS_PER_STRIPE = 64;
+
+    private final long windowNanos;
+    private final double hotThreshold;
+    private final long minHits;
+    private final Ticker ticker;
+    private final long origin;
+    private final Stripe[] stripes;
+
+    /**
+     * Creates a new detector.
+     *
+     * @param capacity Maximum number of keys tracked per window
+     * @param windowNanos Length of the sliding window in nanoseconds
+     * @param hotThreshold Fraction of all reads in the window a key needs to be hot
+     * @param minHits Minimum estimated reads in the window for a key to be hot
+     * @param ticker Time source
+     */
+    public HotKeyDetector(int capacity, long windowNanos, double hotThreshold, long minHits, Ticker ticker) {
+        this.windowNanos = windowNanos;
+        this.hotThreshold = hotThreshold;
+        this.minHits = minHits;
+        this.ticker = ticker;
+        this.origin = ticker.read();
+        int count = Math.max(1, Math.min(MAX_STRIPES, capacity / MIN_KEYS_PER_STRIPE));
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe((capacity + count - 1) / count);
+        }
+    }
+
+    /**
+     * Records a read of the given key.
+     *
+     * @param key The cache key
+     * @return true if the key is hot after this read
+     */
+    public boolean record(String key) {
+        long elapsed = ticker.read() - origin;
+        long window = elapsed / windowNanos;
+        double previousWeight = previousWeight(elapsed);
+        Stripe stripe = stripes[Math.floorMod(key.hashCode(), stripes.length)];
+        long estimated;
+        stripe.lock.lock();
+        try {
+            stripe.rotateTo(window);
+            stripe.currentTotal++;
+            estimated = stripe.estimate(stripe.increment(key), previousWeight);
+        } finally {
+            stripe.lock.unlock();
+        }
+        return isHot(estimated, total(window, previousWeight));
+    }
+
+    /**
+     * Returns the keys that are currently hot, hottest first.
+     *
+     * @return The hot keys with their estimated read counts in the sliding window
+     */
+    public List<HotKey> getHotKeys() {
+        long elapsed = ticker.read() - origin;
+        long window = elapsed / windowNanos;
+        double previousWeight = previousWeight(elapsed);
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                stripe.rotateTo(window);
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        double total = total(window, previousWeight);
+        List<HotKey> hotKeys = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                for (Counter counter : stripe.counters.values()) {
+                    long estimated = stripe.estimate(counter, previousWeight);
+                    if (isHot(estimated, total)) {
+                        hotKeys.add(new HotKey(counter.key, estimated, counter.error));
+                    }
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        hotKeys.sort(Comparator.comparingLong(HotKey::getEstimatedCount).reversed());
+        return hotKeys;
+    }
+
+    private boolean isHot(long estimated, double total) {
+        return estimated >= minHits && estimated >= hotThreshold * total;
+    }
+
+    /**
+     * @return The weight of the previous window in the sliding window
+     */
+    private double previousWeight(long elapsed) {
+        return 1.0 - (double) (elapsed % windowNanos) / windowNanos;
+    }
+
+    /**
+     * Sums the reads of every stripe in the sliding window, counting a
+     * stripe that has not rotated yet as if it had.
+     */
+    private double total(long window, double previousWeight) {
+        double total = 0;
+        for (Stripe stripe : stripes) {
+            long stripeWindow = stripe.window;
+            if (stripeWindow == window) {
+                total += stripe.currentTotal + stripe.previousTotal * previousWeight;
+            } else if (stripeWindow == window - 1) {
+                total += stripe.currentTotal * previousWeight;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Space-saving counters of the keys hashed to one stripe, guarded by its
+     * lock. The window and totals are also read without the lock.
+     */
+    private static final class Stripe {
+        private final int capacity;
+        private final ReentrantLock lock = new ReentrantLock();
+        private Map<String, Counter> counters = new HashMap<>();
+        private Map<String, Counter> previous = new HashMap<>();
+        // Bucket with the lowest count, first of a list in increasing count order
+        private Bucket min;
+        private volatile long window;
+        private volatile long currentTotal;
+        private volatile long previousTotal;
+
+        private Stripe(int capacity) {
+            this.capacity = capacity;
+        }
+
+        /**
+         * Rotates the windows if the current one is complete.
+         */
+        private void rotateTo(long target) {
+            if (target == window) {
+                return;
+            }
+            if (target == window + 1) {
+                previous = counters;
+                previousTotal = currentTotal;
+            } else {
+                previous = new HashMap<>();
+                previousTotal = 0;
+            }
+            counters = new HashMap<>();
+            min = null;
+            currentTotal = 0;
+            window = target;
+        }
+
+        /**
+         * Counts a read of a key, taking over the counter of the least read
+         * key when the stripe is full.
+         */
+        private Counter increment(String key) {
+            Counter counter = counters.get(key);
+            if (counter == null) {
+                if (counters.size() < capacity) {
+                    counter = new Counter(key, 0);
+                } else {
+                    Counter evicted = min.first;
+                    counters.remove(evicted.key);
+                    counter = new Counter(key, evicted.count);
+                    counter.count = evicted.count;
+                    evicted.bucket.replace(evicted, counter);
+                }
+                counters.put(key, counter);
+            }
+            moveUp(counter);
+            return counter;
+        }
+
+        /**
+         * Moves a counter to the bucket of its count plus one.
+         */
+        private void moveUp(Counter counter) {
+            long count = counter.count + 1;
+            Bucket from = counter.bucket;
+            Bucket after = from;
+            Bucket next = from == null ? min : from.next;
+            Bucket to;
+            if (next != null && next.count == count) {
+                to = next;
+            } else {
+                to = new Bucket(count);
+                to.prev = after;
+                to.next = next;
+                if (next != null) {
+                    next.prev = to;
+                }
+                if (after != null) {
+                    after.next = to;
+                } else {
+                    min = to;
+                }
+            }
+            if (from != null) {
+                from.remove(counter);
+                if (from.first == null) {
+                    unlink(from);
+                }
+            }
+            counter.count = count;
+            to.add(counter);
+        }
+
+        private void unlink(Bucket bucket) {
+            if (bucket.prev != null) {
+                bucket.prev.next = bucket.next;
+            } else {
+                min = bucket.next;
+            }
+            if (bucket.next != null) {
+                bucket.next.prev = bucket.prev;
+            }
+        }
+
+        private long estimate(Counter counter, double previousWeight) {
+            Counter old = previous.get(counter.key);
+            // Subtract the error so that keys which merely inherited a large
+            // minimum count from an evicted key are not reported as hot
+            long guaranteed = counter.count - counter.error;
+            return guaranteed + (old == null ? 0 : Math.round((old.count - old.error) * previousWeight));
+        }
+    }
+
+    /**
+     * Counters sharing one count, as a doubly linked list.
+     */
+    private static final class Bucket {
+        private final long count;
+        private Bucket prev;
+        private Bucket next;
+        private Counter first;
+
+        private Bucket(long count) {
+            this.count = count;
+        }
+
+        private void add(Counter counter) {
+            counter.bucket = this;
+            counter.prev = null;
+            counter.next = first;
+            if (first != null) {
+                first.prev = counter;
+            }
+            first = counter;
+        }
+
+        private void remove(Counter counter) {
+            if (counter.prev != null) {
+                counter.prev.next = counter.next;
+            } else {
+                first = counter.next;
+            }
+            if (counter.next != null) {
+                counter.next.prev = counter.prev;
+            }
+            counter.bucket = null;
+            counter.prev = null;
+            counter.next = null;
+        }
+
+        private void replace(Counter old, Counter counter) {
+            counter.bucket = this;
+            counter.prev = old.prev;
+            counter.next = old.next;
+            if (old.prev != null) {
+                old.prev.next = counter;
+            } else {
+                first = counter;
+            }
+            if (old.next != null) {
+                old.next.prev = counter;
+            }
+            old.bucket = null;
+            old.prev = null;
+            old.next = null;
+        }
+    }
+
+    private static final class Counter {
+        private final String key;
+        private final long error;
+        private long count;
+        private Bucket bucket;
+        private Counter prev;
+        private Counter next;
+
+        private Counter(String key, long error) {
+            this.key = key;
+            this.error = error;
+        }
+    }
+
+    /**
+     * A key detected as hot.
+     */
+    public static final class HotKey {
+        private final String key;
+        private final long estimatedCount;
+        private final long error;
+
+        public HotKey(String key, long estimatedCount, long error) {
+            this.key = key;
+            this.estimatedCount = estimatedCount;
+            this.error = error;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return Guaranteed lower bound of reads in the sliding window
+         */
+        public long getEstimatedCount() {
+            return estimatedCount;
+        }
+
+        /**
+         * @return Maximum overestimation of the raw space-saving counter
+         */
+        public long getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + estimatedCount;
+        }
+    }
+}
@@ -9,6 +9,7 @@ import com.coupang.dcache.serializer.JsonCacheEntrySerializer;
 import com.coupang.dcache.serializer.CacheKeySerializer;
 import java.time.Duration;
 import java.util.Objects;
+import java.util.function.BooleanSupplier;
 
 /**
  * Configuration options for HttpCache.
@@ -46,6 +47,7 @@ public class HttpCacheConfig {
     private final AwsCredentialsProvider credentialsProvider;
     private final String endpoint;
     private final boolean bypassCache;
+    private final BooleanSupplier bypassCondition;
     private final CacheKeyStrategy cacheKeyStrategy;
     private final String defaultTenant;
     private final String defaultCountryCode;
@@ -59,6 +61,18 @@ public class HttpCacheConfig {
     private final long writeCapacityUnits;
     private final boolean enableMultiTenancy;
     private final boolean includeCountryCode;
+    private final int maxConnections;
+    private final int maxConnectionsPerRoute;
+    private final Duration connectTimeout;
+    private final Duration socketTimeout;
+    private final Duration connectionRequestTimeout;
+    private final Duration keepAlive;
+    private final int chunkSize;
+    private final long maxCacheableSize;
+    private final WriteAdmissionConfig writeAdmission;
+    private final boolean dedupBodies;
+    private final int inlineBodySize;
+    private final AdaptiveTtl adaptiveTtl;
 
     private HttpCacheConfig(Builder builder) {
         this.tableName = builder.tableName;
@@ -67,6 +81,7 @@ public class HttpCacheConfig {
         this.credentialsProvider = builder.credentialsProvider;
         this.endpoint = builder.endpoint;
         this.bypassCache = builder.bypassCache;
+        this.bypassCondition = builder.bypassCondition;
         this.cacheKeyStrategy = builder.cacheKeyStrategy;
         this.defaultTenant = builder.defaultTenant;
         this.defaultCountryCode = builder.defaultCountryCode;
@@ -80,6 +95,18 @@ public class HttpCacheConfig {
         this.writeCapacityUnits = builder.writeCapacityUnits;
         this.enableMultiTenancy = builder.enableMultiTenancy;
         this.includeCountryCode = builder.includeCountryCode;
+        this.maxConnections = builder.maxConnections;
+        this.maxConnectionsPerRoute = builder.maxConnectionsPerRoute;
+        this.connectTimeout = builder.connectTimeout;
+        this.socketTimeout = builder.socketTimeout;
+        this.connectionRequestTimeout = builder.connectionRequestTimeout;
+        this.keepAlive = builder.keepAlive;
+        this.chunkSize = builder.chunkSize;
+        this.maxCacheableSize = builder.maxCacheableSize;
+        this.writeAdmission = builder.writeAdmission;
+        this.dedupBodies = builder.dedupBodies;
+        this.inlineBodySize = builder.inlineBodySize;
+        this.adaptiveTtl = builder.adaptiveTtl;
     }
 
     public static Builder builder() {
@@ -110,8 +137,14 @@ public class HttpCacheConfig {
         return endpoint;
     }
 
+    /**
+     * Returns whether the cache should be bypassed, either because it was
+     * configured so or because the runtime bypass condition currently holds.
+     *
+     * @return true to go straight to origin
+     */
     public boolean isBypassCache() {
-        return bypassCache;
+        return bypassCache || (bypassCondition != null && bypassCondition.getAsBoolean());
     }
 
     public CacheKeyStrategy getCacheKeyStrategy() {
@@ -166,6 +199,54 @@ public class HttpCacheConfig {
         return includeCountryCode;
     }
 
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    public Duration getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public Duration getSocketTimeout() {
+        return socketTimeout;
+    }
+
+    public Duration getConnectionRequestTimeout() {
+        return connectionRequestTimeout;
+    }
+
+    public Duration getKeepAlive() {
+        return keepAlive;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public long getMaxCacheableSize() {
+        return maxCacheableSize;
+    }
+
+    public WriteAdmissionConfig getWriteAdmission() {
+        return writeAdmission;
+    }
+
+    public boolean isDedupBodies() {
+        return dedupBodies;
+    }
+
+    public int getInlineBodySize() {
+        return inlineBodySize;
+    }
+
+    public AdaptiveTtl getAdaptiveTtl() {
+        return adaptiveTtl;
+    }
+
     /**
      * Builder for HttpCacheConfig.
      */
@@ -176,6 +257,7 @@ public class HttpCacheConfig {
         private AwsCredentialsProvider credentialsProvider = DefaultCredentialsProvider.create();
         private String endpoint = null;
         private boolean bypassCache = false;
+        private BooleanSupplier bypassCondition;
         private CacheKeyStrategy cacheKeyStrategy = CacheKeyStrategy.SIMPLE;
         private String defaultTenant = null;
         private String defaultCountryCode = null;
@@ -189,6 +271,18 @@ public class HttpCacheConfig {
         private long writeCapacityUnits = 5;
         private boolean enableMultiTenancy = false;
         private boolean includeCountryCode = false;
+        private int maxConnections = 200;
+        private int maxConnectionsPerRoute = 50;
+        private Duration connectTimeout = Duration.ofSeconds(2);
+        private Duration socketTimeout = Duration.ofSeconds(10);
+        private Duration connectionRequestTimeout = Duration.ofSeconds(1);
+        private Duration keepAlive = Duration.ofSeconds(30);
+        private int chunkSize = 256 * 1024;
+        private long maxCacheableSize = 10L * 1024 * 1024;
+        private WriteAdmissionConfig writeAdmission;
+        private boolean dedupBodies = false;
+        private int inlineBodySize = 4096;
+        private AdaptiveTtl adaptiveTtl;
 
         private Builder() {
         }
@@ -223,6 +317,16 @@ public class HttpCacheConfig {
             return this;
         }
 
+        /**
+         * Bypasses the cache whenever the condition holds, e.g.
+         * {@code cache.getCircuitBreaker()::isOpen} when there is no local tier
+         * to serve from while the remote tier is down.
+         */
+        public Builder bypassCacheWhen(BooleanSupplier bypassCondition) {
+            this.bypassCondition = bypassCondition;
+            return this;
+        }
+
         public Builder cacheKeyStrategy(CacheKeyStrategy cacheKeyStrategy) {
             this.cacheKeyStrategy = cacheKeyStrategy;
             return this;
@@ -288,10 +392,126 @@ public class HttpCacheConfig {
             return this;
         }
 
+        /**
+         * Maximum number of pooled origin connections of a {@link CachingHttpClient}.
+         */
+        public Builder maxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+            return this;
+        }
+
+        /**
+         * Maximum number of pooled connections to a single origin host.
+         */
+        public Builder maxConnectionsPerRoute(int maxConnectionsPerRoute) {
+            this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+            return this;
+        }
+
+        public Builder connectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        /**
+         * Maximum time without data while reading an origin response.
+         */
+        public Builder socketTimeout(Duration socketTimeout) {
+            this.socketTimeout = socketTimeout;
+            return this;
+        }
+
+        /**
+         * Maximum time to wait for a pooled connection when the pool is exhausted.
+         */
+        public Builder connectionRequestTimeout(Duration connectionRequestTimeout) {
+            this.connectionRequestTimeout = connectionRequestTimeout;
+            return this;
+        }
+
+        /**
+         * How long an idle origin connection is kept for reuse, unless the
+         * origin's {@code Keep-Alive} header asks for less.
+         */
+        public Builder keepAlive(Duration keepAlive) {
+            this.keepAlive = keepAlive;
+            return this;
+        }
+
+        /**
+         * Bodies larger than this are cached as separate chunk entries of this
+         * size. Keep it below the 400 KB DynamoDB item limit.
+         */
+        public Builder chunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * Responses with larger bodies are passed through without being cached.
+         */
+        public Builder maxCacheableSize(long maxCacheableSize) {
+            this.maxCacheableSize = maxCacheableSize;
+            return this;
+        }
+
+        /**
+         * Caches a response only once its key has been requested often
+         * enough. Bodies are sized by their length, or by their
+         * {@code Content-Length} when streamed; a streamed body of unknown
+         * length counts as the maximum cacheable size.
+         */
+        public Builder writeAdmission(WriteAdmissionConfig writeAdmission) {
+            this.writeAdmission = writeAdmission;
+            return this;
+        }
+
+        /**
+         * Stores each distinct body once, in entries keyed by its SHA-256 and
+         * shared by every key with the same body, instead of once per key.
+         */
+        public Builder dedupBodies(boolean dedupBodies) {
+            this.dedupBodies = dedupBodies;
+            return this;
+        }
+
+        /**
+         * With body deduplication, bodies up to this size stay inline in their
+         * entry, so reading them takes a single lookup.
+         */
+        public Builder inlineBodySize(int inlineBodySize) {
+            this.inlineBodySize = inlineBodySize;
+            return this;
+        }
+
+        /**
+         * Learns the TTL of each key from how often its origin body changes,
+         * for both {@link CachingHttpClient} and {@code @Cacheable} methods.
+         * The default and annotation TTLs apply until enough refreshes were
+         * seen. The policy is shared, not owned: the caller closes it.
+         */
+        public Builder adaptiveTtl(AdaptiveTtl adaptiveTtl) {
+            this.adaptiveTtl = adaptiveTtl;
+            return this;
+        }
+
         public HttpCacheConfig build() {
             if (dynamoDbClient == null) {
                 throw new IllegalArgumentException("DynamoDB client must be provided");
             }
+            if (maxConnections <= 0 || maxConnectionsPerRoute <= 0) {
+                throw new IllegalArgumentException("Max connections must be positive");
+            }
+            if (connectTimeout == null || socketTimeout == null || connectionRequestTimeout == null
+                    || keepAlive == null) {
+                throw new IllegalArgumentException("Timeouts and keep-alive are required");
+            }
+            if (chunkSize <= 0 || maxCacheableSize < 0) {
+                throw new IllegalArgumentException("Chunk size must be positive and max cacheable size not negative");
+            }
+            if (inlineBodySize < 0 || inlineBodySize > chunkSize) {
+                throw new IllegalArgumentException("Inline body size must be between 0 and the chunk size");
+            }
             return new HttpCacheConfig(this);
         }
     }
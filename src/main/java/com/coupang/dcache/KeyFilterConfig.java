@@ -0,0 +1,131 @@
+package com.coupang.dcache;
+
+import com.coupang.dcache.invalidation.InvalidationBus;
+
+import java.time.Duration;
+
+/**
+ * Configuration of the key filter of {@link DynamoDbCache}, which answers
+ * gets for keys that are certainly not in the table without a round trip.
+ */
+public class KeyFilterConfig {
+    private final long expectedKeys;
+    private final double falsePositiveRate;
+    private final Duration rebuildInterval;
+    private final int scanSegments;
+    private final InvalidationBus invalidationBus;
+
+    private KeyFilterConfig(Builder builder) {
+        this.expectedKeys = builder.expectedKeys;
+        this.falsePositiveRate = builder.falsePositiveRate;
+        this.rebuildInterval = builder.rebuildInterval;
+        this.scanSegments = builder.scanSegments;
+        this.invalidationBus = builder.invalidationBus;
+    }
+
+    public long getExpectedKeys() {
+        return expectedKeys;
+    }
+
+    public double getFalsePositiveRate() {
+        return falsePositiveRate;
+    }
+
+    public Duration getRebuildInterval() {
+        return rebuildInterval;
+    }
+
+    public int getScanSegments() {
+        return scanSegments;
+    }
+
+    public InvalidationBus getInvalidationBus() {
+        return invalidationBus;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private long expectedKeys = 1_000_000;
+        private double falsePositiveRate = 0.01;
+        private Duration rebuildInterval = Duration.ofHours(6);
+        private int scanSegments = 4;
+        private InvalidationBus invalidationBus;
+
+        /**
+         * Number of keys the filter is sized for. Memory grows linearly with
+         * it, at about 4.8 bytes per key for a 1% false-positive rate.
+         */
+        public Builder expectedKeys(long expectedKeys) {
+            this.expectedKeys = expectedKeys;
+            return this;
+        }
+
+        /**
+         * Share of gets for absent keys that still read the table, at the
+         * expected number of keys.
+         */
+        public Builder falsePositiveRate(double falsePositiveRate) {
+            this.falsePositiveRate = falsePositiveRate;
+            return this;
+        }
+
+        /**
+         * How often the filter is rebuilt from a scan of the table, which
+         * drops expired and removed keys and adds any write the invalidation
+         * bus missed. The filter is only consulted once the first scan has
+         * completed. Every node scans the whole table, and a scan is charged
+         * read capacity for the full size of every item, not just the
+         * projected keys, so the default is long: 6 hours. Null scans only
+         * once at start, for a node that is the only writer of its table;
+         * invalidated and expired keys then stay in the filter.
+         */
+        public Builder rebuildInterval(Duration rebuildInterval) {
+            this.rebuildInterval = rebuildInterval;
+            return this;
+        }
+
+        /**
+         * Number of segments of the parallel scan rebuilding the filter.
+         */
+        public Builder scanSegments(int scanSegments) {
+            this.scanSegments = scanSegments;
+            return this;
+        }
+
+        /**
+         * Bus announcing the keys other nodes write, e.g. a
+         * {@link com.coupang.dcache.invalidation.DynamoDbStreamsInvalidationBus}.
+         * Each announced key is added to the filter, since it may now be in
+         * the table. Required unless this node is the only writer, as
+         * otherwise keys written by other nodes would be answered as misses
+         * until the next scan.
+         */
+        public Builder invalidationBus(InvalidationBus invalidationBus) {
+            this.invalidationBus = invalidationBus;
+            return this;
+        }
+
+        public KeyFilterConfig build() {
+            if (expectedKeys <= 0) {
+                throw new IllegalArgumentException("Expected keys must be positive");
+            }
+            if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+                throw new IllegalArgumentException("False-positive rate must be in (0, 1)");
+            }
+            if (rebuildInterval != null && (rebuildInterval.isZero() || rebuildInterval.isNegative())) {
+                throw new IllegalArgumentException("Rebuild interval must be positive");
+            }
+            if (rebuildInterval != null && invalidationBus == null) {
+                throw new IllegalArgumentException(
+                    "Invalidation bus is required with several writers; set no rebuild interval for a single writer");
+            }
+            if (scanSegments < 1) {
+                throw new IllegalArgumentException("Scan segments must be positive");
+            }
+            return new KeyFilterConfig(this);
+        }
+    }
+}
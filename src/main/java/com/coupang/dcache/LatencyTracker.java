@@ -0,0 +1,80 @@
+package com.coupang.dcache;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Tracks percentiles of recent call latencies.
+ * <p>
+ * Latencies are kept in a ring of the most recent samples, so the
+ * percentiles follow changes in the latency distribution. Percentiles are
+ * computed by sorting a snapshot of the ring, which is cheap at the default
+ * size and only done when they are read.
+ */
+public class LatencyTracker {
+    private final AtomicLongArray samples;
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * Creates a tracker keeping the given number of recent samples.
+     *
+     * @param size The number of samples kept
+     */
+    public LatencyTracker(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Size must be positive");
+        }
+        this.samples = new AtomicLongArray(size);
+    }
+
+    /**
+     * Records one latency.
+     *
+     * @param nanos The latency in nanoseconds
+     */
+    public void record(long nanos) {
+        long index = count.getAndIncrement();
+        samples.set((int) (index % samples.length()), nanos);
+    }
+
+    /**
+     * Returns the number of latencies recorded so far.
+     *
+     * @return The total number of samples
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Returns a percentile of the recent latencies.
+     *
+     * @param percentile The percentile, in (0, 1]
+     * @return The latency in nanoseconds, or 0 if nothing was recorded yet
+     */
+    public long percentile(double percentile) {
+        int size = (int) Math.min(count.get(), samples.length());
+        if (size == 0) {
+            return 0;
+        }
+        long[] snapshot = new long[size];
+        for (int i = 0; i < size; i++) {
+            snapshot[i] = samples.get(i);
+        }
+        Arrays.sort(snapshot);
+        int rank = (int) Math.ceil(percentile * size) - 1;
+        return snapshot[Math.max(0, Math.min(rank, size - 1))];
+    }
+
+    /**
+     * Returns a percentile of the recent latencies in microseconds.
+     *
+     * @param percentile The percentile, in (0, 1]
+     * @return The latency in microseconds, or 0 if nothing was recorded yet
+     */
+    public long percentileMicros(double percentile) {
+        return TimeUnit.NANOSECONDS.toMicros(percentile(percentile));
+    }
+}
@@ -0,0 +1,150 @@
+package com.coupang.dcache;
+
+import java.time.Duration;
+
+/**
+ * Configuration of the prefetcher of {@link TieredCache}, which reads the
+ * keys that usually follow a key into L1 before they are asked for.
+ */
+public class PrefetchConfig {
+    private final double minConfidence;
+    private final int maxPrefetchKeys;
+    private final long trackedKeys;
+    private final int successorsPerKey;
+    private final Duration maxGap;
+    private final RequestBatchingConfig batching;
+    private final ExecutionStrategy executionStrategy;
+
+    private PrefetchConfig(Builder builder) {
+        this.minConfidence = builder.minConfidence;
+        this.maxPrefetchKeys = builder.maxPrefetchKeys;
+        this.trackedKeys = builder.trackedKeys;
+        this.successorsPerKey = builder.successorsPerKey;
+        this.maxGap = builder.maxGap;
+        this.batching = builder.batching;
+        this.executionStrategy = builder.executionStrategy;
+    }
+
+    public double getMinConfidence() {
+        return minConfidence;
+    }
+
+    public int getMaxPrefetchKeys() {
+        return maxPrefetchKeys;
+    }
+
+    public long getTrackedKeys() {
+        return trackedKeys;
+    }
+
+    public int getSuccessorsPerKey() {
+        return successorsPerKey;
+    }
+
+    public Duration getMaxGap() {
+        return maxGap;
+    }
+
+    public RequestBatchingConfig getBatching() {
+        return batching;
+    }
+
+    public ExecutionStrategy getExecutionStrategy() {
+        return executionStrategy;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private double minConfidence = 0.5;
+        private int maxPrefetchKeys = 4;
+        private long trackedKeys = 10_000;
+        private int successorsPerKey = 4;
+        private Duration maxGap = Duration.ofSeconds(1);
+        private RequestBatchingConfig batching = RequestBatchingConfig.builder().window(Duration.ofMillis(2)).build();
+        private ExecutionStrategy executionStrategy = ExecutionStrategy.defaultStrategy();
+
+        /**
+         * Share of the reads following a key that must be of another key for
+         * that key to be prefetched. Lower values prefetch more keys, more of
+         * which are never read.
+         */
+        public Builder minConfidence(double minConfidence) {
+            this.minConfidence = minConfidence;
+            return this;
+        }
+
+        /**
+         * Maximum number of keys prefetched after one read.
+         */
+        public Builder maxPrefetchKeys(int maxPrefetchKeys) {
+            this.maxPrefetchKeys = maxPrefetchKeys;
+            return this;
+        }
+
+        /**
+         * Number of keys whose successors are tracked. Each takes about 150
+         * bytes plus its key and the keys of its successors.
+         */
+        public Builder trackedKeys(long trackedKeys) {
+            this.trackedKeys = trackedKeys;
+            return this;
+        }
+
+        /**
+         * Number of successors counted per key.
+         */
+        public Builder successorsPerKey(int successorsPerKey) {
+            this.successorsPerKey = successorsPerKey;
+            return this;
+        }
+
+        /**
+         * Longest time between two reads on one thread for the second to count
+         * as following the first.
+         */
+        public Builder maxGap(Duration maxGap) {
+            this.maxGap = maxGap;
+            return this;
+        }
+
+        /**
+         * How prefetches from concurrent reads are gathered into one
+         * {@link Cache#getAll(java.util.Collection)} of the remote tier.
+         */
+        public Builder batching(RequestBatchingConfig batching) {
+            this.batching = batching;
+            return this;
+        }
+
+        /**
+         * Threads reading prefetched keys. Defaults to virtual threads on
+         * Java 21+ and bounded pools otherwise.
+         */
+        public Builder executionStrategy(ExecutionStrategy executionStrategy) {
+            this.executionStrategy = executionStrategy;
+            return this;
+        }
+
+        public PrefetchConfig build() {
+            if (minConfidence <= 0 || minConfidence > 1) {
+                throw new IllegalArgumentException("Minimum confidence must be in (0, 1]");
+            }
+            if (maxPrefetchKeys < 1 || maxPrefetchKeys > successorsPerKey) {
+                throw new IllegalArgumentException("Max prefetch keys must be between 1 and the successors per key");
+            }
+            if (trackedKeys <= 0) {
+                throw new IllegalArgumentException("Tracked keys must be positive");
+            }
+            if (maxGap == null || maxGap.isZero() || maxGap.isNegative()) {
+                throw new IllegalArgumentException("Max gap must be positive");
+            }
+            if (batching == null) {
+                throw new IllegalArgumentException("Batching configuration is required");
+            }
+            return new PrefetchConfig(this);
+        }
+    }
+}
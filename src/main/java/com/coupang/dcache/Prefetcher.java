@@ -0,0 +1,222 @@
+package com.coupang.dcache;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Reads the keys that usually follow a key into the local tier of a
+ * {@link TieredCache} before they are asked for.
+ * <p>
+ * Each read of a key counts as a transition from the key read before it on
+ * the same thread, if that read was recent enough, in a bounded
+ * {@link TransitionSketch}. After a read, the successors that followed the key
+ * at least the configured share of the time and are not in L1 yet are read
+ * from the remote tier in the background. Prefetches from concurrent reads
+ * are gathered into one {@link Cache#getAll(java.util.Collection)}, which a
+ * {@link DynamoDbCache} serves with {@code BatchGetItem}.
+ * <p>
+ * A prefetched value is dropped rather than copied into L1 if its key was
+ * written or invalidated while it was being read, so that a prefetch does not
+ * bring back a value older than one put in the meantime. A prefetch is useful
+ * when its value is read from L1, and wasted when the key was not found, when
+ * the value was dropped because the key changed, or when it left L1 unread.
+ */
+public class Prefetcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Prefetcher.class);
+    private static final int VERSION_STRIPES = 1024;
+
+    private static final class LastRead {
+        private final String key;
+        private final long nanos;
+
+        private LastRead(String key, long nanos) {
+            this.key = key;
+            this.nanos = nanos;
+        }
+    }
+
+    private final Cache localCache;
+    private final int localTtl;
+    private final PrefetchConfig config;
+    private final long maxGapNanos;
+    private final TransitionSketch sketch;
+    private final ThreadLocal<LastRead> lastRead = new ThreadLocal<>();
+    private final RequestBatcher<String, byte[]> batcher;
+    private final ExecutorService executor;
+    // Bumped on every change of a key in the stripe, to detect prefetches overtaken by writes
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    private final com.google.common.cache.Cache<String, Boolean> unread;
+    private final AtomicLong prefetches = new AtomicLong();
+    private final AtomicLong useful = new AtomicLong();
+    private final AtomicLong notFound = new AtomicLong();
+    private final AtomicLong overtaken = new AtomicLong();
+    private final AtomicLong expiredUnread = new AtomicLong();
+
+    Prefetcher(Cache localCache, Cache remoteCache, int localTtl, PrefetchConfig config) {
+        this.localCache = localCache;
+        this.localTtl = localTtl;
+        this.config = config;
+        this.maxGapNanos = config.getMaxGap().toNanos();
+        this.sketch = new TransitionSketch(config.getTrackedKeys(), config.getSuccessorsPerKey());
+        this.batcher = new RequestBatcher<>("dcache-prefetch", config.getBatching(),
+            batch -> remoteCache.getAll(batch.keySet()), config.getExecutionStrategy());
+        this.executor = config.getExecutionStrategy().newExecutor("dcache-prefetch-submit");
+        this.unread = CacheBuilder.newBuilder()
+            .maximumSize(config.getTrackedKeys())
+            .expireAfterWrite(localTtl, TimeUnit.SECONDS)
+            .<String, Boolean>removalListener(removal -> {
+                if (removal.getCause() != RemovalCause.EXPLICIT && removal.getCause() != RemovalCause.REPLACED) {
+                    expiredUnread.incrementAndGet();
+                }
+            })
+            .build();
+    }
+
+    /**
+     * Records a read and prefetches the keys likely to be read next.
+     *
+     * @param key The key read
+     * @param localHit Whether the value was found in L1
+     */
+    void onRead(String key, boolean localHit) {
+        if (localHit && unread.asMap().remove(key) != null) {
+            useful.incrementAndGet();
+        }
+        long now = System.nanoTime();
+        LastRead previous = lastRead.get();
+        lastRead.set(new LastRead(key, now));
+        if (previous != null && now - previous.nanos <= maxGapNanos && !previous.key.equals(key)) {
+            sketch.record(previous.key, key);
+        }
+
+        List<String> predicted = sketch.predict(key, config.getMinConfidence(), config.getMaxPrefetchKeys());
+        for (String next : predicted) {
+            if (unread.getIfPresent(next) == null && !inFlight.contains(next) && localCache.get(next).isEmpty()
+                    && inFlight.add(next)) {
+                prefetch(next);
+            }
+        }
+    }
+
+    /**
+     * Marks a key as written or invalidated, so that a prefetch of it in progress is dropped.
+     */
+    void onChange(String key) {
+        versions.incrementAndGet(stripe(key));
+    }
+
+    /**
+     * Marks every key as changed.
+     */
+    void onChangeAll() {
+        for (int i = 0; i < VERSION_STRIPES; i++) {
+            versions.incrementAndGet(i);
+        }
+    }
+
+    /**
+     * Returns the number of keys read ahead from the remote tier.
+     *
+     * @return The number of prefetches
+     */
+    public long getPrefetches() {
+        return prefetches.get();
+    }
+
+    /**
+     * Returns the number of prefetched values read from L1 before they left it.
+     *
+     * @return The number of useful prefetches
+     */
+    public long getUsefulPrefetches() {
+        return useful.get();
+    }
+
+    /**
+     * Returns the number of remote reads spent on prefetches that served no
+     * read: keys not found, values dropped because their key changed, and
+     * values that left L1 unread.
+     *
+     * @return The number of wasted prefetches
+     */
+    public long getWastedPrefetches() {
+        unread.cleanUp();
+        return notFound.get() + overtaken.get() + expiredUnread.get();
+    }
+
+    /**
+     * Returns the share of settled prefetches that were useful. Prefetched
+     * values still in L1 and unread are not counted yet.
+     *
+     * @return The accuracy in [0, 1], or 0 before any prefetch settled
+     */
+    public double getAccuracy() {
+        long wasted = getWastedPrefetches();
+        long hits = useful.get();
+        return hits + wasted == 0 ? 0 : (double) hits / (hits + wasted);
+    }
+
+    /**
+     * Returns the number of keys whose successors are tracked.
+     *
+     * @return The number of tracked keys
+     */
+    public long getTrackedKeys() {
+        return sketch.getTrackedKeys();
+    }
+
+    void close() {
+        executor.shutdown();
+        batcher.close();
+    }
+
+    private void prefetch(String key) {
+        long version = versions.get(stripe(key));
+        try {
+            // Submitting from another thread keeps a batch that fills up from being read on the caller's
+            executor.execute(() -> {
+                prefetches.incrementAndGet();
+                batcher.submit(key, key).whenComplete((value, error) -> complete(key, version, value, error));
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(key);
+            LOGGER.debug("Prefetch of key {} rejected", key, e);
+        }
+    }
+
+    private void complete(String key, long version, byte[] value, Throwable error) {
+        try {
+            if (error != null) {
+                LOGGER.debug("Prefetch of key {} failed", key, error);
+                notFound.incrementAndGet();
+            } else if (value == null) {
+                notFound.incrementAndGet();
+            } else if (versions.get(stripe(key)) != version || localCache.get(key).isPresent()) {
+                overtaken.incrementAndGet();
+            } else {
+                // Tracked first, so that a read right after the copy counts it as useful
+                unread.put(key, Boolean.TRUE);
+                localCache.put(key, value, localTtl, WritePriority.LOW);
+            }
+        } finally {
+            inFlight.remove(key);
+        }
+    }
+
+    private static int stripe(String key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (VERSION_STRIPES - 1);
+    }
+}
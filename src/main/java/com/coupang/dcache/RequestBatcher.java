@@ -0,0 +1,178 @@
+package com.coupang.dcache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Gathers single-key requests made within a short window into one batch, in
+ * the manner of a DataLoader.
+ * <p>
+ * The first request of a batch starts the window; the batch is dispatched
+ * when the window ends, or on the thread of the request that fills it.
+ * Requests for a key already in the batch share its result, and the request
+ * made last is the one dispatched, so a batch never holds a key twice.
+ *
+ * @param <T> The request type
+ * @param <R> The result type
+ */
+final class RequestBatcher<T, R> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RequestBatcher.class);
+
+    private static final class Pending<T, R> {
+        private T request;
+        private final CompletableFuture<R> result = new CompletableFuture<>();
+
+        private Pending(T request) {
+            this.request = request;
+        }
+    }
+
+    private final Function<Map<String, T>, Map<String, R>> dispatcher;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService timer;
+    private final ExecutorService executor;
+    private final ReentrantLock lock = new ReentrantLock();
+    private Map<String, Pending<T, R>> pending = new LinkedHashMap<>();
+    private long generation;
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong deduplicated = new AtomicLong();
+
+    /**
+     * @param name The thread name prefix
+     * @param config The window and the maximum batch size
+     * @param dispatcher Sends one batch and returns the results by key; keys without a result complete with null
+     * @param executionStrategy Provides the timer and the threads dispatching batches whose window ended
+     */
+    RequestBatcher(String name, RequestBatchingConfig config, Function<Map<String, T>, Map<String, R>> dispatcher,
+                   ExecutionStrategy executionStrategy) {
+        this.dispatcher = dispatcher;
+        this.windowNanos = config.getWindow().toNanos();
+        this.maxBatchSize = config.getMaxBatchSize();
+        this.timer = executionStrategy.newScheduler(name + "-timer");
+        this.executor = executionStrategy.newExecutor(name);
+    }
+
+    /**
+     * Adds a request to the current batch.
+     *
+     * @return The result, completed when the batch has been dispatched
+     */
+    CompletableFuture<R> submit(String key, T request) {
+        requests.incrementAndGet();
+        Map<String, Pending<T, R>> full = null;
+        long scheduled = -1;
+        Pending<T, R> entry;
+        lock.lock();
+        try {
+            entry = pending.get(key);
+            if (entry != null) {
+                entry.request = request;
+                deduplicated.incrementAndGet();
+                return entry.result;
+            }
+            entry = new Pending<>(request);
+            pending.put(key, entry);
+            if (pending.size() >= maxBatchSize) {
+                full = takeBatch();
+            } else if (pending.size() == 1) {
+                scheduled = generation;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (full != null) {
+            dispatch(full);
+        } else if (scheduled >= 0) {
+            long batch = scheduled;
+            try {
+                timer.schedule(() -> dispatchWindow(batch), windowNanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                // Closed: send the batch now rather than leaving the caller waiting
+                dispatchWindow(batch);
+            }
+        }
+        return entry.result;
+    }
+
+    /**
+     * Dispatches the pending batch and stops the timer.
+     */
+    void close() {
+        timer.shutdownNow();
+        Map<String, Pending<T, R>> remaining;
+        lock.lock();
+        try {
+            remaining = takeBatch();
+        } finally {
+            lock.unlock();
+        }
+        if (!remaining.isEmpty()) {
+            dispatch(remaining);
+        }
+        executor.shutdown();
+    }
+
+    long getBatchCount() {
+        return batches.get();
+    }
+
+    long getRequestCount() {
+        return requests.get();
+    }
+
+    long getDeduplicatedCount() {
+        return deduplicated.get();
+    }
+
+    private Map<String, Pending<T, R>> takeBatch() {
+        Map<String, Pending<T, R>> batch = pending;
+        pending = new LinkedHashMap<>();
+        generation++;
+        return batch;
+    }
+
+    private void dispatchWindow(long batchGeneration) {
+        Map<String, Pending<T, R>> batch;
+        lock.lock();
+        try {
+            if (generation != batchGeneration || pending.isEmpty()) {
+                // Already dispatched because it filled up
+                return;
+            }
+            batch = takeBatch();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            executor.execute(() -> dispatch(batch));
+        } catch (RejectedExecutionException e) {
+            dispatch(batch);
+        }
+    }
+
+    private void dispatch(Map<String, Pending<T, R>> batch) {
+        batches.incrementAndGet();
+        Map<String, T> batchRequests = new LinkedHashMap<>();
+        batch.forEach((key, entry) -> batchRequests.put(key, entry.request));
+        try {
+            Map<String, R> results = dispatcher.apply(batchRequests);
+            batch.forEach((key, entry) -> entry.result.complete(results.get(key)));
+        } catch (RuntimeException e) {
+            LOGGER.debug("Batch of {} requests failed", batch.size(), e);
+            batch.values().forEach(entry -> entry.result.completeExceptionally(e));
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.coupang.dcache;
+
+import java.time.Duration;
+
+/**
+ * Configuration of request batching in {@link DynamoDbCache}: concurrent
+ * single-key gets are sent as one {@code BatchGetItem}, and concurrent puts
+ * as {@code BatchWriteItem} calls.
+ */
+public class RequestBatchingConfig {
+    /**
+     * Maximum number of keys in one {@code BatchGetItem}.
+     */
+    public static final int MAX_BATCH_SIZE = 100;
+
+    private final Duration window;
+    private final int maxBatchSize;
+    private final boolean batchPuts;
+
+    private RequestBatchingConfig(Builder builder) {
+        this.window = builder.window;
+        this.maxBatchSize = builder.maxBatchSize;
+        this.batchPuts = builder.batchPuts;
+    }
+
+    public Duration getWindow() {
+        return window;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public boolean isBatchPuts() {
+        return batchPuts;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private Duration window = Duration.ofMillis(1);
+        private int maxBatchSize = MAX_BATCH_SIZE;
+        private boolean batchPuts = true;
+
+        /**
+         * How long the first request of a batch waits for others to join it.
+         * Every batched call takes up to this much longer.
+         */
+        public Builder window(Duration window) {
+            this.window = window;
+            return this;
+        }
+
+        /**
+         * Number of distinct keys at which a batch is sent without waiting
+         * for the window to end, at most {@value RequestBatchingConfig#MAX_BATCH_SIZE}.
+         */
+        public Builder maxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * Whether puts are batched too. Gets are always batched.
+         */
+        public Builder batchPuts(boolean batchPuts) {
+            this.batchPuts = batchPuts;
+            return this;
+        }
+
+        public RequestBatchingConfig build() {
+            if (window == null || window.isZero() || window.isNegative()) {
+                throw new IllegalArgumentException("Window must be positive");
+            }
+            if (maxBatchSize < 1 || maxBatchSize > MAX_BATCH_SIZE) {
+                throw new IllegalArgumentException("Max batch size must be between 1 and " + MAX_BATCH_SIZE);
+            }
+            return new RequestBatchingConfig(this);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.coupang.dcache;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Decides how many read replicas ("shards") {@link DynamoDbCache} keeps for a key.
+ * <p>
+ * With N shards a put writes N copies under {@code key#0..key#N-1} and a get
+ * reads one of them at random. This spreads reads of a hot key over N
+ * partition keys at the cost of N times the write capacity and storage for
+ * every put. The shard count is chosen by the longest matching key prefix.
+ */
+public class ShardingPolicy {
+    private static final ShardingPolicy NONE = builder().build();
+
+    private final int defaultShards;
+    private final TreeMap<String, Integer> prefixShards;
+
+    private ShardingPolicy(Builder builder) {
+        this.defaultShards = builder.defaultShards;
+        this.prefixShards = new TreeMap<>(builder.prefixShards);
+    }
+
+    /**
+     * Returns a policy that keeps a single copy of every key.
+     *
+     * @return The policy
+     */
+    public static ShardingPolicy none() {
+        return NONE;
+    }
+
+    /**
+     * Returns the number of copies to keep for a key.
+     *
+     * @param key The cache key
+     * @return The shard count, at least 1
+     */
+    public int shardCount(String key) {
+        // Walk candidate prefixes from the longest that sorts before the key
+        Map.Entry<String, Integer> entry = prefixShards.floorEntry(key);
+        while (entry != null) {
+            if (key.startsWith(entry.getKey())) {
+                return entry.getValue();
+            }
+            entry = prefixShards.lowerEntry(entry.getKey());
+        }
+        return defaultShards;
+    }
+
+    /**
+     * Returns whether any key can have more than one shard.
+     *
+     * @return true if sharding is enabled
+     */
+    public boolean isEnabled() {
+        return defaultShards > 1 || prefixShards.values().stream().anyMatch(n -> n > 1);
+    }
+
+    public int getDefaultShards() {
+        return defaultShards;
+    }
+
+    public Map<String, Integer> getPrefixShards() {
+        return Collections.unmodifiableMap(prefixShards);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private int defaultShards = 1;
+        private final Map<String, Integer> prefixShards = new TreeMap<>();
+
+        public Builder defaultShards(int defaultShards) {
+            this.defaultShards = defaultShards;
+            return this;
+        }
+
+        /**
+         * Sets the shard count for keys starting with the given prefix.
+         */
+        public Builder prefix(String prefix, int shards) {
+            this.prefixShards.put(prefix, shards);
+            return this;
+        }
+
+        public ShardingPolicy build() {
+            if (defaultShards < 1 || prefixShards.values().stream().anyMatch(n -> n < 1)) {
+                throw new IllegalArgumentException("Shard count must be at least 1");
+            }
+            return new ShardingPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.coupang.dcache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An HTTP response whose body is read as a stream, from the origin or from
+ * the cache. It must be closed to release the origin connection; closing it
+ * before the end of an origin body also cancels caching that body.
+ */
+public class StreamingHttpResponse implements Closeable {
+    private final int statusCode;
+    private final Map<String, String> headers;
+    private final InputStream body;
+    private final boolean fromCache;
+    private final Closeable resource;
+
+    StreamingHttpResponse(int statusCode, Map<String, String> headers, InputStream body, boolean fromCache,
+                          Closeable resource) {
+        this.statusCode = statusCode;
+        this.headers = Collections.unmodifiableMap(new HashMap<>(headers));
+        this.body = body;
+        this.fromCache = fromCache;
+        this.resource = resource;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @return The body stream, empty for responses without a body
+     */
+    public InputStream getBody() {
+        return body;
+    }
+
+    public boolean isFromCache() {
+        return fromCache;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            body.close();
+        } finally {
+            if (resource != null) {
+                resource.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.coupang.dcache;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * A cache that can group entries under surrogate tags (e.g. "product:42")
+ * and invalidate all entries carrying a tag at once.
+ */
+public interface TaggableCache extends Cache {
+    /**
+     * Put an item in the cache with a TTL and associate it with tags.
+     *
+     * @param key The cache key
+     * @param value The value to cache
+     * @param ttl Time to live in seconds
+     * @param tags The tags to associate with the key
+     */
+    void put(String key, byte[] value, int ttl, Collection<String> tags);
+
+    /**
+     * Remove every item associated with a tag.
+     *
+     * @param tag The tag
+     * @return The keys that were associated with the tag
+     */
+    Set<String> invalidateTag(String tag);
+}
@@ -0,0 +1,63 @@
+package com.coupang.dcache;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Passes an origin body through to the caller while copying what is read
+ * into a {@link ChunkedBodyWriter}. The cache write is committed when the
+ * caller reaches the end of the body, and aborted if reading fails or the
+ * stream is closed before the end.
+ */
+class TeeInputStream extends FilterInputStream {
+    private final ChunkedBodyWriter writer;
+
+    TeeInputStream(InputStream in, ChunkedBodyWriter writer) {
+        super(in);
+        this.writer = writer;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int n = read(single, 0, 1);
+        return n == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n;
+        try {
+            n = in.read(b, off, len);
+        } catch (IOException e) {
+            writer.abort();
+            throw e;
+        }
+        if (n == -1) {
+            writer.commit();
+        } else {
+            writer.write(b, off, n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // Skipped bytes must still be copied into the cache
+        byte[] skipped = new byte[(int) Math.min(n, 8192)];
+        int read = read(skipped, 0, skipped.length);
+        return Math.max(read, 0);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.abort();
+        super.close();
+    }
+}
@@ -0,0 +1,71 @@
+package com.coupang.dcache;
+
+/**
+ * Point-in-time statistics of one tenant in a {@link TenantQuotaCache}.
+ */
+public class TenantCacheStats {
+    private final String tenant;
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final long entryCount;
+    private final long bytes;
+    private final long quotaBytes;
+
+    public TenantCacheStats(String tenant, long hitCount, long missCount, long evictionCount,
+                            long entryCount, long bytes, long quotaBytes) {
+        this.tenant = tenant;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.entryCount = entryCount;
+        this.bytes = bytes;
+        this.quotaBytes = quotaBytes;
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public double getHitRate() {
+        long requests = hitCount + missCount;
+        return requests == 0 ? 1.0 : (double) hitCount / requests;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns the tenant's current weighted share of the cache. A tenant may
+     * hold more than this while other tenants leave capacity unused.
+     *
+     * @return The quota in bytes
+     */
+    public long getQuotaBytes() {
+        return quotaBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "TenantCacheStats{tenant='" + tenant + "', hitCount=" + hitCount + ", missCount=" + missCount
+                + ", evictionCount=" + evictionCount + ", entryCount=" + entryCount
+                + ", bytes=" + bytes + ", quotaBytes=" + quotaBytes + '}';
+    }
+}
@@ -0,0 +1,339 @@
+package com.coupang.dcache;
+
+import com.google.common.base.Ticker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory cache that partitions its byte budget between tenants, for use
+ * as the local tier when multi-tenancy is enabled.
+ * <p>
+ * Each tenant (parsed from the {@code tenant:X:} key prefix) has an LRU
+ * partition and a quota equal to its weighted share of the budget among
+ * tenants that currently hold entries. A tenant may borrow capacity others
+ * leave unused; once the budget is exceeded, expired entries are dropped
+ * first, and then entries are evicted from the tenant furthest over its
+ * quota, so a single large tenant cannot push the others out.
+ * <p>
+ * Each partition has its own lock, so tenants only contend with themselves;
+ * the shared byte count is atomic. Eviction locks one partition at a time,
+ * and concurrent puts may briefly take the total over the budget.
+ */
+public class TenantQuotaCache implements Cache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TenantQuotaCache.class);
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Partition used for keys without a tenant prefix.
+     */
+    public static final String NO_TENANT = "_";
+
+    private final TenantQuotaCacheConfig config;
+    private final Ticker ticker;
+    private final ConcurrentMap<String, Partition> partitions = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong activeWeight = new AtomicLong();
+    private final AtomicLong nextSweepAt;
+
+    /**
+     * Creates a new TenantQuotaCache.
+     *
+     * @param config The cache configuration
+     */
+    public TenantQuotaCache(TenantQuotaCacheConfig config) {
+        this.config = config;
+        this.ticker = config.getTicker();
+        this.nextSweepAt = new AtomicLong(ticker.read());
+    }
+
+    @Override
+    public void put(String key, byte[] value, int ttl) {
+        if (ttl <= 0) {
+            return;
+        }
+        if (value.length > config.getMaximumBytes()) {
+            LOGGER.debug("Value for key {} exceeds the cache size, not caching", key);
+            invalidate(key);
+            return;
+        }
+
+        long expiresAt = ticker.read() + TimeUnit.SECONDS.toNanos(Math.min(ttl, config.getDefaultTtl()));
+        Partition partition = partition(tenant(key));
+        partition.lock.lock();
+        try {
+            partition.remove(key);
+            partition.put(key, new Entry(value, expiresAt));
+        } finally {
+            partition.lock.unlock();
+        }
+        if (totalBytes.get() > config.getMaximumBytes()) {
+            sweepExpired();
+        }
+        while (totalBytes.get() > config.getMaximumBytes()) {
+            if (!evictOne()) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Stores a {@link WritePriority#LOW} write, such as a prefetch, only if it
+     * fits in the budget without evicting anything, so that background
+     * writes never push out entries requests put.
+     */
+    @Override
+    public void put(String key, byte[] value, int ttl, WritePriority priority) {
+        if (priority == WritePriority.LOW && totalBytes.get() + value.length > config.getMaximumBytes()) {
+            sweepExpired();
+            if (totalBytes.get() + value.length > config.getMaximumBytes()) {
+                LOGGER.debug("Cache full, dropped low priority put for key: {}", key);
+                // An older value must not outlive the one that was dropped
+                invalidate(key);
+                return;
+            }
+        }
+        put(key, value, ttl);
+    }
+
+    @Override
+    public Optional<byte[]> get(String key) {
+        // Created on a miss too, so that tenants without entries have their misses counted
+        Partition partition = partition(tenant(key));
+        partition.lock.lock();
+        try {
+            Entry entry = partition.entries.get(key);
+            if (entry != null && entry.expiresAt - ticker.read() <= 0) {
+                partition.remove(key);
+                entry = null;
+            }
+            if (entry != null) {
+                partition.hits++;
+            } else {
+                partition.misses++;
+            }
+            return entry == null ? Optional.empty() : Optional.of(entry.value);
+        } finally {
+            partition.lock.unlock();
+        }
+    }
+
+    @Override
+    public void invalidate(String key) {
+        Partition partition = partitions.get(tenant(key));
+        if (partition != null) {
+            partition.lock.lock();
+            try {
+                partition.remove(key);
+            } finally {
+                partition.lock.unlock();
+            }
+        }
+        LOGGER.debug("Invalidated cache for key: {}", key);
+    }
+
+    @Override
+    public void invalidateAll() {
+        for (Partition partition : partitions.values()) {
+            partition.clear();
+        }
+        LOGGER.debug("Invalidated all cache entries");
+    }
+
+    /**
+     * Removes every local entry of a tenant.
+     *
+     * @param tenant The tenant, or {@link #NO_TENANT}
+     */
+    public void invalidateTenant(String tenant) {
+        Partition partition = partitions.get(tenant);
+        if (partition != null) {
+            partition.clear();
+        }
+    }
+
+    /**
+     * Returns hit, miss, eviction and size statistics of every tenant seen so far.
+     *
+     * @return The statistics, keyed and sorted by tenant
+     */
+    public Map<String, TenantCacheStats> getTenantStats() {
+        Map<String, TenantCacheStats> stats = new TreeMap<>();
+        for (Partition partition : partitions.values()) {
+            partition.lock.lock();
+            try {
+                stats.put(partition.tenant, new TenantCacheStats(partition.tenant, partition.hits,
+                        partition.misses, partition.evictions, partition.entries.size(),
+                        partition.bytes, quota(partition)));
+            } finally {
+                partition.lock.unlock();
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Returns the total size of cached values.
+     *
+     * @return The size in bytes
+     */
+    public long getTotalBytes() {
+        return totalBytes.get();
+    }
+
+    private Partition partition(String tenant) {
+        Partition partition = partitions.get(tenant);
+        return partition != null ? partition : partitions.computeIfAbsent(tenant, Partition::new);
+    }
+
+    /**
+     * Drops expired entries of every tenant, at most once a second, so that
+     * entries nobody reads again do not hold on to the budget while live
+     * ones are evicted.
+     */
+    private void sweepExpired() {
+        long now = ticker.read();
+        long next = nextSweepAt.get();
+        if (now - next < 0 || !nextSweepAt.compareAndSet(next, now + SWEEP_INTERVAL_NANOS)) {
+            return;
+        }
+        for (Partition partition : partitions.values()) {
+            partition.lock.lock();
+            try {
+                Iterator<Map.Entry<String, Entry>> entries = partition.entries.entrySet().iterator();
+                while (entries.hasNext()) {
+                    Map.Entry<String, Entry> entry = entries.next();
+                    if (entry.getValue().expiresAt - now <= 0) {
+                        entries.remove();
+                        partition.removed(entry.getValue());
+                    }
+                }
+            } finally {
+                partition.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Evicts the least recently used entry of the tenant with the highest
+     * usage relative to its weight, i.e. the one furthest over its quota.
+     *
+     * @return False if no tenant holds any entry
+     */
+    private boolean evictOne() {
+        Partition victim = null;
+        for (Partition partition : partitions.values()) {
+            if (partition.bytes > 0 && (victim == null
+                    || partition.bytes * victim.weight > victim.bytes * partition.weight)) {
+                victim = partition;
+            }
+        }
+        if (victim == null) {
+            return false;
+        }
+        victim.lock.lock();
+        try {
+            Iterator<Map.Entry<String, Entry>> eldest = victim.entries.entrySet().iterator();
+            if (!eldest.hasNext()) {
+                // Emptied meanwhile; the caller looks again
+                return true;
+            }
+            String key = eldest.next().getKey();
+            victim.remove(key);
+            victim.evictions++;
+            LOGGER.debug("Cache entry evicted: {} (tenant {} over quota)", key, victim.tenant);
+        } finally {
+            victim.lock.unlock();
+        }
+        return true;
+    }
+
+    private long quota(Partition partition) {
+        long active = activeWeight.get();
+        long weight = !partition.entries.isEmpty() ? active : active + partition.weight;
+        return config.getMaximumBytes() * partition.weight / weight;
+    }
+
+    private static String tenant(String key) {
+        String tenant = CacheKeyGenerator.parseTenant(key);
+        return tenant != null ? tenant : NO_TENANT;
+    }
+
+    private static final class Entry {
+        final byte[] value;
+        final long expiresAt;
+
+        Entry(byte[] value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * LRU entries and counters of one tenant, guarded by its own lock.
+     * {@code bytes} is also read without the lock to pick a victim.
+     */
+    private final class Partition {
+        final String tenant;
+        final long weight;
+        final ReentrantLock lock = new ReentrantLock();
+        final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        volatile long bytes;
+        long hits;
+        long misses;
+        long evictions;
+
+        Partition(String tenant) {
+            this.tenant = tenant;
+            this.weight = config.getWeight(tenant);
+        }
+
+        void put(String key, Entry entry) {
+            if (entries.isEmpty()) {
+                activeWeight.addAndGet(weight);
+            }
+            entries.put(key, entry);
+            bytes += entry.value.length;
+            totalBytes.addAndGet(entry.value.length);
+        }
+
+        void remove(String key) {
+            Entry entry = entries.remove(key);
+            if (entry != null) {
+                removed(entry);
+            }
+        }
+
+        /**
+         * Accounts for an entry already taken out of {@code entries}.
+         */
+        void removed(Entry entry) {
+            bytes -= entry.value.length;
+            totalBytes.addAndGet(-entry.value.length);
+            if (entries.isEmpty()) {
+                activeWeight.addAndGet(-weight);
+            }
+        }
+
+        void clear() {
+            lock.lock();
+            try {
+                for (String key : entries.keySet().toArray(new String[0])) {
+                    remove(key);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
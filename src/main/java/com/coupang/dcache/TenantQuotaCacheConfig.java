@@ -0,0 +1,119 @@
+package com.coupang.dcache;
+
+import com.google.common.base.Ticker;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Configuration for {@link TenantQuotaCache}.
+ */
+public class TenantQuotaCacheConfig {
+    private final long maximumBytes;
+    private final int defaultTtl;
+    private final int defaultWeight;
+    private final Map<String, Integer> tenantWeights;
+    private final Ticker ticker;
+
+    private TenantQuotaCacheConfig(Builder builder) {
+        this.maximumBytes = builder.maximumBytes;
+        this.defaultTtl = builder.defaultTtl;
+        this.defaultWeight = builder.defaultWeight;
+        this.tenantWeights = Collections.unmodifiableMap(new HashMap<>(builder.tenantWeights));
+        this.ticker = builder.ticker;
+    }
+
+    public long getMaximumBytes() {
+        return maximumBytes;
+    }
+
+    public int getDefaultTtl() {
+        return defaultTtl;
+    }
+
+    public int getDefaultWeight() {
+        return defaultWeight;
+    }
+
+    public Map<String, Integer> getTenantWeights() {
+        return tenantWeights;
+    }
+
+    /**
+     * Returns the quota weight of a tenant.
+     *
+     * @param tenant The tenant
+     * @return The configured weight, or the default weight
+     */
+    public int getWeight(String tenant) {
+        return tenantWeights.getOrDefault(tenant, defaultWeight);
+    }
+
+    public Ticker getTicker() {
+        return ticker;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private long maximumBytes = 64L * 1024 * 1024; // 64 MB
+        private int defaultTtl = 3600; // 1 hour
+        private int defaultWeight = 1;
+        private final Map<String, Integer> tenantWeights = new HashMap<>();
+        private Ticker ticker = Ticker.systemTicker();
+
+        /**
+         * Total size of cached values, in bytes, shared by all tenants.
+         */
+        public Builder maximumBytes(long maximumBytes) {
+            this.maximumBytes = maximumBytes;
+            return this;
+        }
+
+        /**
+         * Upper bound in seconds on the TTL of local entries.
+         */
+        public Builder defaultTtl(int defaultTtl) {
+            this.defaultTtl = defaultTtl;
+            return this;
+        }
+
+        /**
+         * Weight of tenants without an explicit weight.
+         */
+        public Builder defaultWeight(int defaultWeight) {
+            this.defaultWeight = defaultWeight;
+            return this;
+        }
+
+        /**
+         * Weight of a tenant. A tenant's quota is its share of the total
+         * weight of the tenants currently holding entries.
+         */
+        public Builder tenantWeight(String tenant, int weight) {
+            this.tenantWeights.put(tenant, weight);
+            return this;
+        }
+
+        public Builder ticker(Ticker ticker) {
+            this.ticker = ticker;
+            return this;
+        }
+
+        public TenantQuotaCacheConfig build() {
+            if (maximumBytes <= 0) {
+                throw new IllegalArgumentException("Maximum bytes must be positive");
+            }
+            if (defaultTtl <= 0) {
+                throw new IllegalArgumentException("Default TTL must be positive");
+            }
+            if (defaultWeight <= 0 || tenantWeights.values().stream().anyMatch(weight -> weight <= 0)) {
+                throw new IllegalArgumentException("Tenant weights must be positive");
+            }
+            return new TenantQuotaCacheConfig(this);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.coupang.dcache;
+
+/**
+ * Number of items and value bytes a tenant occupies in the remote cache.
+ */
+public class TenantUsage {
+    private final String tenant;
+    private final String countryCode;
+    private final long itemCount;
+    private final long bytes;
+
+    public TenantUsage(String tenant, String countryCode, long itemCount, long bytes) {
+        this.tenant = tenant;
+        this.countryCode = countryCode;
+        this.itemCount = itemCount;
+        this.bytes = bytes;
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    /**
+     * @return The country code, or null if the usage covers all countries
+     */
+    public String getCountryCode() {
+        return countryCode;
+    }
+
+    public long getItemCount() {
+        return itemCount;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "TenantUsage{tenant=" + tenant + ", countryCode=" + countryCode
+                + ", itemCount=" + itemCount + ", bytes=" + bytes + "}";
+    }
+}
@@ -0,0 +1,268 @@
+package com.coupang.dcache;
+
+import com.coupang.dcache.invalidation.InvalidationBus;
+import com.coupang.dcache.invalidation.InvalidationListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Two-level cache: a local in-memory tier (L1) in front of a shared remote
+ * tier (L2). Writes go to both tiers; when an {@link InvalidationBus} is
+ * configured, every put and invalidate is announced to the other nodes,
+ * which drop their L1 copies. Tags are supported when the remote tier is a
+ * {@link TaggableCache}.
+ * <p>
+ * With a {@link PrefetchConfig}, a {@link Prefetcher} learns which keys are
+ * usually read after which, and reads them from L2 into L1 in the
+ * background after their predecessor is read.
+ */
+public class TieredCache implements TaggableCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TieredCache.class);
+
+    private final Cache localCache;
+    private final Cache remoteCache;
+    private final int localTtl;
+    private final InvalidationBus invalidationBus;
+    private final Prefetcher prefetcher;
+
+    /**
+     * Creates a new TieredCache and subscribes it to the invalidation bus.
+     *
+     * @param config The tiered cache configuration
+     */
+    public TieredCache(TieredCacheConfig config) {
+        this.localCache = config.getLocalCache();
+        this.remoteCache = config.getRemoteCache();
+        this.localTtl = config.getLocalTtl();
+        this.invalidationBus = config.getInvalidationBus();
+        this.prefetcher = config.getPrefetch() == null ? null
+            : new Prefetcher(localCache, remoteCache, localTtl, config.getPrefetch());
+
+        if (invalidationBus != null) {
+            invalidationBus.subscribe(new InvalidationListener() {
+                @Override
+                public void onInvalidate(Collection<String> keys) {
+                    keys.forEach(key -> {
+                        changed(key);
+                        localCache.invalidate(key);
+                    });
+                    LOGGER.debug("Dropped {} L1 entries changed on another node", keys.size());
+                }
+
+                @Override
+                public void onInvalidateAll() {
+                    if (prefetcher != null) {
+                        prefetcher.onChangeAll();
+                    }
+                    localCache.invalidateAll();
+                    LOGGER.debug("Dropped all L1 entries after remote invalidateAll");
+                }
+            });
+        }
+    }
+
+    @Override
+    public void put(String key, byte[] value, int ttl) {
+        changed(key);
+        remoteCache.put(key, value, ttl);
+        localCache.put(key, value, Math.min(ttl, localTtl));
+        if (invalidationBus != null) {
+            invalidationBus.publish(key);
+        }
+    }
+
+    @Override
+    public void put(String key, byte[] value, int ttl, WritePriority priority) {
+        changed(key);
+        remoteCache.put(key, value, ttl, priority);
+        localCache.put(key, value, Math.min(ttl, localTtl), priority);
+        if (invalidationBus != null) {
+            invalidationBus.publish(key);
+        }
+    }
+
+    @Override
+    public void putExtendingTtl(String key, byte[] value, int ttl) {
+        changed(key);
+        remoteCache.putExtendingTtl(key, value, ttl);
+        localCache.put(key, value, Math.min(ttl, localTtl));
+        if (invalidationBus != null) {
+            invalidationBus.publish(key);
+        }
+    }
+
+    @Override
+    public void put(String key, byte[] value, int ttl, Collection<String> tags) {
+        changed(key);
+        taggableRemoteCache().put(key, value, ttl, tags);
+        localCache.put(key, value, Math.min(ttl, localTtl));
+        if (invalidationBus != null) {
+            invalidationBus.publish(key);
+        }
+    }
+
+    @Override
+    public Set<String> invalidateTag(String tag) {
+        Set<String> keys = taggableRemoteCache().invalidateTag(tag);
+        for (String key : keys) {
+            changed(key);
+            localCache.invalidate(key);
+            if (invalidationBus != null) {
+                invalidationBus.publish(key);
+            }
+        }
+        return keys;
+    }
+
+    @Override
+    public Optional<byte[]> get(String key) {
+        Optional<byte[]> local = localCache.get(key);
+        if (prefetcher != null) {
+            prefetcher.onRead(key, local.isPresent());
+        }
+        if (local.isPresent()) {
+            return local;
+        }
+
+        Optional<byte[]> remote = remoteCache.get(key);
+        remote.ifPresent(value -> localCache.put(key, value, localTtl));
+        return remote;
+    }
+
+    /**
+     * Serves a key from L1, otherwise from L2, which coordinates the load
+     * when it supports it (see {@link DynamoDbCache#getOrLoad}).
+     */
+    @Override
+    public byte[] getOrLoad(String key, int ttl, Supplier<byte[]> loader) {
+        Optional<byte[]> local = localCache.get(key);
+        if (prefetcher != null) {
+            prefetcher.onRead(key, local.isPresent());
+        }
+        if (local.isPresent()) {
+            return local.get();
+        }
+
+        byte[] value = remoteCache.getOrLoad(key, ttl, loader);
+        if (value != null) {
+            localCache.put(key, value, Math.min(ttl, localTtl));
+        }
+        return value;
+    }
+
+    /**
+     * Serves the keys found in L1 from there, and reads the others from L2 in
+     * one {@link Cache#getAll(Collection)}, copying them into L1.
+     */
+    @Override
+    public Map<String, byte[]> getAll(Collection<String> keys) {
+        Map<String, byte[]> values = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String key : keys) {
+            Optional<byte[]> local = localCache.get(key);
+            if (local.isPresent()) {
+                values.put(key, local.get());
+            } else {
+                missing.add(key);
+            }
+        }
+        if (!missing.isEmpty()) {
+            remoteCache.getAll(missing).forEach((key, value) -> {
+                localCache.put(key, value, localTtl);
+                values.put(key, value);
+            });
+        }
+        return values;
+    }
+
+    /**
+     * Checks L1 first, and the keys missing there in L2 with one
+     * {@link Cache#presentKeys(Collection)}.
+     */
+    @Override
+    public Set<String> presentKeys(Collection<String> keys) {
+        Set<String> present = new HashSet<>();
+        List<String> missing = new ArrayList<>();
+        for (String key : keys) {
+            if (localCache.get(key).isPresent()) {
+                present.add(key);
+            } else {
+                missing.add(key);
+            }
+        }
+        if (!missing.isEmpty()) {
+            present.addAll(remoteCache.presentKeys(missing));
+        }
+        return present;
+    }
+
+    @Override
+    public void invalidate(String key) {
+        changed(key);
+        localCache.invalidate(key);
+        remoteCache.invalidate(key);
+        if (invalidationBus != null) {
+            invalidationBus.publish(key);
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        if (prefetcher != null) {
+            prefetcher.onChangeAll();
+        }
+        localCache.invalidateAll();
+        remoteCache.invalidateAll();
+        if (invalidationBus != null) {
+            invalidationBus.publishAll();
+        }
+    }
+
+    /**
+     * @return The prefetcher and its accuracy metrics, or null if prefetching is disabled
+     */
+    public Prefetcher getPrefetcher() {
+        return prefetcher;
+    }
+
+    /**
+     * Stops the prefetcher, if any. The tiers are not closed.
+     */
+    public void close() {
+        if (prefetcher != null) {
+            prefetcher.close();
+        }
+    }
+
+    private void changed(String key) {
+        if (prefetcher != null) {
+            prefetcher.onChange(key);
+        }
+    }
+
+    private TaggableCache taggableRemoteCache() {
+        if (!(remoteCache instanceof TaggableCache)) {
+            throw new UnsupportedOperationException("Remote cache does not support tags: "
+                    + remoteCache.getClass().getName());
+        }
+        return (TaggableCache) remoteCache;
+    }
+
+    public Cache getLocalCache() {
+        return localCache;
+    }
+
+    public Cache getRemoteCache() {
+        return remoteCache;
+    }
+}
@@ -0,0 +1,105 @@
+package com.coupang.dcache;
+
+import com.coupang.dcache.invalidation.InvalidationBus;
+
+/**
+ * Configuration for {@link TieredCache}.
+ */
+public class TieredCacheConfig {
+    private final Cache localCache;
+    private final Cache remoteCache;
+    private final int localTtl;
+    private final InvalidationBus invalidationBus;
+    private final PrefetchConfig prefetch;
+
+    private TieredCacheConfig(Builder builder) {
+        this.localCache = builder.localCache;
+        this.remoteCache = builder.remoteCache;
+        this.localTtl = builder.localTtl;
+        this.invalidationBus = builder.invalidationBus;
+        this.prefetch = builder.prefetch;
+    }
+
+    public Cache getLocalCache() {
+        return localCache;
+    }
+
+    public Cache getRemoteCache() {
+        return remoteCache;
+    }
+
+    public int getLocalTtl() {
+        return localTtl;
+    }
+
+    public InvalidationBus getInvalidationBus() {
+        return invalidationBus;
+    }
+
+    public PrefetchConfig getPrefetch() {
+        return prefetch;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private Cache localCache;
+        private Cache remoteCache;
+        private int localTtl = 60; // 1 minute
+        private InvalidationBus invalidationBus;
+        private PrefetchConfig prefetch;
+
+        /**
+         * The in-memory (L1) tier, e.g. a {@link GuavaCache}.
+         */
+        public Builder localCache(Cache localCache) {
+            this.localCache = localCache;
+            return this;
+        }
+
+        /**
+         * The shared (L2) tier, e.g. a {@link DynamoDbCache}.
+         */
+        public Builder remoteCache(Cache remoteCache) {
+            this.remoteCache = remoteCache;
+            return this;
+        }
+
+        /**
+         * TTL in seconds for values copied into L1 after an L2 hit.
+         */
+        public Builder localTtl(int localTtl) {
+            this.localTtl = localTtl;
+            return this;
+        }
+
+        /**
+         * Bus used to drop L1 copies on other nodes when an entry changes.
+         */
+        public Builder invalidationBus(InvalidationBus invalidationBus) {
+            this.invalidationBus = invalidationBus;
+            return this;
+        }
+
+        /**
+         * Learns which keys usually follow which, and reads them into L1
+         * before they are asked for. Null disables prefetching.
+         */
+        public Builder prefetch(PrefetchConfig prefetch) {
+            this.prefetch = prefetch;
+            return this;
+        }
+
+        public TieredCacheConfig build() {
+            if (localCache == null) {
+                throw new IllegalArgumentException("Local cache is required");
+            }
+            if (remoteCache == null) {
+                throw new IllegalArgumentException("Remote cache is required");
+            }
+            return new TieredCacheConfig(this);
+        }
+    }
+}
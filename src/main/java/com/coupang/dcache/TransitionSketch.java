@@ -0,0 +1,122 @@
+package com.coupang.dcache;
+
+import com.google.common.cache.CacheBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded estimate of which key is read after which.
+ * <p>
+ * For up to a maximum number of recently read keys, the most frequent
+ * successors are counted with the space-saving algorithm: a successor not
+ * yet counted replaces the least counted one and inherits its count, so
+ * counts are never too low and the frequent successors are kept. Once a key
+ * has been followed {@link #DECAY_AFTER} times its counts are halved, so the
+ * estimates follow changing access patterns. Updates are lock-free and may
+ * lose increments under contention, which only makes the estimates coarser.
+ */
+final class TransitionSketch {
+    // Fewer transitions say too little about which successor usually follows
+    static final int MIN_TRANSITIONS = 4;
+    static final int DECAY_AFTER = 256;
+
+    private final ConcurrentMap<String, Successors> successors;
+    private final int successorsPerKey;
+
+    /**
+     * @param trackedKeys The number of predecessor keys kept, least recently read dropped first
+     * @param successorsPerKey The number of successors counted per key
+     */
+    TransitionSketch(long trackedKeys, int successorsPerKey) {
+        this.successors = CacheBuilder.newBuilder().maximumSize(trackedKeys).<String, Successors>build().asMap();
+        this.successorsPerKey = successorsPerKey;
+    }
+
+    /**
+     * Counts a read of {@code next} right after a read of {@code previous}.
+     */
+    void record(String previous, String next) {
+        successors.computeIfAbsent(previous, key -> new Successors(successorsPerKey)).increment(next);
+    }
+
+    /**
+     * Returns the successors of a key that followed it at least a share of the time.
+     *
+     * @param key The key just read
+     * @param minConfidence The minimum share of the key's transitions
+     * @param limit The maximum number of successors returned
+     * @return The successors, most frequent first
+     */
+    List<String> predict(String key, double minConfidence, int limit) {
+        Successors counted = successors.get(key);
+        return counted == null ? List.of() : counted.above(minConfidence, limit);
+    }
+
+    long getTrackedKeys() {
+        return successors.size();
+    }
+
+    private static final class Successors {
+        private final AtomicReferenceArray<String> keys;
+        private final AtomicLongArray counts;
+        private final AtomicLong total = new AtomicLong();
+
+        Successors(int size) {
+            this.keys = new AtomicReferenceArray<>(size);
+            this.counts = new AtomicLongArray(size);
+        }
+
+        void increment(String key) {
+            int slot = -1;
+            int min = 0;
+            for (int i = 0; i < keys.length(); i++) {
+                if (key.equals(keys.get(i))) {
+                    slot = i;
+                    break;
+                }
+                if (counts.get(i) < counts.get(min)) {
+                    min = i;
+                }
+            }
+            if (slot < 0) {
+                slot = min;
+                keys.set(slot, key);
+            }
+            counts.incrementAndGet(slot);
+            if (total.incrementAndGet() >= DECAY_AFTER) {
+                for (int i = 0; i < counts.length(); i++) {
+                    counts.set(i, counts.get(i) / 2);
+                }
+                total.set(total.get() / 2);
+            }
+        }
+
+        List<String> above(double minConfidence, int limit) {
+            long transitions = total.get();
+            if (transitions < MIN_TRANSITIONS) {
+                return List.of();
+            }
+            List<String> found = new ArrayList<>(Math.min(limit, keys.length()));
+            boolean[] taken = new boolean[keys.length()];
+            while (found.size() < limit) {
+                int best = -1;
+                for (int i = 0; i < keys.length(); i++) {
+                    if (!taken[i] && keys.get(i) != null && (best < 0 || counts.get(i) > counts.get(best))) {
+                        best = i;
+                    }
+                }
+                if (best < 0 || counts.get(best) < minConfidence * transitions) {
+                    break;
+                }
+                taken[best] = true;
+                found.add(keys.get(best));
+            }
+            return found;
+        }
+    }
+}
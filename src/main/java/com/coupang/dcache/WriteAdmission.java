@@ -0,0 +1,73 @@
+package com.coupang.dcache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides which values are worth writing to a remote cache.
+ * <p>
+ * Most keys are requested once, and writing them only costs write capacity
+ * and storage. Each write attempt counts a sighting of its key in a
+ * {@link FrequencySketch}; the value is written once its key has been seen
+ * as many times as {@link WriteAdmissionConfig#requiredHits(long)} asks for
+ * its size. With the default of 2, a value is written on the second miss of
+ * its key within the window.
+ */
+public class WriteAdmission {
+    private final WriteAdmissionConfig config;
+    private final FrequencySketch sketch;
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public WriteAdmission(WriteAdmissionConfig config) {
+        this.config = config;
+        this.sketch = new FrequencySketch(config.getExpectedKeys(), config.getWindow().toNanos());
+    }
+
+    /**
+     * Counts a write attempt for a key and decides whether to write it.
+     *
+     * @param key The cache key
+     * @param size The value size in bytes
+     * @return true if the value should be written
+     */
+    public boolean admit(String key, long size) {
+        int required = config.requiredHits(size);
+        if (required <= 1) {
+            admitted.incrementAndGet();
+            return true;
+        }
+        if (sketch.increment(key) >= required) {
+            admitted.incrementAndGet();
+            return true;
+        }
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Returns the number of writes let through.
+     *
+     * @return The number of admitted writes
+     */
+    public long getAdmitted() {
+        return admitted.get();
+    }
+
+    /**
+     * Returns the number of writes skipped because their key was not seen often enough.
+     *
+     * @return The number of rejected writes
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Returns the heap used by the frequency sketch.
+     *
+     * @return The sketch size in bytes
+     */
+    public long getMemoryBytes() {
+        return sketch.getMemoryBytes();
+    }
+}
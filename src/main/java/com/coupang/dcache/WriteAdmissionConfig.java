@@ -0,0 +1,138 @@
+package com.coupang.dcache;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Configuration of {@link WriteAdmission}: how many times a key must be
+ * seen before its value is written, depending on the value's size.
+ */
+public class WriteAdmissionConfig {
+    private final int minHits;
+    private final Duration window;
+    private final long expectedKeys;
+    private final long alwaysAdmitBelow;
+    private final NavigableMap<Long, Integer> minHitsAbove;
+
+    private WriteAdmissionConfig(Builder builder) {
+        this.minHits = builder.minHits;
+        this.window = builder.window;
+        this.expectedKeys = builder.expectedKeys;
+        this.alwaysAdmitBelow = builder.alwaysAdmitBelow;
+        this.minHitsAbove = Collections.unmodifiableNavigableMap(new TreeMap<>(builder.minHitsAbove));
+    }
+
+    public int getMinHits() {
+        return minHits;
+    }
+
+    public Duration getWindow() {
+        return window;
+    }
+
+    public long getExpectedKeys() {
+        return expectedKeys;
+    }
+
+    public long getAlwaysAdmitBelow() {
+        return alwaysAdmitBelow;
+    }
+
+    public NavigableMap<Long, Integer> getMinHitsAbove() {
+        return minHitsAbove;
+    }
+
+    /**
+     * Returns the number of sightings a value of the given size needs.
+     *
+     * @param size The value size in bytes
+     * @return The number of sightings of its key, 0 if it is always admitted
+     */
+    public int requiredHits(long size) {
+        if (size < alwaysAdmitBelow) {
+            return 0;
+        }
+        Map.Entry<Long, Integer> rule = minHitsAbove.lowerEntry(size);
+        return rule == null ? minHits : rule.getValue();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private int minHits = 2;
+        private Duration window = Duration.ofMinutes(10);
+        private long expectedKeys = 1_000_000;
+        private long alwaysAdmitBelow;
+        private final NavigableMap<Long, Integer> minHitsAbove = new TreeMap<>();
+
+        /**
+         * Number of times a key must be seen, counting the current write,
+         * before its value is written. 2 writes a value on its second miss.
+         */
+        public Builder minHits(int minHits) {
+            this.minHits = minHits;
+            return this;
+        }
+
+        /**
+         * Period over which sightings are counted. Counts are halved at the
+         * end of each window, so older sightings fade out.
+         */
+        public Builder window(Duration window) {
+            this.window = window;
+            return this;
+        }
+
+        /**
+         * Number of distinct keys per window the frequency sketch is sized
+         * for, at about 2 bytes per key.
+         */
+        public Builder expectedKeys(long expectedKeys) {
+            this.expectedKeys = expectedKeys;
+            return this;
+        }
+
+        /**
+         * Values smaller than this many bytes are always written.
+         */
+        public Builder alwaysAdmitBelow(long bytes) {
+            this.alwaysAdmitBelow = bytes;
+            return this;
+        }
+
+        /**
+         * Values larger than this many bytes need {@code hits} sightings. Can
+         * be given for several sizes; the largest size below the value's wins.
+         */
+        public Builder minHitsAbove(long bytes, int hits) {
+            this.minHitsAbove.put(bytes, hits);
+            return this;
+        }
+
+        public WriteAdmissionConfig build() {
+            if (minHits < 1 || minHits > FrequencySketch.MAX_COUNT) {
+                throw new IllegalArgumentException("Min hits must be between 1 and " + FrequencySketch.MAX_COUNT);
+            }
+            for (Integer hits : minHitsAbove.values()) {
+                if (hits < 1 || hits > FrequencySketch.MAX_COUNT) {
+                    throw new IllegalArgumentException("Min hits must be between 1 and " + FrequencySketch.MAX_COUNT);
+                }
+            }
+            if (window == null || window.isZero() || window.isNegative()) {
+                throw new IllegalArgumentException("Window must be positive");
+            }
+            if (expectedKeys <= 0) {
+                throw new IllegalArgumentException("Expected keys must be positive");
+            }
+            if (alwaysAdmitBelow < 0 || minHitsAbove.keySet().stream().anyMatch(bytes -> bytes < 0)) {
+                throw new IllegalArgumentException("Sizes must not be negative");
+            }
+            return new WriteAdmissionConfig(this);
+        }
+    }
+}
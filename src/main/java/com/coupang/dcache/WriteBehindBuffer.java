@@ -0,0 +1,333 @@
+package com.coupang.dcache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Bounded buffer of pending puts for the write-behind mode of {@link DynamoDbCache}.
+ * <p>
+ * Writes are keyed by cache key, so repeated puts of a key between two
+ * flushes are coalesced and only the last one is written. A background
+ * thread drains the buffer every {@code maxDelay}, or as soon as a full
+ * batch is waiting.
+ * <p>
+ * A flushed entry stays readable until its batch is acknowledged, and
+ * removing a key whose write is in flight waits for that write, so that a
+ * delete issued after the removal cannot be overtaken by the old value. Only
+ * one flush runs at a time, so two versions of a key are never written out
+ * of order.
+ */
+final class WriteBehindBuffer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(WriteBehindBuffer.class);
+
+    /**
+     * Result of {@link #offer}.
+     */
+    enum Offer {
+        BUFFERED,
+        DROPPED,
+        REJECTED
+    }
+
+    static final class PendingWrite {
+        final String key;
+        final byte[] value;
+        final long expires;
+
+        PendingWrite(String key, byte[] value, long expires) {
+            this.key = key;
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+
+    private final WriteBehindConfig config;
+    private final Consumer<List<PendingWrite>> writer;
+    private final ConcurrentMap<String, PendingWrite> pending = new ConcurrentHashMap<>();
+    // Taken by the running flush and not yet acknowledged
+    private final ConcurrentMap<String, PendingWrite> inFlight = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicInteger items = new AtomicInteger();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final ReentrantLock spaceLock = new ReentrantLock();
+    private final Condition spaceAvailable = spaceLock.newCondition();
+    private final ScheduledExecutorService flusher;
+
+    /**
+     * @param config The buffer limits and overflow policy
+     * @param writer Writes one batch of at most {@link DynamoDbBatchWriter#MAX_BATCH_SIZE} entries
+     * @param executionStrategy Provides the flusher thread
+     */
+    WriteBehindBuffer(WriteBehindConfig config, Consumer<List<PendingWrite>> writer,
+                      ExecutionStrategy executionStrategy) {
+        this.config = config;
+        this.writer = writer;
+        this.flusher = executionStrategy.newScheduler("dcache-write-behind");
+        long delayMicros = TimeUnit.NANOSECONDS.toMicros(config.getMaxDelay().toNanos());
+        flusher.scheduleWithFixedDelay(this::flushQuietly, delayMicros, delayMicros, TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * Buffers a write, applying the overflow policy when the buffer is full.
+     *
+     * @return {@link Offer#REJECTED} if the caller must write the value itself
+     */
+    Offer offer(String key, byte[] value, long expires) {
+        PendingWrite write = new PendingWrite(key, value, expires);
+        if (tryAdd(write)) {
+            return Offer.BUFFERED;
+        }
+        switch (config.getOverflowPolicy()) {
+            case WRITE_THROUGH:
+                return Offer.REJECTED;
+            case BLOCK:
+                if (value.length <= config.getMaxBytes() && awaitSpace(write)) {
+                    return Offer.BUFFERED;
+                }
+                // fall through
+            default:
+                dropped.incrementAndGet();
+                LOGGER.debug("Write-behind buffer full, dropped write for key: {}", key);
+                return Offer.DROPPED;
+        }
+    }
+
+    /**
+     * Returns the buffered value of a key, so reads see writes not yet flushed.
+     */
+    PendingWrite get(String key) {
+        PendingWrite write = pending.get(key);
+        return write != null ? write : inFlight.get(key);
+    }
+
+    /**
+     * Discards a buffered write, e.g. because the key was invalidated. If a
+     * write of the key is in flight, waits until it is acknowledged, so that
+     * a delete that follows lands after it.
+     */
+    void remove(String key) {
+        PendingWrite removed = pending.remove(key);
+        if (removed != null) {
+            released(removed);
+        }
+        if (inFlight.containsKey(key)) {
+            flushLock.lock();
+            flushLock.unlock();
+        }
+    }
+
+    void clear() {
+        removeIf(key -> true);
+    }
+
+    void removeIf(Predicate<String> filter) {
+        for (String key : pending.keySet()) {
+            if (filter.test(key)) {
+                remove(key);
+            }
+        }
+    }
+
+    /**
+     * Writes every buffered entry now.
+     *
+     * @throws RuntimeException If a batch could not be written; the remaining batches are still attempted
+     */
+    void flush() {
+        flushLock.lock();
+        try {
+            drainScheduled.set(false);
+            List<PendingWrite> batch = new ArrayList<>(DynamoDbBatchWriter.MAX_BATCH_SIZE);
+            RuntimeException failure = null;
+            for (Map.Entry<String, PendingWrite> entry : pending.entrySet()) {
+                PendingWrite write = entry.getValue();
+                // Marked in flight before leaving pending, so that a concurrent remove always sees one of them
+                inFlight.put(write.key, write);
+                if (!pending.remove(write.key, write)) {
+                    // Removed or replaced meanwhile; a newer value is written by the next flush
+                    inFlight.remove(write.key, write);
+                    continue;
+                }
+                batch.add(write);
+                if (batch.size() == DynamoDbBatchWriter.MAX_BATCH_SIZE) {
+                    failure = writeBatch(batch, failure);
+                    batch = new ArrayList<>(DynamoDbBatchWriter.MAX_BATCH_SIZE);
+                }
+            }
+            if (!batch.isEmpty()) {
+                failure = writeBatch(batch, failure);
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    void close() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    int getPendingCount() {
+        return items.get();
+    }
+
+    long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    long getDroppedCount() {
+        return dropped.get();
+    }
+
+    long getFailedCount() {
+        return failed.get();
+    }
+
+    private boolean tryAdd(PendingWrite write) {
+        boolean[] added = new boolean[1];
+        pending.compute(write.key, (key, previous) -> {
+            long delta = write.value.length - (previous == null ? 0 : previous.value.length);
+            // compute only excludes writers of the same key: the limits are reserved atomically
+            if (previous == null && !reserve(items, 1, config.getMaxItems())) {
+                return previous;
+            }
+            if (delta > 0 && !reserve(bytes, delta, config.getMaxBytes())) {
+                if (previous == null) {
+                    items.decrementAndGet();
+                }
+                return previous;
+            }
+            if (delta <= 0) {
+                bytes.addAndGet(delta);
+            }
+            if (previous != null) {
+                coalesced.incrementAndGet();
+            }
+            added[0] = true;
+            return write;
+        });
+        if (items.get() >= DynamoDbBatchWriter.MAX_BATCH_SIZE) {
+            scheduleDrain();
+        }
+        return added[0];
+    }
+
+    /**
+     * Adds to a count unless that would take it over the limit.
+     */
+    private static boolean reserve(AtomicInteger count, int delta, int limit) {
+        int current;
+        do {
+            current = count.get();
+            if (current + delta > limit) {
+                return false;
+            }
+        } while (!count.compareAndSet(current, current + delta));
+        return true;
+    }
+
+    private static boolean reserve(AtomicLong count, long delta, long limit) {
+        long current;
+        do {
+            current = count.get();
+            if (current + delta > limit) {
+                return false;
+            }
+        } while (!count.compareAndSet(current, current + delta));
+        return true;
+    }
+
+    private boolean awaitSpace(PendingWrite write) {
+        long remaining = config.getBlockTimeout().toNanos();
+        scheduleDrain();
+        spaceLock.lock();
+        try {
+            while (!tryAdd(write)) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = spaceAvailable.awaitNanos(remaining);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            spaceLock.unlock();
+        }
+    }
+
+    private void released(PendingWrite write) {
+        items.decrementAndGet();
+        bytes.addAndGet(-write.value.length);
+    }
+
+    private RuntimeException writeBatch(List<PendingWrite> batch, RuntimeException failure) {
+        try {
+            writer.accept(batch);
+        } catch (RuntimeException e) {
+            failed.addAndGet(batch.size());
+            LOGGER.warn("Failed to write {} buffered cache entries", batch.size(), e);
+            if (failure == null) {
+                failure = e;
+            }
+        } finally {
+            for (PendingWrite write : batch) {
+                inFlight.remove(write.key, write);
+                released(write);
+            }
+        }
+        signalSpace();
+        return failure;
+    }
+
+    private void signalSpace() {
+        spaceLock.lock();
+        try {
+            spaceAvailable.signalAll();
+        } finally {
+            spaceLock.unlock();
+        }
+    }
+
+    private void scheduleDrain() {
+        if (!flusher.isShutdown() && drainScheduled.compareAndSet(false, true)) {
+            flusher.execute(this::flushQuietly);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            // Already logged per batch; the entries are dropped and will be written on the next miss
+        }
+    }
+}
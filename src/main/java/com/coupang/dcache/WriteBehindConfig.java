@@ -0,0 +1,128 @@
+package com.coupang.dcache;
+
+import java.time.Duration;
+
+/**
+ * Configuration of the write-behind mode of {@link DynamoDbCache}.
+ */
+public class WriteBehindConfig {
+    /**
+     * What {@code put} does when the buffer is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Discard the write; the next miss will write the value again.
+         */
+        DROP,
+        /**
+         * Wait for the flusher to make room, up to the block timeout, then drop.
+         */
+        BLOCK,
+        /**
+         * Write the value synchronously, as without write-behind.
+         */
+        WRITE_THROUGH
+    }
+
+    private final int maxItems;
+    private final long maxBytes;
+    private final Duration maxDelay;
+    private final OverflowPolicy overflowPolicy;
+    private final Duration blockTimeout;
+
+    private WriteBehindConfig(Builder builder) {
+        this.maxItems = builder.maxItems;
+        this.maxBytes = builder.maxBytes;
+        this.maxDelay = builder.maxDelay;
+        this.overflowPolicy = builder.overflowPolicy;
+        this.blockTimeout = builder.blockTimeout;
+    }
+
+    public int getMaxItems() {
+        return maxItems;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public Duration getMaxDelay() {
+        return maxDelay;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public Duration getBlockTimeout() {
+        return blockTimeout;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private int maxItems = 10000;
+        private long maxBytes = 16L * 1024 * 1024; // 16 MB
+        private Duration maxDelay = Duration.ofMillis(100);
+        private OverflowPolicy overflowPolicy = OverflowPolicy.WRITE_THROUGH;
+        private Duration blockTimeout = Duration.ofSeconds(1);
+
+        /**
+         * Maximum number of distinct keys waiting to be written.
+         */
+        public Builder maxItems(int maxItems) {
+            this.maxItems = maxItems;
+            return this;
+        }
+
+        /**
+         * Maximum total size of the values waiting to be written.
+         */
+        public Builder maxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * Maximum time between a put and the flush that writes it.
+         */
+        public Builder maxDelay(Duration maxDelay) {
+            this.maxDelay = maxDelay;
+            return this;
+        }
+
+        public Builder overflowPolicy(OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = overflowPolicy;
+            return this;
+        }
+
+        /**
+         * How long {@link OverflowPolicy#BLOCK} waits for room in the buffer.
+         */
+        public Builder blockTimeout(Duration blockTimeout) {
+            this.blockTimeout = blockTimeout;
+            return this;
+        }
+
+        public WriteBehindConfig build() {
+            if (maxItems <= 0) {
+                throw new IllegalArgumentException("Max items must be positive");
+            }
+            if (maxBytes <= 0) {
+                throw new IllegalArgumentException("Max bytes must be positive");
+            }
+            if (maxDelay == null || maxDelay.isZero() || maxDelay.isNegative()) {
+                throw new IllegalArgumentException("Max delay must be positive");
+            }
+            if (overflowPolicy == null) {
+                throw new IllegalArgumentException("Overflow policy is required");
+            }
+            if (blockTimeout == null || blockTimeout.isNegative()) {
+                throw new IllegalArgumentException("Block timeout must not be negative");
+            }
+            return new WriteBehindConfig(this);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.coupang.dcache;
+
+/**
+ * Priority of a cache write when remote capacity is scarce.
+ */
+public enum WritePriority {
+    /**
+     * Writes caused by a request, e.g. caching a response after a miss.
+     */
+    NORMAL,
+
+    /**
+     * Background writes such as refreshes and prefetches, shed first when
+     * capacity runs low.
+     */
+    LOW
+}
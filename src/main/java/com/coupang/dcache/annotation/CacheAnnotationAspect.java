@@ -0,0 +1,337 @@
+package com.coupang.dcache.annotation;
+
+import com.coupang.dcache.AdaptiveTtl;
+import com.coupang.dcache.Cache;
+import com.coupang.dcache.CacheEntry;
+import com.coupang.dcache.CacheKeyGenerator;
+import com.coupang.dcache.HttpCacheConfig;
+import com.coupang.dcache.HttpResponse;
+import com.coupang.dcache.TaggableCache;
+import com.coupang.dcache.serializer.CacheEntrySerializer;
+import com.coupang.dcache.serializer.JsonCacheEntrySerializer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.expression.MethodBasedEvaluationContext;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Applies {@link Cacheable} and {@link CacheEvict} to Spring beans.
+ * <p>
+ * Only methods returning {@link HttpResponse} are cached; responses are stored
+ * as serialized {@link CacheEntry} values in the application's {@link Cache}
+ * bean. Without a Cache bean the annotations have no effect.
+ */
+@Aspect
+@Component
+public class CacheAnnotationAspect {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheAnnotationAspect.class);
+    private static final int DEFAULT_TTL = 3600;
+
+    private final ObjectProvider<Cache> cacheProvider;
+    private final ObjectProvider<HttpCacheConfig> configProvider;
+    private final SpelExpressionParser parser = new SpelExpressionParser();
+    private final ParameterNameDiscoverer parameterNameDiscoverer = new DefaultParameterNameDiscoverer();
+    private final Map<String, Expression> expressions = new ConcurrentHashMap<>();
+    private final Map<String, Method> cacheableMethods = new ConcurrentHashMap<>();
+
+    public CacheAnnotationAspect(ObjectProvider<Cache> cacheProvider, ObjectProvider<HttpCacheConfig> configProvider) {
+        this.cacheProvider = cacheProvider;
+        this.configProvider = configProvider;
+    }
+
+    @Around("@annotation(cacheable)")
+    public Object cacheable(ProceedingJoinPoint joinPoint, Cacheable cacheable) throws Throwable {
+        Cache cache = cacheProvider.getIfAvailable();
+        HttpCacheConfig config = configProvider.getIfAvailable();
+        Method method = targetMethod(joinPoint);
+        if (cache == null || cacheable.bypass() || (config != null && config.isBypassCache())
+                || !HttpResponse.class.isAssignableFrom(method.getReturnType())) {
+            return joinPoint.proceed();
+        }
+
+        EvaluationContext context = evaluationContext(joinPoint, method);
+        if (!isConditionMet(cacheable.condition(), context)) {
+            return joinPoint.proceed();
+        }
+
+        String key = cacheKey(KeySpec.of(cacheable, method, config), joinPoint.getArgs(), context);
+        CacheEntrySerializer serializer = config != null ? config.getSerializer() : new JsonCacheEntrySerializer();
+
+        try {
+            Optional<byte[]> cached = cache.get(key);
+            if (cached.isPresent()) {
+                LOGGER.debug("Cache hit for key: {}", key);
+                return serializer.deserialize(cached.get()).toHttpResponse();
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("Error reading cached response for key: {}", key, e);
+        }
+
+        HttpResponse response = (HttpResponse) joinPoint.proceed();
+        if (response == null) {
+            return null;
+        }
+
+        int ttl = cacheable.ttl() > 0 ? cacheable.ttl() : (config != null ? config.getDefaultTtl() : DEFAULT_TTL);
+        AdaptiveTtl adaptiveTtl = config != null ? config.getAdaptiveTtl() : null;
+        try {
+            if (adaptiveTtl != null) {
+                ttl = adaptiveTtl.ttl(key, ttl);
+                adaptiveTtl.observe(key, response.getBody());
+            }
+            byte[] value = serializer.serialize(CacheEntry.builder()
+                    .key(key)
+                    .statusCode(response.getStatusCode())
+                    .headers(response.getHeaders())
+                    .body(response.getBody())
+                    .timestamp(response.getTimestamp())
+                    .expires(Instant.now().plusSeconds(ttl))
+                    .build());
+
+            context.setVariable("result", response);
+            List<String> tags = evaluateAll(cacheable.tags(), context);
+            if (tags.isEmpty()) {
+                cache.put(key, value, ttl);
+            } else if (cache instanceof TaggableCache) {
+                ((TaggableCache) cache).put(key, value, ttl, tags);
+            } else {
+                LOGGER.warn("Cache {} does not support tags, ignoring tags {} for key: {}",
+                        cache.getClass().getSimpleName(), tags, key);
+                cache.put(key, value, ttl);
+            }
+        } catch (RuntimeException e) {
+            // Failing to cache must not fail the call
+            LOGGER.warn("Error caching response for key: {}", key, e);
+        }
+        return response;
+    }
+
+    @Around("@annotation(cacheEvict)")
+    public Object cacheEvict(ProceedingJoinPoint joinPoint, CacheEvict cacheEvict) throws Throwable {
+        Cache cache = cacheProvider.getIfAvailable();
+        if (cache == null) {
+            return joinPoint.proceed();
+        }
+
+        Method method = targetMethod(joinPoint);
+        if (!cacheEvict.allEntries() && cacheEvict.key().isEmpty() && cacheEvict.cacheable().isEmpty()
+                && cacheEvict.tags().length == 0) {
+            // A key from this method's own parameters would never match an entry of another method
+            throw new IllegalStateException("@CacheEvict on " + method.getDeclaringClass().getSimpleName() + "."
+                    + method.getName() + " needs key, cacheable, tags or allEntries");
+        }
+        EvaluationContext context = evaluationContext(joinPoint, method);
+        if (cacheEvict.beforeInvocation()) {
+            evict(cache, cacheEvict, method, joinPoint.getArgs(), context);
+            return joinPoint.proceed();
+        }
+
+        Object result = joinPoint.proceed();
+        context.setVariable("result", result);
+        evict(cache, cacheEvict, method, joinPoint.getArgs(), context);
+        return result;
+    }
+
+    private void evict(Cache cache, CacheEvict cacheEvict, Method method, Object[] args, EvaluationContext context) {
+        if (!isConditionMet(cacheEvict.condition(), context)) {
+            return;
+        }
+        if (cacheEvict.allEntries()) {
+            cache.invalidateAll();
+            return;
+        }
+
+        List<String> tags = evaluateAll(cacheEvict.tags(), context);
+        if (!tags.isEmpty()) {
+            if (!(cache instanceof TaggableCache)) {
+                throw new UnsupportedOperationException("Cache does not support tags: " + cache.getClass().getName());
+            }
+            for (String tag : tags) {
+                ((TaggableCache) cache).invalidateTag(tag);
+            }
+        }
+
+        // With only tags given, the method parameters are not an entry key
+        if (tags.isEmpty() || !cacheEvict.key().isEmpty() || !cacheEvict.cacheable().isEmpty()) {
+            cache.invalidate(cacheKey(evictKeySpec(cacheEvict, method), args, context));
+        }
+    }
+
+    /**
+     * Describes the key of the entries to evict: that of the named
+     * {@link Cacheable} method, so that both build the same key, or else
+     * the given key expression under the configured strategy.
+     */
+    private KeySpec evictKeySpec(CacheEvict cacheEvict, Method method) {
+        HttpCacheConfig config = configProvider.getIfAvailable();
+        if (cacheEvict.cacheable().isEmpty()) {
+            return new KeySpec(cacheEvict.key(), cacheEvict.includeParams(), cacheEvict.excludeParams(),
+                    new String[0], defaultStrategy(config), method);
+        }
+        Method cached = cacheableMethods.computeIfAbsent(method.getDeclaringClass().getName() + "#"
+                + cacheEvict.cacheable(), ignored -> findCacheable(method.getDeclaringClass(), cacheEvict.cacheable()));
+        Cacheable cacheable = cached.getAnnotation(Cacheable.class);
+        KeySpec spec = KeySpec.of(cacheable, cached, config);
+        if (cacheEvict.key().isEmpty()) {
+            return spec;
+        }
+        return new KeySpec(cacheEvict.key(), spec.includeParams, spec.excludeParams, spec.includeHeaders,
+                spec.strategy, cached);
+    }
+
+    private static Method findCacheable(Class<?> type, String name) {
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Method candidate : c.getDeclaredMethods()) {
+                if (candidate.getName().equals(name) && candidate.isAnnotationPresent(Cacheable.class)) {
+                    return candidate;
+                }
+            }
+        }
+        throw new IllegalStateException("No @Cacheable method " + name + " in " + type.getName());
+    }
+
+    private String cacheKey(KeySpec spec, Object[] args, EvaluationContext context) {
+        boolean headersInKey = spec.strategy != HttpCacheConfig.CacheKeyStrategy.SIMPLE;
+        String baseKey = spec.keyExpression.isEmpty()
+                ? defaultKey(spec.method, args, spec.includeParams, spec.excludeParams, headersInKey)
+                : String.valueOf(evaluate(spec.keyExpression, context));
+
+        switch (spec.strategy) {
+            case WITH_HEADERS:
+                return CacheKeyGenerator.generateKeyWithHeaders(baseKey, headers(args, spec.includeHeaders));
+            case WITH_METHOD:
+                return CacheKeyGenerator.generateKeyWithMethod(baseKey, spec.method.getName(),
+                        headers(args, spec.includeHeaders));
+            case HASHED:
+                return CacheKeyGenerator.generateHashedKey(
+                        CacheKeyGenerator.generateKeyWithHeaders(baseKey, headers(args, spec.includeHeaders)));
+            case SIMPLE:
+            default:
+                return baseKey;
+        }
+    }
+
+    /**
+     * Builds a key from the declaring class, the method name and the parameter
+     * values, e.g. {@code ProductClient.fetch:<url>} for {@code fetch(String url)},
+     * so that methods taking the same arguments do not share entries.
+     */
+    private String defaultKey(Method method, Object[] args, boolean includeParams, String[] excludeParams,
+                              boolean skipHeaderMaps) {
+        String prefix = method.getDeclaringClass().getSimpleName() + "." + method.getName();
+        if (!includeParams) {
+            return prefix;
+        }
+        String[] names = parameterNameDiscoverer.getParameterNames(method);
+        List<String> excluded = Arrays.asList(excludeParams);
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (names != null && excluded.contains(names[i])) {
+                continue;
+            }
+            if (skipHeaderMaps && args[i] instanceof Map) {
+                continue;
+            }
+            values.add(String.valueOf(args[i]));
+        }
+        return values.isEmpty() ? prefix : prefix + ":" + String.join(":", values);
+    }
+
+    private static HttpCacheConfig.CacheKeyStrategy defaultStrategy(HttpCacheConfig config) {
+        return config != null ? config.getCacheKeyStrategy() : HttpCacheConfig.CacheKeyStrategy.SIMPLE;
+    }
+
+    /**
+     * How the key of a cached method's entries is built.
+     */
+    private static final class KeySpec {
+        private final String keyExpression;
+        private final boolean includeParams;
+        private final String[] excludeParams;
+        private final String[] includeHeaders;
+        private final HttpCacheConfig.CacheKeyStrategy strategy;
+        private final Method method;
+
+        private KeySpec(String keyExpression, boolean includeParams, String[] excludeParams, String[] includeHeaders,
+                        HttpCacheConfig.CacheKeyStrategy strategy, Method method) {
+            this.keyExpression = keyExpression;
+            this.includeParams = includeParams;
+            this.excludeParams = excludeParams;
+            this.includeHeaders = includeHeaders;
+            this.strategy = strategy;
+            this.method = method;
+        }
+
+        private static KeySpec of(Cacheable cacheable, Method method, HttpCacheConfig config) {
+            return new KeySpec(cacheable.key(), cacheable.includeParams(), cacheable.excludeParams(),
+                    cacheable.includeHeaders(), cacheable.keyStrategy().toConfigStrategy(defaultStrategy(config)),
+                    method);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, String> headers(Object[] args, String[] includeHeaders) {
+        Map<String, String> headers = new HashMap<>();
+        for (Object arg : args) {
+            if (arg instanceof Map) {
+                ((Map<Object, Object>) arg).forEach((name, value) -> headers.put(String.valueOf(name), String.valueOf(value)));
+                break;
+            }
+        }
+        if (includeHeaders.length > 0) {
+            headers.keySet().retainAll(Arrays.asList(includeHeaders));
+        }
+        return headers;
+    }
+
+    private boolean isConditionMet(String condition, EvaluationContext context) {
+        return condition.isEmpty() || Boolean.TRUE.equals(evaluate(condition, context));
+    }
+
+    private List<String> evaluateAll(String[] expressionStrings, EvaluationContext context) {
+        List<String> values = new ArrayList<>(expressionStrings.length);
+        for (String expression : expressionStrings) {
+            Object value = evaluate(expression, context);
+            if (value != null) {
+                values.add(String.valueOf(value));
+            }
+        }
+        return values;
+    }
+
+    private Object evaluate(String expression, EvaluationContext context) {
+        return expressions.computeIfAbsent(expression, parser::parseExpression).getValue(context);
+    }
+
+    private EvaluationContext evaluationContext(ProceedingJoinPoint joinPoint, Method method) {
+        return new MethodBasedEvaluationContext(joinPoint.getTarget(), method, joinPoint.getArgs(),
+                parameterNameDiscoverer);
+    }
+
+    private static Method targetMethod(ProceedingJoinPoint joinPoint) {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        Object target = joinPoint.getTarget();
+        return target == null ? method : AopUtils.getMostSpecificMethod(method, target.getClass());
+    }
+}
@@ -13,10 +13,17 @@ import java.lang.annotation.Target;
 public @interface CacheEvict {
     
     /**
-     * The cache key to evict. If not specified, a key will be generated based on the method parameters.
+     * The cache key to evict.
      * Supports SpEL expressions for dynamic key generation, e.g., "#param1 + '-' + #param2"
      */
     String key() default "";
+
+    /**
+     * Name of the {@link Cacheable} method, in the same class, whose entry to evict. The key is
+     * built the way that method builds it, from this method's arguments, with the same key strategy
+     * and headers. One of key, cacheable, tags or allEntries is required.
+     */
+    String cacheable() default "";
     
     /**
      * Whether to evict all entries in the cache.
@@ -43,4 +50,10 @@ public @interface CacheEvict {
      * Whether the eviction should be done before or after the method is executed.
      */
     boolean beforeInvocation() default false;
+    
+    /**
+     * Tags whose entries should all be evicted. Requires a {@link com.coupang.dcache.TaggableCache}.
+     * Supports SpEL expressions, e.g., "'product:' + #id"
+     */
+    String[] tags() default {};
 } 
\ No newline at end of file
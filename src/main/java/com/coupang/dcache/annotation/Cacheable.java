@@ -56,4 +56,11 @@ public @interface Cacheable {
      * Whether to bypass the cache for this invocation.
      */
     boolean bypass() default false;
+    
+    /**
+     * Surrogate tags to associate with the cache entry, so that it can be evicted together
+     * with every other entry carrying the same tag. Requires a {@link com.coupang.dcache.TaggableCache}.
+     * Supports SpEL expressions, e.g., "'product:' + #id"; the result is available as #result.
+     */
+    String[] tags() default {};
 } 
\ No newline at end of file
@@ -151,7 +151,7 @@ public class AnnotationExample {
         /**
          * Evicts a URL from the cache.
          */
-        @CacheEvict
+        @CacheEvict(cacheable = "fetchData")
         public void evictCache(String url) {
             System.out.println("Evicting cache for URL: " + url);
         }
@@ -0,0 +1,158 @@
+package com.coupang.dcache.invalidation;
+
+import com.coupang.dcache.ExecutionStrategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Base class for buses that send invalidations in batches.
+ * <p>
+ * Published keys are collected in a set, so repeated invalidations of the
+ * same key between two flushes are sent once. A batch is flushed after the
+ * configured delay, or immediately once it reaches the maximum size.
+ * Flushes are serialized, so {@link #send} is never called concurrently,
+ * even when {@link #flush()} or {@link #close()} runs on another thread
+ * than the flusher.
+ */
+public abstract class AbstractBatchingInvalidationBus implements InvalidationBus {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AbstractBatchingInvalidationBus.class);
+
+    private final int maxBatchSize;
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean pendingAll = new AtomicBoolean();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final List<InvalidationListener> listeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService flusher;
+    private final long batchDelayMicros;
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    protected AbstractBatchingInvalidationBus(Duration batchDelay, int maxBatchSize,
+                                              ExecutionStrategy executionStrategy) {
+        this.maxBatchSize = maxBatchSize;
+        this.batchDelayMicros = TimeUnit.NANOSECONDS.toMicros(batchDelay.toNanos());
+        this.flusher = executionStrategy.newScheduler("dcache-invalidation-flusher");
+    }
+
+    @Override
+    public void publish(String key) {
+        pending.add(key);
+        if (pending.size() >= maxBatchSize && !flusher.isShutdown()) {
+            flusher.execute(this::flush);
+        } else {
+            scheduleFlush();
+        }
+    }
+
+    @Override
+    public void publishAll() {
+        pendingAll.set(true);
+        scheduleFlush();
+    }
+
+    @Override
+    public void subscribe(InvalidationListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Sends all pending invalidations now.
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            flushScheduled.set(false);
+            boolean all = pendingAll.getAndSet(false);
+            List<String> batch = new ArrayList<>();
+            for (String key : pending) {
+                if (pending.remove(key)) {
+                    batch.add(key);
+                }
+            }
+            if (!all && batch.isEmpty()) {
+                return;
+            }
+            try {
+                if (all) {
+                    // Invalidating everything covers any keys collected alongside
+                    send(List.of(), true);
+                } else {
+                    for (int from = 0; from < batch.size(); from += maxBatchSize) {
+                        send(batch.subList(from, Math.min(from + maxBatchSize, batch.size())), false);
+                    }
+                }
+            } catch (Exception e) {
+                LOGGER.warn("Failed to send {} invalidation(s)", all ? "all" : batch.size(), e);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Stops the flusher and sends what is still pending, unless the flusher
+     * is stuck in a send for over a second; those invalidations are then
+     * dropped, like any other failed delivery.
+     */
+    @Override
+    public void close() {
+        flusher.shutdown();
+        boolean stopped = false;
+        try {
+            stopped = flusher.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (stopped) {
+            flush();
+        } else {
+            LOGGER.warn("Invalidation flusher still sending after 1s, dropping pending invalidations");
+        }
+    }
+
+    /**
+     * Sends one batch to the other nodes. Never called concurrently.
+     *
+     * @param keys The de-duplicated keys, at most the maximum batch size
+     * @param all Whether all entries were invalidated
+     * @throws Exception If sending failed
+     */
+    protected abstract void send(Collection<String> keys, boolean all) throws Exception;
+
+    /**
+     * Hands invalidations received from another node to the listeners.
+     *
+     * @param keys The invalidated keys
+     * @param all Whether all entries were invalidated
+     */
+    protected void deliver(Collection<String> keys, boolean all) {
+        for (InvalidationListener listener : listeners) {
+            try {
+                if (all) {
+                    listener.onInvalidateAll();
+                } else if (!keys.isEmpty()) {
+                    listener.onInvalidate(keys);
+                }
+            } catch (Exception e) {
+                LOGGER.warn("Invalidation listener failed", e);
+            }
+        }
+    }
+
+    private void scheduleFlush() {
+        if (!flusher.isShutdown() && flushScheduled.compareAndSet(false, true)) {
+            flusher.schedule(this::flush, batchDelayMicros, TimeUnit.MICROSECONDS);
+        }
+    }
+}
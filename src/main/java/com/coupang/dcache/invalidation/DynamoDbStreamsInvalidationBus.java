@@ -0,0 +1,223 @@
+package com.coupang.dcache.invalidation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.dynamodb.model.*;
+import software.amazon.awssdk.services.dynamodb.streams.DynamoDbStreamsClient;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Invalidation bus driven by the cache table's DynamoDB stream.
+ * <p>
+ * Every write to the table is already a change record, so publishing is a
+ * no-op: the bus tails all stream shards and reports each modified or
+ * removed key, whichever node (or TTL expiry) caused it. Writes made by this
+ * node are reported too. Latency is bounded by the poll interval plus the
+ * stream's own propagation delay, typically well under a second.
+ * <p>
+ * With read-replica sharding, enable a stream view type with images so that
+ * copies ({@code key#N}) can be mapped back to their logical key.
+ * <p>
+ * Shards are read independently: a shard whose read fails is retried on the
+ * next poll, and the keys read from the others are still delivered. A shard
+ * whose iterator expired resumes after its last record read, and one whose
+ * records were trimmed resumes at its oldest record.
+ * <p>
+ * Every node reads every shard on every poll, by default 4 times a second.
+ * DynamoDB Streams throttles a shard read by more than two readers at once,
+ * so with more than a couple of nodes raise the poll interval, or fan the
+ * stream out (e.g. through a Lambda function) to a {@link PeerMeshInvalidationBus}.
+ */
+public class DynamoDbStreamsInvalidationBus implements InvalidationBus {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DynamoDbStreamsInvalidationBus.class);
+
+    private final DynamoDbStreamsClient streamsClient;
+    private final String streamArn;
+    private final long shardRefreshMillis;
+    private final List<InvalidationListener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<String, String> shardIterators = new ConcurrentHashMap<>();
+    private final Map<String, String> lastSequenceNumbers = new HashMap<>();
+    private final Set<String> finishedShards = new HashSet<>();
+    private final ScheduledExecutorService poller;
+    private long lastShardRefresh;
+    private boolean started;
+
+    /**
+     * Creates the bus and starts tailing the stream from its latest records.
+     *
+     * @param config The bus configuration
+     */
+    public DynamoDbStreamsInvalidationBus(DynamoDbStreamsInvalidationBusConfig config) {
+        this.streamsClient = config.getStreamsClient();
+        this.streamArn = config.getStreamArn();
+        this.shardRefreshMillis = config.getShardRefreshInterval().toMillis();
+        this.poller = config.getExecutionStrategy().newScheduler("dcache-stream-poller");
+        // Position on the current shards synchronously so that no change made
+        // after construction is missed
+        refreshShards();
+        long pollMillis = config.getPollInterval().toMillis();
+        poller.scheduleWithFixedDelay(this::poll, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void publish(String key) {
+        // The table write itself appears on the stream
+    }
+
+    @Override
+    public void publishAll() {
+        // Every deleted item appears on the stream
+    }
+
+    @Override
+    public void subscribe(InvalidationListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void close() {
+        poller.shutdownNow();
+    }
+
+    /**
+     * Reads all available records once. Normally called by the poller thread.
+     */
+    void poll() {
+        if (System.currentTimeMillis() - lastShardRefresh >= shardRefreshMillis) {
+            try {
+                refreshShards();
+            } catch (Exception e) {
+                LOGGER.warn("Error listing shards of DynamoDB stream {}", streamArn, e);
+            }
+        }
+
+        Set<String> keys = new LinkedHashSet<>();
+        for (Map.Entry<String, String> entry : shardIterators.entrySet()) {
+            try {
+                readShard(entry, keys);
+            } catch (ExpiredIteratorException e) {
+                String lastSequenceNumber = lastSequenceNumbers.get(entry.getKey());
+                LOGGER.debug("Iterator of shard {} expired, resuming after {}", entry.getKey(), lastSequenceNumber);
+                reposition(entry, lastSequenceNumber == null
+                        ? ShardIteratorType.LATEST : ShardIteratorType.AFTER_SEQUENCE_NUMBER, lastSequenceNumber);
+            } catch (TrimmedDataAccessException e) {
+                LOGGER.warn("Records of shard {} were trimmed before being read, resuming at the oldest one",
+                        entry.getKey());
+                reposition(entry, ShardIteratorType.TRIM_HORIZON, null);
+            } catch (Exception e) {
+                // e.g. throttled: the iterator is still valid, so the shard is retried on the next poll
+                LOGGER.warn("Error reading shard {} of DynamoDB stream {}", entry.getKey(), streamArn, e);
+            }
+        }
+
+        if (!keys.isEmpty()) {
+            for (InvalidationListener listener : listeners) {
+                try {
+                    listener.onInvalidate(keys);
+                } catch (Exception e) {
+                    LOGGER.warn("Invalidation listener failed", e);
+                }
+            }
+        }
+    }
+
+    private void readShard(Map.Entry<String, String> entry, Set<String> keys) {
+        GetRecordsResponse response = streamsClient.getRecords(GetRecordsRequest.builder()
+                .shardIterator(entry.getValue())
+                .build());
+        for (software.amazon.awssdk.services.dynamodb.model.Record record : response.records()) {
+            String key = cacheKey(record.dynamodb());
+            if (key != null) {
+                keys.add(key);
+            }
+            if (record.dynamodb() != null && record.dynamodb().sequenceNumber() != null) {
+                lastSequenceNumbers.put(entry.getKey(), record.dynamodb().sequenceNumber());
+            }
+        }
+        if (response.nextShardIterator() == null) {
+            // The shard was closed by a split; its children are picked up on refresh
+            shardIterators.remove(entry.getKey());
+            lastSequenceNumbers.remove(entry.getKey());
+            finishedShards.add(entry.getKey());
+        } else {
+            entry.setValue(response.nextShardIterator());
+        }
+    }
+
+    /**
+     * Replaces the iterator of a shard, keeping the old one if that fails so
+     * the shard is tried again on the next poll.
+     */
+    private void reposition(Map.Entry<String, String> entry, ShardIteratorType type, String sequenceNumber) {
+        try {
+            entry.setValue(streamsClient.getShardIterator(GetShardIteratorRequest.builder()
+                    .streamArn(streamArn)
+                    .shardId(entry.getKey())
+                    .shardIteratorType(type)
+                    .sequenceNumber(sequenceNumber)
+                    .build()).shardIterator());
+        } catch (Exception e) {
+            LOGGER.warn("Failed to get a new iterator for shard {} of DynamoDB stream {}", entry.getKey(), streamArn, e);
+        }
+    }
+
+    private void refreshShards() {
+        String lastShardId = null;
+        do {
+            StreamDescription description = streamsClient.describeStream(DescribeStreamRequest.builder()
+                    .streamArn(streamArn)
+                    .exclusiveStartShardId(lastShardId)
+                    .build()).streamDescription();
+            for (Shard shard : description.shards()) {
+                String shardId = shard.shardId();
+                if (shardIterators.containsKey(shardId) || finishedShards.contains(shardId)) {
+                    continue;
+                }
+                boolean open = shard.sequenceNumberRange() == null
+                        || shard.sequenceNumberRange().endingSequenceNumber() == null;
+                if (!started && !open) {
+                    // Closed before we started: nothing new will appear on it
+                    finishedShards.add(shardId);
+                    continue;
+                }
+                // Shards appearing later are read from the start so no change is skipped
+                ShardIteratorType type = started ? ShardIteratorType.TRIM_HORIZON : ShardIteratorType.LATEST;
+                String iterator = streamsClient.getShardIterator(GetShardIteratorRequest.builder()
+                        .streamArn(streamArn)
+                        .shardId(shardId)
+                        .shardIteratorType(type)
+                        .build()).shardIterator();
+                shardIterators.put(shardId, iterator);
+            }
+            lastShardId = description.lastEvaluatedShardId();
+        } while (lastShardId != null);
+        started = true;
+        lastShardRefresh = System.currentTimeMillis();
+    }
+
+    private static String cacheKey(StreamRecord record) {
+        if (record == null) {
+            return null;
+        }
+        // Read-replica copies carry the logical key in base_key when images are enabled
+        for (Map<String, AttributeValue> image : List.of(record.newImage(), record.oldImage())) {
+            AttributeValue baseKey = image.get("base_key");
+            if (baseKey != null) {
+                return baseKey.s();
+            }
+        }
+        // "key" in the single-key layout, "sk" in the tenant-partitioned layout
+        AttributeValue key = record.keys().containsKey("key") ? record.keys().get("key") : record.keys().get("sk");
+        return key == null ? null : key.s();
+    }
+}
@@ -0,0 +1,108 @@
+package com.coupang.dcache.invalidation;
+
+import com.coupang.dcache.ExecutionStrategy;
+import software.amazon.awssdk.services.dynamodb.streams.DynamoDbStreamsClient;
+
+import java.time.Duration;
+
+/**
+ * Configuration for {@link DynamoDbStreamsInvalidationBus}.
+ */
+public class DynamoDbStreamsInvalidationBusConfig {
+    private final DynamoDbStreamsClient streamsClient;
+    private final String streamArn;
+    private final Duration pollInterval;
+    private final Duration shardRefreshInterval;
+    private final ExecutionStrategy executionStrategy;
+
+    private DynamoDbStreamsInvalidationBusConfig(Builder builder) {
+        this.streamsClient = builder.streamsClient;
+        this.streamArn = builder.streamArn;
+        this.pollInterval = builder.pollInterval;
+        this.shardRefreshInterval = builder.shardRefreshInterval;
+        this.executionStrategy = builder.executionStrategy;
+    }
+
+    public DynamoDbStreamsClient getStreamsClient() {
+        return streamsClient;
+    }
+
+    public String getStreamArn() {
+        return streamArn;
+    }
+
+    public Duration getPollInterval() {
+        return pollInterval;
+    }
+
+    public Duration getShardRefreshInterval() {
+        return shardRefreshInterval;
+    }
+
+    public ExecutionStrategy getExecutionStrategy() {
+        return executionStrategy;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private DynamoDbStreamsClient streamsClient;
+        private String streamArn;
+        private Duration pollInterval = Duration.ofMillis(250);
+        private Duration shardRefreshInterval = Duration.ofSeconds(30);
+        private ExecutionStrategy executionStrategy = ExecutionStrategy.defaultStrategy();
+
+        public Builder withStreamsClient(DynamoDbStreamsClient streamsClient) {
+            this.streamsClient = streamsClient;
+            return this;
+        }
+
+        /**
+         * ARN of the cache table's stream (the table's LatestStreamArn).
+         */
+        public Builder streamArn(String streamArn) {
+            this.streamArn = streamArn;
+            return this;
+        }
+
+        /**
+         * Delay between two GetRecords calls per shard.
+         */
+        public Builder pollInterval(Duration pollInterval) {
+            this.pollInterval = pollInterval;
+            return this;
+        }
+
+        /**
+         * How often the shard list is re-read to pick up shards created by splits.
+         */
+        public Builder shardRefreshInterval(Duration shardRefreshInterval) {
+            this.shardRefreshInterval = shardRefreshInterval;
+            return this;
+        }
+
+        /**
+         * Threads running the stream poller. Defaults to virtual threads on Java 21+
+         * and bounded pools otherwise.
+         */
+        public Builder executionStrategy(ExecutionStrategy executionStrategy) {
+            this.executionStrategy = executionStrategy;
+            return this;
+        }
+
+        public DynamoDbStreamsInvalidationBusConfig build() {
+            if (streamsClient == null) {
+                throw new IllegalArgumentException("DynamoDB Streams client is required");
+            }
+            if (streamArn == null || streamArn.isEmpty()) {
+                throw new IllegalArgumentException("Stream ARN is required");
+            }
+if (executionStrategy == null) {
+                throw new IllegalArgumentException("Execution strategy is required");
+            }
+            return new DynamoDbStreamsInvalidationBusConfig(this);
+        }
+    }
+}
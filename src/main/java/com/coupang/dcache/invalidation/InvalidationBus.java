@@ -0,0 +1,33 @@
+package com.coupang.dcache.invalidation;
+
+/**
+ * Broadcasts cache invalidations between nodes so that local (L1) copies
+ * can be dropped as soon as an entry changes anywhere in the fleet.
+ */
+public interface InvalidationBus extends AutoCloseable {
+    /**
+     * Announces that a key was changed or removed on this node.
+     * Implementations may batch and de-duplicate outgoing messages.
+     *
+     * @param key The cache key
+     */
+    void publish(String key);
+
+    /**
+     * Announces that all entries were removed on this node.
+     */
+    void publishAll();
+
+    /**
+     * Registers a listener for invalidations made on other nodes.
+     *
+     * @param listener The listener
+     */
+    void subscribe(InvalidationListener listener);
+
+    /**
+     * Stops the bus and releases its resources.
+     */
+    @Override
+    void close();
+}
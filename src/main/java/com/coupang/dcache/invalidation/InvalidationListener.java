@@ -0,0 +1,20 @@
+package com.coupang.dcache.invalidation;
+
+import java.util.Collection;
+
+/**
+ * Receives invalidations made on other nodes.
+ */
+public interface InvalidationListener {
+    /**
+     * Called when keys were changed or removed on another node.
+     *
+     * @param keys The changed cache keys, without duplicates
+     */
+    void onInvalidate(Collection<String> keys);
+
+    /**
+     * Called when another node removed all entries.
+     */
+    void onInvalidateAll();
+}
@@ -0,0 +1,452 @@
+package com.coupang.dcache.invalidation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Invalidation bus over a full mesh of TCP connections between nodes.
+ * <p>
+ * Every node listens on its bind address and keeps one outgoing connection
+ * per peer, opened lazily and re-opened after failures. Batches are written
+ * as length-delimited frames with Nagle's algorithm disabled, so a change is
+ * typically seen by peers within the batch delay plus one network hop.
+ * <p>
+ * Each peer has its own queue of up to {@value #MAX_QUEUED_BATCHES} batches,
+ * sent by its own task, so a slow or dead peer only delays itself. A write
+ * that takes longer than the write timeout closes the connection. After a
+ * failed connect or write, batches for that peer are dropped for a backoff
+ * that doubles from 100ms up to 5s, so a dead peer costs the others nothing. The
+ * node id and keys are length-prefixed UTF-8; a frame is encoded in full
+ * before any of it is written, and keys over {@value #MAX_KEY_BYTES} bytes
+ * are left out, so a bad key never leaves half a frame on the connection.
+ * <p>
+ * A connection opens with the protocol version and the length-prefixed
+ * shared secret, and the receiver closes it unless both match its own, so
+ * only nodes knowing the secret can evict keys. The bus listens on the
+ * loopback address unless configured otherwise.
+ * <p>
+ * Delivery is best effort: batches sent while a peer is unreachable are lost,
+ * so L1 TTLs remain the upper bound on staleness.
+ */
+public class PeerMeshInvalidationBus extends AbstractBatchingInvalidationBus {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PeerMeshInvalidationBus.class);
+    static final int MAX_SECRET_BYTES = 1024;
+    private static final byte PROTOCOL_VERSION = 3;
+    private static final int MAX_KEY_BYTES = 1024 * 1024;
+    private static final int MAX_QUEUED_BATCHES = 64;
+    private static final long MIN_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final byte TYPE_KEYS = 0;
+    private static final byte TYPE_ALL = 1;
+
+    private final String nodeId;
+    private final byte[] secret;
+    private final int connectTimeoutMillis;
+    private final long writeTimeoutMillis;
+    private final ServerSocket serverSocket;
+    private final ExecutorService receivers;
+    private final ExecutorService senders;
+    private final ScheduledExecutorService writeTimeouts;
+    private final Map<InetSocketAddress, PeerConnection> peers = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    /**
+     * Creates the bus and starts listening for peers.
+     *
+     * @param config The bus configuration
+     */
+    public PeerMeshInvalidationBus(PeerMeshInvalidationBusConfig config) {
+        super(config.getBatchDelay(), config.getMaxBatchSize(), config.getExecutionStrategy());
+        this.nodeId = config.getNodeId();
+        this.secret = config.getSecret().getBytes(StandardCharsets.UTF_8);
+        this.connectTimeoutMillis = (int) config.getConnectTimeout().toMillis();
+        this.writeTimeoutMillis = config.getWriteTimeout().toMillis();
+        // One reader per connection and at most one sender per peer, so not the strategy's bounded executor
+        this.receivers = Executors.newCachedThreadPool(
+                config.getExecutionStrategy().threadFactory("dcache-invalidation-receiver"));
+        this.senders = Executors.newCachedThreadPool(
+                config.getExecutionStrategy().threadFactory("dcache-invalidation-sender"));
+        this.writeTimeouts = config.getExecutionStrategy().newScheduler("dcache-invalidation-write-timeout");
+        config.getPeers().forEach(this::addPeer);
+        try {
+            this.serverSocket = new ServerSocket();
+            this.serverSocket.bind(config.getBindAddress());
+        } catch (IOException e) {
+            receivers.shutdownNow();
+            senders.shutdownNow();
+            writeTimeouts.shutdownNow();
+            throw new UncheckedIOException("Failed to bind invalidation bus to " + config.getBindAddress(), e);
+        }
+        receivers.execute(this::acceptLoop);
+    }
+
+    /**
+     * Returns the address this node listens on.
+     *
+     * @return The bound address
+     */
+    public InetSocketAddress getLocalAddress() {
+        return (InetSocketAddress) serverSocket.getLocalSocketAddress();
+    }
+
+    /**
+     * Adds a peer, e.g. after discovering a new pod.
+     *
+     * @param address The peer's listen address
+     */
+    public void addPeer(InetSocketAddress address) {
+        peers.computeIfAbsent(address, PeerConnection::new);
+    }
+
+    /**
+     * Removes a peer and closes the connection to it. Batches queued or being
+     * sent to it are dropped.
+     *
+     * @param address The peer's listen address
+     */
+    public void removePeer(InetSocketAddress address) {
+        PeerConnection connection = peers.remove(address);
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    /**
+     * Queues the batch for every peer; the peers' senders write it.
+     */
+    @Override
+    protected void send(Collection<String> keys, boolean all) {
+        byte[] frame = encode(keys, all);
+        for (PeerConnection peer : peers.values()) {
+            peer.enqueue(frame);
+        }
+    }
+
+    /**
+     * Sends what is still pending, waiting up to a second for the peers'
+     * senders, then closes all connections.
+     */
+    @Override
+    public void close() {
+        super.close();
+        closed = true;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            LOGGER.debug("Error closing invalidation bus server socket", e);
+        }
+        senders.shutdown();
+        try {
+            senders.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        peers.values().forEach(PeerConnection::close);
+        senders.shutdownNow();
+        writeTimeouts.shutdownNow();
+        receivers.shutdownNow();
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                receivers.execute(() -> receiveLoop(socket));
+            } catch (IOException e) {
+                if (!closed) {
+                    LOGGER.warn("Error accepting invalidation bus connection", e);
+                }
+            }
+        }
+    }
+
+    private void receiveLoop(Socket socket) {
+        try (Socket s = socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()))) {
+            if (!readHello(in)) {
+                LOGGER.warn("Rejected invalidation bus connection from {}: wrong protocol version or secret",
+                    s.getRemoteSocketAddress());
+                return;
+            }
+            while (!closed) {
+                byte type = in.readByte();
+                String origin = readString(in);
+                int count = in.readInt();
+                if (count < 0) {
+                    throw new ProtocolException("Negative key count " + count);
+                }
+                List<String> keys = new ArrayList<>(Math.min(count, 1024));
+                for (int i = 0; i < count; i++) {
+                    keys.add(readString(in));
+                }
+                if (!nodeId.equals(origin)) {
+                    deliver(keys, type == TYPE_ALL);
+                }
+            }
+        } catch (EOFException | SocketException e) {
+            LOGGER.debug("Invalidation bus connection closed: {}", e.getMessage());
+        } catch (IOException e) {
+            LOGGER.warn("Error reading from invalidation bus connection", e);
+        }
+    }
+
+    /**
+     * Reads the opening of a connection.
+     *
+     * @return True if the sender speaks this version and knows the secret
+     */
+    private boolean readHello(DataInputStream in) throws IOException {
+        if (in.readByte() != PROTOCOL_VERSION) {
+            return false;
+        }
+        return MessageDigest.isEqual(secret, readBytes(in, MAX_SECRET_BYTES));
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return new String(readBytes(in, MAX_KEY_BYTES), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readBytes(DataInputStream in, int maxBytes) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > maxBytes) {
+            throw new ProtocolException("Frame length " + length + " outside 0.." + maxBytes);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private byte[] encode(Collection<String> keys, boolean all) {
+        List<byte[]> encoded = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > MAX_KEY_BYTES) {
+                LOGGER.warn("Key of {} bytes exceeds {}, not sending its invalidation", bytes.length, MAX_KEY_BYTES);
+            } else {
+                encoded.add(bytes);
+            }
+        }
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (DataOutputStream frame = new DataOutputStream(buffer)) {
+            frame.writeByte(all ? TYPE_ALL : TYPE_KEYS);
+            writeBytes(frame, nodeId.getBytes(StandardCharsets.UTF_8));
+            frame.writeInt(encoded.size());
+            for (byte[] key : encoded) {
+                writeBytes(frame, key);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Outgoing connection to one peer, with its queue of batches.
+     * <p>
+     * At most one task drains the queue at a time, and it sends under
+     * {@code lock}. {@link #close()} may run on any thread: it closes the
+     * socket without the lock, so that a blocked send fails at once, and no
+     * send reconnects after it.
+     */
+    private final class PeerConnection {
+        private final InetSocketAddress address;
+        private final Queue<byte[]> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile boolean removed;
+        private volatile Socket socket;
+        private volatile long retryAtNanos = System.nanoTime();
+        private DataOutputStream out;
+        private long backoffNanos = MIN_BACKOFF_NANOS;
+
+        private PeerConnection(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        private void enqueue(byte[] frame) {
+            if (removed || System.nanoTime() - retryAtNanos < 0) {
+                LOGGER.debug("Peer {} unreachable, dropped invalidation batch", address);
+                return;
+            }
+            if (queued.incrementAndGet() > MAX_QUEUED_BATCHES) {
+                queued.decrementAndGet();
+                LOGGER.warn("Peer {} is {} batches behind, dropped invalidation batch", address, MAX_QUEUED_BATCHES);
+                return;
+            }
+            queue.add(frame);
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    senders.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    draining.set(false);
+                    LOGGER.debug("Invalidation bus closed, dropped batch for peer {}", address);
+                }
+            }
+        }
+
+        private void drain() {
+            while (true) {
+                byte[] frame = queue.poll();
+                if (frame == null) {
+                    draining.set(false);
+                    // A batch queued after the poll but before the reset would otherwise wait for the next one
+                    if (queue.isEmpty() || !draining.compareAndSet(false, true)) {
+                        return;
+                    }
+                    continue;
+                }
+                queued.decrementAndGet();
+                send(frame);
+            }
+        }
+
+        private void send(byte[] frame) {
+            lock.lock();
+            try {
+                if (removed || System.nanoTime() - retryAtNanos < 0) {
+                    return;
+                }
+                boolean reused = out != null;
+                try {
+                    if (!reused) {
+                        connect();
+                    }
+                    write(frame);
+                    backoffNanos = MIN_BACKOFF_NANOS;
+                    return;
+                } catch (IOException e) {
+                    disconnect();
+                    if (!reused || removed) {
+                        backOff(e);
+                        return;
+                    }
+                }
+                // The connection may have gone stale; retry once on a fresh one
+                try {
+                    connect();
+                    write(frame);
+                    backoffNanos = MIN_BACKOFF_NANOS;
+                } catch (IOException e) {
+                    disconnect();
+                    backOff(e);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Drops batches for this peer for a while. Called with the lock held.
+         */
+        private void backOff(IOException cause) {
+            if (removed) {
+                return;
+            }
+            LOGGER.warn("Failed to send invalidations to peer {}, dropping batches for {}ms: {}", address,
+                TimeUnit.NANOSECONDS.toMillis(backoffNanos), cause.getMessage());
+            retryAtNanos = System.nanoTime() + backoffNanos;
+            backoffNanos = Math.min(backoffNanos * 2, MAX_BACKOFF_NANOS);
+        }
+
+        private void connect() throws IOException {
+            Socket s = new Socket();
+            s.setTcpNoDelay(true);
+            socket = s;
+            // Written before reading removed, as close() sets removed before reading socket
+            if (removed) {
+                disconnect();
+                throw new SocketException("Peer " + address + " removed");
+            }
+            s.connect(address, connectTimeoutMillis);
+            out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            // Flushed with the first frame
+            out.writeByte(PROTOCOL_VERSION);
+            writeBytes(out, secret);
+        }
+
+        /**
+         * Writes a frame, closing the socket if the peer does not take it
+         * within the write timeout, since socket writes cannot time out.
+         */
+        private void write(byte[] frame) throws IOException {
+            Socket current = socket;
+            ScheduledFuture<?> timeout;
+            try {
+                timeout = writeTimeouts.schedule(() -> closeQuietly(current), writeTimeoutMillis,
+                    TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                throw new SocketException("Invalidation bus closed");
+            }
+            try {
+                out.write(frame);
+                out.flush();
+            } finally {
+                timeout.cancel(false);
+            }
+        }
+
+        /**
+         * Drops the connection. Called with the lock held.
+         */
+        private void disconnect() {
+            closeQuietly(socket);
+            socket = null;
+            out = null;
+        }
+
+        private void close() {
+            removed = true;
+            closeQuietly(socket);
+            queue.clear();
+        }
+
+        private void closeQuietly(Socket current) {
+            if (current != null) {
+                try {
+                    current.close();
+                } catch (IOException e) {
+                    LOGGER.debug("Error closing connection to peer {}", address, e);
+                }
+            }
+        }
+    }
+}
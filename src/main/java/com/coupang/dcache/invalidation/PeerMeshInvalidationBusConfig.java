@@ -0,0 +1,196 @@
+package com.coupang.dcache.invalidation;
+
+import com.coupang.dcache.ExecutionStrategy;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Configuration for {@link PeerMeshInvalidationBus}.
+ */
+public class PeerMeshInvalidationBusConfig {
+    private final String nodeId;
+    private final InetSocketAddress bindAddress;
+    private final String secret;
+    private final List<InetSocketAddress> peers;
+    private final Duration batchDelay;
+    private final int maxBatchSize;
+    private final Duration connectTimeout;
+    private final Duration writeTimeout;
+    private final ExecutionStrategy executionStrategy;
+
+    private PeerMeshInvalidationBusConfig(Builder builder) {
+        this.nodeId = builder.nodeId;
+        this.bindAddress = builder.bindAddress;
+        this.secret = builder.secret;
+        this.peers = List.copyOf(builder.peers);
+        this.batchDelay = builder.batchDelay;
+        this.maxBatchSize = builder.maxBatchSize;
+        this.connectTimeout = builder.connectTimeout;
+        this.writeTimeout = builder.writeTimeout;
+        this.executionStrategy = builder.executionStrategy;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public InetSocketAddress getBindAddress() {
+        return bindAddress;
+    }
+
+    public String getSecret() {
+        return secret;
+    }
+
+    public List<InetSocketAddress> getPeers() {
+        return peers;
+    }
+
+    public Duration getBatchDelay() {
+        return batchDelay;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public Duration getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public Duration getWriteTimeout() {
+        return writeTimeout;
+    }
+
+    public ExecutionStrategy getExecutionStrategy() {
+        return executionStrategy;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private String nodeId = UUID.randomUUID().toString();
+        private InetSocketAddress bindAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), 7890);
+        private String secret = "";
+        private final List<InetSocketAddress> peers = new ArrayList<>();
+        private Duration batchDelay = Duration.ofMillis(2);
+        private int maxBatchSize = 500;
+        private Duration connectTimeout = Duration.ofMillis(500);
+        private Duration writeTimeout = Duration.ofSeconds(1);
+        private ExecutionStrategy executionStrategy = ExecutionStrategy.defaultStrategy();
+
+        /**
+         * Unique id of this node; messages carrying it are ignored on receipt,
+         * so the peer list may include this node itself.
+         */
+        public Builder nodeId(String nodeId) {
+            this.nodeId = nodeId;
+            return this;
+        }
+
+        /**
+         * Address to listen on for invalidations from peers. Port 0 picks a
+         * free port. Defaults to the loopback address, so hearing from other
+         * pods needs an explicit address; any host reaching it can evict
+         * keys or flush every L1, so it must only be reachable from the
+         * service's own pods and should be used with a {@link #secret(String)}.
+         */
+        public Builder bindAddress(InetSocketAddress bindAddress) {
+            this.bindAddress = bindAddress;
+            return this;
+        }
+
+        /**
+         * Secret shared by all nodes. Connections that do not present it are
+         * closed before any invalidation is read. It is sent in clear text,
+         * so it only keeps out hosts that cannot see the pod network's traffic.
+         */
+        public Builder secret(String secret) {
+            this.secret = secret;
+            return this;
+        }
+
+        public Builder peer(InetSocketAddress peer) {
+            this.peers.add(peer);
+            return this;
+        }
+
+        public Builder peers(List<InetSocketAddress> peers) {
+            this.peers.addAll(peers);
+            return this;
+        }
+
+        /**
+         * How long published keys are collected before they are sent.
+         */
+        public Builder batchDelay(Duration batchDelay) {
+            this.batchDelay = batchDelay;
+            return this;
+        }
+
+        public Builder maxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        public Builder connectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        /**
+         * How long a peer may take to accept one batch before its connection
+         * is closed and batches for it are dropped for a while.
+         */
+        public Builder writeTimeout(Duration writeTimeout) {
+            this.writeTimeout = writeTimeout;
+            return this;
+        }
+
+        /**
+         * Threads running batch flushes and connection readers. Defaults to virtual threads on Java 21+
+         * and bounded pools otherwise.
+         */
+        public Builder executionStrategy(ExecutionStrategy executionStrategy) {
+            this.executionStrategy = executionStrategy;
+            return this;
+        }
+
+        public PeerMeshInvalidationBusConfig build() {
+            if (nodeId == null || nodeId.isEmpty()) {
+                throw new IllegalArgumentException("Node id is required");
+            }
+            if (bindAddress == null) {
+                throw new IllegalArgumentException("Bind address is required");
+            }
+            if (secret == null) {
+                throw new IllegalArgumentException("Secret must not be null");
+            }
+            if (secret.getBytes(StandardCharsets.UTF_8).length > PeerMeshInvalidationBus.MAX_SECRET_BYTES) {
+                throw new IllegalArgumentException(
+                    "Secret must be at most " + PeerMeshInvalidationBus.MAX_SECRET_BYTES + " bytes");
+            }
+            if (maxBatchSize <= 0) {
+                throw new IllegalArgumentException("Max batch size must be positive");
+            }
+            if (connectTimeout == null || connectTimeout.isNegative() || connectTimeout.isZero()) {
+                throw new IllegalArgumentException("Connect timeout must be positive");
+            }
+            if (writeTimeout == null || writeTimeout.isNegative() || writeTimeout.isZero()) {
+                throw new IllegalArgumentException("Write timeout must be positive");
+            }
+            if (executionStrategy == null) {
+                throw new IllegalArgumentException("Execution strategy is required");
+            }
+            return new PeerMeshInvalidationBusConfig(this);
+        }
+    }
+}
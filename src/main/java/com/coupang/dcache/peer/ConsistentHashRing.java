@@ -0,0 +1,90 @@
+package com.coupang.dcache.peer;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Immutable consistent-hash ring mapping each key to one member.
+ * <p>
+ * Each member takes a number of points on a 64-bit ring, placed by hashing
+ * its address with the point index; a key belongs to the member owning the
+ * first point at or after the key's hash. Members are identified by
+ * {@code host:port} as given, without name resolution, so every node
+ * configured with the same addresses builds the same ring. Adding or removing
+ * a member only moves the keys between its points and their predecessors.
+ */
+final class ConsistentHashRing {
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private final long[] points;
+    private final InetSocketAddress[] owners;
+    private final Set<InetSocketAddress> members;
+
+    ConsistentHashRing(Collection<InetSocketAddress> members, int virtualNodes) {
+        this.members = new TreeSet<>(Comparator.comparing(ConsistentHashRing::id));
+        this.members.addAll(members);
+        Point[] all = new Point[this.members.size() * virtualNodes];
+        int n = 0;
+        for (InetSocketAddress member : this.members) {
+            String id = id(member);
+            for (int i = 0; i < virtualNodes; i++) {
+                all[n++] = new Point(hash(id + "#" + i), member);
+            }
+        }
+        // Ties between members are broken by address, so that every node orders them alike
+        Arrays.sort(all, Comparator.<Point>comparingLong(p -> p.hash).thenComparing(p -> id(p.member)));
+        this.points = new long[all.length];
+        this.owners = new InetSocketAddress[all.length];
+        for (int i = 0; i < all.length; i++) {
+            points[i] = all[i].hash;
+            owners[i] = all[i].member;
+        }
+    }
+
+    /**
+     * Returns the member owning a key.
+     *
+     * @param key The cache key
+     * @return The owner, or null if the ring is empty
+     */
+    InetSocketAddress owner(String key) {
+        if (points.length == 0) {
+            return null;
+        }
+        int index = Arrays.binarySearch(points, hash(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    Set<InetSocketAddress> getMembers() {
+        return members;
+    }
+
+    static String id(InetSocketAddress address) {
+        return address.getHostString() + ":" + address.getPort();
+    }
+
+    private static long hash(String value) {
+        return HASH.hashString(value, StandardCharsets.UTF_8).asLong();
+    }
+
+    private static final class Point {
+        private final long hash;
+        private final InetSocketAddress member;
+
+        private Point(long hash, InetSocketAddress member) {
+            this.hash = hash;
+            this.member = member;
+        }
+    }
+}
@@ -0,0 +1,673 @@
+package com.coupang.dcache.peer;
+
+import com.coupang.dcache.Cache;
+import com.coupang.dcache.HotKeyCacheConfig;
+import com.coupang.dcache.HotKeyDetector;
+import com.coupang.dcache.peer.PeerProtocol.Request;
+import com.coupang.dcache.peer.PeerProtocol.Response;
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * In-memory cache spread over the nodes of a service, in the style of groupcache.
+ * <p>
+ * Every key is owned by one member of a {@link ConsistentHashRing} built from
+ * the configured or discovered members, and only its owner stores it, so the
+ * nodes together hold one copy of each value and every node sees the others'
+ * writes. Requests for keys owned by other nodes travel over a small pool of
+ * pipelined TCP connections per peer.
+ * <p>
+ * {@link #getOrLoad} is single-flight across the whole service: on a miss the
+ * owner lets the first requester load the value and holds concurrent
+ * requests from any node until the loaded value is put, so each missing key
+ * is loaded once however many nodes ask for it. If the loader fails or
+ * returns null, or the value is not put within the fill timeout, the held
+ * requesters load the value themselves.
+ * <p>
+ * Keys that are hot on this node but owned by another can be mirrored
+ * locally for a short TTL, so that their owner is not asked for every read.
+ * Mirrored values may be that TTL out of date after a write through another
+ * node. When a peer cannot be reached, reads miss, {@link #getOrLoad} loads
+ * without caching and writes are dropped. When the membership changes, the
+ * keys that move to another owner start cold there.
+ * <p>
+ * Any host that can reach the bind address can read and overwrite values,
+ * so it defaults to the loopback address; serving other pods needs an
+ * address that only they can reach, and should use a shared secret.
+ */
+public class PeerCache implements Cache, Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PeerCache.class);
+    // Approximate overhead of an owned entry beyond its key and value
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private static final class Entry {
+        private final byte[] value;
+        private final long expiresAtNanos;
+
+        private Entry(byte[] value, long expiresAtNanos) {
+            this.value = value;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+
+    private final PeerCacheConfig config;
+    private final Ticker ticker;
+    private final long requestTimeoutNanos;
+    private final long fillTimeoutNanos;
+    private final InetSocketAddress self;
+    private final String selfId;
+    private final byte[] secret;
+    // No value larger than the whole cache can be stored, so none is accepted
+    private final int maxValueBytes;
+    private final com.google.common.cache.Cache<String, Entry> owned;
+    private final Map<String, CompletableFuture<byte[]>> fills = new ConcurrentHashMap<>();
+    private final HotKeyDetector hotKeys;
+    private final com.google.common.cache.Cache<String, byte[]> mirror;
+    private final ServerSocket serverSocket;
+    private final ExecutorService receivers;
+    private final ScheduledExecutorService discovery;
+    private final Set<Socket> accepted = ConcurrentHashMap.newKeySet();
+    private final Map<String, PeerClient> clients = new ConcurrentHashMap<>();
+    private final ReentrantLock membershipLock = new ReentrantLock();
+    private volatile ConsistentHashRing ring;
+    private volatile boolean closed;
+
+    private final AtomicLong peerRequests = new AtomicLong();
+    private final AtomicLong peerErrors = new AtomicLong();
+    private final AtomicLong mirrorHits = new AtomicLong();
+    private final AtomicLong fillsGranted = new AtomicLong();
+    private final AtomicLong fillWaits = new AtomicLong();
+
+    /**
+     * Creates the cache and starts serving peers on the bind address.
+     *
+     * @param config The peer cache configuration
+     */
+    public PeerCache(PeerCacheConfig config) {
+        this.config = config;
+        this.ticker = config.getTicker();
+        this.requestTimeoutNanos = config.getRequestTimeout().toNanos();
+        this.fillTimeoutNanos = config.getFillTimeout().toNanos();
+        this.secret = config.getSecret().getBytes(StandardCharsets.UTF_8);
+        this.maxValueBytes = (int) Math.min(config.getMaxBytes(), Integer.MAX_VALUE - 8);
+        this.owned = CacheBuilder.newBuilder()
+            .maximumWeight(config.getMaxBytes())
+            .<String, Entry>weigher((key, entry) -> 2 * key.length() + entry.value.length + ENTRY_OVERHEAD)
+            .build();
+        HotKeyCacheConfig hot = config.getHotKeys();
+        if (hot != null) {
+            this.hotKeys = new HotKeyDetector(hot.getTrackedKeys(), hot.getWindow().toNanos(),
+                hot.getHotThreshold(), hot.getMinHits(), hot.getTicker());
+            this.mirror = CacheBuilder.newBuilder()
+                .maximumSize(hot.getLocalMaximumSize())
+                .expireAfterWrite(hot.getLocalTtl(), TimeUnit.SECONDS)
+                .ticker(hot.getTicker())
+                .build();
+        } else {
+            this.hotKeys = null;
+            this.mirror = null;
+        }
+
+        // One reader per connection, so not the strategy's bounded executor
+        this.receivers = Executors.newCachedThreadPool(
+            config.getExecutionStrategy().threadFactory("dcache-peer-receiver"));
+        try {
+            this.serverSocket = new ServerSocket();
+            this.serverSocket.bind(config.getBindAddress());
+            this.self = config.getAdvertisedAddress() != null
+                ? config.getAdvertisedAddress() : advertised(getLocalAddress());
+        } catch (IOException e) {
+            receivers.shutdownNow();
+            throw new UncheckedIOException("Failed to bind peer cache to " + config.getBindAddress(), e);
+        }
+        this.selfId = ConsistentHashRing.id(self);
+        setMembers(config.getMembers());
+        receivers.execute(this::acceptLoop);
+
+        Supplier<? extends Iterable<InetSocketAddress>> source = config.getDiscovery();
+        if (source != null) {
+            long interval = config.getDiscoveryInterval().toMillis();
+            this.discovery = config.getExecutionStrategy().newScheduler("dcache-peer-discovery");
+            this.discovery.scheduleWithFixedDelay(() -> discover(source), 0, interval, TimeUnit.MILLISECONDS);
+        } else {
+            this.discovery = null;
+        }
+    }
+
+    /**
+     * Returns the address this node listens on.
+     *
+     * @return The bound address
+     */
+    public InetSocketAddress getLocalAddress() {
+        return (InetSocketAddress) serverSocket.getLocalSocketAddress();
+    }
+
+    /**
+     * Returns the address under which this node is a member of the ring.
+     *
+     * @return The advertised address
+     */
+    public InetSocketAddress getAdvertisedAddress() {
+        return self;
+    }
+
+    /**
+     * Replaces the members of the ring, e.g. after pods were added or
+     * removed. This node stays a member whether listed or not.
+     *
+     * @param members The addresses the members advertise
+     */
+    public void setMembers(Collection<InetSocketAddress> members) {
+        membershipLock.lock();
+        try {
+            List<InetSocketAddress> all = new ArrayList<>(members);
+            all.add(self);
+            ConsistentHashRing updated = new ConsistentHashRing(all, config.getVirtualNodes());
+            Set<String> ids = new HashSet<>();
+            for (InetSocketAddress member : updated.getMembers()) {
+                ids.add(ConsistentHashRing.id(member));
+            }
+            ring = updated;
+            clients.entrySet().removeIf(client -> {
+                if (ids.contains(client.getKey())) {
+                    return false;
+                }
+                client.getValue().close();
+                return true;
+            });
+        } finally {
+            membershipLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the current members of the ring, this node included.
+     *
+     * @return The members' advertised addresses
+     */
+    public Set<InetSocketAddress> getMembers() {
+        return ring.getMembers();
+    }
+
+    /**
+     * Returns the member owning a key.
+     *
+     * @param key The cache key
+     * @return The owner's advertised address
+     */
+    public InetSocketAddress ownerOf(String key) {
+        return ring.owner(key);
+    }
+
+    @Override
+    public void put(String key, byte[] value, int ttl) {
+        dropMirrored(key);
+        Response response = await(request(PeerProtocol.PUT, key, ttl, value), requestTimeoutNanos, key);
+        if (response == null) {
+            LOGGER.warn("Dropped write of key {}: owner {} did not acknowledge it", key, ownerOf(key));
+        }
+    }
+
+    @Override
+    public Optional<byte[]> get(String key) {
+        boolean hot = recordRead(key);
+        byte[] mirrored = mirrored(key);
+        if (mirrored != null) {
+            return Optional.of(mirrored);
+        }
+        Response response = await(request(PeerProtocol.GET, key, 0, null), requestTimeoutNanos, key);
+        if (response == null || response.status != PeerProtocol.VALUE) {
+            return Optional.empty();
+        }
+        mirror(key, response.value, hot);
+        return Optional.of(response.value);
+    }
+
+    /**
+     * Reads several keys with one request to each of their owners in
+     * flight at the same time.
+     */
+    @Override
+    public Map<String, byte[]> getAll(Collection<String> keys) {
+        Map<String, CompletableFuture<Response>> requests = new LinkedHashMap<>();
+        Map<String, byte[]> values = new HashMap<>();
+        for (String key : keys) {
+            boolean hot = recordRead(key);
+            byte[] mirrored = mirrored(key);
+            if (mirrored != null) {
+                values.put(key, mirrored);
+            } else if (!requests.containsKey(key)) {
+                requests.put(key, request(PeerProtocol.GET, key, 0, null)
+                    .thenApply(response -> {
+                        if (response.status == PeerProtocol.VALUE) {
+                            mirror(key, response.value, hot);
+                        }
+                        return response;
+                    }));
+            }
+        }
+        long deadline = System.nanoTime() + requestTimeoutNanos;
+        for (Map.Entry<String, CompletableFuture<Response>> request : requests.entrySet()) {
+            long remaining = Math.max(0, deadline - System.nanoTime());
+            Response response = await(request.getValue(), remaining, request.getKey());
+            if (response != null && response.status == PeerProtocol.VALUE) {
+                values.put(request.getKey(), response.value);
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public byte[] getOrLoad(String key, int ttl, Supplier<byte[]> loader) {
+        boolean hot = recordRead(key);
+        byte[] mirrored = mirrored(key);
+        if (mirrored != null) {
+            return mirrored;
+        }
+        Response response = await(request(PeerProtocol.GET_OR_LOAD, key, 0, null),
+            fillTimeoutNanos + requestTimeoutNanos, key);
+        if (response == null) {
+            // The owner cannot coordinate the load, so load without caching
+            return loader.get();
+        }
+        if (response.status == PeerProtocol.VALUE) {
+            mirror(key, response.value, hot);
+            return response.value;
+        }
+
+        // This node was granted the fill and must put the value or give it back
+        byte[] value;
+        try {
+            value = loader.get();
+        } catch (RuntimeException | Error e) {
+            abortFill(key);
+            throw e;
+        }
+        if (value == null) {
+            abortFill(key);
+        } else {
+            put(key, value, ttl);
+        }
+        return value;
+    }
+
+    @Override
+    public void invalidate(String key) {
+        dropMirrored(key);
+        if (await(request(PeerProtocol.INVALIDATE, key, 0, null), requestTimeoutNanos, key) == null) {
+            LOGGER.warn("Failed to invalidate key {} on owner {}", key, ownerOf(key));
+        }
+    }
+
+    /**
+     * Removes every key from every member.
+     */
+    @Override
+    public void invalidateAll() {
+        List<CompletableFuture<Response>> requests = new ArrayList<>();
+        for (InetSocketAddress member : ring.getMembers()) {
+            requests.add(request(member, PeerProtocol.CLEAR, "", 0, null));
+        }
+        long deadline = System.nanoTime() + requestTimeoutNanos;
+        for (CompletableFuture<Response> request : requests) {
+            if (await(request, Math.max(0, deadline - System.nanoTime()), "*") == null) {
+                LOGGER.warn("Failed to clear every member of the peer cache");
+            }
+        }
+    }
+
+    /**
+     * Returns the number of requests sent to other members.
+     *
+     * @return The number of peer requests
+     */
+    public long getPeerRequests() {
+        return peerRequests.get();
+    }
+
+    /**
+     * Returns the number of requests that failed or timed out, including
+     * requests this node served itself.
+     *
+     * @return The number of failed requests
+     */
+    public long getPeerErrors() {
+        return peerErrors.get();
+    }
+
+    /**
+     * Returns the number of reads served from the local mirror of hot keys.
+     *
+     * @return The number of mirror hits
+     */
+    public long getMirrorHits() {
+        return mirrorHits.get();
+    }
+
+    /**
+     * Returns the number of times this node, as owner, let a requester load a missing key.
+     *
+     * @return The number of fills granted
+     */
+    public long getFills() {
+        return fillsGranted.get();
+    }
+
+    /**
+     * Returns the number of requests this node, as owner, held until
+     * another requester's fill completed rather than loading again.
+     *
+     * @return The number of fill waits
+     */
+    public long getFillWaits() {
+        return fillWaits.get();
+    }
+
+    /**
+     * Returns the number of keys this node stores as their owner.
+     *
+     * @return The number of owned keys
+     */
+    public long getOwnedKeys() {
+        return owned.size();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (discovery != null) {
+            discovery.shutdownNow();
+        }
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            LOGGER.debug("Error closing peer cache server socket", e);
+        }
+        for (Socket socket : accepted) {
+            closeQuietly(socket);
+        }
+        clients.values().forEach(PeerClient::close);
+        clients.clear();
+        receivers.shutdownNow();
+    }
+
+    private CompletableFuture<Response> request(byte type, String key, int ttl, byte[] value) {
+        return request(ring.owner(key), type, key, ttl, value);
+    }
+
+    private CompletableFuture<Response> request(InetSocketAddress member, byte type, String key, int ttl, byte[] value) {
+        String id = ConsistentHashRing.id(member);
+        if (id.equals(selfId)) {
+            return handle(type, key, ttl, value);
+        }
+        peerRequests.incrementAndGet();
+        PeerClient client = clients.computeIfAbsent(id, ignored -> new PeerClient(member,
+            config.getConnectionsPerPeer(), (int) config.getConnectTimeout().toMillis(), secret, maxValueBytes,
+            receivers));
+        return client.send(type, key, ttl, value);
+    }
+
+    private Response await(CompletableFuture<Response> request, long timeoutNanos, String key) {
+        try {
+            Response response = request.get(timeoutNanos, TimeUnit.NANOSECONDS);
+            if (response.status != PeerProtocol.ERROR) {
+                return response;
+            }
+            LOGGER.debug("Peer failed request for key {}", key);
+        } catch (TimeoutException e) {
+            request.cancel(false);
+            LOGGER.debug("Peer request for key {} timed out", key);
+        } catch (ExecutionException e) {
+            LOGGER.debug("Peer request for key {} failed: {}", key, e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            request.cancel(false);
+            Thread.currentThread().interrupt();
+        }
+        peerErrors.incrementAndGet();
+        return null;
+    }
+
+    private void abortFill(String key) {
+        request(PeerProtocol.ABORT_FILL, key, 0, null).whenComplete((response, error) -> {
+            if (error != null) {
+                LOGGER.debug("Failed to give back fill of key {}", key, error);
+            }
+        });
+    }
+
+    /**
+     * Serves a request as the owner of its key, for this node or a peer.
+     */
+    private CompletableFuture<Response> handle(byte type, String key, int ttl, byte[] value) {
+        switch (type) {
+            case PeerProtocol.GET:
+                byte[] cached = lookup(key);
+                return CompletableFuture.completedFuture(
+                    cached != null ? Response.value(cached) : PeerProtocol.NOT_FOUND_RESPONSE);
+            case PeerProtocol.GET_OR_LOAD:
+                return getOrFill(key);
+            case PeerProtocol.PUT:
+                store(key, value, ttl);
+                return CompletableFuture.completedFuture(PeerProtocol.OK_RESPONSE);
+            case PeerProtocol.INVALIDATE:
+                owned.invalidate(key);
+                return CompletableFuture.completedFuture(PeerProtocol.OK_RESPONSE);
+            case PeerProtocol.CLEAR:
+                owned.invalidateAll();
+                if (mirror != null) {
+                    mirror.invalidateAll();
+                }
+                return CompletableFuture.completedFuture(PeerProtocol.OK_RESPONSE);
+            case PeerProtocol.ABORT_FILL:
+                CompletableFuture<byte[]> fill = fills.remove(key);
+                if (fill != null) {
+                    fill.complete(null);
+                }
+                return CompletableFuture.completedFuture(PeerProtocol.OK_RESPONSE);
+            default:
+                LOGGER.warn("Unknown peer request type {}", type);
+                return CompletableFuture.completedFuture(PeerProtocol.ERROR_RESPONSE);
+        }
+    }
+
+    private CompletableFuture<Response> getOrFill(String key) {
+        byte[] cached = lookup(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(Response.value(cached));
+        }
+        CompletableFuture<byte[]> fill = new CompletableFuture<>();
+        CompletableFuture<byte[]> existing = fills.putIfAbsent(key, fill);
+        if (existing != null) {
+            fillWaits.incrementAndGet();
+            // An aborted or timed out fill leaves every waiter to load for itself
+            return existing.handle((value, error) ->
+                value != null ? Response.value(value) : PeerProtocol.FILL_RESPONSE);
+        }
+        // A put may have landed between the lookup and registering the fill
+        cached = lookup(key);
+        if (cached != null) {
+            fills.remove(key, fill);
+            fill.complete(cached);
+            return CompletableFuture.completedFuture(Response.value(cached));
+        }
+        fillsGranted.incrementAndGet();
+        fill.orTimeout(fillTimeoutNanos, TimeUnit.NANOSECONDS)
+            .whenComplete((value, error) -> fills.remove(key, fill));
+        return CompletableFuture.completedFuture(PeerProtocol.FILL_RESPONSE);
+    }
+
+    private byte[] lookup(String key) {
+        Entry entry = owned.getIfPresent(key);
+        if (entry == null) {
+            return null;
+        }
+        if (ticker.read() - entry.expiresAtNanos >= 0) {
+            owned.asMap().remove(key, entry);
+            return null;
+        }
+        return entry.value;
+    }
+
+    private void store(String key, byte[] value, int ttl) {
+        if (ttl <= 0) {
+            owned.invalidate(key);
+            return;
+        }
+        owned.put(key, new Entry(value, ticker.read() + TimeUnit.SECONDS.toNanos(ttl)));
+        CompletableFuture<byte[]> fill = fills.remove(key);
+        if (fill != null) {
+            fill.complete(value);
+        }
+    }
+
+    private boolean recordRead(String key) {
+        return hotKeys != null && !ConsistentHashRing.id(ring.owner(key)).equals(selfId) && hotKeys.record(key);
+    }
+
+    private byte[] mirrored(String key) {
+        if (mirror == null) {
+            return null;
+        }
+        byte[] value = mirror.getIfPresent(key);
+        if (value != null) {
+            mirrorHits.incrementAndGet();
+        }
+        return value;
+    }
+
+    private void mirror(String key, byte[] value, boolean hot) {
+        if (hot) {
+            mirror.put(key, value);
+            LOGGER.debug("Mirrored hot key: {}", key);
+        }
+    }
+
+    private void dropMirrored(String key) {
+        if (mirror != null) {
+            mirror.invalidate(key);
+        }
+    }
+
+    private void discover(Supplier<? extends Iterable<InetSocketAddress>> source) {
+        try {
+            List<InetSocketAddress> members = new ArrayList<>();
+            source.get().forEach(members::add);
+            setMembers(members);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Failed to discover peer cache members", e);
+        }
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                accepted.add(socket);
+                receivers.execute(() -> receiveLoop(socket));
+            } catch (IOException e) {
+                if (!closed) {
+                    LOGGER.warn("Error accepting peer cache connection", e);
+                }
+            }
+        }
+    }
+
+    private void receiveLoop(Socket socket) {
+        ReentrantLock writeLock = new ReentrantLock();
+        try (Socket s = socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
+            if (!PeerProtocol.readHello(in, secret)) {
+                LOGGER.warn("Rejected peer cache connection from {}: wrong protocol version or secret",
+                    s.getRemoteSocketAddress());
+                return;
+            }
+            while (!closed) {
+                Request request = PeerProtocol.readRequest(in, maxValueBytes);
+                CompletableFuture<Response> response;
+                try {
+                    response = handle(request.type, request.key, request.ttl, request.value);
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Error serving peer request for key {}", request.key, e);
+                    response = CompletableFuture.completedFuture(PeerProtocol.ERROR_RESPONSE);
+                }
+                // Held requests are answered from the thread completing the fill
+                response.whenComplete((r, error) -> respond(s, out, writeLock, request.id,
+                    error == null ? r : PeerProtocol.ERROR_RESPONSE));
+            }
+        } catch (EOFException | SocketException e) {
+            LOGGER.debug("Peer cache connection closed: {}", e.getMessage());
+        } catch (IOException e) {
+            LOGGER.warn("Closing peer cache connection from {}: {}", socket.getRemoteSocketAddress(), e.getMessage());
+        } finally {
+            accepted.remove(socket);
+        }
+    }
+
+    private void respond(Socket socket, DataOutputStream out, ReentrantLock writeLock, int id, Response response) {
+        writeLock.lock();
+        try {
+            PeerProtocol.writeResponse(out, id, response);
+            out.flush();
+        } catch (IOException e) {
+            LOGGER.debug("Failed to answer peer request: {}", e.getMessage());
+            closeQuietly(socket);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private static InetSocketAddress advertised(InetSocketAddress bound) throws IOException {
+        if (!bound.getAddress().isAnyLocalAddress()) {
+            return bound;
+        }
+        return new InetSocketAddress(InetAddress.getLocalHost().getHostName(), bound.getPort());
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            LOGGER.debug("Error closing peer cache connection", e);
+        }
+    }
+}
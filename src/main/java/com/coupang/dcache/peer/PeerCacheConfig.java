@@ -0,0 +1,309 @@
+package com.coupang.dcache.peer;
+
+import com.coupang.dcache.ExecutionStrategy;
+import com.coupang.dcache.HotKeyCacheConfig;
+import com.google.common.base.Ticker;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Configuration for {@link PeerCache}.
+ */
+public class PeerCacheConfig {
+    private final InetSocketAddress bindAddress;
+    private final InetSocketAddress advertisedAddress;
+    private final String secret;
+    private final List<InetSocketAddress> members;
+    private final Supplier<? extends Iterable<InetSocketAddress>> discovery;
+    private final Duration discoveryInterval;
+    private final int virtualNodes;
+    private final long maxBytes;
+    private final int connectionsPerPeer;
+    private final Duration connectTimeout;
+    private final Duration requestTimeout;
+    private final Duration fillTimeout;
+    private final HotKeyCacheConfig hotKeys;
+    private final ExecutionStrategy executionStrategy;
+    private final Ticker ticker;
+
+    private PeerCacheConfig(Builder builder) {
+        this.bindAddress = builder.bindAddress;
+        this.advertisedAddress = builder.advertisedAddress;
+        this.secret = builder.secret;
+        this.members = List.copyOf(builder.members);
+        this.discovery = builder.discovery;
+        this.discoveryInterval = builder.discoveryInterval;
+        this.virtualNodes = builder.virtualNodes;
+        this.maxBytes = builder.maxBytes;
+        this.connectionsPerPeer = builder.connectionsPerPeer;
+        this.connectTimeout = builder.connectTimeout;
+        this.requestTimeout = builder.requestTimeout;
+        this.fillTimeout = builder.fillTimeout;
+        this.hotKeys = builder.hotKeys;
+        this.executionStrategy = builder.executionStrategy;
+        this.ticker = builder.ticker;
+    }
+
+    public InetSocketAddress getBindAddress() {
+        return bindAddress;
+    }
+
+    public InetSocketAddress getAdvertisedAddress() {
+        return advertisedAddress;
+    }
+
+    public String getSecret() {
+        return secret;
+    }
+
+    public List<InetSocketAddress> getMembers() {
+        return members;
+    }
+
+    public Supplier<? extends Iterable<InetSocketAddress>> getDiscovery() {
+        return discovery;
+    }
+
+    public Duration getDiscoveryInterval() {
+        return discoveryInterval;
+    }
+
+    public int getVirtualNodes() {
+        return virtualNodes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public int getConnectionsPerPeer() {
+        return connectionsPerPeer;
+    }
+
+    public Duration getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public Duration getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    public Duration getFillTimeout() {
+        return fillTimeout;
+    }
+
+    public HotKeyCacheConfig getHotKeys() {
+        return hotKeys;
+    }
+
+    public ExecutionStrategy getExecutionStrategy() {
+        return executionStrategy;
+    }
+
+    public Ticker getTicker() {
+        return ticker;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private InetSocketAddress bindAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), 7891);
+        private InetSocketAddress advertisedAddress;
+        private String secret = "";
+        private final List<InetSocketAddress> members = new ArrayList<>();
+        private Supplier<? extends Iterable<InetSocketAddress>> discovery;
+        private Duration discoveryInterval = Duration.ofSeconds(10);
+        private int virtualNodes = 160;
+        private long maxBytes = 64L * 1024 * 1024;
+        private int connectionsPerPeer = 2;
+        private Duration connectTimeout = Duration.ofMillis(500);
+        private Duration requestTimeout = Duration.ofMillis(200);
+        private Duration fillTimeout = Duration.ofSeconds(5);
+        private HotKeyCacheConfig hotKeys;
+        private ExecutionStrategy executionStrategy = ExecutionStrategy.defaultStrategy();
+        private Ticker ticker = Ticker.systemTicker();
+
+        /**
+         * Address to listen on for requests from peers. Port 0 picks a free
+         * port. Defaults to the loopback address, so serving other pods needs
+         * an explicit address; any host reaching it can read and overwrite
+         * every value, so it must only be reachable from the service's own
+         * pods (e.g. through a network policy) and should be used with a
+         * {@link #secret(String)}.
+         */
+        public Builder bindAddress(InetSocketAddress bindAddress) {
+            this.bindAddress = bindAddress;
+            return this;
+        }
+
+        /**
+         * Address under which the other members know this node. Defaults to
+         * the bound address, with the local host name when bound to the
+         * wildcard address. Every node must list its peers under the address
+         * they advertise, so that all nodes build the same ring.
+         */
+        public Builder advertisedAddress(InetSocketAddress advertisedAddress) {
+            this.advertisedAddress = advertisedAddress;
+            return this;
+        }
+
+        /**
+         * Secret shared by all members. Connections that do not present it
+         * are closed before any request is read. It is sent in clear text, so
+         * it only keeps out hosts that cannot see the pod network's traffic.
+         */
+        public Builder secret(String secret) {
+            this.secret = secret;
+            return this;
+        }
+
+        /**
+         * Adds a member of the ring. This node is always a member, whether listed or not.
+         */
+        public Builder member(InetSocketAddress member) {
+            this.members.add(member);
+            return this;
+        }
+
+        public Builder members(List<InetSocketAddress> members) {
+            this.members.addAll(members);
+            return this;
+        }
+
+        /**
+         * Source of the current members, e.g. the pods behind a headless
+         * service, polled every discovery interval. Replaces the configured
+         * members once it returns.
+         */
+        public Builder discovery(Supplier<? extends Iterable<InetSocketAddress>> discovery) {
+            this.discovery = discovery;
+            return this;
+        }
+
+        public Builder discoveryInterval(Duration discoveryInterval) {
+            this.discoveryInterval = discoveryInterval;
+            return this;
+        }
+
+        /**
+         * Number of points each member takes on the ring. More points spread
+         * keys more evenly and move fewer of them when a member joins or leaves.
+         */
+        public Builder virtualNodes(int virtualNodes) {
+            this.virtualNodes = virtualNodes;
+            return this;
+        }
+
+        /**
+         * Memory for the values this node owns, counting keys and values;
+         * the least recently used are evicted beyond it.
+         */
+        public Builder maxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * Connections kept to each peer. Each carries any number of
+         * requests in flight, so a few are enough.
+         */
+        public Builder connectionsPerPeer(int connectionsPerPeer) {
+            this.connectionsPerPeer = connectionsPerPeer;
+            return this;
+        }
+
+        public Builder connectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        /**
+         * Time to wait for a peer's answer before treating the request as a miss.
+         */
+        public Builder requestTimeout(Duration requestTimeout) {
+            this.requestTimeout = requestTimeout;
+            return this;
+        }
+
+        /**
+         * Time an owner waits for the node filling a key before telling the
+         * other requesters of the key to load it themselves.
+         */
+        public Builder fillTimeout(Duration fillTimeout) {
+            this.fillTimeout = fillTimeout;
+            return this;
+        }
+
+        /**
+         * Mirrors hot keys owned by other nodes locally for the configured
+         * local TTL, so that their owner is not asked for every read. Null
+         * disables the mirror.
+         */
+        public Builder hotKeys(HotKeyCacheConfig hotKeys) {
+            this.hotKeys = hotKeys;
+            return this;
+        }
+
+        /**
+         * Threads running connection readers and discovery. Defaults to
+         * virtual threads on Java 21+ and bounded pools otherwise.
+         */
+        public Builder executionStrategy(ExecutionStrategy executionStrategy) {
+            this.executionStrategy = executionStrategy;
+            return this;
+        }
+
+        /**
+         * Time source for the expiry of owned values.
+         */
+        public Builder ticker(Ticker ticker) {
+            this.ticker = ticker;
+            return this;
+        }
+
+        public PeerCacheConfig build() {
+            if (bindAddress == null) {
+                throw new IllegalArgumentException("Bind address is required");
+            }
+            if (secret == null) {
+                throw new IllegalArgumentException("Secret must not be null");
+            }
+            if (secret.getBytes(StandardCharsets.UTF_8).length > PeerProtocol.MAX_SECRET_BYTES) {
+                throw new IllegalArgumentException("Secret must be at most " + PeerProtocol.MAX_SECRET_BYTES + " bytes");
+            }
+            if (virtualNodes <= 0) {
+                throw new IllegalArgumentException("Virtual nodes must be positive");
+            }
+            if (maxBytes <= 0) {
+                throw new IllegalArgumentException("Max bytes must be positive");
+            }
+            if (connectionsPerPeer <= 0) {
+                throw new IllegalArgumentException("Connections per peer must be positive");
+            }
+            if (connectTimeout == null || requestTimeout == null || fillTimeout == null
+                    || requestTimeout.isZero() || requestTimeout.isNegative()
+                    || fillTimeout.isZero() || fillTimeout.isNegative()) {
+                throw new IllegalArgumentException("Timeouts must be positive");
+            }
+            if (discovery != null && (discoveryInterval == null || discoveryInterval.isZero()
+                    || discoveryInterval.isNegative())) {
+                throw new IllegalArgumentException("Discovery interval must be positive");
+            }
+            if (executionStrategy == null) {
+                throw new IllegalArgumentException("Execution strategy is required");
+            }
+            if (ticker == null) {
+                throw new IllegalArgumentException("Ticker is required");
+            }
+            return new PeerCacheConfig(this);
+        }
+    }
+}
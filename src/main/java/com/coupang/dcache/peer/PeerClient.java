@@ -0,0 +1,289 @@
+package com.coupang.dcache.peer;
+
+import com.coupang.dcache.peer.PeerProtocol.Request;
+import com.coupang.dcache.peer.PeerProtocol.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pool of pipelined connections to one peer.
+ * <p>
+ * Requests are spread round-robin over the connections and written without
+ * waiting for earlier responses; a reader per connection completes each
+ * request's future when its response arrives. Connections are opened lazily
+ * on a reader thread, never on the caller's: requests sent while a connection
+ * is being opened are written once it is up. When one fails, the requests in
+ * flight on it fail and the next request opens a new one. After a failed
+ * connect, requests fail at once for a backoff that doubles from 100ms up to
+ * 5s, so an unreachable peer costs its callers nothing.
+ */
+final class PeerClient {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PeerClient.class);
+    private static final long MIN_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final InetSocketAddress address;
+    private final int connectTimeoutMillis;
+    private final byte[] secret;
+    private final int maxValueBytes;
+    private final ExecutorService readers;
+    private final Connection[] connections;
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicInteger ids = new AtomicInteger();
+    private volatile boolean closed;
+
+    PeerClient(InetSocketAddress address, int connections, int connectTimeoutMillis, byte[] secret, int maxValueBytes,
+               ExecutorService readers) {
+        this.address = address;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.secret = secret;
+        this.maxValueBytes = maxValueBytes;
+        this.readers = readers;
+        this.connections = new Connection[connections];
+        for (int i = 0; i < connections; i++) {
+            this.connections[i] = new Connection();
+        }
+    }
+
+    /**
+     * Sends a request to the peer.
+     *
+     * @return The response, completed exceptionally if the connection fails
+     *         or the key or value is too large to send
+     */
+    CompletableFuture<Response> send(byte type, String key, int ttl, byte[] value) {
+        byte[] encodedKey;
+        try {
+            encodedKey = PeerProtocol.encodeKey(key);
+            if (value != null && value.length > maxValueBytes) {
+                throw new IllegalArgumentException("Value of " + value.length + " bytes exceeds " + maxValueBytes);
+            }
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        Connection connection = connections[Math.floorMod(next.getAndIncrement(), connections.length)];
+        return connection.send(new Request(type, ids.incrementAndGet(), key, ttl, value), encodedKey);
+    }
+
+    void close() {
+        closed = true;
+        for (Connection connection : connections) {
+            connection.close();
+        }
+    }
+
+    private final class Connection {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final List<Queued> queued = new ArrayList<>();
+        private Link link;
+        private boolean connecting;
+        private long retryAtNanos = System.nanoTime();
+        private long backoffNanos = MIN_BACKOFF_NANOS;
+
+        private CompletableFuture<Response> send(Request request, byte[] key) {
+            CompletableFuture<Response> response = new CompletableFuture<>();
+            lock.lock();
+            try {
+                if (closed) {
+                    throw new IOException("Client closed");
+                }
+                if (link != null) {
+                    write(link, request, key, response);
+                } else if (connecting) {
+                    queued.add(new Queued(request, key, response));
+                } else if (System.nanoTime() - retryAtNanos < 0) {
+                    throw new IOException("Peer " + address + " unreachable, backing off");
+                } else {
+                    // The caller only waits for its own deadline, never for the connect;
+                    // it cannot start before the lock is released
+                    readers.execute(this::connect);
+                    connecting = true;
+                    queued.add(new Queued(request, key, response));
+                }
+            } catch (IOException | RejectedExecutionException e) {
+                response.completeExceptionally(e);
+            } finally {
+                lock.unlock();
+            }
+            return response;
+        }
+
+        /**
+         * Writes a request on the link. Called with the lock held.
+         */
+        private void write(Link current, Request request, byte[] key, CompletableFuture<Response> response) {
+            current.pending.put(request.id, response);
+            // Dropped once answered, failed or timed out by the caller
+            response.whenComplete((r, e) -> current.pending.remove(request.id));
+            try {
+                PeerProtocol.writeRequest(current.out, request, key);
+                current.out.flush();
+            } catch (IOException e) {
+                link = null;
+                current.fail(e);
+            }
+        }
+
+        private void connect() {
+            Link created = null;
+            IOException failure = null;
+            Socket socket = new Socket();
+            try {
+                socket.setTcpNoDelay(true);
+                socket.connect(address, connectTimeoutMillis);
+                created = new Link(socket);
+                PeerProtocol.writeHello(created.out, secret);
+            } catch (IOException e) {
+                failure = e;
+                closeQuietly(socket);
+            }
+
+            List<Queued> waiting = new ArrayList<>();
+            lock.lock();
+            try {
+                connecting = false;
+                waiting.addAll(queued);
+                queued.clear();
+                if (created != null && closed) {
+                    failure = new IOException("Client closed");
+                    closeQuietly(socket);
+                    created = null;
+                }
+                if (created != null) {
+                    link = created;
+                    backoffNanos = MIN_BACKOFF_NANOS;
+                    readers.execute(receiveLoop(created));
+                    for (Queued request : waiting) {
+                        if (!request.response.isDone()) {
+                            write(created, request.request, request.key, request.response);
+                        }
+                    }
+                    return;
+                }
+                LOGGER.debug("Failed to connect to peer {}, retrying in {}ms: {}", address,
+                    TimeUnit.NANOSECONDS.toMillis(backoffNanos), failure.getMessage());
+                retryAtNanos = System.nanoTime() + backoffNanos;
+                backoffNanos = Math.min(backoffNanos * 2, MAX_BACKOFF_NANOS);
+            } catch (RejectedExecutionException e) {
+                failure = new IOException("Client closed", e);
+                link = null;
+                created.fail(failure);
+            } finally {
+                lock.unlock();
+            }
+            for (Queued request : waiting) {
+                request.response.completeExceptionally(failure);
+            }
+        }
+
+        private Runnable receiveLoop(Link current) {
+            return () -> receive(current);
+        }
+
+        private void receive(Link current) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(current.socket.getInputStream()))) {
+                while (true) {
+                    int id = in.readInt();
+                    byte status = in.readByte();
+                    byte[] value = status == PeerProtocol.VALUE ? PeerProtocol.readBytes(in, maxValueBytes) : null;
+                    CompletableFuture<Response> response = current.pending.remove(id);
+                    if (response != null) {
+                        response.complete(new Response(status, value));
+                    }
+                }
+            } catch (EOFException | SocketException e) {
+                LOGGER.debug("Connection to peer {} closed: {}", address, e.getMessage());
+                detach(current, e);
+            } catch (IOException e) {
+                LOGGER.warn("Error reading from peer {}", address, e);
+                detach(current, e);
+            }
+        }
+
+        private void detach(Link current, IOException cause) {
+            lock.lock();
+            try {
+                if (link == current) {
+                    link = null;
+                }
+            } finally {
+                lock.unlock();
+            }
+            current.fail(cause);
+        }
+
+        private void close() {
+            lock.lock();
+            try {
+                if (link != null) {
+                    link.fail(new IOException("Client closed"));
+                    link = null;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static final class Queued {
+        private final Request request;
+        private final byte[] key;
+        private final CompletableFuture<Response> response;
+
+        private Queued(Request request, byte[] key, CompletableFuture<Response> response) {
+            this.request = request;
+            this.key = key;
+            this.response = response;
+        }
+    }
+
+    /**
+     * One socket with the requests in flight on it.
+     */
+    private final class Link {
+        private final Socket socket;
+        private final DataOutputStream out;
+        private final Map<Integer, CompletableFuture<Response>> pending = new ConcurrentHashMap<>();
+
+        private Link(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        private void fail(IOException cause) {
+            closeQuietly(socket);
+            for (CompletableFuture<Response> response : pending.values()) {
+                response.completeExceptionally(cause);
+            }
+            pending.clear();
+        }
+    }
+
+    private void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            LOGGER.debug("Error closing connection to peer {}", address, e);
+        }
+    }
+}
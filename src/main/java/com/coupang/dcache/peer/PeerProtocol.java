@@ -0,0 +1,155 @@
+package com.coupang.dcache.peer;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Wire format spoken between {@link PeerCache} nodes.
+ * <p>
+ * A connection opens with a version byte and the length-prefixed shared
+ * secret, and the server closes it unless both match its own. A request is
+ * then a type byte, a request id chosen by the sender, the length-prefixed
+ * UTF-8 key, and for {@link #PUT} the TTL and the length-prefixed value. A
+ * response is the id of its request, a status byte and for {@link #VALUE}
+ * the length-prefixed value. Any number of requests may be in flight on one
+ * connection, and responses may come back in any order.
+ * <p>
+ * Lengths are checked against limits before anything is allocated, and a
+ * frame over a limit fails the whole connection with a
+ * {@link ProtocolException}, since the rest of the stream cannot be trusted.
+ */
+final class PeerProtocol {
+    static final byte VERSION = 2;
+    static final int MAX_KEY_BYTES = 64 * 1024;
+    static final int MAX_SECRET_BYTES = 1024;
+
+    static final byte GET = 0;
+    static final byte GET_OR_LOAD = 1;
+    static final byte PUT = 2;
+    static final byte INVALIDATE = 3;
+    static final byte CLEAR = 4;
+    static final byte ABORT_FILL = 5;
+
+    static final byte VALUE = 0;
+    static final byte NOT_FOUND = 1;
+    static final byte FILL = 2;
+    static final byte OK = 3;
+    static final byte ERROR = 4;
+
+    static final Response NOT_FOUND_RESPONSE = new Response(NOT_FOUND, null);
+    static final Response FILL_RESPONSE = new Response(FILL, null);
+    static final Response OK_RESPONSE = new Response(OK, null);
+    static final Response ERROR_RESPONSE = new Response(ERROR, null);
+
+    private PeerProtocol() {
+    }
+
+    static final class Request {
+        final byte type;
+        final int id;
+        final String key;
+        final int ttl;
+        final byte[] value;
+
+        Request(byte type, int id, String key, int ttl, byte[] value) {
+            this.type = type;
+            this.id = id;
+            this.key = key;
+            this.ttl = ttl;
+            this.value = value;
+        }
+    }
+
+    static final class Response {
+        final byte status;
+        final byte[] value;
+
+        Response(byte status, byte[] value) {
+            this.status = status;
+            this.value = value;
+        }
+
+        static Response value(byte[] value) {
+            return new Response(VALUE, value);
+        }
+    }
+
+    static void writeHello(DataOutputStream out, byte[] secret) throws IOException {
+        out.writeByte(VERSION);
+        writeBytes(out, secret);
+    }
+
+    /**
+     * Reads the opening of a connection.
+     *
+     * @return True if the sender speaks this version and knows the secret
+     */
+    static boolean readHello(DataInputStream in, byte[] secret) throws IOException {
+        if (in.readByte() != VERSION) {
+            return false;
+        }
+        return MessageDigest.isEqual(secret, readBytes(in, MAX_SECRET_BYTES));
+    }
+
+    /**
+     * Encodes a key, rejecting it before any of its request is written if
+     * it is over the frame limit.
+     *
+     * @throws IllegalArgumentException If the key is too large
+     */
+    static byte[] encodeKey(String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_KEY_BYTES) {
+            throw new IllegalArgumentException("Key of " + bytes.length + " bytes exceeds " + MAX_KEY_BYTES);
+        }
+        return bytes;
+    }
+
+    static void writeRequest(DataOutputStream out, Request request, byte[] key) throws IOException {
+        out.writeByte(request.type);
+        out.writeInt(request.id);
+        writeBytes(out, key);
+        if (request.type == PUT) {
+            out.writeInt(request.ttl);
+            writeBytes(out, request.value);
+        }
+    }
+
+    static Request readRequest(DataInputStream in, int maxValueBytes) throws IOException {
+        byte type = in.readByte();
+        int id = in.readInt();
+        String key = new String(readBytes(in, MAX_KEY_BYTES), StandardCharsets.UTF_8);
+        if (type == PUT) {
+            int ttl = in.readInt();
+            return new Request(type, id, key, ttl, readBytes(in, maxValueBytes));
+        }
+        return new Request(type, id, key, 0, null);
+    }
+
+    static void writeResponse(DataOutputStream out, int id, Response response) throws IOException {
+        out.writeInt(id);
+        out.writeByte(response.status);
+        if (response.status == VALUE) {
+            writeBytes(out, response.value);
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+        out.writeInt(value.length);
+        out.write(value);
+    }
+
+    static byte[] readBytes(DataInputStream in, int maxBytes) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > maxBytes) {
+            throw new ProtocolException("Frame length " + length + " outside 0.." + maxBytes);
+        }
+        byte[] value = new byte[length];
+        in.readFully(value);
+        return value;
+    }
+}
@@ -0,0 +1,63 @@
+package com.coupang.dcache.resp;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Redis Cluster key-to-slot mapping: CRC16 (XMODEM) of the key, or of its
+ * hash tag, modulo 16384. Keys sharing a hash tag such as {@code {user1}}
+ * land in the same slot.
+ */
+final class ClusterSlots {
+    static final int SLOTS = 16384;
+
+    private static final int[] TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+            TABLE[i] = crc & 0xFFFF;
+        }
+    }
+
+    private ClusterSlots() {
+    }
+
+    static int slot(String key) {
+        return slot(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static int slot(byte[] key) {
+        int from = 0;
+        int to = key.length;
+        int open = indexOf(key, (byte) '{', 0);
+        if (open >= 0) {
+            int close = indexOf(key, (byte) '}', open + 1);
+            // An empty tag does not count, so "{}" keys hash whole
+            if (close > open + 1) {
+                from = open + 1;
+                to = close;
+            }
+        }
+        return crc16(key, from, to) & (SLOTS - 1);
+    }
+
+    private static int crc16(byte[] bytes, int from, int to) {
+        int crc = 0;
+        for (int i = from; i < to; i++) {
+            crc = ((crc << 8) ^ TABLE[((crc >>> 8) ^ bytes[i]) & 0xFF]) & 0xFFFF;
+        }
+        return crc;
+    }
+
+    private static int indexOf(byte[] bytes, byte value, int from) {
+        for (int i = from; i < bytes.length; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,470 @@
+package com.coupang.dcache.resp;
+
+import com.coupang.dcache.Cache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache backed by Redis, Valkey or any server speaking the RESP protocol,
+ * for reads faster than DynamoDB can serve.
+ * <p>
+ * Values are written with {@code SET key value EX ttl}, so the server expires
+ * each entry on its own TTL. {@link #getAll} reads with {@code MGET} and
+ * {@link #putAll} pipelines one {@code SET} per key, each in a single write
+ * per server. Commands from concurrent callers are pipelined over a small
+ * pool of connections per server rather than waiting for each other's
+ * replies.
+ * <p>
+ * In cluster mode, each key is sent to the node serving its hash slot, as
+ * listed by {@code CLUSTER SLOTS}. A {@code MOVED} reply updates the slot and
+ * reloads the layout in the background, and an {@code ASK} reply is followed
+ * once; both retry the command on the node named. {@code MGET} is split by
+ * slot, since a cluster rejects multi-key commands across slots.
+ * <p>
+ * Like {@link com.coupang.dcache.DynamoDbCache}, reads that fail or time out
+ * are misses, while failed writes and invalidations throw.
+ */
+public class RespCache implements Cache, Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RespCache.class);
+    private static final int MAX_MGET_KEYS = 1000;
+    private static final int SCAN_COUNT = 1000;
+
+    private static final class Command {
+        private final byte[][] args;
+        private final int slot;
+
+        private Command(byte[][] args, int slot) {
+            this.args = args;
+            this.slot = slot;
+        }
+    }
+
+    private final RespCacheConfig config;
+    private final String keyPrefix;
+    private final long commandTimeoutNanos;
+    private final ExecutorService readers;
+    private final ScheduledExecutorService writeTimeouts;
+    private final Map<String, RespNodeClient> clients = new ConcurrentHashMap<>();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    // Node serving each slot in cluster mode; entries are patched on MOVED replies
+    private volatile InetSocketAddress[] slotOwners;
+    private final AtomicLong redirects = new AtomicLong();
+
+    /**
+     * Creates a new RespCache. In cluster mode, the slot layout is loaded
+     * from the configured nodes first.
+     *
+     * @param config The cache configuration
+     */
+    public RespCache(RespCacheConfig config) {
+        this.config = config;
+        this.keyPrefix = config.getKeyPrefix();
+        this.commandTimeoutNanos = config.getCommandTimeout().toNanos();
+        // One reader per connection, so not the strategy's bounded executor
+        this.readers = Executors.newCachedThreadPool(
+            config.getExecutionStrategy().threadFactory("dcache-resp-reader"));
+        this.writeTimeouts = config.getExecutionStrategy().newScheduler("dcache-resp-write-timeout");
+        if (config.isCluster()) {
+            refreshSlots();
+        }
+    }
+
+    @Override
+    public void put(String key, byte[] value, int ttl) {
+        putAll(Map.of(key, value), ttl);
+    }
+
+    /**
+     * Writes the values with one pipelined {@code SET ... EX ttl} per key,
+     * sent to each server in a single write.
+     */
+    @Override
+    public void putAll(Map<String, byte[]> values, int ttl) {
+        if (ttl <= 0 || values.isEmpty()) {
+            return;
+        }
+        List<Command> commands = new ArrayList<>(values.size());
+        for (Map.Entry<String, byte[]> entry : values.entrySet()) {
+            byte[] key = redisKey(entry.getKey());
+            commands.add(new Command(RespCodec.command("SET", key, entry.getValue(), "EX", ttl),
+                ClusterSlots.slot(key)));
+        }
+        List<Object> replies = execute(commands);
+        for (Object reply : replies) {
+            if (!"OK".equals(reply)) {
+                LOGGER.error("Error putting {} values in cache: {}", values.size(), reply);
+                throw new RuntimeException("Failed to put value in cache: " + reply);
+            }
+        }
+        LOGGER.debug("Cached {} values, TTL: {} seconds", values.size(), ttl);
+    }
+
+    @Override
+    public Optional<byte[]> get(String key) {
+        byte[] redisKey = redisKey(key);
+        Object reply = execute(List.of(new Command(RespCodec.command("GET", redisKey), ClusterSlots.slot(redisKey))))
+            .get(0);
+        if (reply instanceof RespError) {
+            LOGGER.error("Error getting value from cache for key: {}: {}", key, reply);
+            return Optional.empty();
+        }
+        return Optional.ofNullable((byte[]) reply);
+    }
+
+    /**
+     * Reads the keys with {@code MGET}, one per slot in cluster mode, all
+     * sent before any reply is awaited.
+     */
+    @Override
+    public Map<String, byte[]> getAll(Collection<String> keys) {
+        Map<Integer, List<String>> bySlot = new LinkedHashMap<>();
+        for (String key : new LinkedHashSet<>(keys)) {
+            int slot = config.isCluster() ? ClusterSlots.slot(redisKey(key)) : 0;
+            bySlot.computeIfAbsent(slot, ignored -> new ArrayList<>()).add(key);
+        }
+        List<Command> commands = new ArrayList<>();
+        List<List<String>> commandKeys = new ArrayList<>();
+        for (Map.Entry<Integer, List<String>> slot : bySlot.entrySet()) {
+            List<String> slotKeys = slot.getValue();
+            for (int from = 0; from < slotKeys.size(); from += MAX_MGET_KEYS) {
+                List<String> chunk = slotKeys.subList(from, Math.min(from + MAX_MGET_KEYS, slotKeys.size()));
+                Object[] args = new Object[chunk.size() + 1];
+                args[0] = "MGET";
+                for (int i = 0; i < chunk.size(); i++) {
+                    args[i + 1] = redisKey(chunk.get(i));
+                }
+                commands.add(new Command(RespCodec.command(args), slot.getKey()));
+                commandKeys.add(chunk);
+            }
+        }
+
+        Map<String, byte[]> values = new HashMap<>();
+        List<Object> replies = execute(commands);
+        for (int i = 0; i < replies.size(); i++) {
+            Object reply = replies.get(i);
+            List<String> chunk = commandKeys.get(i);
+            if (!(reply instanceof List)) {
+                LOGGER.error("Error getting {} values from cache: {}", chunk.size(), reply);
+                continue;
+            }
+            List<?> found = (List<?>) reply;
+            for (int k = 0; k < chunk.size() && k < found.size(); k++) {
+                if (found.get(k) != null) {
+                    values.put(chunk.get(k), (byte[]) found.get(k));
+                }
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public void invalidate(String key) {
+        byte[] redisKey = redisKey(key);
+        Object reply = execute(List.of(new Command(RespCodec.command("DEL", redisKey), ClusterSlots.slot(redisKey))))
+            .get(0);
+        if (reply instanceof RespError) {
+            LOGGER.error("Error invalidating cache for key: {}: {}", key, reply);
+            throw new RuntimeException("Failed to invalidate cache: " + reply);
+        }
+    }
+
+    /**
+     * Removes every key under the key prefix, scanning each server with
+     * {@code SCAN} and deleting the keys found.
+     */
+    @Override
+    public void invalidateAll() {
+        byte[] pattern = (escapeGlob(keyPrefix) + "*").getBytes(StandardCharsets.UTF_8);
+        for (RespNodeClient client : masters()) {
+            String cursor = "0";
+            do {
+                Object reply = call(client, List.<byte[][]>of(
+                    RespCodec.command("SCAN", cursor, "MATCH", pattern, "COUNT", SCAN_COUNT))).get(0);
+                if (!(reply instanceof List) || ((List<?>) reply).size() != 2) {
+                    LOGGER.error("Error invalidating all cache entries on {}: {}", client.getAddress(), reply);
+                    throw new RuntimeException("Failed to invalidate all cache entries: " + reply);
+                }
+                List<?> page = (List<?>) reply;
+                cursor = new String((byte[]) page.get(0), StandardCharsets.UTF_8);
+                List<byte[][]> deletes = new ArrayList<>();
+                for (Object key : (List<?>) page.get(1)) {
+                    // One key per DEL, since keys of one cluster node may be in different slots
+                    deletes.add(RespCodec.command("DEL", key));
+                }
+                for (Object deleted : call(client, deletes)) {
+                    if (deleted instanceof RespError) {
+                        LOGGER.error("Error invalidating all cache entries on {}: {}", client.getAddress(), deleted);
+                        throw new RuntimeException("Failed to invalidate all cache entries: " + deleted);
+                    }
+                }
+            } while (!"0".equals(cursor));
+        }
+    }
+
+    /**
+     * Returns the number of commands retried on another node after a
+     * {@code MOVED} or {@code ASK} reply.
+     *
+     * @return The number of redirects followed
+     */
+    public long getRedirects() {
+        return redirects.get();
+    }
+
+    @Override
+    public void close() {
+        clients.values().forEach(RespNodeClient::close);
+        clients.clear();
+        readers.shutdownNow();
+        writeTimeouts.shutdownNow();
+    }
+
+    /**
+     * Sends commands to the nodes serving their slots, one write per node,
+     * and collects their replies in order. Commands that fail or time out get
+     * a {@link RespError} reply.
+     */
+    private List<Object> execute(List<Command> commands) {
+        Map<RespNodeClient, List<Integer>> byNode = new LinkedHashMap<>();
+        for (int i = 0; i < commands.size(); i++) {
+            byNode.computeIfAbsent(clientFor(commands.get(i).slot), ignored -> new ArrayList<>()).add(i);
+        }
+        List<CompletableFuture<Object>> futures = new ArrayList<>(Collections.nCopies(commands.size(), null));
+        for (Map.Entry<RespNodeClient, List<Integer>> node : byNode.entrySet()) {
+            List<byte[][]> args = new ArrayList<>(node.getValue().size());
+            for (int index : node.getValue()) {
+                args.add(commands.get(index).args);
+            }
+            List<CompletableFuture<Object>> sent = node.getKey().send(args);
+            for (int i = 0; i < sent.size(); i++) {
+                futures.set(node.getValue().get(i), sent.get(i));
+            }
+        }
+
+        long deadline = System.nanoTime() + commandTimeoutNanos;
+        List<Object> replies = new ArrayList<>(commands.size());
+        for (int i = 0; i < commands.size(); i++) {
+            Object reply = await(futures.get(i), deadline);
+            if (config.isCluster() && reply instanceof RespError) {
+                reply = redirect(commands.get(i), (RespError) reply, deadline);
+            }
+            replies.add(reply);
+        }
+        return replies;
+    }
+
+    private List<Object> call(RespNodeClient client, List<byte[][]> commands) {
+        long deadline = System.nanoTime() + commandTimeoutNanos;
+        List<Object> replies = new ArrayList<>(commands.size());
+        for (CompletableFuture<Object> future : client.send(commands)) {
+            replies.add(await(future, deadline));
+        }
+        return replies;
+    }
+
+    private Object await(CompletableFuture<Object> future, long deadline) {
+        try {
+            return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // Closes its connection, since the replies queued behind it would be as late
+            future.cancel(false);
+            return new RespError("Timed out after " + config.getCommandTimeout().toMillis() + " ms");
+        } catch (ExecutionException e) {
+            return new RespError(String.valueOf(e.getCause()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(false);
+            return new RespError("Interrupted");
+        }
+    }
+
+    private Object redirect(Command command, RespError error, long deadline) {
+        // MOVED <slot> <host>:<port> or ASK <slot> <host>:<port>
+        String[] parts = error.getMessage().split(" ");
+        boolean moved = parts[0].equals("MOVED");
+        if (parts.length != 3 || !(moved || parts[0].equals("ASK"))) {
+            return error;
+        }
+        InetSocketAddress target = address(parts[2]);
+        if (target == null) {
+            return error;
+        }
+        redirects.incrementAndGet();
+        RespNodeClient client = client(target);
+        if (moved) {
+            InetSocketAddress[] owners = slotOwners;
+            if (owners != null) {
+                owners[command.slot] = target;
+            }
+            refreshSlotsAsync();
+            return await(client.send(List.<byte[][]>of(command.args)).get(0), deadline);
+        }
+        List<CompletableFuture<Object>> replies = client.send(List.of(RespCodec.command("ASKING"), command.args));
+        return await(replies.get(1), deadline);
+    }
+
+    private RespNodeClient clientFor(int slot) {
+        InetSocketAddress[] owners = slotOwners;
+        InetSocketAddress owner = owners != null && owners[slot] != null ? owners[slot] : config.getNodes().get(0);
+        return client(owner);
+    }
+
+    private RespNodeClient client(InetSocketAddress address) {
+        return clients.computeIfAbsent(id(address), ignored -> new RespNodeClient(address,
+            config.getConnectionsPerNode(), (int) config.getConnectTimeout().toMillis(), commandTimeoutNanos,
+            config.getPassword(), readers, writeTimeouts));
+    }
+
+    private Collection<RespNodeClient> masters() {
+        InetSocketAddress[] owners = slotOwners;
+        if (owners == null) {
+            return List.of(client(config.getNodes().get(0)));
+        }
+        Map<String, RespNodeClient> masters = new LinkedHashMap<>();
+        for (InetSocketAddress owner : owners) {
+            if (owner != null) {
+                masters.computeIfAbsent(id(owner), ignored -> client(owner));
+            }
+        }
+        return masters.values();
+    }
+
+    private void refreshSlotsAsync() {
+        if (refreshing.compareAndSet(false, true)) {
+            try {
+                readers.execute(() -> {
+                    try {
+                        refreshSlots();
+                    } finally {
+                        refreshing.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                refreshing.set(false);
+            }
+        }
+    }
+
+    /**
+     * Loads the slot layout from the first node that answers {@code CLUSTER SLOTS}.
+     */
+    private void refreshSlots() {
+        Set<InetSocketAddress> candidates = new LinkedHashSet<>(config.getNodes());
+        InetSocketAddress[] current = slotOwners;
+        if (current != null) {
+            for (InetSocketAddress owner : current) {
+                if (owner != null) {
+                    candidates.add(owner);
+                }
+            }
+        }
+        for (InetSocketAddress candidate : candidates) {
+            Object reply = call(client(candidate), List.<byte[][]>of(RespCodec.command("CLUSTER", "SLOTS"))).get(0);
+            if (reply instanceof List) {
+                InetSocketAddress[] owners = parseSlots((List<?>) reply, candidate);
+                slotOwners = owners;
+                closeUnused(owners);
+                LOGGER.debug("Loaded cluster slots from {}", candidate);
+                return;
+            }
+            LOGGER.warn("Failed to load cluster slots from {}: {}", candidate, reply);
+        }
+    }
+
+    private static InetSocketAddress[] parseSlots(List<?> ranges, InetSocketAddress queried) {
+        InetSocketAddress[] owners = new InetSocketAddress[ClusterSlots.SLOTS];
+        for (Object item : ranges) {
+            List<?> range = (List<?>) item;
+            int start = ((Long) range.get(0)).intValue();
+            int end = ((Long) range.get(1)).intValue();
+            // The master comes first; replicas after it are not read from
+            List<?> master = (List<?>) range.get(2);
+            String host = new String((byte[]) master.get(0), StandardCharsets.UTF_8);
+            int port = ((Long) master.get(1)).intValue();
+            // An empty or unknown host means the node answering
+            InetSocketAddress address = host.isEmpty() || host.equals("?")
+                ? new InetSocketAddress(queried.getHostString(), port) : new InetSocketAddress(host, port);
+            for (int slot = start; slot <= end; slot++) {
+                owners[slot] = address;
+            }
+        }
+        return owners;
+    }
+
+    private void closeUnused(InetSocketAddress[] owners) {
+        Set<String> used = new HashSet<>();
+        for (InetSocketAddress owner : owners) {
+            if (owner != null) {
+                used.add(id(owner));
+            }
+        }
+        for (InetSocketAddress seed : config.getNodes()) {
+            used.add(id(seed));
+        }
+        clients.entrySet().removeIf(client -> {
+            if (used.contains(client.getKey())) {
+                return false;
+            }
+            client.getValue().close();
+            return true;
+        });
+    }
+
+    private byte[] redisKey(String key) {
+        return (keyPrefix + key).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static InetSocketAddress address(String hostAndPort) {
+        int colon = hostAndPort.lastIndexOf(':');
+        if (colon <= 0) {
+            return null;
+        }
+        try {
+            return new InetSocketAddress(hostAndPort.substring(0, colon),
+                Integer.parseInt(hostAndPort.substring(colon + 1)));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String id(InetSocketAddress address) {
+        return address.getHostString() + ":" + address.getPort();
+    }
+
+    private static String escapeGlob(String prefix) {
+        StringBuilder escaped = new StringBuilder(prefix.length());
+        for (char c : prefix.toCharArray()) {
+            if (c == '*' || c == '?' || c == '[' || c == ']' || c == '\\') {
+                escaped.append('\\');
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+}
@@ -0,0 +1,171 @@
+package com.coupang.dcache.resp;
+
+import com.coupang.dcache.ExecutionStrategy;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Configuration for {@link RespCache}.
+ */
+public class RespCacheConfig {
+    private final List<InetSocketAddress> nodes;
+    private final boolean cluster;
+    private final String keyPrefix;
+    private final String password;
+    private final int connectionsPerNode;
+    private final Duration connectTimeout;
+    private final Duration commandTimeout;
+    private final ExecutionStrategy executionStrategy;
+
+    private RespCacheConfig(Builder builder) {
+        this.nodes = List.copyOf(builder.nodes);
+        this.cluster = builder.cluster;
+        this.keyPrefix = builder.keyPrefix;
+        this.password = builder.password;
+        this.connectionsPerNode = builder.connectionsPerNode;
+        this.connectTimeout = builder.connectTimeout;
+        this.commandTimeout = builder.commandTimeout;
+        this.executionStrategy = builder.executionStrategy;
+    }
+
+    public List<InetSocketAddress> getNodes() {
+        return nodes;
+    }
+
+    public boolean isCluster() {
+        return cluster;
+    }
+
+    public String getKeyPrefix() {
+        return keyPrefix;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public int getConnectionsPerNode() {
+        return connectionsPerNode;
+    }
+
+    public Duration getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public Duration getCommandTimeout() {
+        return commandTimeout;
+    }
+
+    public ExecutionStrategy getExecutionStrategy() {
+        return executionStrategy;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private final List<InetSocketAddress> nodes = new ArrayList<>();
+        private boolean cluster;
+        private String keyPrefix = "dcache:";
+        private String password;
+        private int connectionsPerNode = 2;
+        private Duration connectTimeout = Duration.ofMillis(500);
+        private Duration commandTimeout = Duration.ofMillis(100);
+        private ExecutionStrategy executionStrategy = ExecutionStrategy.defaultStrategy();
+
+        /**
+         * Adds a server. Without cluster mode, the first server holds every
+         * key; in cluster mode, servers are asked in turn for the slot layout.
+         */
+        public Builder node(InetSocketAddress node) {
+            this.nodes.add(node);
+            return this;
+        }
+
+        public Builder node(String host, int port) {
+            return node(new InetSocketAddress(host, port));
+        }
+
+        /**
+         * Routes each key to the cluster node serving its slot, following
+         * {@code MOVED} and {@code ASK} redirects when slots move.
+         */
+        public Builder cluster(boolean cluster) {
+            this.cluster = cluster;
+            return this;
+        }
+
+        /**
+         * Prefix of every key written, so that {@link RespCache#invalidateAll()}
+         * only removes this cache's keys from a shared server.
+         */
+        public Builder keyPrefix(String keyPrefix) {
+            this.keyPrefix = keyPrefix;
+            return this;
+        }
+
+        /**
+         * Password sent with {@code AUTH} on every new connection.
+         */
+        public Builder password(String password) {
+            this.password = password;
+            return this;
+        }
+
+        /**
+         * Connections kept to each server. Each carries any number of
+         * pipelined commands, so a few are enough.
+         */
+        public Builder connectionsPerNode(int connectionsPerNode) {
+            this.connectionsPerNode = connectionsPerNode;
+            return this;
+        }
+
+        public Builder connectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        /**
+         * Time to wait for a reply before treating a read as a miss and a
+         * write as failed.
+         */
+        public Builder commandTimeout(Duration commandTimeout) {
+            this.commandTimeout = commandTimeout;
+            return this;
+        }
+
+        /**
+         * Threads reading replies and refreshing the slot layout. Defaults to
+         * virtual threads on Java 21+ and bounded pools otherwise.
+         */
+        public Builder executionStrategy(ExecutionStrategy executionStrategy) {
+            this.executionStrategy = executionStrategy;
+            return this;
+        }
+
+        public RespCacheConfig build() {
+            if (nodes.isEmpty()) {
+                throw new IllegalArgumentException("At least one node is required");
+            }
+            if (keyPrefix == null) {
+                throw new IllegalArgumentException("Key prefix must not be null");
+            }
+            if (connectionsPerNode <= 0) {
+                throw new IllegalArgumentException("Connections per node must be positive");
+            }
+            if (connectTimeout == null || commandTimeout == null
+                    || commandTimeout.isZero() || commandTimeout.isNegative()) {
+                throw new IllegalArgumentException("Timeouts must be positive");
+            }
+            if (executionStrategy == null) {
+                throw new IllegalArgumentException("Execution strategy is required");
+            }
+            return new RespCacheConfig(this);
+        }
+    }
+}
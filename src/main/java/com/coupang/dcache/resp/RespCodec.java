@@ -0,0 +1,159 @@
+package com.coupang.dcache.resp;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encoder for RESP commands and incremental decoder for RESP2 replies.
+ * <p>
+ * Replies are decoded to {@code byte[]} for bulk strings, {@link String} for
+ * simple strings, {@link Long} for integers, {@link List} for arrays,
+ * {@link RespError} for errors and null for null bulk strings and arrays.
+ */
+final class RespCodec {
+    /**
+     * Returned by {@link #decode} when the buffer does not hold a whole reply yet.
+     */
+    static final Object INCOMPLETE = new Object();
+
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private RespCodec() {
+    }
+
+    /**
+     * Encodes commands, each an array of bulk strings, into one buffer so
+     * that they are written together.
+     */
+    static ByteBuffer encode(List<byte[][]> commands) {
+        int size = 0;
+        for (byte[][] command : commands) {
+            size += 1 + digits(command.length) + 2;
+            for (byte[] arg : command) {
+                size += 1 + digits(arg.length) + 2 + arg.length + 2;
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (byte[][] command : commands) {
+            buffer.put((byte) '*');
+            putNumber(buffer, command.length);
+            for (byte[] arg : command) {
+                buffer.put((byte) '$');
+                putNumber(buffer, arg.length);
+                buffer.put(arg);
+                buffer.put(CRLF);
+            }
+        }
+        return buffer.flip();
+    }
+
+    static byte[][] command(Object... args) {
+        byte[][] command = new byte[args.length][];
+        for (int i = 0; i < args.length; i++) {
+            Object arg = args[i];
+            command[i] = arg instanceof byte[] ? (byte[]) arg : String.valueOf(arg).getBytes(StandardCharsets.UTF_8);
+        }
+        return command;
+    }
+
+    /**
+     * Decodes the next reply in the buffer.
+     *
+     * @return The reply, or {@link #INCOMPLETE} with the buffer position unchanged
+     */
+    static Object decode(ByteBuffer buffer) {
+        int start = buffer.position();
+        try {
+            return read(buffer);
+        } catch (BufferUnderflowException e) {
+            buffer.position(start);
+            return INCOMPLETE;
+        }
+    }
+
+    private static Object read(ByteBuffer buffer) {
+        byte type = buffer.get();
+        switch (type) {
+            case '+':
+                return line(buffer);
+            case '-':
+                return new RespError(line(buffer));
+            case ':':
+                return number(buffer);
+            case '$': {
+                long length = number(buffer);
+                if (length < 0) {
+                    return null;
+                }
+                if (buffer.remaining() < length + 2) {
+                    throw new BufferUnderflowException();
+                }
+                byte[] value = new byte[(int) length];
+                buffer.get(value);
+                buffer.position(buffer.position() + 2);
+                return value;
+            }
+            case '*': {
+                long count = number(buffer);
+                if (count < 0) {
+                    return null;
+                }
+                List<Object> elements = new ArrayList<>((int) Math.min(count, 1024));
+                for (long i = 0; i < count; i++) {
+                    elements.add(read(buffer));
+                }
+                return elements;
+            }
+            default:
+                throw new IllegalStateException("Unexpected RESP type byte: " + (char) type);
+        }
+    }
+
+    private static String line(ByteBuffer buffer) {
+        int end = lineEnd(buffer);
+        byte[] bytes = new byte[end - buffer.position()];
+        buffer.get(bytes);
+        buffer.position(buffer.position() + 2);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long number(ByteBuffer buffer) {
+        int end = lineEnd(buffer);
+        boolean negative = buffer.get(buffer.position()) == '-';
+        if (negative) {
+            buffer.get();
+        }
+        long value = 0;
+        while (buffer.position() < end) {
+            value = value * 10 + (buffer.get() - '0');
+        }
+        buffer.position(buffer.position() + 2);
+        return negative ? -value : value;
+    }
+
+    private static int lineEnd(ByteBuffer buffer) {
+        for (int i = buffer.position(); i + 1 < buffer.limit(); i++) {
+            if (buffer.get(i) == '\r' && buffer.get(i + 1) == '\n') {
+                return i;
+            }
+        }
+        throw new BufferUnderflowException();
+    }
+
+    private static void putNumber(ByteBuffer buffer, int value) {
+        buffer.put(Integer.toString(value).getBytes(StandardCharsets.US_ASCII));
+        buffer.put(CRLF);
+    }
+
+    private static int digits(int value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+}
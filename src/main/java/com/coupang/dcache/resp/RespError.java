@@ -0,0 +1,21 @@
+package com.coupang.dcache.resp;
+
+/**
+ * Error reply from a RESP server, or a command that got no reply.
+ */
+final class RespError {
+    private final String message;
+
+    RespError(String message) {
+        this.message = message;
+    }
+
+    String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return message;
+    }
+}
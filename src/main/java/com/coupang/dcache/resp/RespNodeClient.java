@@ -0,0 +1,274 @@
+package com.coupang.dcache.resp;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pool of pipelined connections to one RESP server.
+ * <p>
+ * Commands are spread round-robin over the connections. The commands of one
+ * call are encoded into a single buffer and written at once, and no command
+ * waits for the replies to earlier ones. A RESP server answers in order, so
+ * each connection matches replies to a FIFO of pending futures; a reader per
+ * connection decodes replies from a growing buffer as they arrive. A
+ * connection that fails fails the commands in flight on it, and the next
+ * command opens a new one. So does a command its caller cancels, e.g. on a
+ * timeout: every reply queued behind it would be as late, and the slow
+ * server or network gets a fresh connection instead.
+ * <p>
+ * Writes take a lock of their own connection only, so that a write blocked by
+ * a server that stopped reading never holds up closing the connection. A
+ * write that takes longer than the command timeout closes the connection.
+ */
+final class RespNodeClient {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RespNodeClient.class);
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final InetSocketAddress address;
+    private final int connectTimeoutMillis;
+    private final long writeTimeoutNanos;
+    private final byte[][] auth;
+    private final ExecutorService readers;
+    private final ScheduledExecutorService writeTimeouts;
+    private final Connection[] connections;
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile boolean closed;
+
+    RespNodeClient(InetSocketAddress address, int connections, int connectTimeoutMillis, long writeTimeoutNanos,
+                   String password, ExecutorService readers, ScheduledExecutorService writeTimeouts) {
+        this.address = address;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.writeTimeoutNanos = writeTimeoutNanos;
+        this.auth = password == null ? null : RespCodec.command("AUTH", password);
+        this.readers = readers;
+        this.writeTimeouts = writeTimeouts;
+        this.connections = new Connection[connections];
+        for (int i = 0; i < connections; i++) {
+            this.connections[i] = new Connection();
+        }
+    }
+
+    InetSocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * Sends commands in one write on one connection.
+     *
+     * @return The reply of each command, in order; completed exceptionally if the connection fails
+     */
+    List<CompletableFuture<Object>> send(List<byte[][]> commands) {
+        Connection connection = connections[Math.floorMod(next.getAndIncrement(), connections.length)];
+        return connection.send(commands);
+    }
+
+    void close() {
+        closed = true;
+        for (Connection connection : connections) {
+            connection.close();
+        }
+    }
+
+    private final class Connection {
+        private final ReentrantLock lock = new ReentrantLock();
+        private Link link;
+
+        private List<CompletableFuture<Object>> send(List<byte[][]> commands) {
+            List<CompletableFuture<Object>> replies = new ArrayList<>(commands.size());
+            for (int i = 0; i < commands.size(); i++) {
+                replies.add(new CompletableFuture<>());
+            }
+            ByteBuffer buffer = RespCodec.encode(commands);
+            long deadline = System.nanoTime() + writeTimeoutNanos;
+            Link current;
+            lock.lock();
+            try {
+                if (closed) {
+                    throw new ClosedChannelException();
+                }
+                if (link == null) {
+                    link = connect();
+                }
+                current = link;
+            } catch (IOException | RejectedExecutionException e) {
+                replies.forEach(reply -> reply.completeExceptionally(e));
+                return replies;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                // Waits at most for the running write, which is closed by its own timeout
+                if (!current.writeLock.tryLock(writeTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                    IOException timeout = new IOException("Timed out waiting to write to " + address);
+                    replies.forEach(reply -> reply.completeExceptionally(timeout));
+                    return replies;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                replies.forEach(reply -> reply.completeExceptionally(e));
+                return replies;
+            }
+            try {
+                // Queued in write order, which is the order replies come back in
+                current.pending.addAll(replies);
+                for (CompletableFuture<Object> reply : replies) {
+                    reply.whenComplete((result, e) -> {
+                        if (reply.isCancelled()) {
+                            detach(current, new IOException("Command to " + address + " cancelled"));
+                        }
+                    });
+                }
+                write(current, buffer, deadline);
+            } catch (IOException | RejectedExecutionException e) {
+                detach(current, e instanceof IOException ? (IOException) e : new IOException(e));
+            } finally {
+                current.writeLock.unlock();
+            }
+            return replies;
+        }
+
+        /**
+         * Writes the whole buffer, closing the connection if that takes past
+         * the deadline, since a blocking write has no timeout of its own.
+         */
+        private void write(Link current, ByteBuffer buffer, long deadline) throws IOException {
+            ScheduledFuture<?> timeout = writeTimeouts.schedule(
+                () -> detach(current, new IOException("Write to " + address + " timed out")),
+                Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            try {
+                while (buffer.hasRemaining()) {
+                    current.channel.write(buffer);
+                }
+            } finally {
+                timeout.cancel(false);
+            }
+        }
+
+        private Link connect() throws IOException {
+            SocketChannel channel = SocketChannel.open();
+            try {
+                channel.socket().setTcpNoDelay(true);
+                channel.socket().connect(address, connectTimeoutMillis);
+                Link created = new Link(channel);
+                if (auth != null) {
+                    CompletableFuture<Object> reply = new CompletableFuture<>();
+                    reply.thenAccept(result -> {
+                        if (result instanceof RespError) {
+                            LOGGER.warn("Authentication to {} failed: {}", address, result);
+                        }
+                    });
+                    created.pending.add(reply);
+                    ByteBuffer buffer = RespCodec.encode(List.<byte[][]>of(auth));
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                }
+                readers.execute(() -> receiveLoop(created));
+                return created;
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        private void receiveLoop(Link current) {
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            try {
+                while (true) {
+                    if (current.channel.read(buffer) < 0) {
+                        throw new ClosedChannelException();
+                    }
+                    buffer.flip();
+                    Object reply;
+                    while ((reply = RespCodec.decode(buffer)) != RespCodec.INCOMPLETE) {
+                        CompletableFuture<Object> pending = current.pending.poll();
+                        if (pending == null) {
+                            throw new IOException("Reply without a pending command from " + address);
+                        }
+                        pending.complete(reply);
+                    }
+                    buffer.compact();
+                    if (!buffer.hasRemaining()) {
+                        // A reply larger than the buffer
+                        buffer = ByteBuffer.allocate(buffer.capacity() * 2).put(buffer.flip());
+                    }
+                }
+            } catch (ClosedChannelException e) {
+                LOGGER.debug("Connection to {} closed", address);
+                detach(current, e);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warn("Error reading from {}", address, e);
+                detach(current, e instanceof IOException ? (IOException) e : new IOException(e));
+            }
+        }
+
+        private void detach(Link current, IOException cause) {
+            lock.lock();
+            try {
+                if (link == current) {
+                    link = null;
+                }
+            } finally {
+                lock.unlock();
+            }
+            current.fail(cause);
+        }
+
+        private void close() {
+            lock.lock();
+            try {
+                if (link != null) {
+                    link.fail(new ClosedChannelException());
+                    link = null;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * One channel with the commands in flight on it.
+     */
+    private final class Link {
+        private final SocketChannel channel;
+        private final Queue<CompletableFuture<Object>> pending = new ConcurrentLinkedQueue<>();
+        // Held while queuing replies and writing, so that writes and replies stay in the same order
+        private final ReentrantLock writeLock = new ReentrantLock();
+
+        private Link(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        private void fail(IOException cause) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.debug("Error closing connection to {}", address, e);
+            }
+            CompletableFuture<Object> reply;
+            while ((reply = pending.poll()) != null) {
+                reply.completeExceptionally(cause);
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.coupang.dcache.spring;
+
+import com.coupang.dcache.Cache;
+import com.coupang.dcache.DynamoDbCache;
+import com.coupang.dcache.DynamoDbCacheConfig;
+import com.coupang.dcache.GuavaCache;
+import com.coupang.dcache.GuavaCacheConfig;
+import com.coupang.dcache.HttpCacheConfig;
+import com.coupang.dcache.TieredCache;
+import com.coupang.dcache.TieredCacheConfig;
+import com.coupang.dcache.invalidation.InvalidationBus;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.cache.CacheAutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Bean;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClientBuilder;
+
+import java.net.URI;
+
+/**
+ * Spring Boot auto-configuration exposing the cache as a Spring
+ * {@link CacheManager}, enabled with {@code dcache.enabled=true}.
+ * <p>
+ * Every bean backs off when the application defines its own, so an
+ * application can for example provide its own {@link Cache} and still use
+ * the generated cache manager.
+ * <p>
+ * The default {@code TIERED} cache drops the L1 copies of other nodes on
+ * eviction only through an {@link InvalidationBus} bean, which the
+ * application defines, e.g. a
+ * {@link com.coupang.dcache.invalidation.DynamoDbStreamsInvalidationBus}.
+ * Without one, other nodes keep serving an evicted or cleared entry from L1
+ * for up to {@code dcache.local-ttl} seconds.
+ */
+@AutoConfiguration(before = CacheAutoConfiguration.class)
+@ConditionalOnClass({CacheManager.class, DynamoDbClient.class})
+@ConditionalOnProperty(prefix = "dcache", name = "enabled", havingValue = "true")
+@EnableConfigurationProperties(DCacheProperties.class)
+public class DCacheAutoConfiguration {
+
+    @Bean
+    @ConditionalOnMissingBean
+    public DynamoDbClient dcacheDynamoDbClient(DCacheProperties properties) {
+        DynamoDbClientBuilder builder = DynamoDbClient.builder().region(Region.of(properties.getRegion()));
+        if (properties.getEndpoint() != null) {
+            builder.endpointOverride(URI.create(properties.getEndpoint()));
+        }
+        return builder.build();
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public HttpCacheConfig dcacheHttpCacheConfig(DCacheProperties properties, DynamoDbClient dynamoDbClient) {
+        return HttpCacheConfig.builder()
+                .tableName(properties.getTableName())
+                .region(properties.getRegion())
+                .endpoint(properties.getEndpoint())
+                .defaultTtl(properties.getDefaultTtl())
+                .bypassCache(properties.isBypassCache())
+                .cacheKeyStrategy(properties.getCacheKeyStrategy())
+                .defaultTenant(properties.getDefaultTenant())
+                .defaultCountryCode(properties.getDefaultCountryCode())
+                .withEnableMultiTenancy(properties.isEnableMultiTenancy())
+                .withReadCapacityUnits(properties.getReadCapacityUnits())
+                .withWriteCapacityUnits(properties.getWriteCapacityUnits())
+                .withDynamoDbClient(dynamoDbClient)
+                .build();
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public Cache dcacheCache(DCacheProperties properties, HttpCacheConfig config,
+                             ObjectProvider<InvalidationBus> invalidationBus) {
+        switch (properties.getType()) {
+            case GUAVA:
+                return localCache(properties);
+            case DYNAMODB:
+                return remoteCache(config);
+            default:
+                return new TieredCache(TieredCacheConfig.builder()
+                        .localCache(localCache(properties))
+                        .remoteCache(remoteCache(config))
+                        .localTtl(properties.getLocalTtl())
+                        .invalidationBus(invalidationBus.getIfAvailable())
+                        .build());
+        }
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public ValueSerializer dcacheValueSerializer(DCacheProperties properties) {
+        if (properties.getSerializer() == DCacheProperties.Serializer.JACKSON) {
+            return new JacksonValueSerializer(properties.getJacksonAllowedPackages());
+        }
+        return new JdkValueSerializer();
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(CacheManager.class)
+    public DCacheCacheManager cacheManager(DCacheProperties properties, Cache cache, ValueSerializer serializer) {
+        return new DCacheCacheManager(cache, serializer, properties.getDefaultTtl(), properties.getTtl(),
+                properties.isAllowNullValues());
+    }
+
+    private static Cache localCache(DCacheProperties properties) {
+        return new GuavaCache(GuavaCacheConfig.builder()
+                .maximumSize(properties.getLocalMaximumSize())
+                .defaultTtl(properties.getDefaultTtl())
+                .build());
+    }
+
+    private static Cache remoteCache(HttpCacheConfig config) {
+        return new DynamoDbCache(DynamoDbCacheConfig.builder()
+                .tableName(config.getTableName())
+                .region(config.getRegion())
+                .withDynamoDbClient(config.getDynamoDbClient())
+                .build());
+    }
+}
@@ -0,0 +1,53 @@
+package com.coupang.dcache.spring;
+
+import com.coupang.dcache.Cache;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Spring {@link org.springframework.cache.CacheManager} creating a
+ * {@link DCacheSpringCache} per cache name on first use, all backed by the
+ * same {@link Cache} (Guava, DynamoDB or tiered).
+ */
+public class DCacheCacheManager implements org.springframework.cache.CacheManager {
+    private final Cache cache;
+    private final ValueSerializer serializer;
+    private final int defaultTtl;
+    private final Map<String, Integer> ttls;
+    private final boolean allowNullValues;
+    private final ConcurrentMap<String, DCacheSpringCache> caches = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new DCacheCacheManager.
+     *
+     * @param cache The backing cache
+     * @param serializer The value serializer
+     * @param defaultTtl The TTL in seconds of caches without their own TTL
+     * @param ttls The TTL in seconds per cache name
+     * @param allowNullValues Whether null values are cached
+     */
+    public DCacheCacheManager(Cache cache, ValueSerializer serializer, int defaultTtl,
+                              Map<String, Integer> ttls, boolean allowNullValues) {
+        this.cache = cache;
+        this.serializer = serializer;
+        this.defaultTtl = defaultTtl;
+        this.ttls = new HashMap<>(ttls);
+        this.allowNullValues = allowNullValues;
+    }
+
+    @Override
+    public org.springframework.cache.Cache getCache(String name) {
+        return caches.computeIfAbsent(name, cacheName -> new DCacheSpringCache(cacheName, cache, serializer,
+                ttls.getOrDefault(cacheName, defaultTtl), allowNullValues));
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return Collections.unmodifiableSet(caches.keySet());
+    }
+}
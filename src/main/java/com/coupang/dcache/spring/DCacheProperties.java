@@ -0,0 +1,206 @@
+package com.coupang.dcache.spring;
+
+import com.coupang.dcache.HttpCacheConfig;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@code dcache.*} properties of the Spring Boot auto-configuration. The
+ * table, key and tenancy settings map onto {@link HttpCacheConfig}.
+ */
+@ConfigurationProperties(prefix = "dcache")
+public class DCacheProperties {
+    /**
+     * Backing caches the auto-configuration can create.
+     */
+    public enum Type {
+        GUAVA,
+        DYNAMODB,
+        TIERED
+    }
+
+    /**
+     * Value serializers the auto-configuration can create.
+     */
+    public enum Serializer {
+        JDK,
+        JACKSON
+    }
+
+    private boolean enabled;
+    private Type type = Type.TIERED;
+    private String tableName = "http-cache";
+    private String region = "us-east-1";
+    private String endpoint;
+    private int defaultTtl = 3600;
+    private boolean bypassCache;
+    private HttpCacheConfig.CacheKeyStrategy cacheKeyStrategy = HttpCacheConfig.CacheKeyStrategy.SIMPLE;
+    private boolean enableMultiTenancy;
+    private String defaultTenant;
+    private String defaultCountryCode;
+    private long readCapacityUnits = 5;
+    private long writeCapacityUnits = 5;
+    private long localMaximumSize = 10000;
+    private int localTtl = 60;
+    private Serializer serializer = Serializer.JDK;
+    private String[] jacksonAllowedPackages = new String[0];
+    private boolean allowNullValues = true;
+    private Map<String, Integer> ttl = new HashMap<>();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public void setTableName(String tableName) {
+        this.tableName = tableName;
+    }
+
+    public String getRegion() {
+        return region;
+    }
+
+    public void setRegion(String region) {
+        this.region = region;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public void setEndpoint(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public int getDefaultTtl() {
+        return defaultTtl;
+    }
+
+    public void setDefaultTtl(int defaultTtl) {
+        this.defaultTtl = defaultTtl;
+    }
+
+    public boolean isBypassCache() {
+        return bypassCache;
+    }
+
+    public void setBypassCache(boolean bypassCache) {
+        this.bypassCache = bypassCache;
+    }
+
+    public HttpCacheConfig.CacheKeyStrategy getCacheKeyStrategy() {
+        return cacheKeyStrategy;
+    }
+
+    public void setCacheKeyStrategy(HttpCacheConfig.CacheKeyStrategy cacheKeyStrategy) {
+        this.cacheKeyStrategy = cacheKeyStrategy;
+    }
+
+    public boolean isEnableMultiTenancy() {
+        return enableMultiTenancy;
+    }
+
+    public void setEnableMultiTenancy(boolean enableMultiTenancy) {
+        this.enableMultiTenancy = enableMultiTenancy;
+    }
+
+    public String getDefaultTenant() {
+        return defaultTenant;
+    }
+
+    public void setDefaultTenant(String defaultTenant) {
+        this.defaultTenant = defaultTenant;
+    }
+
+    public String getDefaultCountryCode() {
+        return defaultCountryCode;
+    }
+
+    public void setDefaultCountryCode(String defaultCountryCode) {
+        this.defaultCountryCode = defaultCountryCode;
+    }
+
+    public long getReadCapacityUnits() {
+        return readCapacityUnits;
+    }
+
+    public void setReadCapacityUnits(long readCapacityUnits) {
+        this.readCapacityUnits = readCapacityUnits;
+    }
+
+    public long getWriteCapacityUnits() {
+        return writeCapacityUnits;
+    }
+
+    public void setWriteCapacityUnits(long writeCapacityUnits) {
+        this.writeCapacityUnits = writeCapacityUnits;
+    }
+
+    public long getLocalMaximumSize() {
+        return localMaximumSize;
+    }
+
+    public void setLocalMaximumSize(long localMaximumSize) {
+        this.localMaximumSize = localMaximumSize;
+    }
+
+    public int getLocalTtl() {
+        return localTtl;
+    }
+
+    public void setLocalTtl(int localTtl) {
+        this.localTtl = localTtl;
+    }
+
+    public Serializer getSerializer() {
+        return serializer;
+    }
+
+    public void setSerializer(Serializer serializer) {
+        this.serializer = serializer;
+    }
+
+    public String[] getJacksonAllowedPackages() {
+        return jacksonAllowedPackages;
+    }
+
+    public void setJacksonAllowedPackages(String[] jacksonAllowedPackages) {
+        this.jacksonAllowedPackages = jacksonAllowedPackages;
+    }
+
+    public boolean isAllowNullValues() {
+        return allowNullValues;
+    }
+
+    public void setAllowNullValues(boolean allowNullValues) {
+        this.allowNullValues = allowNullValues;
+    }
+
+    /**
+     * @return The TTL in seconds per Spring cache name
+     */
+    public Map<String, Integer> getTtl() {
+        return ttl;
+    }
+
+    public void setTtl(Map<String, Integer> ttl) {
+        this.ttl = ttl;
+    }
+}
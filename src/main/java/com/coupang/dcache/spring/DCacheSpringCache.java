@@ -0,0 +1,225 @@
+package com.coupang.dcache.spring;
+
+import com.coupang.dcache.Cache;
+import com.coupang.dcache.TaggableCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+import org.springframework.cache.support.NullValue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spring {@link org.springframework.cache.Cache} backed by a {@link Cache}.
+ * <p>
+ * Keys are stored as {@code <name>:<key>}. Values are serialized with a
+ * {@link ValueSerializer}, behind a one-byte marker that distinguishes a
+ * cached null from a value.
+ * <p>
+ * When the backing cache is a {@link TaggableCache}, i.e. shared between
+ * nodes, {@link #clear()} only clears this cache: it bumps a generation
+ * number stored next to the entries, and keys then become
+ * {@code <name>@<generation>:<key>}, so the entries of earlier generations
+ * are no longer read and expire with their TTL. Nodes re-read the
+ * generation at most once a second, so a clear on another node takes
+ * effect here within a second, plus the local TTL of a {@code TieredCache}
+ * without an invalidation bus. Otherwise {@link #clear()} clears the whole
+ * backing cache.
+ * <p>
+ * {@link #get(Object, Callable)}, used for {@code @Cacheable(sync = true)},
+ * lets one caller per key and node run the loader while the others wait for
+ * its result.
+ */
+public class DCacheSpringCache extends AbstractValueAdaptingCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DCacheSpringCache.class);
+    private static final byte NULL_MARKER = 0;
+    private static final byte VALUE_MARKER = 1;
+    private static final String GENERATION_PREFIX = "__generation#spring-cache:";
+    private static final long GENERATION_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final String name;
+    private final Cache cache;
+    private final ValueSerializer serializer;
+    private final int ttl;
+    private final ConcurrentMap<String, CompletableFuture<Object>> loading = new ConcurrentHashMap<>();
+    private volatile long generation;
+    private volatile long generationReadAt;
+    private volatile boolean generationRead;
+
+    /**
+     * Creates a new DCacheSpringCache.
+     *
+     * @param name The cache name
+     * @param cache The backing cache
+     * @param serializer The value serializer
+     * @param ttl The TTL of entries in seconds
+     * @param allowNullValues Whether null values are cached
+     */
+    public DCacheSpringCache(String name, Cache cache, ValueSerializer serializer, int ttl, boolean allowNullValues) {
+        super(allowNullValues);
+        this.name = name;
+        this.cache = cache;
+        this.serializer = serializer;
+        this.ttl = ttl;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Cache getNativeCache() {
+        return cache;
+    }
+
+    public int getTtl() {
+        return ttl;
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        Optional<byte[]> data = cache.get(storageKey(key));
+        if (data.isEmpty()) {
+            return null;
+        }
+        try {
+            return decode(data.get());
+        } catch (Exception e) {
+            // Unreadable entries (e.g. from an older class version) are treated as misses
+            LOGGER.warn("Failed to deserialize cached value for key: {}", storageKey(key), e);
+            return null;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper cached = get(key);
+        if (cached != null) {
+            return (T) cached.get();
+        }
+
+        String storageKey = storageKey(key);
+        CompletableFuture<Object> load = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = loading.putIfAbsent(storageKey, load);
+        if (inFlight != null) {
+            return (T) await(key, inFlight, valueLoader);
+        }
+        try {
+            // Another node or caller may have filled the entry since the first lookup
+            cached = get(key);
+            Object value = cached != null ? cached.get() : valueLoader.call();
+            if (cached == null) {
+                put(key, value);
+            }
+            load.complete(value);
+            return (T) value;
+        } catch (Exception e) {
+            load.completeExceptionally(e);
+            throw new ValueRetrievalException(key, valueLoader, e);
+        } finally {
+            loading.remove(storageKey, load);
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        cache.put(storageKey(key), encode(toStoreValue(value)), ttl);
+    }
+
+    @Override
+    public void evict(Object key) {
+        cache.invalidate(storageKey(key));
+    }
+
+    @Override
+    public void clear() {
+        if (cache instanceof TaggableCache) {
+            // Never below a generation another node may have written meanwhile
+            long next = Math.max(readGeneration() + 1, System.currentTimeMillis());
+            // Outlives every entry, or cleared entries would be read again
+            cache.put(GENERATION_PREFIX + name, Long.toString(next).getBytes(StandardCharsets.UTF_8),
+                Integer.MAX_VALUE);
+            generation = next;
+            generationReadAt = System.nanoTime();
+            generationRead = true;
+        } else {
+            cache.invalidateAll();
+        }
+    }
+
+    private Object await(Object key, CompletableFuture<Object> inFlight, Callable<?> valueLoader) {
+        try {
+            return inFlight.get();
+        } catch (ExecutionException e) {
+            throw new ValueRetrievalException(key, valueLoader, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+    }
+
+    private String storageKey(Object key) {
+        long current = generation();
+        return current == 0 ? name + ":" + key : name + "@" + current + ":" + key;
+    }
+
+    private long generation() {
+        if (!(cache instanceof TaggableCache)) {
+            return 0;
+        }
+        if (!generationRead || System.nanoTime() - generationReadAt > GENERATION_REFRESH_NANOS) {
+            // Never goes back, e.g. when a failed read of the backing cache comes back empty
+            generation = Math.max(generation, readGeneration());
+            generationReadAt = System.nanoTime();
+            generationRead = true;
+        }
+        return generation;
+    }
+
+    private long readGeneration() {
+        try {
+            return cache.get(GENERATION_PREFIX + name)
+                .map(data -> Long.parseLong(new String(data, StandardCharsets.UTF_8)))
+                .orElse(0L);
+        } catch (RuntimeException e) {
+            // Keep the last known generation rather than fall back to entries already cleared
+            LOGGER.warn("Failed to read generation of cache: {}", name, e);
+            return generation;
+        }
+    }
+
+    private byte[] encode(Object storeValue) {
+        if (storeValue == NullValue.INSTANCE) {
+            return new byte[] {NULL_MARKER};
+        }
+        try {
+            byte[] value = serializer.serialize(storeValue);
+            byte[] data = new byte[value.length + 1];
+            data[0] = VALUE_MARKER;
+            System.arraycopy(value, 0, data, 1, value.length);
+            return data;
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Failed to serialize value of type " + storeValue.getClass().getName(), e);
+        }
+    }
+
+    private Object decode(byte[] data) throws Exception {
+        if (data.length == 1 && data[0] == NULL_MARKER) {
+            return NullValue.INSTANCE;
+        }
+        if (data.length == 0 || data[0] != VALUE_MARKER) {
+            throw new IllegalStateException("Unknown value marker");
+        }
+        return serializer.deserialize(Arrays.copyOfRange(data, 1, data.length));
+    }
+}
@@ -0,0 +1,42 @@
+package com.coupang.dcache.spring;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.jsontype.BasicPolymorphicTypeValidator;
+
+/**
+ * Serializes values as JSON with their class name, so they can be read back
+ * without knowing the type. Only classes in the allowed packages (and
+ * {@code java.}) are deserialized.
+ */
+public class JacksonValueSerializer implements ValueSerializer {
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Creates a serializer for values in the given packages.
+     *
+     * @param allowedPackages Package prefixes of the cached value types, e.g. "com.coupang."
+     */
+    public JacksonValueSerializer(String... allowedPackages) {
+        this(new ObjectMapper().findAndRegisterModules(), allowedPackages);
+    }
+
+    public JacksonValueSerializer(ObjectMapper objectMapper, String... allowedPackages) {
+        BasicPolymorphicTypeValidator.Builder validator = BasicPolymorphicTypeValidator.builder()
+                .allowIfSubType("java.");
+        for (String allowedPackage : allowedPackages) {
+            validator.allowIfSubType(allowedPackage);
+        }
+        this.objectMapper = objectMapper.copy()
+                .activateDefaultTyping(validator.build(), ObjectMapper.DefaultTyping.EVERYTHING);
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws Exception {
+        return objectMapper.writeValueAsBytes(value);
+    }
+
+    @Override
+    public Object deserialize(byte[] data) throws Exception {
+        return objectMapper.readValue(data, Object.class);
+    }
+}
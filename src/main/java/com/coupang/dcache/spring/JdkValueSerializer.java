@@ -0,0 +1,45 @@
+package com.coupang.dcache.spring;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+
+/**
+ * Serializes {@link java.io.Serializable} values with Java serialization.
+ * Only use it when every node writing to the cache is trusted.
+ */
+public class JdkValueSerializer implements ValueSerializer {
+    private final ClassLoader classLoader;
+
+    public JdkValueSerializer() {
+        this(Thread.currentThread().getContextClassLoader());
+    }
+
+    public JdkValueSerializer(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public Object deserialize(byte[] data) throws Exception {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data)) {
+            @Override
+            protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+                return Class.forName(desc.getName(), false, classLoader);
+            }
+        }) {
+            return in.readObject();
+        }
+    }
+}
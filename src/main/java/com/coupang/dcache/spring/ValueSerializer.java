@@ -0,0 +1,24 @@
+package com.coupang.dcache.spring;
+
+/**
+ * Converts values cached through the Spring Cache abstraction to bytes.
+ */
+public interface ValueSerializer {
+    /**
+     * Serializes a value.
+     *
+     * @param value The value, never null
+     * @return The serialized value
+     * @throws Exception If the value cannot be serialized
+     */
+    byte[] serialize(Object value) throws Exception;
+
+    /**
+     * Deserializes a value written by {@link #serialize(Object)}.
+     *
+     * @param data The serialized value
+     * @return The value
+     * @throws Exception If the data cannot be deserialized
+     */
+    Object deserialize(byte[] data) throws Exception;
+}
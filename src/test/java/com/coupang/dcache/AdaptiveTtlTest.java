@@ -0,0 +1,174 @@
+package com.coupang.dcache;
+
+import com.google.common.base.Ticker;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveTtlTest {
+    private final AtomicLong nanos = new AtomicLong();
+    private final Ticker ticker = new Ticker() {
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+    };
+
+    @Test
+    void shouldKeepDefaultTtlUntilEnoughRefreshes() {
+        // Given
+        AdaptiveTtl adaptiveTtl = new AdaptiveTtl(config().minObservations(3).build());
+
+        // When: two refreshes compared with a previous value
+        refresh(adaptiveTtl, "/products/1", "a", 0);
+        refresh(adaptiveTtl, "/products/1", "b", 60);
+        refresh(adaptiveTtl, "/products/1", "c", 60);
+
+        // Then
+        assertEquals(300, adaptiveTtl.ttl("/products/1", 300));
+        assertEquals(2, adaptiveTtl.getObservations());
+        assertEquals(2, adaptiveTtl.getChanges());
+    }
+
+    @Test
+    void shouldShortenTtlOfChangingValues() {
+        // Given
+        AdaptiveTtl adaptiveTtl = new AdaptiveTtl(config().build());
+
+        // When: every refresh a minute apart returns a new body
+        for (int i = 0; i < 10; i++) {
+            refresh(adaptiveTtl, "/prices/1", "price-" + i, 60);
+        }
+
+        // Then: far below a minute, since a changed value is stale for part of every minute
+        int ttl = adaptiveTtl.ttl("/prices/1", 3600);
+        assertTrue(ttl >= 1 && ttl < 30, "TTL was " + ttl);
+        assertTrue(adaptiveTtl.getChangeRate("/prices/1") > 1.0 / 60);
+    }
+
+    @Test
+    void shouldExtendTtlOfStableValues() {
+        // Given
+        AdaptiveTtl adaptiveTtl = new AdaptiveTtl(config().build());
+
+        // When
+        for (int i = 0; i < 5; i++) {
+            refresh(adaptiveTtl, "/categories", "same", 300);
+        }
+
+        // Then
+        assertEquals(0, adaptiveTtl.getChangeRate("/categories"));
+        assertEquals(Duration.ofDays(1).getSeconds(), adaptiveTtl.ttl("/categories", 300));
+    }
+
+    @Test
+    void shouldKeepExpectedStalenessAtTarget() {
+        // Given
+        AdaptiveTtl adaptiveTtl = new AdaptiveTtl(config().history(100).maxStaleRatio(0.05).build());
+
+        // When: one refresh in ten sees a change, so about one change per 10 minutes
+        for (int i = 0; i < 100; i++) {
+            refresh(adaptiveTtl, "/stock/1", "v" + i / 10, 60);
+        }
+
+        // Then: a TTL of T is stale during 1 - (1 - e^-λT) / λT of its life, about λT / 2
+        double rate = adaptiveTtl.getChangeRate("/stock/1");
+        double exposure = rate * adaptiveTtl.ttl("/stock/1", 3600);
+        double staleRatio = 1 - (1 - Math.exp(-exposure)) / exposure;
+        assertEquals(0.05, staleRatio, 0.005);
+        assertEquals(1.0 / 600, rate, 0.2 / 600);
+    }
+
+    @Test
+    void shouldShareRateWithinUrlTemplate() {
+        // Given
+        AdaptiveTtl adaptiveTtl = new AdaptiveTtl(config().groupBy(AdaptiveTtl::urlTemplate).build());
+
+        // When: each product is refreshed once, but they all changed
+        for (int i = 0; i < 5; i++) {
+            refresh(adaptiveTtl, "https://api.example.com/products/" + i + "?lang=ko", "old", 0);
+        }
+        for (int i = 0; i < 5; i++) {
+            refresh(adaptiveTtl, "https://api.example.com/products/" + i + "?lang=ko", "new", 60);
+        }
+
+        // Then: a product never refreshed gets the rate learned from the others
+        assertTrue(adaptiveTtl.ttl("https://api.example.com/products/99", 3600) < 60);
+        assertEquals(1, adaptiveTtl.getTrackedGroups());
+    }
+
+    @Test
+    void shouldMapUrlsToTemplates() {
+        assertEquals("https://api.example.com/products/{}",
+            AdaptiveTtl.urlTemplate("https://api.example.com/products/123?lang=ko"));
+        assertEquals("tenant-a:KR:https://api2.example.com/{}/orders/{}/items",
+            AdaptiveTtl.urlTemplate("tenant-a:KR:https://api2.example.com/v1/orders/9f8e7d/items"));
+        assertEquals("/categories", AdaptiveTtl.urlTemplate("/categories"));
+    }
+
+    @Test
+    void shouldBoundTrackedState() {
+        // Given
+        AdaptiveTtl adaptiveTtl = new AdaptiveTtl(config().maxEntries(10).build());
+
+        // When
+        for (int i = 0; i < 1000; i++) {
+            refresh(adaptiveTtl, "/products/" + i, "a", 0);
+            refresh(adaptiveTtl, "/products/" + i, "b", 1);
+        }
+
+        // Then
+        assertTrue(adaptiveTtl.getTrackedKeys() <= 10);
+        assertTrue(adaptiveTtl.getTrackedGroups() <= 10);
+    }
+
+    @Test
+    void shouldRestoreLearnedStateAfterRestart(@TempDir Path dir) throws Exception {
+        // Given
+        Path state = dir.resolve("adaptive-ttl.json");
+        AdaptiveTtl before = new AdaptiveTtl(config().persistPath(state).build());
+        for (int i = 0; i < 10; i++) {
+            refresh(before, "/prices/1", "price-" + i, 60);
+        }
+        int learned = before.ttl("/prices/1", 3600);
+        before.close();
+
+        // When
+        AdaptiveTtl after = new AdaptiveTtl(config().persistPath(state).build());
+
+        // Then: the rate is kept, and the next refresh is compared with the last value before the restart
+        assertTrue(Files.exists(state));
+        assertEquals(learned, after.ttl("/prices/1", 3600));
+        refresh(after, "/prices/1", "price-9", 60);
+        assertEquals(1, after.getObservations());
+        assertEquals(0, after.getChanges());
+        after.close();
+    }
+
+    @Test
+    void shouldRejectInvalidConfig() {
+        assertThrows(IllegalArgumentException.class,
+            () -> AdaptiveTtlConfig.builder().minTtl(Duration.ofMinutes(10)).maxTtl(Duration.ofMinutes(1)).build());
+        assertThrows(IllegalArgumentException.class, () -> AdaptiveTtlConfig.builder().maxStaleRatio(1).build());
+        assertThrows(IllegalArgumentException.class, () -> AdaptiveTtlConfig.builder().minObservations(0).build());
+    }
+
+    private AdaptiveTtlConfig.Builder config() {
+        return AdaptiveTtlConfig.builder()
+            .minTtl(Duration.ofSeconds(1))
+            .ticker(ticker);
+    }
+
+    private void refresh(AdaptiveTtl adaptiveTtl, String key, String body, long afterSeconds) {
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(afterSeconds));
+        adaptiveTtl.observe(key, body.getBytes(StandardCharsets.UTF_8));
+    }
+}
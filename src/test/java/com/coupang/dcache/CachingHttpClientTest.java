@@ -0,0 +1,436 @@
+package com.coupang.dcache;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingHttpClientTest {
+    private HttpServer origin;
+    private String baseUrl;
+    private final AtomicInteger originCalls = new AtomicInteger();
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private GuavaCache cache;
+    private CachingHttpClient client;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        origin = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        origin.createContext("/", exchange -> {
+            originCalls.incrementAndGet();
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            String path = exchange.getRequestURI().getPath();
+            int status = path.startsWith("/error") ? 500 : 200;
+            if (path.startsWith("/private")) {
+                exchange.getResponseHeaders().add("Cache-Control", "private, max-age=60");
+            }
+            if (path.startsWith("/session")) {
+                exchange.getResponseHeaders().add("Set-Cookie", "session=1");
+            }
+            if (path.startsWith("/shared")) {
+                exchange.getResponseHeaders().add("Cache-Control", "public, max-age=60");
+            }
+            if (exchange.getRequestMethod().equals("HEAD")) {
+                exchange.sendResponseHeaders(status, -1);
+                exchange.close();
+                return;
+            }
+            exchange.getResponseHeaders().add("Content-Type", "text/plain");
+            byte[] body = path.startsWith("/large")
+                ? largeBody(Integer.parseInt(exchange.getRequestURI().getQuery().substring("size=".length())))
+                : ("body of " + exchange.getRequestURI()).getBytes(StandardCharsets.UTF_8);
+            // 0 sends the body with chunked transfer encoding, without a Content-Length
+            exchange.sendResponseHeaders(status, path.startsWith("/large-chunked") ? 0 : body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        origin.start();
+        baseUrl = "http://127.0.0.1:" + origin.getAddress().getPort();
+
+        cache = new GuavaCache(GuavaCacheConfig.builder()
+            .defaultTtl(60)
+            .maximumSize(1000)
+            .build());
+        client = new CachingHttpClient(cache, config().build());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        client.close();
+        origin.stop(0);
+    }
+
+    private static byte[] largeBody(int size) {
+        byte[] body = new byte[size];
+        for (int i = 0; i < size; i++) {
+            body[i] = (byte) (i % 251);
+        }
+        return body;
+    }
+
+    private HttpCacheConfig.Builder config() {
+        return HttpCacheConfig.builder()
+            .withDynamoDbClient(new InMemoryDynamoDbClient())
+            .maxConnections(4)
+            .maxConnectionsPerRoute(2);
+    }
+
+    @Test
+    void shouldServeRepeatedRequestFromCache() throws Exception {
+        // Given
+        HttpRequest request = HttpRequest.builder(baseUrl + "/products/42").build();
+
+        // When
+        HttpResponse first = client.execute(request);
+        HttpResponse second = client.execute(request);
+
+        // Then
+        assertFalse(first.isFromCache());
+        assertTrue(second.isFromCache());
+        assertEquals(200, second.getStatusCode());
+        assertEquals("text/plain", second.getHeaders().get("Content-type"));
+        assertArrayEquals(first.getBody(), second.getBody());
+        assertEquals(1, originCalls.get());
+        assertEquals(1, client.getHits());
+        assertEquals(1, client.getMisses());
+    }
+
+    @Test
+    void shouldCacheResponseOnlyOnceRequestedTwice() throws Exception {
+        // Given
+        CachingHttpClient admitting = new CachingHttpClient(cache, config()
+            .writeAdmission(WriteAdmissionConfig.builder().build())
+            .build());
+        HttpRequest request = HttpRequest.builder(baseUrl + "/products/42").build();
+
+        // When
+        try {
+            admitting.execute(request);
+            admitting.execute(request);
+            HttpResponse third = admitting.execute(request);
+
+            // Then
+            assertTrue(third.isFromCache());
+            assertEquals(2, originCalls.get());
+            assertEquals(1, admitting.getWriteAdmission().getRejected());
+            assertEquals(1, admitting.getWriteAdmission().getAdmitted());
+        } finally {
+            admitting.close();
+        }
+    }
+
+    @Test
+    void shouldReuseOriginConnections() throws Exception {
+        // When
+        for (int i = 0; i < 5; i++) {
+            client.execute(HttpRequest.builder(baseUrl + "/products/" + i).build());
+        }
+
+        // Then
+        assertEquals(5, originCalls.get());
+        assertEquals(1, clientPorts.size());
+        assertEquals(0, client.getLeasedConnections());
+        assertEquals(1, client.getAvailableConnections());
+    }
+
+    @Test
+    void shouldNotCacheUncacheableResponses() throws Exception {
+        // When
+        client.execute(HttpRequest.builder(baseUrl + "/error").build());
+        client.execute(HttpRequest.builder(baseUrl + "/error").build());
+        client.execute(HttpRequest.builder(baseUrl + "/private").build());
+        client.execute(HttpRequest.builder(baseUrl + "/private").build());
+        client.execute(HttpRequest.builder(baseUrl + "/orders").method("POST").body(new byte[] {1}).build());
+        client.execute(HttpRequest.builder(baseUrl + "/orders").method("POST").body(new byte[] {1}).build());
+
+        // Then
+        assertEquals(6, originCalls.get());
+        assertEquals(0, client.getHits());
+    }
+
+    @Test
+    void shouldNeverServeHeadResponseToGet() throws Exception {
+        // Given
+        String url = baseUrl + "/products/42";
+
+        // When
+        client.execute(HttpRequest.builder(url).method("HEAD").build());
+        client.execute(HttpRequest.builder(url).method("HEAD").build());
+        HttpResponse get = client.execute(HttpRequest.builder(url).build());
+        StreamingHttpResponse streamed = client.executeStreaming(HttpRequest.builder(url).build());
+
+        // Then
+        assertFalse(get.isFromCache());
+        assertEquals("body of /products/42", new String(get.getBody(), StandardCharsets.UTF_8));
+        try (streamed) {
+            assertTrue(streamed.isFromCache());
+            assertEquals("body of /products/42", new String(streamed.getBody().readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertEquals(3, originCalls.get());
+    }
+
+    @Test
+    void shouldNotCachePrivateResponsesUnlessMarkedPublic() throws Exception {
+        // When
+        for (int i = 0; i < 2; i++) {
+            client.execute(HttpRequest.builder(baseUrl + "/products/1").header("Authorization", "Bearer a").build());
+            client.execute(HttpRequest.builder(baseUrl + "/products/2").header("Cookie", "session=1").build());
+            client.execute(HttpRequest.builder(baseUrl + "/session").build());
+        }
+        client.execute(HttpRequest.builder(baseUrl + "/shared").header("Authorization", "Bearer a").build());
+        HttpResponse shared = client.execute(HttpRequest.builder(baseUrl + "/shared")
+            .header("Authorization", "Bearer b").build());
+
+        // Then
+        assertTrue(shared.isFromCache());
+        assertEquals(7, originCalls.get());
+    }
+
+    @Test
+    void shouldKeyByStrategyAndTenant() throws Exception {
+        // Given
+        CachingHttpClient tenantClient = new CachingHttpClient(cache, config()
+            .cacheKeyStrategy(HttpCacheConfig.CacheKeyStrategy.WITH_HEADERS)
+            .defaultCountryCode("KR")
+            .build());
+        String url = baseUrl + "/products/7";
+
+        // When
+        tenantClient.execute(HttpRequest.builder(url).tenant("acme").header("Accept-Language", "ko").build());
+        HttpResponse hit = tenantClient.execute(HttpRequest.builder(url).tenant("acme")
+            .header("Accept-Language", "ko").build());
+        HttpResponse otherTenant = tenantClient.execute(HttpRequest.builder(url).tenant("globex")
+            .header("Accept-Language", "ko").build());
+        tenantClient.close();
+
+        // Then
+        assertTrue(hit.isFromCache());
+        assertFalse(otherTenant.isFromCache());
+        assertTrue(cache.get("tenant:acme:country:KR:" + url + "?Accept-Language=ko&").isPresent());
+    }
+
+    @Test
+    void shouldBypassCacheWhenConfigured() throws Exception {
+        // Given
+        CachingHttpClient bypassing = new CachingHttpClient(cache, config().bypassCache(true).build());
+        HttpRequest request = HttpRequest.builder(baseUrl + "/products/1").build();
+
+        // When
+        bypassing.execute(request);
+        HttpResponse second = bypassing.execute(request);
+        bypassing.close();
+
+        // Then
+        assertFalse(second.isFromCache());
+        assertEquals(2, originCalls.get());
+    }
+
+    @Test
+    void shouldStreamLargeBodyIntoChunkedEntryAndBack() throws Exception {
+        // Given
+        CachingHttpClient streaming = new CachingHttpClient(cache, config().chunkSize(16 * 1024).build());
+        String url = baseUrl + "/large?size=100000";
+
+        // When
+        byte[] fromOrigin;
+        try (StreamingHttpResponse response = streaming.executeStreaming(HttpRequest.builder(url).build())) {
+            assertFalse(response.isFromCache());
+            fromOrigin = response.getBody().readAllBytes();
+        }
+        byte[] fromCache;
+        try (StreamingHttpResponse response = streaming.executeStreaming(HttpRequest.builder(url).build())) {
+            assertTrue(response.isFromCache());
+            fromCache = response.getBody().readAllBytes();
+        }
+        HttpResponse buffered = streaming.execute(HttpRequest.builder(url).build());
+        streaming.close();
+
+        // Then
+        assertArrayEquals(largeBody(100000), fromOrigin);
+        assertArrayEquals(fromOrigin, fromCache);
+        assertTrue(buffered.isFromCache());
+        assertArrayEquals(fromOrigin, buffered.getBody());
+        CacheEntry entry = config().build().getSerializer().deserialize(cache.get(url).get());
+        assertEquals(7, entry.getChunks());
+        assertEquals(0, entry.getBody().length);
+        assertEquals(1, originCalls.get());
+    }
+
+    @Test
+    void shouldFetchFromOriginWhenMiddleChunkIsMissing() throws Exception {
+        // Given
+        CachingHttpClient streaming = new CachingHttpClient(cache, config().chunkSize(16 * 1024).build());
+        String url = baseUrl + "/large?size=100000";
+        try (StreamingHttpResponse response = streaming.executeStreaming(HttpRequest.builder(url).build())) {
+            response.getBody().readAllBytes();
+        }
+        CacheEntry entry = config().build().getSerializer().deserialize(cache.get(url).get());
+        cache.invalidate(ChunkedBodyWriter.chunkKey(url, entry, 3));
+
+        // When
+        byte[] body;
+        boolean fromCache;
+        try (StreamingHttpResponse response = streaming.executeStreaming(HttpRequest.builder(url).build())) {
+            fromCache = response.isFromCache();
+            body = response.getBody().readAllBytes();
+        }
+        streaming.close();
+
+        // Then
+        assertFalse(fromCache);
+        assertArrayEquals(largeBody(100000), body);
+        assertEquals(2, originCalls.get());
+    }
+
+    @Test
+    void shouldStreamCachedBodyWithoutLoadingAllChunks() throws Exception {
+        // Given
+        GuavaCache spiedCache = Mockito.spy(cache);
+        CachingHttpClient streaming = new CachingHttpClient(spiedCache, config().chunkSize(16 * 1024).build());
+        String url = baseUrl + "/large?size=200000";
+        try (StreamingHttpResponse response = streaming.executeStreaming(HttpRequest.builder(url).build())) {
+            response.getBody().readAllBytes();
+        }
+
+        // When
+        byte[] body;
+        boolean fromCache;
+        try (StreamingHttpResponse response = streaming.executeStreaming(HttpRequest.builder(url).build())) {
+            fromCache = response.isFromCache();
+            body = response.getBody().readAllBytes();
+        }
+        streaming.close();
+
+        // Then
+        assertTrue(fromCache);
+        assertArrayEquals(largeBody(200000), body);
+        ArgumentCaptor<Collection<String>> reads = ArgumentCaptor.forClass(Collection.class);
+        Mockito.verify(spiedCache, Mockito.atLeastOnce()).getAll(reads.capture());
+        assertTrue(reads.getAllValues().stream().allMatch(keys -> keys.size() <= 4));
+    }
+
+    @Test
+    void shouldStoreIdenticalBodiesOnce() throws Exception {
+        // Given
+        GuavaCache spiedCache = Mockito.spy(cache);
+        CachingHttpClient deduplicating = new CachingHttpClient(spiedCache, config()
+            .chunkSize(4096)
+            .inlineBodySize(1024)
+            .dedupBodies(true)
+            .build());
+        String first = baseUrl + "/large/kr?size=6000";
+        String second = baseUrl + "/large/jp?size=6000";
+        String small = baseUrl + "/large/small?size=500";
+
+        // When
+        deduplicating.execute(HttpRequest.builder(first).build());
+        deduplicating.execute(HttpRequest.builder(second).build());
+        deduplicating.execute(HttpRequest.builder(small).build());
+        HttpResponse cached = deduplicating.execute(HttpRequest.builder(second).build());
+        deduplicating.close();
+
+        // Then
+        assertTrue(cached.isFromCache());
+        assertArrayEquals(largeBody(6000), cached.getBody());
+        CacheEntry firstEntry = config().build().getSerializer().deserialize(cache.get(first).get());
+        CacheEntry secondEntry = config().build().getSerializer().deserialize(cache.get(second).get());
+        CacheEntry smallEntry = config().build().getSerializer().deserialize(cache.get(small).get());
+        assertEquals(2, firstEntry.getChunkHashes().size());
+        assertEquals(firstEntry.getChunkHashes(), secondEntry.getChunkHashes());
+        assertArrayEquals(largeBody(500), smallEntry.getBody());
+        ArgumentCaptor<String> written = ArgumentCaptor.forClass(String.class);
+        Mockito.verify(spiedCache, Mockito.times(7)).put(written.capture(), Mockito.any(), Mockito.anyInt());
+        assertEquals(2, written.getAllValues().stream().filter(key -> key.startsWith("__body#")).distinct().count());
+    }
+
+    @Test
+    void shouldLearnTtlFromUnchangedRefreshes() throws Exception {
+        // Given
+        GuavaCache spiedCache = Mockito.spy(cache);
+        AdaptiveTtl adaptiveTtl = new AdaptiveTtl(AdaptiveTtlConfig.builder()
+            .minObservations(2)
+            .maxTtl(Duration.ofHours(2))
+            .build());
+        CachingHttpClient learning = new CachingHttpClient(spiedCache, config()
+            .defaultTtl(60)
+            .adaptiveTtl(adaptiveTtl)
+            .build());
+        String url = baseUrl + "/products/42";
+
+        // When: each refresh after expiry returns the same body
+        for (int i = 0; i < 3; i++) {
+            learning.execute(HttpRequest.builder(url).build());
+            spiedCache.invalidate(url);
+        }
+        try (StreamingHttpResponse streamed = learning.executeStreaming(HttpRequest.builder(url).build())) {
+            streamed.getBody().readAllBytes();
+        }
+        learning.close();
+
+        // Then: the default TTL until two refreshes were compared, then the maximum
+        ArgumentCaptor<Integer> ttls = ArgumentCaptor.forClass(Integer.class);
+        Mockito.verify(spiedCache, Mockito.times(4)).put(Mockito.eq(url), Mockito.any(), ttls.capture());
+        assertEquals(List.of(60, 60, 60, 7200), ttls.getAllValues());
+        assertEquals(3, adaptiveTtl.getObservations());
+        assertEquals(0, adaptiveTtl.getChanges());
+    }
+
+    @Test
+    void shouldNotCacheBodyOverMaxCacheableSize() throws Exception {
+        // Given
+        GuavaCache spiedCache = Mockito.spy(cache);
+        CachingHttpClient streaming = new CachingHttpClient(spiedCache, config()
+            .chunkSize(8 * 1024)
+            .maxCacheableSize(50000)
+            .build());
+        String url = baseUrl + "/large-chunked?size=100000";
+
+        // When
+        byte[] body;
+        try (StreamingHttpResponse response = streaming.executeStreaming(HttpRequest.builder(url).build())) {
+            body = response.getBody().readAllBytes();
+        }
+        streaming.close();
+
+        // Then
+        assertArrayEquals(largeBody(100000), body);
+        assertFalse(cache.get(url).isPresent());
+        ArgumentCaptor<String> written = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<String> removed = ArgumentCaptor.forClass(String.class);
+        Mockito.verify(spiedCache, Mockito.atLeastOnce()).put(written.capture(), Mockito.any(), Mockito.anyInt());
+        Mockito.verify(spiedCache, Mockito.atLeastOnce()).invalidate(removed.capture());
+        assertTrue(written.getAllValues().stream().allMatch(key -> key.contains("#chunk#")));
+        assertEquals(written.getAllValues(), removed.getAllValues());
+    }
+
+    @Test
+    void shouldAbortCacheWriteWhenClosedBeforeEnd() throws Exception {
+        // Given
+        CachingHttpClient streaming = new CachingHttpClient(cache, config().chunkSize(8 * 1024).build());
+        String url = baseUrl + "/large?size=100000";
+
+        // When
+        try (StreamingHttpResponse response = streaming.executeStreaming(HttpRequest.builder(url).build())) {
+            response.getBody().readNBytes(20000);
+        }
+        HttpResponse next = streaming.execute(HttpRequest.builder(url).build());
+        streaming.close();
+
+        // Then
+        assertFalse(next.isFromCache());
+        assertEquals(2, originCalls.get());
+    }
+}
@@ -0,0 +1,76 @@
+package com.coupang.dcache;
+
+import com.google.common.base.Ticker;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CapacityLimiterTest {
+    private final AtomicLong nanos = new AtomicLong();
+    private CapacityLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        Ticker ticker = new Ticker() {
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        };
+        limiter = new CapacityLimiter(CapacityLimiterConfig.builder()
+            .readCapacityUnits(10)
+            .writeCapacityUnits(10)
+            .lowPriorityReserve(0.5)
+            .ticker(ticker)
+            .build());
+    }
+
+    @Test
+    void shouldRejectReadsUntilConsumedCapacityIsRefilled() {
+        // Given
+        assertTrue(limiter.tryAcquireRead());
+        limiter.consumeRead(15);
+
+        // When
+        boolean admittedInDebt = limiter.tryAcquireRead();
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(600));
+        boolean admittedAfterRefill = limiter.tryAcquireRead();
+
+        // Then
+        assertFalse(admittedInDebt);
+        assertTrue(admittedAfterRefill);
+        assertEquals(1, limiter.getRejectedReads());
+    }
+
+    @Test
+    void shouldShedLowPriorityWritesBeforeNormalWrites() {
+        // Given
+        limiter.consumeWrite(6);
+
+        // When
+        boolean low = limiter.tryAcquireWrite(WritePriority.LOW);
+        boolean normal = limiter.tryAcquireWrite(WritePriority.NORMAL);
+
+        // Then
+        assertFalse(low);
+        assertTrue(normal);
+        assertEquals(1, limiter.getShedLowPriorityWrites());
+        assertEquals(0, limiter.getRejectedWrites());
+    }
+
+    @Test
+    void shouldScaleBucketsToFleetShare() {
+        // When
+        limiter.setShare(0.25);
+        limiter.consumeRead(2.5);
+
+        // Then
+        assertFalse(limiter.tryAcquireRead());
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertEquals(2.5, limiter.getAvailableReadUnits(), 1e-9);
+    }
+}
@@ -0,0 +1,138 @@
+package com.coupang.dcache;
+
+import com.google.common.base.Ticker;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(2);
+
+    private final AtomicLong nanos = new AtomicLong();
+    private CircuitBreaker breaker;
+
+    @BeforeEach
+    void setUp() {
+        Ticker ticker = new Ticker() {
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        };
+        breaker = new CircuitBreaker(CircuitBreakerConfig.builder()
+            .window(Duration.ofSeconds(10))
+            .minCalls(10)
+            .failureRateThreshold(0.5)
+            .slowCallDuration(Duration.ofMillis(50))
+            .openDuration(Duration.ofSeconds(30))
+            .halfOpenCalls(2)
+            .putShedDuration(Duration.ofSeconds(5))
+            .ticker(ticker)
+            .build());
+    }
+
+    @Test
+    void shouldOpenWhenFailureRateIsExceeded() {
+        // When
+        for (int i = 0; i < 5; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onSuccess(FAST);
+            assertTrue(breaker.tryAcquire());
+            breaker.onFailure(FAST, false);
+        }
+
+        // Then
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(1, breaker.getRejectedCalls());
+    }
+
+    @Test
+    void shouldOpenWhenMostCallsAreSlow() {
+        // When
+        for (int i = 0; i < 10; i++) {
+            breaker.tryAcquire();
+            breaker.onSuccess(TimeUnit.MILLISECONDS.toNanos(80));
+        }
+
+        // Then
+        assertTrue(breaker.isOpen());
+    }
+
+    @Test
+    void shouldForgetFailuresOutsideTheWindow() {
+        // Given
+        for (int i = 0; i < 9; i++) {
+            breaker.tryAcquire();
+            breaker.onFailure(FAST, false);
+        }
+
+        // When
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(11));
+        breaker.tryAcquire();
+        breaker.onFailure(FAST, false);
+
+        // Then
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void shouldCloseAfterSuccessfulTrialCalls() {
+        // Given
+        for (int i = 0; i < 10; i++) {
+            breaker.tryAcquire();
+            breaker.onFailure(FAST, false);
+        }
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(31));
+
+        // When
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+        breaker.onSuccess(FAST);
+        breaker.onSuccess(FAST);
+
+        // Then
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void shouldReopenWhenTrialCallFails() {
+        // Given
+        for (int i = 0; i < 10; i++) {
+            breaker.tryAcquire();
+            breaker.onFailure(FAST, false);
+        }
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(31));
+
+        // When
+        breaker.tryAcquire();
+        breaker.onFailure(FAST, false);
+
+        // Then
+        assertTrue(breaker.isOpen());
+    }
+
+    @Test
+    void shouldShedPutsButNotReadsWhileThrottled() {
+        // When
+        breaker.tryAcquire();
+        breaker.onFailure(FAST, true);
+
+        // Then
+        assertTrue(breaker.isSheddingPuts());
+        assertFalse(breaker.tryAcquirePut());
+        assertTrue(breaker.tryAcquire());
+        assertEquals(1, breaker.getShedPuts());
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(6));
+        assertTrue(breaker.tryAcquirePut());
+    }
+}
@@ -0,0 +1,85 @@
+package com.coupang.dcache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CountingBloomFilterTest {
+    @Test
+    void shouldContainEveryAddedKeyAndFewOthers() {
+        // Given
+        CountingBloomFilter filter = new CountingBloomFilter(10_000, 0.01);
+
+        // When
+        for (int i = 0; i < 10_000; i++) {
+            filter.add("/present/" + i);
+        }
+
+        // Then
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("/present/" + i));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (filter.mightContain("/absent/" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 200, "false positives: " + falsePositives);
+        assertEquals(0.01, filter.getFalsePositiveRate(), 0.002);
+        assertEquals(7, filter.getHashCount());
+        assertEquals(10_000, filter.getApproximateSize());
+    }
+
+    @Test
+    void shouldRemoveKeysWithoutAffectingOthers() {
+        // Given
+        CountingBloomFilter filter = new CountingBloomFilter(1000, 0.01);
+        for (int i = 0; i < 1000; i++) {
+            filter.add("/key/" + i);
+        }
+
+        // When
+        for (int i = 0; i < 500; i++) {
+            assertTrue(filter.remove("/key/" + i));
+        }
+
+        // Then
+        for (int i = 500; i < 1000; i++) {
+            assertTrue(filter.mightContain("/key/" + i));
+        }
+        long stillReported = 0;
+        for (int i = 0; i < 500; i++) {
+            if (filter.mightContain("/key/" + i)) {
+                stillReported++;
+            }
+        }
+        assertTrue(stillReported < 25, "removed keys still reported: " + stillReported);
+        assertEquals(500, filter.getApproximateSize());
+    }
+
+    @Test
+    void shouldIgnoreRemovalOfAbsentKey() {
+        // Given
+        CountingBloomFilter filter = new CountingBloomFilter(100, 0.01);
+        filter.add("/present");
+
+        // When
+        boolean removed = filter.remove("/absent");
+
+        // Then
+        assertFalse(removed);
+        assertTrue(filter.mightContain("/present"));
+        assertEquals(1, filter.getApproximateSize());
+    }
+
+    @Test
+    void shouldReportMemoryOfCounters() {
+        // When
+        CountingBloomFilter filter = new CountingBloomFilter(1_000_000, 0.01);
+
+        // Then: about 9.6 counters of 4 bits per key
+        assertEquals(4_792_536, filter.getMemoryBytes(), 16);
+        assertEquals(0, filter.getFalsePositiveRate());
+    }
+}
@@ -1,21 +1,36 @@
 package com.coupang.dcache;
 
+import com.coupang.dcache.invalidation.InvalidationBus;
+import com.coupang.dcache.invalidation.InvalidationListener;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import software.amazon.awssdk.core.SdkBytes;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -113,4 +128,1106 @@ class DynamoDbCacheTest {
         verify(dynamoDbClient).scan(any(ScanRequest.class));
         verify(dynamoDbClient, times(2)).deleteItem(any(DeleteItemRequest.class));
     }
-} 
\ No newline at end of file
+
+    @Test
+    void shouldWriteOneCopyPerShardAndReadOneShard() {
+        // Given
+        DynamoDbCache shardedCache = new DynamoDbCache(DynamoDbCacheConfig.builder()
+            .tableName(TABLE_NAME)
+            .region(REGION)
+            .withDynamoDbClient(dynamoDbClient)
+            .shardingPolicy(ShardingPolicy.builder().prefix("home:", 4).build())
+            .build());
+        when(dynamoDbClient.batchWriteItem(any(BatchWriteItemRequest.class)))
+            .thenReturn(BatchWriteItemResponse.builder().build());
+        when(dynamoDbClient.getItem(any(GetItemRequest.class)))
+            .thenReturn(GetItemResponse.builder().build());
+
+        // When
+        shardedCache.put("home:page", "value".getBytes(), 60);
+        shardedCache.get("home:page");
+
+        // Then
+        ArgumentCaptor<BatchWriteItemRequest> writeCaptor = ArgumentCaptor.forClass(BatchWriteItemRequest.class);
+        verify(dynamoDbClient).batchWriteItem(writeCaptor.capture());
+        List<WriteRequest> writes = writeCaptor.getValue().requestItems().get(TABLE_NAME);
+        assertEquals(4, writes.size());
+        for (int shard = 0; shard < 4; shard++) {
+            Map<String, AttributeValue> item = writes.get(shard).putRequest().item();
+            assertEquals("home:page#" + shard, item.get("key").s());
+            assertEquals("home:page", item.get("base_key").s());
+        }
+
+        ArgumentCaptor<GetItemRequest> getCaptor = ArgumentCaptor.forClass(GetItemRequest.class);
+        verify(dynamoDbClient).getItem(getCaptor.capture());
+        assertTrue(getCaptor.getValue().key().get("key").s().matches("home:page#[0-3]"));
+        verify(dynamoDbClient, never()).putItem(any(PutItemRequest.class));
+    }
+
+    @Test
+    void shouldUseLongestMatchingPrefixForShardCount() {
+        // Given
+        ShardingPolicy policy = ShardingPolicy.builder()
+            .prefix("category:", 2)
+            .prefix("category:top", 8)
+            .build();
+
+        // Then
+        assertEquals(8, policy.shardCount("category:top:1"));
+        assertEquals(2, policy.shardCount("category:shoes"));
+        assertEquals(1, policy.shardCount("product:1"));
+    }
+
+    @Test
+    void shouldInvalidateEveryKeyWithTag() {
+        // Given
+        DynamoDbCache taggedCache = new DynamoDbCache(DynamoDbCacheConfig.builder()
+            .tableName(TABLE_NAME)
+            .region(REGION)
+            .withDynamoDbClient(new InMemoryDynamoDbClient())
+            .build());
+        taggedCache.put("/products/42?country=KR", "a".getBytes(), 60, List.of("product:42"));
+        taggedCache.put("/products/42?country=US", "b".getBytes(), 60, List.of("product:42", "country:US"));
+        taggedCache.put("/products/7?country=US", "c".getBytes(), 60, List.of("product:7", "country:US"));
+
+        // When
+        Set<String> invalidated = taggedCache.invalidateTag("product:42");
+
+        // Then
+        assertEquals(Set.of("/products/42?country=KR", "/products/42?country=US"), invalidated);
+        assertFalse(taggedCache.get("/products/42?country=KR").isPresent());
+        assertFalse(taggedCache.get("/products/42?country=US").isPresent());
+        assertTrue(taggedCache.get("/products/7?country=US").isPresent());
+        assertTrue(taggedCache.invalidateTag("product:42").isEmpty());
+        // Other tags still reference purged keys until they are invalidated or expire
+        assertEquals(Set.of("/products/42?country=US", "/products/7?country=US"),
+            taggedCache.invalidateTag("country:US"));
+        assertFalse(taggedCache.get("/products/7?country=US").isPresent());
+    }
+
+    @Test
+    void shouldReadTagSpreadOverMoreBucketsThanOneBatchGet() {
+        // Given
+        DynamoDbCache taggedCache = new DynamoDbCache(DynamoDbCacheConfig.builder()
+            .tableName(TABLE_NAME)
+            .region(REGION)
+            .withDynamoDbClient(new InMemoryDynamoDbClient())
+            .tagBuckets(250)
+            .build());
+        Set<String> keys = new HashSet<>();
+        for (int i = 0; i < 500; i++) {
+            keys.add("/products/" + i);
+            taggedCache.put("/products/" + i, "a".getBytes(), 60, List.of("catalog"));
+        }
+
+        // When
+        Set<String> invalidated = taggedCache.invalidateTag("catalog");
+
+        // Then
+        assertEquals(keys, invalidated);
+        assertFalse(taggedCache.get("/products/0").isPresent());
+    }
+
+    @Test
+    void shouldFlushTenantCountryWithQuery() {
+        // Given
+        InMemoryDynamoDbClient client = new InMemoryDynamoDbClient("pk", "sk");
+        DynamoDbCache tenantCache = new DynamoDbCache(DynamoDbCacheConfig.builder()
+            .tableName(TABLE_NAME)
+            .region(REGION)
+            .withDynamoDbClient(client)
+            .keyLayout(DynamoDbKeyLayout.TENANT_PARTITIONED)
+            .tenantIndexName("tenant-index")
+            .build());
+        tenantCache.put("tenant:acme:country:KR:/products/1", "abc".getBytes(), 60);
+        tenantCache.put("tenant:acme:country:KR:/products/2", "de".getBytes(), 60);
+        tenantCache.put("tenant:acme:country:US:/products/1", "f".getBytes(), 60);
+        tenantCache.put("tenant:other:country:KR:/products/1", "g".getBytes(), 60);
+
+        // When
+        TenantUsage usage = tenantCache.getTenantUsage("acme", "KR");
+        long removed = tenantCache.invalidateTenant("acme", "KR");
+
+        // Then
+        assertEquals(2, usage.getItemCount());
+        assertEquals(5, usage.getBytes());
+        assertEquals(2, removed);
+        assertFalse(tenantCache.get("tenant:acme:country:KR:/products/1").isPresent());
+        assertTrue(tenantCache.get("tenant:acme:country:US:/products/1").isPresent());
+        assertTrue(tenantCache.get("tenant:other:country:KR:/products/1").isPresent());
+    }
+
+    @Test
+    void shouldNotCountLeasesAndChunksAsTenantUsage() {
+        // Given
+        InMemoryDynamoDbClient client = new InMemoryDynamoDbClient("pk", "sk");
+        DynamoDbCacheConfig config = DynamoDbCacheConfig.builder()
+            .tableName(TABLE_NAME)
+            .region(REGION)
+            .withDynamoDbClient(client)
+            .keyLayout(DynamoDbKeyLayout.TENANT_PARTITIONED)
+            .build();
+        DynamoDbCache tenantCache = new DynamoDbCache(config);
+        tenantCache.put("tenant:acme:country:KR:/products/1", "abc".getBytes(), 60);
+        tenantCache.put("tenant:acme:country:KR:/products/1#chunk#c1#0", new byte[100], 60);
+        Map<String, AttributeValue> lease = new HashMap<>(DynamoDbKeyLayout.TENANT_PARTITIONED
+            .primaryKey("tenant:acme:country:KR:/products/2#lease", config.getPartitionBuckets()));
+        lease.put("lease_until", AttributeValue.builder().n(String.valueOf(Long.MAX_VALUE)).build());
+        client.putItem(PutItemRequest.builder().tableName(TABLE_NAME).item(lease).build());
+
+        // When
+        TenantUsage usage = tenantCache.getTenantUsage("acme", "KR");
+
+        // Then
+        assertEquals(1, usage.getItemCount());
+        assertEquals(3, usage.getBytes());
+    }
+
+    @Test
+    void shouldFlushTenantAcrossCountriesWithIndex() {
+        // Given
+        DynamoDbCache tenantCache = new DynamoDbCache(DynamoDbCacheConfig.builder()
+            .tableName(TABLE_NAME)
+            .region(REGION)
+            .withDynamoDbClient(new InMemoryDynamoDbClient("pk", "sk"))
+            .keyLayout(DynamoDbKeyLayout.TENANT_PARTITIONED)
+            .tenantIndexName("tenant-index")
+            .build());
+        tenantCache.put("tenant:acme:country:KR:/products/1", "a".getBytes(), 60);
+        tenantCache.put("tenant:acme:/products/2", "b".getBytes(), 60);
+        tenantCache.put("tenant:other:/products/1", "c".getBytes(), 60);
+
+        // When
+        long removed = tenantCache.invalidateTenant("acme");
+
+        // Then
+        assertEquals(2, removed);
+        assertFalse(tenantCache.get("tenant:acme:/products/2").isPresent());
+        assertTrue(tenantCache.get("tenant:other:/products/1").isPresent());
+        assertThrows(UnsupportedOperationException.class, () -> cache.invalidateTenant("acme"));
+    }
+
+    @Test
+    void shouldCoalesceBufferedPutsAndFlushInBatches() {
+        // Given
+        InMemoryDynamoDbClient client = spy(new InMemoryDynamoDbClient());
+        DynamoDbCache bufferedCache = new DynamoDbCache(DynamoDbCacheConfig.builder()
+            .tableName(TABLE_NAME)
+            .region(REGION)
+            .withDynamoDbClient(client)
+            .writeBehind(WriteBehindConfig.builder().maxDelay(Duration.ofMinutes(1)).build())
+            .build());
+
+        // When
+        bufferedCache.put("/products/1", "old".getBytes(), 60);
+        bufferedCache.put("/products/1", "new".getBytes(), 60);
+        bufferedCache.put("/products/2", "b".getBytes(), 60);
+        bufferedCache.put("/products/3", "c".getBytes(), 60);
+        bufferedCache.invalidate("/products/3");
+
+        // Then
+        assertEquals(0, client.size());
+        assertEquals(2, bufferedCache.getPendingWrites());
+        assertEquals(1, bufferedCache.getCoalescedWrites());
+        assertArrayEquals("new".getBytes(), bufferedCache.get("/products/1").orElseThrow());
+
+        bufferedCache.flush();
+
+        assertEquals(2, client.size());
+        assertEquals(0, bufferedCache.getPendingWrites());
+        verify(client, times(1)).batchWriteItem(any(BatchWriteItemRequest.class));
+        verify(client, never()).putItem(any(PutItemRequest.class));
+        assertArrayEquals("new".getBytes(), bufferedCache.get("/products/1").orElseThrow());
+        bufferedCache.close();
+    }
+
+    @Test
+    void shouldNotResurrectKeyInvalidatedDuringFlush() throws Exception {
+        // Given: a flush whose batch write is held up
+        InMemoryDynamoDbClient client = spy(new InMemoryDynamoDbClient());
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            writing.countDown();
+            release.await();
+            return invocation.callRealMethod();
+        }).when(client).batchWriteItem(any(BatchWriteItemRequest.class));
+        DynamoDbCache bufferedCache = new DynamoDbCache(DynamoDbCacheConfig.builder()
+            .tableName(TABLE_NAME)
+            .region(REGION)
+            .withDynamoDbClient(client)
+            .writeBehind(WriteBehindConfig.builder().maxDelay(Duration.ofMinutes(1)).build())
+            .build());
+        bufferedCache.put("/products/1", "old".getBytes(), 60);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<?> flush = executor.submit(bufferedCache::flush);
+        writing.await();
+
+        // When
+        assertArrayEquals("old".getBytes(), bufferedCache.get("/products/1").orElseThrow());
+        Future<?> invalidate = executor.submit(() -> bufferedCache.invalidate("/products/1"));
+        Thread.sleep(100);
+        boolean waited = !invalidate.isDone();
+        release.countDown();
+        flush.get();
+        invalidate.get();
+        executor.shutdown();
+
+        // Then: the delete landed after the buffered write
+        assertTrue(waited, "Invalidate should wait for the write in flight");
+        assertEquals(0, client.size());
+        assertFalse(bufferedCache.get("/products/1").isPresent());
+        bufferedCache.close();
+    }
+
+    @Test
+    void shouldApplyOverflowPolicyWhenBufferIsFull() {
+        // Given
+        InMemoryDynamoDbClient client = new InMemoryDynamoDbClient();
+        DynamoDbCache dropping = new DynamoDbCache(DynamoDbCacheConfig.builder()
+            .tableName(TABLE_NAME)
+            .region(REGION)
+            .withDynamoDbClient(client)
+            .writeBehind(WriteBehindConfig.builder()
+                .maxItems(1)
+                .maxDelay(Duration.ofMinutes(1))
+                .overflowPolicy(WriteBehindConfig.OverflowPolicy.DROP)
+                .build())
+            .build());
+        DynamoDbCache writingThrough = new DynamoDbCache(DynamoDbCacheConfig.builder()
+            .tableName(TABLE_NAME)
+            .region(REGION)
+            .withDynamoDbClient(client)
+            .writeBehind(WriteBehindConfig.builder()
+                .maxItems(1)
+                .maxDelay(Duration.ofMinutes(1))
+                .build())
+            .build());
+
+        // When
+        dropping.put("/a", "a".getBytes(), 60);
+        dropping.put("/b", "b".getBytes(), 60);
+        writingThrough.put("/c", "c".getBytes(), 60);
+        writingThrough.put("/d", "d".getBytes(), 60);
+
+        // Then
+        assertEquals(1, dropping.getDroppedWrites());
+        assertFalse(dropping.get("/b").isPresent());
+        assertEquals(0, writingThrough.getDroppedWrites());
+        assertEquals(1, client.size());
+        assertTrue(writingThrough.get("/d").isPresent());
+        dropping.close();
+        writingThrough.close();
+        assertEquals(3, client.size());
+    }
+
+    @Test
+    void shouldTreatSlowReadAsMissAfterBudget() {
+        // Given
+        DynamoDbCache boundedCache = new DynamoDbCache(DynamoDbCacheConfig.builder()
+            .tableName(TABLE_NAME)
+            .region(REGION)
+            .withDynamoDbClient(dynamoDbClient)
+            .readTimeout(Duration.ofMillis(20))
+            .build());
+        when(dynamoDbClient.getItem(any(GetItemRequest.class))).thenAnswer(invocation -> {
+            Thread.sleep(500);
+            return GetItemResponse.builder().build();
+        });
+
+        // When
+        long start = System.nanoTime();
+        Optional<byte[]> result = boundedCache.get("/slow");
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        // Then
+        assertFalse(result.isPresent());
+        assertTrue(elapsedMillis < 400, "read took " + elapsedMillis + " ms");
+        assertEquals(1, boundedCache.getReadTimeouts());
+        boundedCache.close();
+    }
+
+    @Test
+    void shouldInterruptAndTimeOutReadPastBudget() throws Exception {
+        // Given
+        DynamoDbCache boundedCache = new DynamoDbCache(DynamoDbCacheConfig.builder()
+            .tableName(TABLE_NAME)
+            .region(REGION)
+            .withDynamoDbClient(dynamoDbClient)
+            .readTimeout(Duration.ofMillis(20))
+            .build());
+        CountDownLatch interrupted = new CountDownLatch(1);
+        ArgumentCaptor<GetItemRequest> request = ArgumentCaptor.forClass(GetItemRequest.class);
+        when(dynamoDbClient.getItem(request.capture())).thenAnswer(invocation -> {
+            try {
+                Thread.sleep(5000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+            return GetItemResponse.builder().build();
+        });
+
+        // When
+        Optional<byte[]> result = boundedCache.get("/slow");
+
+        // Then
+        assertFalse(result.isPresent());
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS), "read thread was not interrupted");
+        Duration apiCallTimeout = request.getValue().overrideConfiguration().orElseThrow().apiCallTimeout().orElseThrow();
+        assertTrue(apiCallTimeout.compareTo(Duration.ofMillis(20)) <= 0, "API call timeout " + apiCallTimeout);
+        boundedCache.close();
+    }
+
+    @Test
+    void shouldHedgeSlowReadAndUseFirstAnswer() {
+        // Given
+        DynamoDbCache hedgedCache = new DynamoDbCache(DynamoDbCacheConfig.builder()
+            .tableName(TABLE_NAME)
+            .region(REGION)
+            .withDynamoDbClient(dynamoDbClient)
+            .readTimeout(Duration.ofSeconds(2))
+            .hedgePercentile(0.9)
+            .hedgeMinDelay(Duration.ofMillis(10))
+            .build());
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("key", AttributeValue.builder().s("/hedged").build());
+        item.put("value", AttributeValue.builder().b(SdkBytes.fromByteArray("v".getBytes())).build());
+        item.put("expires", AttributeValue.builder().n(String.valueOf(Instant.now().getEpochSecond() + 60)).build());
+        GetItemResponse found = GetItemResponse.builder().item(item).build();
+        when(dynamoDbClient.getItem(any(GetItemRequest.class)))
+            .thenAnswer(invocation -> {
+                Thread.sleep(1000);
+                return found;
+            })
+            .thenReturn(found);
+
+        // When
+        long start = System.nanoTime();
+        Optional<byte[]> result = hedgedCache.get("/hedged");
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        // Then
+        assertArrayEquals("v".getBytes(), result.orElseThrow());
+        assertTrue(elapsedMillis < 800, "read took " + elapsedMillis + " ms");
+        assertEquals(1, hedgedCache.getHedgedReads());
+        assertEquals(0, hedgedCache.getReadTimeouts());
+        hedgedCache.close();
+    }
+
+    @Test
+    void shouldSkipRemoteCallsWhileCircuitIsOpen() {
+        // Given
+        DynamoDbCache guardedCache = new DynamoDbCache(DynamoDbCacheConfig.builder()
+            .tableName(TABLE_NAME)
+            .region(REGION)
+            .withDynamoDbClient(dynamoDbClient)
+            .circuitBreaker(CircuitBreakerConfig.builder().minCalls(3).build())
+            .build());
+        when(dynamoDbClient.getItem(any(GetItemRequest.class)))
+            .thenThrow(DynamoDbException.builder().message("unavailable").build());
+        HttpCacheConfig httpConfig = HttpCacheConfig.builder()
+            .withDynamoDbClient(dynamoDbClient)
+            .bypassCacheWhen(guardedCache.getCircuitBreaker()::isOpen)
+            .build();
+
+        // When
+        for (int i = 0; i < 10; i++) {
+            guardedCache.get("/key");
+        }
+        guardedCache.put("/key", "value".getBytes(), 60);
+
+        // Then
+        verify(dynamoDbClient, times(3)).getItem(any(GetItemRequest.class));
+        verify(dynamoDbClient, never()).putItem(any(PutItemRequest.class));
+        assertTrue(guardedCache.getCircuitBreaker().isOpen());
+        assertTrue(httpConfig.isBypassCache());
+    }
+
+    @Test
+    void shouldShedPutsWhenThrottled() {
+        // Given
+        DynamoDbCache guardedCache = new DynamoDbCache(DynamoDbCacheConfig.builder()
+            .tableName(TABLE_NAME)
+            .region(REGION)
+            .withDynamoDbClient(dynamoDbClient)
+            .circuitBreaker(CircuitBreakerConfig.builder().build())
+            .build());
+        when(dynamoDbClient.putItem(any(PutItemRequest.class)))
+            .thenThrow(ProvisionedThroughputExceededException.builder().message("throttled").build());
+
+        // When
+        assertThrows(RuntimeException.class, () -> guardedCache.put("/a", "a".getBytes(), 60));
+        guardedCache.put("/b", "b".getBytes(), 60);
+        guardedCache.get("/a");
+
+        // Then
+        verify(dynamoDbClient, times(1)).putItem(any(PutItemRequest.class));
+        verify(dynamoDbClient).getItem(any(GetItemRequest.class));
+        assertEquals(1, guardedCache.getCircuitBreaker().getShedPuts());
+    }
+
+    @Test
+    void shouldSplitCapacityBetweenNodesThroughControlItem() {
+        // Given
+        InMemoryDynamoDbClient client = new InMemoryDynamoDbClient();
+        DynamoDbCache first = limitedCache(client, "node-a");
+        DynamoDbCache second = limitedCache(client, "node-b");
+
+        // When
+        first.coordinateCapacity();
+        second.coordinateCapacity();
+        first.coordinateCapacity();
+
+        // Then
+        assertEquals(0.5, first.getCapacityLimiter().getShare());
+        assertEquals(0.5, second.getCapacityLimiter().getShare());
+        // Expires three coordination intervals after the last update, whatever the tag retention
+        long expires = Long.parseLong(client.item(Map.of("key", AttributeValue.builder().s("__capacity").build()))
+            .get("expires").n());
+        assertEquals(Instant.now().getEpochSecond() + 1800, expires, 5);
+        first.close();
+        second.close();
+    }
+
+    @Test
+    void shouldShedWriteBehindFlushWhenWriteCapacityIsLow() {
+        // Given
+        InMemoryDynamoDbClient table = new InMemoryDynamoDbClient();
+        DynamoDbCache limitedCache = new DynamoDbCache(DynamoDbCacheConfig.builder()
+            .tableName(TABLE_NAME)
+            .region(REGION)
+            .withDynamoDbClient(table)
+            .writeBehind(WriteBehindConfig.builder().maxDelay(Duration.ofMinutes(1)).build())
+            .capacityLimiter(CapacityLimiterConfig.builder()
+                .readCapacityUnits(5)
+                .writeCapacityUnits(10)
+                .build())
+            .build());
+        limitedCache.put("/a", "a".getBytes(), 60);
+        limitedCache.put("/b", "b".getBytes(), 60);
+        limitedCache.getCapacityLimiter().consumeWrite(45);
+
+        // When
+        limitedCache.flush();
+
+        // Then
+        assertEquals(0, table.size());
+        assertEquals(2, limitedCache.getDroppedWrites());
+        assertEquals(1, limitedCache.getCapacityLimiter().getShedLowPriorityWrites());
+        limitedCache.close();
+    }
+
+    @Test
+    void shouldSkipLowPriorityPutWhenWriteCapacityIsLow() {
+        // Given
+        DynamoDbCache limitedCache = new DynamoDbCache(DynamoDbCacheConfig.builder()
+            .tableName(TABLE_NAME)
+            .region(REGION)
+            .withDynamoDbClient(dynamoDbClient)
+            .capacityLimiter(CapacityLimiterConfig.builder()
+                .readCapacityUnits(5)
+                .writeCapacityUnits(2)
+                .build())
+            .build());
+        when(dynamoDbClient.putItem(any(PutItemRequest.class))).thenReturn(PutItemResponse.builder()
+            .consumedCapacity(ConsumedCapacity.builder().capacityUnits(1.5).build())
+            .build());
+
+        // When
+        limitedCache.put("/foreground", "a".getBytes(), 60);
+        limitedCache.put("/prefetch", "b".getBytes(), 60, WritePriority.LOW);
+
+        // Then
+        verify(dynamoDbClient, times(1)).putItem(any(PutItemRequest.class));
+        assertEquals(1, limitedCache.getCapacityLimiter().getShedLowPriorityWrites());
+    }
+
+    @Test
+    void shouldLoadOncePerFleetWithFillLease() throws Exception {
+        // Given
+        InMemoryDynamoDbClient table = new InMemoryDynamoDbClient();
+        List<DynamoDbCache> nodes = List.of(leasedCache(table, "a"), leasedCache(table, "b"), leasedCache(table, "c"));
+        AtomicInteger loads = new AtomicInteger();
+        ExecutorService callers = Executors.newFixedThreadPool(6);
+
+        // When
+        List<Future<byte[]>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < 6; i++) {
+                DynamoDbCache node = nodes.get(i % nodes.size());
+                results.add(callers.submit(() -> node.getOrLoad("/popular", 60, () -> {
+                    loads.incrementAndGet();
+                    sleep(200);
+                    return "fresh".getBytes();
+                })));
+            }
+            for (Future<byte[]> result : results) {
+                assertArrayEquals("fresh".getBytes(), result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+
+        // Then
+        assertEquals(1, loads.get());
+        assertEquals(1, nodes.stream().mapToLong(DynamoDbCache::getLeaseFills).sum());
+        assertEquals(2, nodes.stream().mapToLong(DynamoDbCache::getLeaseWaits).sum());
+        assertNull(table.item(Map.of("key", AttributeValue.builder().s("/popular#lease").build())));
+    }
+
+    @Test
+    void shouldTakeOverFillLeaseOfDeadNode() {
+        // Given
+        InMemoryDynamoDbClient table = new InMemoryDynamoDbClient();
+        long leaseUntil = System.currentTimeMillis() + 100;
+        table.putItem(PutItemRequest.builder()
+            .tableName(TABLE_NAME)
+            .item(Map.of(
+                "key", AttributeValue.builder().s("/popular#lease").build(),
+                "holder", AttributeValue.builder().s("dead").build(),
+                "lease_until", AttributeValue.builder().n(String.valueOf(leaseUntil)).build()))
+            .build());
+        DynamoDbCache node = leasedCache(table, "a");
+
+        // When
+        byte[] value = node.getOrLoad("/popular", 60, "fresh"::getBytes);
+
+        // Then
+        assertArrayEquals("fresh".getBytes(), value);
+        assertTrue(System.currentTimeMillis() >= leaseUntil);
+        assertEquals(1, node.getLeaseFills());
+        assertArrayEquals("fresh".getBytes(), node.get("/popular").get());
+    }
+
+    @Test
+    void shouldReadValueWhenLeaseWasReleasedBeforeTakingOver() {
+        // Given: the holder puts the value and releases its lease just as this node fails to take it
+        InMemoryDynamoDbClient table = spy(new InMemoryDynamoDbClient());
+        DynamoDbCache holder = leasedCache(table, "b");
+        doAnswer(invocation -> {
+            holder.put("/popular", "filled".getBytes(), 60);
+            throw ConditionalCheckFailedException.builder().message("held").build();
+        }).doCallRealMethod().when(table).putItem(argThat((PutItemRequest request) -> request.conditionExpression() != null
+            && request.item().get("key").s().equals("/popular#lease")));
+        DynamoDbCache node = leasedCache(table, "a");
+        AtomicInteger loads = new AtomicInteger();
+
+        // When
+        byte[] value = node.getOrLoad("/popular", 60, () -> {
+            loads.incrementAndGet();
+            return "fresh".getBytes();
+        });
+
+        // Then
+        assertArrayEquals("filled".getBytes(), value);
+        assertEquals(0, loads.get());
+        assertEquals(1, node.getLeaseWaits());
+    }
+
+    @Test
+    void shouldLoadWithoutLeaseWhileCircuitIsOpen() {
+        // Given
+        when(dynamoDbClient.getItem(any(GetItemRequest.class)))
+            .thenThrow(DynamoDbException.builder().message("unavailable").build());
+        DynamoDbCache guardedCache = new DynamoDbCache(DynamoDbCacheConfig.builder()
+            .tableName(TABLE_NAME)
+            .region(REGION)
+            .withDynamoDbClient(dynamoDbClient)
+            .circuitBreaker(CircuitBreakerConfig.builder().minCalls(3).build())
+            .fillLease(FillLeaseConfig.builder().nodeId("a").build())
+            .build());
+        for (int i = 0; i < 3; i++) {
+            guardedCache.get("/key");
+        }
+
+        // When
+        byte[] value = guardedCache.getOrLoad("/popular", 60, "fresh"::getBytes);
+
+        // Then: no lease item was written
+        assertArrayEquals("fresh".getBytes(), value);
+        assertTrue(guardedCache.getCircuitBreaker().isOpen());
+        verify(dynamoDbClient, never()).putItem(any(PutItemRequest.class));
+        assertEquals(0, guardedCache.getLeaseFills());
+    }
+
+    @Test
+    void shouldBatchConcurrentGetsIntoOneBatchGetItem() throws Exception {
+        // Given
+        InMemoryDynamoDbClient client = spy(new InMemoryDynamoDbClient());
+        DynamoDbCache seed = new DynamoDbCache(DynamoDbCacheConfig.builder()
+            .tableName(TABLE_NAME)
+            .region(REGION)
+            .withDynamoDbClient(client)
+            .build());
+        seed.put("/a", "a".getBytes(), 60);
+        seed.put("/b", "b".getBytes(), 60);
+        DynamoDbCache batched = batchedCache(client, Duration.ofMillis(200), 100);
+        List<String> keys = List.of("/a", "/b", "/missing", "/a", "/b", "/a");
+        ExecutorService callers = Executors.newFixedThreadPool(keys.size());
+        CountDownLatch start = new CountDownLatch(1);
+
+        // When
+        List<Future<Optional<byte[]>>> results = new ArrayList<>();
+        try {
+            for (String key : keys) {
+                results.add(callers.submit(() -> {
+                    start.await();
+                    return batched.get(key);
+                }));
+            }
+            start.countDown();
+
+            // Then
+            for (int i = 0; i < keys.size(); i++) {
+                Optional<byte[]> result = results.get(i).get(5, TimeUnit.SECONDS);
+                String key = keys.get(i);
+                assertEquals(key.equals("/missing") ? null : key.substring(1),
+                    result.map(String::new).orElse(null));
+            }
+        } finally {
+            callers.shutdownNow();
+            batched.close();
+        }
+        verify(client, never()).getItem(any(GetItemRequest.class));
+        ArgumentCaptor<BatchGetItemRequest> request = ArgumentCaptor.forClass(BatchGetItemRequest.class);
+        verify(client).batchGetItem(request.capture());
+        assertEquals(3, request.getValue().requestItems().get(TABLE_NAME).keys().size());
+        assertEquals(1, batched.getReadBatches());
+        assertEquals(6, batched.getBatchedReads());
+        assertEquals(3, batched.getDeduplicatedReads());
+    }
+
+    @Test
+    void shouldSendFullBatchWithoutWaitingForWindow() throws Exception {
+        // Given
+        InMemoryDynamoDbClient client = spy(new InMemoryDynamoDbClient());
+        DynamoDbCache batched = batchedCache(client, Duration.ofSeconds(30), 2);
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+
+        // When
+        try {
+            Future<?> first = callers.submit(() -> batched.put("/a", "a".getBytes(), 60));
+            Future<?> second = callers.submit(() -> batched.put("/b", "b".getBytes(), 60));
+            first.get(5, TimeUnit.SECONDS);
+            second.get(5, TimeUnit.SECONDS);
+        } finally {
+            callers.shutdownNow();
+        }
+
+        // Then
+        verify(client, never()).putItem(any(PutItemRequest.class));
+        verify(client).batchWriteItem(any(BatchWriteItemRequest.class));
+        assertEquals(1, batched.getWriteBatches());
+        assertArrayEquals("a".getBytes(), client.item(Map.of("key", AttributeValue.builder().s("/a").build()))
+            .get("value").b().asByteArray());
+        batched.close();
+    }
+
+    @Test
+    void shouldAnswerAbsentKeysFromKeyFilter() {
+        // Given
+        InMemoryDynamoDbClient client = spy(new InMemoryDynamoDbClient());
+        DynamoDbCache filtered = filteredCache(client, null);
+        awaitKeyFilter(filtered);
+        filtered.put("/present", "value".getBytes(), 60);
+        filtered.put("/present", "value".getBytes(), 60);
+
+        // When
+        Optional<byte[]> present = filtered.get("/present");
+        Optional<byte[]> absent = filtered.get("/absent");
+        filtered.invalidate("/invalidated-but-never-written");
+        filtered.invalidate("/present");
+        Optional<byte[]> invalidated = filtered.get("/present");
+
+        // Then: invalidated keys stay in the filter until the next rebuild
+        assertTrue(present.isPresent());
+        assertFalse(absent.isPresent());
+        assertFalse(invalidated.isPresent());
+        verify(client, times(2)).getItem(any(GetItemRequest.class));
+        assertEquals(1, filtered.getFilteredReads());
+        assertEquals(1, filtered.getKeyFilter().getApproximateSize());
+    }
+
+    @Test
+    void shouldScanOnceBeforeConsultingKeyFilterOfOnlyWriter() {
+        // Given: an item written before this node started
+        InMemoryDynamoDbClient client = new InMemoryDynamoDbClient();
+        DynamoDbCache before = new DynamoDbCache(DynamoDbCacheConfig.builder()
+            .tableName(TABLE_NAME)
+            .region(REGION)
+            .withDynamoDbClient(client)
+            .build());
+        before.put("/existing", "value".getBytes(), 60);
+
+        // When
+        DynamoDbCache filtered = filteredCache(client, null);
+        Optional<byte[]> beforeScan = filtered.get("/existing");
+        awaitKeyFilter(filtered);
+        Optional<byte[]> afterScan = filtered.get("/existing");
+
+        // Then
+        assertTrue(beforeScan.isPresent());
+        assertTrue(afterScan.isPresent());
+        assertEquals(0, filtered.getFilteredReads());
+        filtered.close();
+    }
+
+    @Test
+    void shouldRebuildKeyFilterFromScan() {
+        // Given
+        InMemoryDynamoDbClient client = new InMemoryDynamoDbClient();
+        DynamoDbCache writer = new DynamoDbCache(DynamoDbCacheConfig.builder()
+            .tableName(TABLE_NAME)
+            .region(REGION)
+            .withDynamoDbClient(client)
+            .build());
+        writer.put("/other-node", "value".getBytes(), 60);
+        client.putItem(PutItemRequest.builder()
+            .tableName(TABLE_NAME)
+            .item(Map.of(
+                "key", AttributeValue.builder().s("/expired").build(),
+                "value", AttributeValue.builder().b(SdkBytes.fromUtf8String("old")).build(),
+                "expires", AttributeValue.builder().n("1").build()))
+            .build());
+        DynamoDbCache filtered = filteredCache(client, Duration.ofHours(1));
+
+        // When
+        filtered.rebuildKeyFilter();
+
+        // Then
+        assertTrue(filtered.get("/other-node").isPresent());
+        assertFalse(filtered.getKeyFilter().mightContain("/expired"));
+        assertEquals(1, filtered.getKeyFilter().getApproximateSize());
+        filtered.close();
+    }
+
+    @Test
+    void shouldAddKeysWrittenByOtherNodesToKeyFilter() {
+        // Given
+        InMemoryDynamoDbClient client = new InMemoryDynamoDbClient();
+        InvalidationBus bus = mock(InvalidationBus.class);
+        DynamoDbCache filtered = filteredCache(client, Duration.ofHours(1), bus);
+        ArgumentCaptor<InvalidationListener> listener = ArgumentCaptor.forClass(InvalidationListener.class);
+        verify(bus).subscribe(listener.capture());
+        filtered.rebuildKeyFilter();
+        DynamoDbCache writer = new DynamoDbCache(DynamoDbCacheConfig.builder()
+            .tableName(TABLE_NAME)
+            .region(REGION)
+            .withDynamoDbClient(client)
+            .build());
+
+        // When: another node writes a key and announces it
+        writer.put("/other-node", "value".getBytes(), 60);
+        listener.getValue().onInvalidate(List.of("/other-node"));
+        filtered.put("/own", "value".getBytes(), 60);
+
+        // Then
+        assertTrue(filtered.get("/other-node").isPresent());
+        verify(bus).publish("/own");
+        filtered.close();
+    }
+
+    @Test
+    void shouldRequireInvalidationBusForKeyFilterWithSeveralWriters() {
+        assertThrows(IllegalArgumentException.class, () -> KeyFilterConfig.builder().build());
+        assertNotNull(KeyFilterConfig.builder().rebuildInterval(null).build());
+    }
+
+    @Test
+    void shouldWriteOnlyKeysSeenTwice() {
+        // Given
+        InMemoryDynamoDbClient client = new InMemoryDynamoDbClient();
+        DynamoDbCache admitting = new DynamoDbCache(DynamoDbCacheConfig.builder()
+            .tableName(TABLE_NAME)
+            .region(REGION)
+            .withDynamoDbClient(client)
+            .writeAdmission(WriteAdmissionConfig.builder().build())
+            .build());
+
+        // When
+        admitting.put("/once", "a".getBytes(), 60);
+        admitting.put("/twice", "b".getBytes(), 60);
+        admitting.put("/twice", "b".getBytes(), 60);
+        admitting.put("/once#chunk#id#0", "c".getBytes(), 60);
+
+        // Then
+        assertFalse(admitting.get("/once").isPresent());
+        assertTrue(admitting.get("/twice").isPresent());
+        assertTrue(admitting.get("/once#chunk#id#0").isPresent());
+        assertEquals(1, admitting.getWriteAdmission().getAdmitted());
+        assertEquals(2, admitting.getWriteAdmission().getRejected());
+    }
+
+    @Test
+    void shouldNeverShortenExpiryOfSharedItem() {
+        // Given
+        InMemoryDynamoDbClient client = new InMemoryDynamoDbClient();
+        DynamoDbCache sharing = new DynamoDbCache(DynamoDbCacheConfig.builder()
+            .tableName(TABLE_NAME)
+            .region(REGION)
+            .withDynamoDbClient(client)
+            .build());
+        Map<String, AttributeValue> key = Map.of("key", AttributeValue.builder().s("__body#abc").build());
+        sharing.putExtendingTtl("__body#abc", "chunk".getBytes(), 3600);
+        long longExpires = Long.parseLong(client.item(key).get("expires").n());
+
+        // When
+        sharing.putExtendingTtl("__body#abc", "chunk".getBytes(), 60);
+
+        // Then
+        assertEquals(longExpires, Long.parseLong(client.item(key).get("expires").n()));
+        sharing.putExtendingTtl("__body#abc", "chunk".getBytes(), 7200);
+        assertTrue(Long.parseLong(client.item(key).get("expires").n()) > longExpires);
+        assertArrayEquals("chunk".getBytes(), sharing.get("__body#abc").orElseThrow());
+    }
+
+    @Test
+    void shouldOnlyExtendExpiryOfUnchangedValue() {
+        // Given
+        InMemoryDynamoDbClient client = spy(new InMemoryDynamoDbClient());
+        DynamoDbCache hashing = hashingCache(client);
+        Map<String, AttributeValue> key = Map.of("key", AttributeValue.builder().s("/products/1").build());
+        hashing.put("/products/1", "same".getBytes(), 60);
+        long firstExpires = Long.parseLong(client.item(key).get("expires").n());
+
+        // When
+        hashing.put("/products/1", "same".getBytes(), 3600);
+        hashing.put("/products/1", "changed".getBytes(), 3600);
+
+        // Then
+        verify(client, times(2)).putItem(any(PutItemRequest.class));
+        verify(client, times(3)).updateItem(any(UpdateItemRequest.class));
+        assertTrue(Long.parseLong(client.item(key).get("expires").n()) > firstExpires);
+        assertArrayEquals("changed".getBytes(), hashing.get("/products/1").get());
+        assertEquals(1, hashing.getUnchangedWrites());
+        assertEquals(1.0 / 3, hashing.getUnchangedWriteRate(), 1e-9);
+    }
+
+    @Test
+    void shouldMeterFailedConditionOfChangedValue() {
+        // Given
+        DynamoDbCache hashing = new DynamoDbCache(DynamoDbCacheConfig.builder()
+            .tableName(TABLE_NAME)
+            .region(REGION)
+            .withDynamoDbClient(new InMemoryDynamoDbClient())
+            .skipUnchangedWrites(true)
+            .capacityLimiter(CapacityLimiterConfig.builder()
+                .readCapacityUnits(1)
+                .writeCapacityUnits(1)
+                .coordinationInterval(Duration.ofMinutes(10))
+                .build())
+            .build());
+        double available = hashing.getCapacityLimiter().getAvailableWriteUnits();
+
+        // When: the update finds no item, then the full write goes through
+        hashing.put("/products/1", "new".getBytes(), 60);
+
+        // Then
+        assertEquals(available - 2, hashing.getCapacityLimiter().getAvailableWriteUnits(), 0.5);
+    }
+
+    @Test
+    void shouldMeterFailedConditionBySizeOfItem() {
+        // Given
+        DynamoDbCache hashing = new DynamoDbCache(DynamoDbCacheConfig.builder()
+            .tableName(TABLE_NAME)
+            .region(REGION)
+            .withDynamoDbClient(new InMemoryDynamoDbClient())
+            .skipUnchangedWrites(true)
+            .capacityLimiter(CapacityLimiterConfig.builder()
+                .readCapacityUnits(1)
+                .writeCapacityUnits(1)
+                .coordinationInterval(Duration.ofMinutes(10))
+                .build())
+            .build());
+        double available = hashing.getCapacityLimiter().getAvailableWriteUnits();
+
+        // When: both the failed update and the full write are billed by the 5 KB item
+        hashing.put("/products/1", new byte[5000], 60);
+
+        // Then
+        assertEquals(available - 10, hashing.getCapacityLimiter().getAvailableWriteUnits(), 0.5);
+    }
+
+    @Test
+    void shouldSkipUpdateOfKeyAbsentFromKeyFilter() {
+        // Given
+        InMemoryDynamoDbClient client = spy(new InMemoryDynamoDbClient());
+        DynamoDbCache hashing = new DynamoDbCache(DynamoDbCacheConfig.builder()
+            .tableName(TABLE_NAME)
+            .region(REGION)
+            .withDynamoDbClient(client)
+            .skipUnchangedWrites(true)
+            .keyFilter(KeyFilterConfig.builder()
+                .expectedKeys(1000)
+                .rebuildInterval(null)
+                .build())
+            .build());
+        awaitKeyFilter(hashing);
+
+        // When
+        hashing.put("/products/1", "same".getBytes(), 60);
+        hashing.put("/products/1", "same".getBytes(), 3600);
+
+        // Then
+        verify(client, times(1)).putItem(any(PutItemRequest.class));
+        verify(client, times(1)).updateItem(any(UpdateItemRequest.class));
+        assertEquals(1, hashing.getUnchangedWrites());
+    }
+
+    @Test
+    void shouldNotOverwriteNewerValue() {
+        // Given
+        InMemoryDynamoDbClient client = new InMemoryDynamoDbClient();
+        long expires = Instant.now().plusSeconds(60).getEpochSecond();
+        client.putItem(PutItemRequest.builder()
+            .tableName(TABLE_NAME)
+            .item(Map.of(
+                "key", AttributeValue.builder().s("/products/1").build(),
+                "value", AttributeValue.builder().b(SdkBytes.fromUtf8String("newer")).build(),
+                "expires", AttributeValue.builder().n(String.valueOf(expires)).build(),
+                "content_hash", AttributeValue.builder().s("other").build(),
+                "written_at", AttributeValue.builder().n(String.valueOf(System.currentTimeMillis() + 60_000)).build()))
+            .build());
+        DynamoDbCache hashing = hashingCache(client);
+
+        // When
+        hashing.put("/products/1", "older".getBytes(), 60);
+
+        // Then
+        assertArrayEquals("newer".getBytes(), hashing.get("/products/1").get());
+        assertEquals(1, hashing.getStaleWrites());
+        assertEquals(0, hashing.getUnchangedWrites());
+    }
+
+    @Test
+    void shouldCheckKeysWithoutReadingValues() {
+        // Given
+        InMemoryDynamoDbClient client = spy(new InMemoryDynamoDbClient());
+        DynamoDbCache inMemory = new DynamoDbCache(DynamoDbCacheConfig.builder()
+            .tableName(TABLE_NAME)
+            .region(REGION)
+            .withDynamoDbClient(client)
+            .build());
+        inMemory.put("/present", "value".getBytes(), 60);
+
+        // When
+        Set<String> present = inMemory.presentKeys(List.of("/present", "/absent"));
+
+        // Then
+        assertEquals(Set.of("/present"), present);
+        ArgumentCaptor<BatchGetItemRequest> request = ArgumentCaptor.forClass(BatchGetItemRequest.class);
+        verify(client).batchGetItem(request.capture());
+        assertEquals("#key, #expires", request.getValue().requestItems().get(TABLE_NAME).projectionExpression());
+    }
+
+    @Test
+    void shouldReadSeveralKeysWithOneBatchGetItem() {
+        // Given
+        InMemoryDynamoDbClient client = spy(new InMemoryDynamoDbClient());
+        DynamoDbCache inMemory = new DynamoDbCache(DynamoDbCacheConfig.builder()
+            .tableName(TABLE_NAME)
+            .region(REGION)
+            .withDynamoDbClient(client)
+            .build());
+        inMemory.put("/header", "header".getBytes(), 60);
+        inMemory.put("/prices", "prices".getBytes(), 60);
+        client.putItem(PutItemRequest.builder()
+            .tableName(TABLE_NAME)
+            .item(Map.of(
+                "key", AttributeValue.builder().s("/expired").build(),
+                "value", AttributeValue.builder().b(SdkBytes.fromUtf8String("old")).build(),
+                "expires", AttributeValue.builder().n(String.valueOf(Instant.now().minusSeconds(60).getEpochSecond())).build()))
+            .build());
+
+        // When
+        Map<String, byte[]> values = inMemory.getAll(List.of("/header", "/prices", "/expired", "/missing"));
+
+        // Then
+        assertEquals(Set.of("/header", "/prices"), values.keySet());
+        assertArrayEquals("prices".getBytes(), values.get("/prices"));
+        verify(client).batchGetItem(any(BatchGetItemRequest.class));
+        verify(client, never()).getItem(any(GetItemRequest.class));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static DynamoDbCache leasedCache(DynamoDbClient client, String nodeId) {
+        return new DynamoDbCache(DynamoDbCacheConfig.builder()
+            .tableName(TABLE_NAME)
+            .region(REGION)
+            .withDynamoDbClient(client)
+            .fillLease(FillLeaseConfig.builder()
+                .leaseDuration(Duration.ofSeconds(2))
+                .nodeId(nodeId)
+                .build())
+            .build());
+    }
+
+    private static DynamoDbCache batchedCache(DynamoDbClient client, Duration window, int maxBatchSize) {
+        return new DynamoDbCache(DynamoDbCacheConfig.builder()
+            .tableName(TABLE_NAME)
+            .region(REGION)
+            .withDynamoDbClient(client)
+            .requestBatching(RequestBatchingConfig.builder()
+                .window(window)
+                .maxBatchSize(maxBatchSize)
+                .build())
+            .build());
+    }
+
+    private static void awaitKeyFilter(DynamoDbCache cache) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!cache.isKeyFilterReady()) {
+            assertTrue(System.nanoTime() < deadline, "Key filter not scanned in time");
+            sleep(10);
+        }
+    }
+
+    private static DynamoDbCache filteredCache(DynamoDbClient client, Duration rebuildInterval) {
+        return filteredCache(client, rebuildInterval, mock(InvalidationBus.class));
+    }
+
+    private static DynamoDbCache filteredCache(DynamoDbClient client, Duration rebuildInterval, InvalidationBus bus) {
+        return new DynamoDbCache(DynamoDbCacheConfig.builder()
+            .tableName(TABLE_NAME)
+            .region(REGION)
+            .withDynamoDbClient(client)
+            .keyFilter(KeyFilterConfig.builder()
+                .expectedKeys(1000)
+                .rebuildInterval(rebuildInterval)
+                .invalidationBus(bus)
+                .build())
+            .build());
+    }
+
+    private static DynamoDbCache hashingCache(DynamoDbClient client) {
+        return new DynamoDbCache(DynamoDbCacheConfig.builder()
+            .tableName(TABLE_NAME)
+            .region(REGION)
+            .withDynamoDbClient(client)
+            .skipUnchangedWrites(true)
+            .build());
+    }
+
+    private static DynamoDbCache limitedCache(DynamoDbClient client, String nodeId) {
+        return new DynamoDbCache(DynamoDbCacheConfig.builder()
+            .tableName(TABLE_NAME)
+            .region(REGION)
+            .withDynamoDbClient(client)
+            .capacityLimiter(CapacityLimiterConfig.builder()
+                .readCapacityUnits(100)
+                .writeCapacityUnits(100)
+                .coordinationInterval(Duration.ofMinutes(10))
+                .nodeId(nodeId)
+                .build())
+            .build());
+    }
+}
@@ -0,0 +1,111 @@
+package com.coupang.dcache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExecutionStrategyTest {
+
+    @Test
+    void shouldUseVirtualThreadsOnlyWhenSupported() {
+        // When
+        ExecutionStrategy strategy = ExecutionStrategy.defaultStrategy();
+
+        // Then
+        if (ExecutionStrategy.isVirtualThreadSupported()) {
+            assertTrue(strategy.isVirtual());
+            assertEquals(0, strategy.getMaxThreads());
+        } else {
+            assertFalse(strategy.isVirtual());
+            assertTrue(strategy.getMaxThreads() > 0);
+            assertThrows(UnsupportedOperationException.class, ExecutionStrategy::virtualThreads);
+        }
+    }
+
+    @Test
+    void shouldCreateNamedDaemonThreads() throws Exception {
+        // Given
+        ExecutorService executor = ExecutionStrategy.defaultStrategy().newExecutor("dcache-test");
+
+        // When
+        try {
+            Thread thread = executor.submit(Thread::currentThread).get(5, TimeUnit.SECONDS);
+
+            // Then
+            assertTrue(thread.isDaemon());
+            assertTrue(thread.getName().startsWith("dcache-test-"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldBoundConcurrentTasksOfBoundedPool() throws Exception {
+        // Given
+        ExecutorService executor = ExecutionStrategy.boundedPool(2).newExecutor("dcache-test");
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        // When
+        List<Future<?>> tasks = new ArrayList<>();
+        try {
+            for (int i = 0; i < 6; i++) {
+                tasks.add(executor.submit(() -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    release.await(5, TimeUnit.SECONDS);
+                    running.decrementAndGet();
+                    return null;
+                }));
+            }
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<?> task : tasks) {
+                task.get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Then
+        assertEquals(2, maxRunning.get());
+    }
+
+    @Test
+    void shouldRejectTasksBeyondQueueOfBoundedPool() throws Exception {
+        // Given
+        ExecutorService executor = ExecutionStrategy.boundedPool(1).newExecutor("dcache-test");
+        CountDownLatch release = new CountDownLatch(1);
+
+        // When / Then: one task running and four queued
+        try {
+            for (int i = 0; i < 5; i++) {
+                executor.execute(() -> {
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> { }));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldRejectNonPositiveMaxThreads() {
+        assertThrows(IllegalArgumentException.class, () -> ExecutionStrategy.boundedPool(0));
+    }
+}
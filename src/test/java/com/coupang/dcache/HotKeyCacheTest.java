@@ -0,0 +1,176 @@
+package com.coupang.dcache;
+
+import com.google.common.base.Ticker;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class HotKeyCacheTest {
+    @Mock
+    private Cache delegate;
+
+    private final AtomicLong nanos = new AtomicLong();
+    private HotKeyCache cache;
+
+    @BeforeEach
+    void setUp() {
+        Ticker ticker = new Ticker() {
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        };
+        HotKeyCacheConfig config = HotKeyCacheConfig.builder()
+            .window(Duration.ofSeconds(10))
+            .trackedKeys(10)
+            .hotThreshold(0.3)
+            .minHits(5)
+            .localTtl(5)
+            .ticker(ticker)
+            .build();
+        cache = new HotKeyCache(delegate, config);
+    }
+
+    @Test
+    void shouldPinHotKeyAndBypassDelegate() {
+        // Given
+        byte[] value = "home".getBytes();
+        when(delegate.get("home")).thenReturn(Optional.of(value));
+
+        // When
+        for (int i = 0; i < 20; i++) {
+            cache.get("home");
+        }
+
+        // Then
+        verify(delegate, times(5)).get("home");
+        assertTrue(cache.getPinnedKeys().contains("home"));
+        List<HotKeyDetector.HotKey> hotKeys = cache.getHotKeys();
+        assertEquals("home", hotKeys.get(0).getKey());
+        assertEquals(20, hotKeys.get(0).getEstimatedCount());
+    }
+
+    @Test
+    void shouldNotPinColdKeys() {
+        // Given
+        when(delegate.get(anyString())).thenReturn(Optional.of("value".getBytes()));
+
+        // When
+        for (int i = 0; i < 100; i++) {
+            cache.get("key-" + (i % 20));
+        }
+
+        // Then
+        verify(delegate, times(100)).get(anyString());
+        assertTrue(cache.getPinnedKeys().isEmpty());
+        assertTrue(cache.getHotKeys().isEmpty());
+    }
+
+    @Test
+    void shouldExpirePinnedValueAfterLocalTtl() {
+        // Given
+        when(delegate.get("home")).thenReturn(Optional.of("home".getBytes()));
+        for (int i = 0; i < 10; i++) {
+            cache.get("home");
+        }
+
+        // When
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(6));
+        cache.get("home");
+
+        // Then
+        verify(delegate, times(6)).get("home");
+    }
+
+    @Test
+    void shouldForgetKeysOutsideWindow() {
+        // Given
+        when(delegate.get("home")).thenReturn(Optional.of("home".getBytes()));
+        for (int i = 0; i < 10; i++) {
+            cache.get("home");
+        }
+
+        // When
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(25));
+
+        // Then
+        assertTrue(cache.getHotKeys().isEmpty());
+    }
+
+    @Test
+    void shouldDropPinnedValueOnInvalidate() {
+        // Given
+        when(delegate.get("home")).thenReturn(Optional.of("home".getBytes()));
+        for (int i = 0; i < 10; i++) {
+            cache.get("home");
+        }
+
+        // When
+        cache.invalidate("home");
+
+        // Then
+        assertFalse(cache.getPinnedKeys().contains("home"));
+        verify(delegate).invalidate("home");
+    }
+
+    @Test
+    void shouldLoadThroughDelegateAndPinHotKey() {
+        // Given
+        byte[] value = "home".getBytes();
+        when(delegate.getOrLoad(eq("home"), eq(60), any())).thenReturn(value);
+
+        // When
+        for (int i = 0; i < 20; i++) {
+            assertArrayEquals(value, cache.getOrLoad("home", 60, () -> fail("Loaded outside the delegate")));
+        }
+
+        // Then
+        verify(delegate, times(5)).getOrLoad(eq("home"), eq(60), any());
+        verify(delegate, never()).get(anyString());
+        assertTrue(cache.getPinnedKeys().contains("home"));
+    }
+
+    @Test
+    void shouldReadUnpinnedKeysWithOneDelegateGetAll() {
+        // Given
+        when(delegate.getAll(List.of("a", "b"))).thenReturn(Map.of("a", "1".getBytes()));
+
+        // When
+        Map<String, byte[]> values = cache.getAll(List.of("a", "b"));
+
+        // Then
+        assertEquals(Set.of("a"), values.keySet());
+        verify(delegate, never()).get(anyString());
+    }
+
+    @Test
+    void shouldForwardWritePriorityAndBatchedPuts() {
+        // When
+        cache.put("a", "1".getBytes(), 60, WritePriority.LOW);
+        cache.putAll(Map.of("b", "2".getBytes()), 60);
+
+        // Then
+        verify(delegate).put(eq("a"), any(), eq(60), eq(WritePriority.LOW));
+        verify(delegate).putAll(anyMap(), eq(60));
+        verify(delegate, never()).put(anyString(), any(), anyInt());
+    }
+}
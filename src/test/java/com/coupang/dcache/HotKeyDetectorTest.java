@@ -0,0 +1,77 @@
+package com.coupang.dcache;
+
+import com.google.common.base.Ticker;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HotKeyDetectorTest {
+    private final AtomicLong nanos = new AtomicLong();
+
+    @Test
+    void shouldFindHotKeyAmongManyMoreKeysThanTracked() {
+        // Given
+        HotKeyDetector detector = detector(128);
+
+        // When: one key in ten reads, among 10,000 other keys
+        for (int i = 0; i < 10_000; i++) {
+            detector.record("/cold/" + i);
+            if (i % 9 == 0) {
+                detector.record("/hot");
+            }
+        }
+
+        // Then
+        List<HotKeyDetector.HotKey> hotKeys = detector.getHotKeys();
+        assertEquals(1, hotKeys.size());
+        assertEquals("/hot", hotKeys.get(0).getKey());
+    }
+
+    @Test
+    void shouldCountConcurrentReadsAcrossStripes() throws Exception {
+        // Given
+        HotKeyDetector detector = detector(1024);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        // When
+        List<Future<?>> tasks = new ArrayList<>();
+        try {
+            for (int t = 0; t < 4; t++) {
+                tasks.add(executor.submit(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        detector.record("/hot");
+                        detector.record("/cold/" + (i % 100));
+                    }
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Then
+        List<HotKeyDetector.HotKey> hotKeys = detector.getHotKeys();
+        assertEquals(1, hotKeys.size());
+        assertEquals(4000, hotKeys.get(0).getEstimatedCount());
+    }
+
+    private HotKeyDetector detector(int capacity) {
+        Ticker ticker = new Ticker() {
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        };
+        return new HotKeyDetector(capacity, TimeUnit.SECONDS.toNanos(10), 0.05, 5, ticker);
+    }
+}
@@ -0,0 +1,392 @@
+package com.coupang.dcache;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+import software.amazon.awssdk.services.dynamodb.streams.DynamoDbStreamsClient;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-process stand-in for DynamoDB, used by tests and benchmarks.
+ * Supports the item-level operations used by the cache. Update expressions
+ * are evaluated for plain SET, ADD, DELETE and REMOVE actions; condition
+ * expressions are evaluated when they combine {@code attribute_exists},
+ * {@code attribute_not_exists} and comparisons with AND or OR (not both),
+ * and queries only match equality key conditions on any attribute. Once {@link #streams()} has been
+ * called, every change is also recorded on a single-shard stream.
+ */
+public class InMemoryDynamoDbClient implements DynamoDbClient {
+    public static final String STREAM_ARN = "arn:aws:dynamodb:local:000000000000:table/in-memory/stream/latest";
+    private static final String SHARD_ID = "shardId-00000000000000000000-00000000";
+
+    private static final Pattern UPDATE_CLAUSE =
+            Pattern.compile("(SET|ADD|DELETE|REMOVE)\\s+(.+?)(?=\\s+(?:SET|ADD|DELETE|REMOVE)\\s|$)");
+
+    private static final Pattern KEY_CONDITION = Pattern.compile("(\\S+)\\s*=\\s*(:\\S+)");
+
+    private static final Pattern CONDITION =
+            Pattern.compile("(attribute_not_exists|attribute_exists)\\((\\S+)\\)|(\\S+)\\s*(<>|<=|>=|=|<|>)\\s*(:\\S+)");
+
+    private final String hashKey;
+    private final String rangeKey;
+    private final ConcurrentMap<Map<String, AttributeValue>, Map<String, AttributeValue>> items =
+            new ConcurrentHashMap<>();
+    private final List<software.amazon.awssdk.services.dynamodb.model.Record> streamRecords =
+            new CopyOnWriteArrayList<>();
+    private volatile boolean streamEnabled;
+
+    /**
+     * Creates a stand-in for a table keyed by a single "key" hash attribute.
+     */
+    public InMemoryDynamoDbClient() {
+        this("key");
+    }
+
+    public InMemoryDynamoDbClient(String hashKey) {
+        this(hashKey, null);
+    }
+
+    /**
+     * Creates a stand-in for a table with a composite primary key.
+     */
+    public InMemoryDynamoDbClient(String hashKey, String rangeKey) {
+        this.hashKey = hashKey;
+        this.rangeKey = rangeKey;
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    public Map<String, AttributeValue> item(Map<String, AttributeValue> key) {
+        return items.get(key);
+    }
+
+    @Override
+    public GetItemResponse getItem(GetItemRequest request) {
+        Map<String, AttributeValue> item = items.get(primaryKey(request.key()));
+        if (item == null) {
+            return GetItemResponse.builder().build();
+        }
+        return GetItemResponse.builder().item(item).build();
+    }
+
+    @Override
+    public PutItemResponse putItem(PutItemRequest request) {
+        if (request.conditionExpression() == null) {
+            store(request.item());
+            return PutItemResponse.builder().build();
+        }
+        synchronized (this) {
+            check(request.conditionExpression(), request.expressionAttributeNames(),
+                    request.expressionAttributeValues(), items.get(primaryKey(request.item())));
+            store(request.item());
+        }
+        return PutItemResponse.builder().build();
+    }
+
+    @Override
+    public DeleteItemResponse deleteItem(DeleteItemRequest request) {
+        if (request.conditionExpression() == null) {
+            remove(request.key());
+            return DeleteItemResponse.builder().build();
+        }
+        synchronized (this) {
+            check(request.conditionExpression(), request.expressionAttributeNames(),
+                    request.expressionAttributeValues(), items.get(primaryKey(request.key())));
+            remove(request.key());
+        }
+        return DeleteItemResponse.builder().build();
+    }
+
+    @Override
+    public UpdateItemResponse updateItem(UpdateItemRequest request) {
+        if (request.conditionExpression() == null) {
+            return update(request);
+        }
+        synchronized (this) {
+            check(request.conditionExpression(), request.expressionAttributeNames(),
+                    request.expressionAttributeValues(), items.get(primaryKey(request.key())));
+            return update(request);
+        }
+    }
+
+    private static void check(String expression, Map<String, String> names, Map<String, AttributeValue> values,
+                              Map<String, AttributeValue> item) {
+        boolean any = expression.contains(" OR ");
+        boolean result = !any;
+        for (String term : expression.split("\\s+(?:OR|AND)\\s+")) {
+            Matcher matcher = CONDITION.matcher(term.trim());
+            if (!matcher.matches()) {
+                throw new UnsupportedOperationException("Unsupported condition: " + term);
+            }
+            boolean holds;
+            if (matcher.group(1) != null) {
+                String name = names.getOrDefault(matcher.group(2), matcher.group(2));
+                boolean exists = item != null && item.containsKey(name);
+                holds = matcher.group(1).equals("attribute_exists") == exists;
+            } else {
+                String name = names.getOrDefault(matcher.group(3), matcher.group(3));
+                AttributeValue actual = item == null ? null : item.get(name);
+                holds = actual != null && compare(actual, values.get(matcher.group(5)), matcher.group(4));
+            }
+            result = any ? result || holds : result && holds;
+        }
+        if (!result) {
+            throw ConditionalCheckFailedException.builder().message("The conditional request failed").build();
+        }
+    }
+
+    private static boolean compare(AttributeValue actual, AttributeValue expected, String operator) {
+        int order = actual.n() != null
+                ? new BigDecimal(actual.n()).compareTo(new BigDecimal(expected.n()))
+                : actual.equals(expected) ? 0 : String.valueOf(actual.s()).compareTo(String.valueOf(expected.s()));
+        switch (operator) {
+            case "=":
+                return order == 0;
+            case "<>":
+                return order != 0;
+            case "<":
+                return order < 0;
+            case "<=":
+                return order <= 0;
+            case ">":
+                return order > 0;
+            default:
+                return order >= 0;
+        }
+    }
+
+    private UpdateItemResponse update(UpdateItemRequest request) {
+        Map<String, AttributeValue> key = primaryKey(request.key());
+        Map<String, AttributeValue> current = items.get(key);
+        Map<String, AttributeValue> item = current == null ? new HashMap<>(key) : new HashMap<>(current);
+
+        Matcher clause = UPDATE_CLAUSE.matcher(request.updateExpression());
+        while (clause.find()) {
+            for (String action : clause.group(2).split(",")) {
+                String[] parts = action.trim().split("\\s*=\\s*|\\s+");
+                String name = request.expressionAttributeNames().getOrDefault(parts[0], parts[0]);
+                AttributeValue operand = parts.length > 1 ? request.expressionAttributeValues().get(parts[1]) : null;
+                switch (clause.group(1)) {
+                    case "SET":
+                        item.put(name, operand);
+                        break;
+                    case "ADD":
+                        item.put(name, add(item.get(name), operand));
+                        break;
+                    case "DELETE":
+                        AttributeValue remaining = delete(item.get(name), operand);
+                        if (remaining == null) {
+                            item.remove(name);
+                        } else {
+                            item.put(name, remaining);
+                        }
+                        break;
+                    default:
+                        item.remove(name);
+                }
+            }
+        }
+        store(item);
+        return UpdateItemResponse.builder().build();
+    }
+
+    private static AttributeValue add(AttributeValue current, AttributeValue operand) {
+        if (operand.n() != null) {
+            long base = current == null ? 0 : Long.parseLong(current.n());
+            return AttributeValue.builder().n(String.valueOf(base + Long.parseLong(operand.n()))).build();
+        }
+        Set<String> union = new LinkedHashSet<>(current == null ? List.of() : current.ss());
+        union.addAll(operand.ss());
+        return AttributeValue.builder().ss(union).build();
+    }
+
+    private static AttributeValue delete(AttributeValue current, AttributeValue operand) {
+        if (current == null) {
+            return null;
+        }
+        Set<String> remaining = new LinkedHashSet<>(current.ss());
+        remaining.removeAll(operand.ss());
+        return remaining.isEmpty() ? null : AttributeValue.builder().ss(remaining).build();
+    }
+
+    @Override
+    public ScanResponse scan(ScanRequest request) {
+        List<Map<String, AttributeValue>> result = new ArrayList<>();
+        items.forEach((key, item) -> {
+            // A parallel scan gives each item to exactly one segment
+            if (request.totalSegments() == null
+                    || Math.floorMod(key.hashCode(), request.totalSegments()) == request.segment()) {
+                result.add(item);
+            }
+        });
+        return ScanResponse.builder().items(result).count(result.size()).build();
+    }
+
+    @Override
+    public QueryResponse query(QueryRequest request) {
+        Map<String, AttributeValue> conditions = new HashMap<>();
+        Matcher condition = KEY_CONDITION.matcher(request.keyConditionExpression());
+        while (condition.find()) {
+            String name = request.expressionAttributeNames().getOrDefault(condition.group(1), condition.group(1));
+            conditions.put(name, request.expressionAttributeValues().get(condition.group(2)));
+        }
+        List<Map<String, AttributeValue>> result = new ArrayList<>();
+        for (Map<String, AttributeValue> item : items.values()) {
+            if (item.entrySet().containsAll(conditions.entrySet())) {
+                result.add(item);
+            }
+        }
+        return QueryResponse.builder().items(result).count(result.size()).build();
+    }
+
+    @Override
+    public BatchGetItemResponse batchGetItem(BatchGetItemRequest request) {
+        Map<String, List<Map<String, AttributeValue>>> responses = new HashMap<>();
+        request.requestItems().forEach((table, keysAndAttributes) -> {
+            if (keysAndAttributes.keys().size() > 100) {
+                throw DynamoDbException.builder().message("Too many items requested for the BatchGetItem call").build();
+            }
+            List<Map<String, AttributeValue>> found = new ArrayList<>();
+            for (Map<String, AttributeValue> key : keysAndAttributes.keys()) {
+                Map<String, AttributeValue> item = items.get(primaryKey(key));
+                if (item != null) {
+                    found.add(item);
+                }
+            }
+            responses.put(table, found);
+        });
+        return BatchGetItemResponse.builder().responses(responses).build();
+    }
+
+    @Override
+    public BatchWriteItemResponse batchWriteItem(BatchWriteItemRequest request) {
+        request.requestItems().forEach((table, writes) -> {
+            for (WriteRequest write : writes) {
+                if (write.putRequest() != null) {
+                    store(write.putRequest().item());
+                } else if (write.deleteRequest() != null) {
+                    remove(write.deleteRequest().key());
+                }
+            }
+        });
+        return BatchWriteItemResponse.builder().build();
+    }
+
+    /**
+     * Returns a DynamoDB Streams view of the changes made to this table.
+     *
+     * @return A streams client serving {@link #STREAM_ARN}
+     */
+    public DynamoDbStreamsClient streams() {
+        streamEnabled = true;
+        return new DynamoDbStreamsClient() {
+            @Override
+            public DescribeStreamResponse describeStream(DescribeStreamRequest request) {
+                Shard shard = Shard.builder()
+                        .shardId(SHARD_ID)
+                        .sequenceNumberRange(SequenceNumberRange.builder().startingSequenceNumber("0").build())
+                        .build();
+                return DescribeStreamResponse.builder()
+                        .streamDescription(StreamDescription.builder()
+                                .streamArn(STREAM_ARN)
+                                .shards(shard)
+                                .build())
+                        .build();
+            }
+
+            @Override
+            public GetShardIteratorResponse getShardIterator(GetShardIteratorRequest request) {
+                int position = request.shardIteratorType() == ShardIteratorType.LATEST ? streamRecords.size() : 0;
+                return GetShardIteratorResponse.builder().shardIterator(String.valueOf(position)).build();
+            }
+
+            @Override
+            public GetRecordsResponse getRecords(GetRecordsRequest request) {
+                int position = Integer.parseInt(request.shardIterator());
+                List<software.amazon.awssdk.services.dynamodb.model.Record> records =
+                        new ArrayList<>(streamRecords.subList(position, streamRecords.size()));
+                return GetRecordsResponse.builder()
+                        .records(records)
+                        .nextShardIterator(String.valueOf(position + records.size()))
+                        .build();
+            }
+
+            @Override
+            public String serviceName() {
+                return SERVICE_NAME;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    private void store(Map<String, AttributeValue> attributes) {
+        Map<String, AttributeValue> item = Collections.unmodifiableMap(new HashMap<>(attributes));
+        Map<String, AttributeValue> key = primaryKey(item);
+        Map<String, AttributeValue> old = items.put(key, item);
+        record(old == null ? OperationType.INSERT : OperationType.MODIFY, key, old, item);
+    }
+
+    private void remove(Map<String, AttributeValue> attributes) {
+        Map<String, AttributeValue> key = primaryKey(attributes);
+        Map<String, AttributeValue> old = items.remove(key);
+        if (old != null) {
+            record(OperationType.REMOVE, key, old, null);
+        }
+    }
+
+    private void record(OperationType type, Map<String, AttributeValue> key,
+                        Map<String, AttributeValue> oldImage, Map<String, AttributeValue> newImage) {
+        if (!streamEnabled) {
+            return;
+        }
+        StreamRecord.Builder record = StreamRecord.builder()
+                .keys(key)
+                .sequenceNumber(String.valueOf(streamRecords.size()));
+        if (oldImage != null) {
+            record.oldImage(oldImage);
+        }
+        if (newImage != null) {
+            record.newImage(newImage);
+        }
+        streamRecords.add(software.amazon.awssdk.services.dynamodb.model.Record.builder()
+                .eventName(type)
+                .dynamodb(record.build())
+                .build());
+    }
+
+    private Map<String, AttributeValue> primaryKey(Map<String, AttributeValue> attributes) {
+        if (rangeKey == null) {
+            return Collections.singletonMap(hashKey, attributes.get(hashKey));
+        }
+        Map<String, AttributeValue> key = new HashMap<>();
+        key.put(hashKey, attributes.get(hashKey));
+        key.put(rangeKey, attributes.get(rangeKey));
+        return key;
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+    }
+}
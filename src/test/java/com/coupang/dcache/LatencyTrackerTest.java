@@ -0,0 +1,42 @@
+package com.coupang.dcache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyTrackerTest {
+    @Test
+    void shouldReportPercentilesOfRecentSamples() {
+        // Given
+        LatencyTracker tracker = new LatencyTracker(100);
+
+        // When
+        for (int i = 1; i <= 100; i++) {
+            tracker.record(i * 1000L);
+        }
+
+        // Then
+        assertEquals(50_000, tracker.percentile(0.5));
+        assertEquals(99_000, tracker.percentile(0.99));
+        assertEquals(100, tracker.percentileMicros(1.0));
+    }
+
+    @Test
+    void shouldForgetOldestSamples() {
+        // Given
+        LatencyTracker tracker = new LatencyTracker(10);
+        for (int i = 0; i < 10; i++) {
+            tracker.record(1_000_000);
+        }
+
+        // When
+        for (int i = 0; i < 10; i++) {
+            tracker.record(1000);
+        }
+
+        // Then
+        assertEquals(1000, tracker.percentile(0.99));
+        assertEquals(20, tracker.getCount());
+        assertEquals(0, new LatencyTracker(10).percentile(0.5));
+    }
+}
@@ -0,0 +1,154 @@
+package com.coupang.dcache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class PrefetcherTest {
+    private InMemoryDynamoDbClient client;
+    private GuavaCache local;
+    private TieredCache cache;
+
+    @BeforeEach
+    void setUp() {
+        client = spy(new InMemoryDynamoDbClient());
+        local = new GuavaCache(GuavaCacheConfig.builder().defaultTtl(60).maximumSize(100).build());
+        DynamoDbCache remote = new DynamoDbCache(DynamoDbCacheConfig.builder()
+            .tableName("test-cache")
+            .region("us-east-1")
+            .withDynamoDbClient(client)
+            .build());
+        cache = new TieredCache(TieredCacheConfig.builder()
+            .localCache(local)
+            .remoteCache(remote)
+            .prefetch(PrefetchConfig.builder()
+                .batching(RequestBatchingConfig.builder().window(Duration.ofMillis(5)).build())
+                .build())
+            .build());
+        for (String key : List.of("/header", "/recommendations", "/prices")) {
+            cache.put(key, key.getBytes(), 60);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        cache.close();
+    }
+
+    @Test
+    void shouldPrefetchKeysThatUsuallyFollow() {
+        // Given: four page renders, each starting with an empty L1
+        for (int i = 0; i < 4; i++) {
+            local.invalidateAll();
+            render();
+        }
+        local.invalidateAll();
+        clearInvocations(client);
+
+        // When
+        cache.get("/header");
+        awaitLocal("/recommendations");
+        cache.get("/recommendations");
+        awaitLocal("/prices");
+        cache.get("/prices");
+
+        // Then: both followers were read ahead with BatchGetItem and served from L1
+        Prefetcher prefetcher = cache.getPrefetcher();
+        assertEquals(2, prefetcher.getPrefetches());
+        assertEquals(2, prefetcher.getUsefulPrefetches());
+        assertEquals(0, prefetcher.getWastedPrefetches());
+        assertEquals(1.0, prefetcher.getAccuracy());
+        verify(client, times(2)).batchGetItem(any(BatchGetItemRequest.class));
+        verify(client, times(1)).getItem(any(GetItemRequest.class));
+    }
+
+    @Test
+    void shouldCountPrefetchOfRemovedKeyAsWasted() {
+        // Given
+        for (int i = 0; i < 4; i++) {
+            local.invalidateAll();
+            render();
+        }
+        cache.invalidate("/recommendations");
+        local.invalidateAll();
+
+        // When
+        cache.get("/header");
+
+        // Then
+        Prefetcher prefetcher = cache.getPrefetcher();
+        await(() -> prefetcher.getWastedPrefetches() == 1);
+        assertEquals(1, prefetcher.getPrefetches());
+        assertEquals(0, prefetcher.getUsefulPrefetches());
+        assertEquals(0.0, prefetcher.getAccuracy());
+        assertFalse(local.get("/recommendations").isPresent());
+    }
+
+    @Test
+    void shouldOnlyPredictSuccessorsAboveConfidence() {
+        // Given
+        TransitionSketch sketch = new TransitionSketch(100, 4);
+        for (int i = 0; i < 6; i++) {
+            sketch.record("/a", "/b");
+        }
+        for (int i = 0; i < 3; i++) {
+            sketch.record("/a", "/c");
+        }
+        sketch.record("/a", "/d");
+        sketch.record("/x", "/y");
+
+        // When / Then
+        assertEquals(List.of("/b"), sketch.predict("/a", 0.5, 4));
+        assertEquals(List.of("/b", "/c"), sketch.predict("/a", 0.3, 4));
+        assertEquals(List.of("/b"), sketch.predict("/a", 0.3, 1));
+        assertEquals(List.of(), sketch.predict("/x", 0.5, 4));
+        assertEquals(List.of(), sketch.predict("/unknown", 0.5, 4));
+    }
+
+    @Test
+    void shouldBoundTrackedKeys() {
+        // Given
+        TransitionSketch sketch = new TransitionSketch(10, 2);
+
+        // When
+        for (int i = 0; i < 1000; i++) {
+            sketch.record("/page/" + i, "/page/" + (i + 1));
+        }
+
+        // Then
+        assertTrue(sketch.getTrackedKeys() <= 10);
+    }
+
+    private void render() {
+        cache.get("/header");
+        cache.get("/recommendations");
+        cache.get("/prices");
+    }
+
+    private void awaitLocal(String key) {
+        await(() -> local.get(key).isPresent());
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for prefetch");
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(e);
+            }
+        }
+    }
+}
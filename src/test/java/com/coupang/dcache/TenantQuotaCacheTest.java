@@ -0,0 +1,157 @@
+package com.coupang.dcache;
+
+import com.google.common.base.Ticker;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TenantQuotaCacheTest {
+    private final AtomicLong nanos = new AtomicLong();
+    private TenantQuotaCache cache;
+
+    @BeforeEach
+    void setUp() {
+        Ticker ticker = new Ticker() {
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        };
+        cache = new TenantQuotaCache(TenantQuotaCacheConfig.builder()
+            .maximumBytes(100)
+            .tenantWeight("big", 3)
+            .ticker(ticker)
+            .build());
+    }
+
+    @Test
+    void shouldLetTenantBorrowIdleCapacity() {
+        // When
+        for (int i = 0; i < 10; i++) {
+            cache.put("tenant:small:/item/" + i, new byte[10], 60);
+        }
+
+        // Then
+        assertEquals(100, cache.getTotalBytes());
+        assertTrue(cache.get("tenant:small:/item/0").isPresent());
+    }
+
+    @Test
+    void shouldEvictFromTenantFurthestOverQuota() {
+        // Given
+        for (int i = 0; i < 10; i++) {
+            cache.put("tenant:noisy:/item/" + i, new byte[10], 60);
+        }
+
+        // When
+        for (int i = 0; i < 4; i++) {
+            cache.put("tenant:quiet:/item/" + i, new byte[10], 60);
+        }
+
+        // Then
+        for (int i = 0; i < 4; i++) {
+            assertTrue(cache.get("tenant:quiet:/item/" + i).isPresent());
+        }
+        assertFalse(cache.get("tenant:noisy:/item/0").isPresent());
+        assertTrue(cache.get("tenant:noisy:/item/9").isPresent());
+        Map<String, TenantCacheStats> stats = cache.getTenantStats();
+        assertEquals(60, stats.get("noisy").getBytes());
+        assertEquals(4, stats.get("noisy").getEvictionCount());
+        assertEquals(50, stats.get("quiet").getQuotaBytes());
+    }
+
+    @Test
+    void shouldNotEvictForLowPriorityPut() {
+        // Given
+        for (int i = 0; i < 10; i++) {
+            cache.put("tenant:small:/item/" + i, new byte[10], 60);
+        }
+
+        // When
+        cache.put("tenant:small:/prefetched", new byte[10], 60, WritePriority.LOW);
+
+        // Then
+        assertEquals(100, cache.getTotalBytes());
+        assertFalse(cache.get("tenant:small:/prefetched").isPresent());
+        assertTrue(cache.get("tenant:small:/item/0").isPresent());
+    }
+
+    @Test
+    void shouldDivideCapacityByWeight() {
+        // Given
+        for (int i = 0; i < 10; i++) {
+            cache.put("tenant:big:/item/" + i, new byte[10], 60);
+            cache.put("tenant:other:/item/" + i, new byte[10], 60);
+        }
+
+        // When
+        Map<String, TenantCacheStats> stats = cache.getTenantStats();
+
+        // Then
+        assertEquals(75, stats.get("big").getQuotaBytes());
+        assertEquals(25, stats.get("other").getQuotaBytes());
+        assertTrue(stats.get("big").getBytes() >= 70);
+        assertTrue(stats.get("other").getBytes() <= 30);
+    }
+
+    @Test
+    void shouldTrackHitsMissesAndExpiry() {
+        // Given
+        cache.put("tenant:acme:/a", "a".getBytes(), 5);
+        cache.put("/untenanted", "b".getBytes(), 60);
+
+        // When
+        cache.get("tenant:acme:/a");
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(6));
+        cache.get("tenant:acme:/a");
+
+        // Then
+        TenantCacheStats acme = cache.getTenantStats().get("acme");
+        assertEquals(1, acme.getHitCount());
+        assertEquals(1, acme.getMissCount());
+        assertEquals(0, acme.getEntryCount());
+        assertTrue(cache.get("/untenanted").isPresent());
+        assertEquals(1, cache.getTenantStats().get(TenantQuotaCache.NO_TENANT).getHitCount());
+    }
+
+    @Test
+    void shouldCountMissesOfTenantsWithoutEntries() {
+        // When
+        cache.get("tenant:new:/a");
+        cache.get("tenant:new:/b");
+
+        // Then
+        TenantCacheStats stats = cache.getTenantStats().get("new");
+        assertEquals(2, stats.getMissCount());
+        assertEquals(0, stats.getEntryCount());
+    }
+
+    @Test
+    void shouldReclaimExpiredEntriesBeforeEvictingLiveOnes() {
+        // Given: the big tenant is under its quota, but its entries expire unread
+        for (int i = 0; i < 6; i++) {
+            cache.put("tenant:big:/item/" + i, new byte[10], 5);
+        }
+        for (int i = 0; i < 4; i++) {
+            cache.put("tenant:quiet:/item/" + i, new byte[10], 60);
+        }
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(6));
+
+        // When
+        for (int i = 4; i < 8; i++) {
+            cache.put("tenant:quiet:/item/" + i, new byte[10], 60);
+        }
+
+        // Then
+        for (int i = 0; i < 8; i++) {
+            assertTrue(cache.get("tenant:quiet:/item/" + i).isPresent());
+        }
+        assertEquals(80, cache.getTotalBytes());
+        assertEquals(0, cache.getTenantStats().get("quiet").getEvictionCount());
+    }
+}
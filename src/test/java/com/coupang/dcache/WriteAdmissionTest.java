@@ -0,0 +1,74 @@
+package com.coupang.dcache;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteAdmissionTest {
+    @Test
+    void shouldAdmitKeyOnSecondSighting() {
+        // Given
+        WriteAdmission admission = new WriteAdmission(WriteAdmissionConfig.builder().build());
+
+        // When
+        boolean first = admission.admit("/products/1", 100);
+        boolean second = admission.admit("/products/1", 100);
+        boolean other = admission.admit("/products/2", 100);
+
+        // Then
+        assertFalse(first);
+        assertTrue(second);
+        assertFalse(other);
+        assertEquals(1, admission.getAdmitted());
+        assertEquals(2, admission.getRejected());
+    }
+
+    @Test
+    void shouldApplySizeRules() {
+        // Given
+        WriteAdmission admission = new WriteAdmission(WriteAdmissionConfig.builder()
+            .alwaysAdmitBelow(1024)
+            .minHitsAbove(64 * 1024, 3)
+            .build());
+
+        // When / Then
+        assertTrue(admission.admit("/small", 512));
+        assertFalse(admission.admit("/medium", 4096));
+        assertTrue(admission.admit("/medium", 4096));
+        assertFalse(admission.admit("/large", 100_000));
+        assertFalse(admission.admit("/large", 100_000));
+        assertTrue(admission.admit("/large", 100_000));
+    }
+
+    @Test
+    void shouldForgetOldSightingsAfterWindow() throws Exception {
+        // Given
+        WriteAdmission admission = new WriteAdmission(WriteAdmissionConfig.builder()
+            .minHits(3)
+            .window(Duration.ofMillis(50))
+            .build());
+        admission.admit("/products/1", 100);
+        admission.admit("/products/1", 100);
+
+        // When
+        Thread.sleep(100);
+        boolean third = admission.admit("/products/1", 100);
+
+        // Then: the two earlier sightings were halved to one
+        assertFalse(third);
+        assertTrue(admission.admit("/products/1", 100));
+    }
+
+    @Test
+    void shouldKeepSketchCompact() {
+        // When
+        WriteAdmission admission = new WriteAdmission(WriteAdmissionConfig.builder()
+            .expectedKeys(1_000_000)
+            .build());
+
+        // Then: four rows of 2^20 counters of 4 bits
+        assertEquals(2 * 1024 * 1024, admission.getMemoryBytes());
+    }
+}
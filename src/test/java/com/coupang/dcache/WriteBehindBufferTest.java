@@ -0,0 +1,56 @@
+package com.coupang.dcache;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteBehindBufferTest {
+    @Test
+    void shouldNotOvershootLimitsUnderConcurrentOffers() throws Exception {
+        ExecutorService writers = Executors.newFixedThreadPool(16);
+        try {
+            for (int round = 0; round < 50; round++) {
+                // Given
+                WriteBehindBuffer buffer = new WriteBehindBuffer(WriteBehindConfig.builder()
+                    .maxItems(4)
+                    .maxBytes(1000)
+                    .maxDelay(Duration.ofMinutes(1))
+                    .overflowPolicy(WriteBehindConfig.OverflowPolicy.DROP)
+                    .build(), batch -> { }, ExecutionStrategy.defaultStrategy());
+                CountDownLatch start = new CountDownLatch(1);
+
+                // When
+                List<Future<?>> offers = new ArrayList<>();
+                for (int thread = 0; thread < 16; thread++) {
+                    int offset = thread * 100;
+                    offers.add(writers.submit(() -> {
+                        start.await();
+                        for (int i = 0; i < 100; i++) {
+                            buffer.offer("/products/" + (offset + i), new byte[100], Long.MAX_VALUE);
+                        }
+                        return null;
+                    }));
+                }
+                start.countDown();
+                for (Future<?> offer : offers) {
+                    offer.get();
+                }
+
+                // Then
+                assertEquals(4, buffer.getPendingCount());
+                assertEquals(1600 - 4, buffer.getDroppedCount());
+                buffer.close();
+            }
+        } finally {
+            writers.shutdown();
+        }
+    }
+}
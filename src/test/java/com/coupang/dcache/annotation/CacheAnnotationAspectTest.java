@@ -0,0 +1,167 @@
+package com.coupang.dcache.annotation;
+
+import com.coupang.dcache.Cache;
+import com.coupang.dcache.DynamoDbCache;
+import com.coupang.dcache.DynamoDbCacheConfig;
+import com.coupang.dcache.HttpCacheConfig;
+import com.coupang.dcache.HttpResponse;
+import com.coupang.dcache.InMemoryDynamoDbClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheAnnotationAspectTest {
+    private DynamoDbCache cache;
+    private ProductService service;
+
+    @BeforeEach
+    void setUp() {
+        cache = new DynamoDbCache(DynamoDbCacheConfig.builder()
+            .tableName("test-cache")
+            .region("us-east-1")
+            .withDynamoDbClient(new InMemoryDynamoDbClient())
+            .build());
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory(Map.of("cache", cache));
+        CacheAnnotationAspect aspect = new CacheAnnotationAspect(
+            beanFactory.getBeanProvider(Cache.class), beanFactory.getBeanProvider(HttpCacheConfig.class));
+
+        AspectJProxyFactory proxyFactory = new AspectJProxyFactory(new ProductService());
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAspect(aspect);
+        service = proxyFactory.getProxy();
+    }
+
+    @Test
+    void shouldServeSecondCallFromCache() {
+        // When
+        HttpResponse first = service.product("42", "KR");
+        HttpResponse second = service.product("42", "KR");
+
+        // Then
+        assertEquals(1, service.calls());
+        assertFalse(first.isFromCache());
+        assertTrue(second.isFromCache());
+        assertArrayEquals(first.getBody(), second.getBody());
+    }
+
+    @Test
+    void shouldEvictEveryEntryTaggedWithProduct() {
+        // Given
+        service.product("42", "KR");
+        service.product("42", "US");
+        service.product("7", "KR");
+
+        // When
+        service.updateProduct("42");
+        service.product("42", "KR");
+        service.product("42", "US");
+        service.product("7", "KR");
+
+        // Then
+        assertEquals(5, service.calls());
+    }
+
+    @Test
+    void shouldEvictSingleKey() {
+        // Given
+        service.page("https://example.com/home");
+
+        // When
+        service.evictPage("https://example.com/home");
+        service.page("https://example.com/home");
+
+        // Then
+        assertEquals(2, service.calls());
+    }
+
+    @Test
+    void shouldNotShareEntriesBetweenMethodsTakingSameArguments() {
+        // When
+        HttpResponse page = service.page("https://example.com/home");
+        HttpResponse preview = service.preview("https://example.com/home");
+
+        // Then
+        assertEquals(2, service.calls());
+        assertFalse(preview.isFromCache());
+        assertNotEquals(new String(page.getBody()), new String(preview.getBody()));
+    }
+
+    @Test
+    void shouldEvictKeyBuiltWithHeaders() {
+        // Given
+        service.localizedPage("https://example.com/home", Map.of("Accept-Language", "ko"));
+        service.localizedPage("https://example.com/home", Map.of("Accept-Language", "en"));
+
+        // When
+        service.evictLocalizedPage("https://example.com/home", Map.of("Accept-Language", "ko"));
+        service.localizedPage("https://example.com/home", Map.of("Accept-Language", "ko"));
+        service.localizedPage("https://example.com/home", Map.of("Accept-Language", "en"));
+
+        // Then
+        assertEquals(3, service.calls());
+    }
+
+    @Test
+    void shouldRejectEvictWithoutTarget() {
+        assertThrows(IllegalStateException.class, () -> service.evictWithoutTarget("https://example.com/home"));
+    }
+
+    public static class ProductService {
+        private final AtomicInteger calls = new AtomicInteger();
+
+        public int calls() {
+            return calls.get();
+        }
+
+        @Cacheable(key = "'/products/' + #id + '?country=' + #country", tags = "'product:' + #id")
+        public HttpResponse product(String id, String country) {
+            return response("product " + id + " " + country);
+        }
+
+        @CacheEvict(tags = "'product:' + #id")
+        public void updateProduct(String id) {
+        }
+
+        @Cacheable
+        public HttpResponse page(String url) {
+            return response(url);
+        }
+
+        @CacheEvict(cacheable = "page")
+        public void evictPage(String url) {
+        }
+
+        @Cacheable
+        public HttpResponse preview(String url) {
+            return response("preview " + url);
+        }
+
+        @Cacheable(keyStrategy = CacheKeyStrategyType.WITH_HEADERS, includeHeaders = "Accept-Language")
+        public HttpResponse localizedPage(String url, Map<String, String> headers) {
+            return response(url + " " + headers.get("Accept-Language"));
+        }
+
+        @CacheEvict(cacheable = "localizedPage")
+        public void evictLocalizedPage(String url, Map<String, String> headers) {
+        }
+
+        @CacheEvict
+        public void evictWithoutTarget(String url) {
+        }
+
+        private HttpResponse response(String body) {
+            calls.incrementAndGet();
+            return HttpResponse.builder()
+                .statusCode(200)
+                .header("Content-Type", "text/plain")
+                .body(body.getBytes())
+                .build();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.coupang.dcache.invalidation;
+
+import com.coupang.dcache.DynamoDbCache;
+import com.coupang.dcache.DynamoDbCacheConfig;
+import com.coupang.dcache.GuavaCache;
+import com.coupang.dcache.GuavaCacheConfig;
+import com.coupang.dcache.InMemoryDynamoDbClient;
+import com.coupang.dcache.TieredCache;
+import com.coupang.dcache.TieredCacheConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.DescribeStreamRequest;
+import software.amazon.awssdk.services.dynamodb.model.DescribeStreamResponse;
+import software.amazon.awssdk.services.dynamodb.model.ExpiredIteratorException;
+import software.amazon.awssdk.services.dynamodb.model.GetRecordsRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetRecordsResponse;
+import software.amazon.awssdk.services.dynamodb.model.GetShardIteratorRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetShardIteratorResponse;
+import software.amazon.awssdk.services.dynamodb.model.Record;
+import software.amazon.awssdk.services.dynamodb.model.Shard;
+import software.amazon.awssdk.services.dynamodb.model.ShardIteratorType;
+import software.amazon.awssdk.services.dynamodb.model.StreamDescription;
+import software.amazon.awssdk.services.dynamodb.model.StreamRecord;
+import software.amazon.awssdk.services.dynamodb.streams.DynamoDbStreamsClient;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DynamoDbStreamsInvalidationBusTest {
+    private final InMemoryDynamoDbClient dynamoDbClient = new InMemoryDynamoDbClient();
+    private DynamoDbStreamsInvalidationBus bus;
+    private DynamoDbCache remoteCache;
+    private GuavaCache localCache;
+    private TieredCache tieredCache;
+
+    @BeforeEach
+    void setUp() {
+        remoteCache = new DynamoDbCache(DynamoDbCacheConfig.builder()
+            .tableName("test-cache")
+            .region("us-east-1")
+            .withDynamoDbClient(dynamoDbClient)
+            .build());
+        bus = new DynamoDbStreamsInvalidationBus(DynamoDbStreamsInvalidationBusConfig.builder()
+            .withStreamsClient(dynamoDbClient.streams())
+            .streamArn(InMemoryDynamoDbClient.STREAM_ARN)
+            .pollInterval(Duration.ofHours(1))
+            .build());
+        localCache = new GuavaCache(GuavaCacheConfig.builder().build());
+        tieredCache = new TieredCache(TieredCacheConfig.builder()
+            .localCache(localCache)
+            .remoteCache(remoteCache)
+            .invalidationBus(bus)
+            .build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        bus.close();
+    }
+
+    @Test
+    void shouldDropLocalCopyWhenAnotherNodeWrites() {
+        // Given
+        remoteCache.put("product:1", "v1".getBytes(), 60);
+        bus.poll();
+        assertArrayEquals("v1".getBytes(), tieredCache.get("product:1").orElseThrow());
+        assertTrue(localCache.get("product:1").isPresent());
+
+        // When another node writes directly to the table
+        remoteCache.put("product:1", "v2".getBytes(), 60);
+        bus.poll();
+
+        // Then
+        assertFalse(localCache.get("product:1").isPresent());
+        assertArrayEquals("v2".getBytes(), tieredCache.get("product:1").orElseThrow());
+    }
+
+    @Test
+    void shouldDropLocalCopyWhenAnotherNodeInvalidates() {
+        // Given
+        tieredCache.put("product:2", "v1".getBytes(), 60);
+        bus.poll();
+        tieredCache.get("product:2");
+
+        // When
+        remoteCache.invalidate("product:2");
+        bus.poll();
+
+        // Then
+        assertFalse(tieredCache.get("product:2").isPresent());
+    }
+
+    @Test
+    void shouldDeliverOtherShardsAndResumeShardWithExpiredIterator() {
+        // Given: two shards, the second of which has an expired iterator
+        DynamoDbStreamsClient streams = mock(DynamoDbStreamsClient.class);
+        when(streams.describeStream(any(DescribeStreamRequest.class))).thenReturn(DescribeStreamResponse.builder()
+            .streamDescription(StreamDescription.builder()
+                .shards(Shard.builder().shardId("a").build(), Shard.builder().shardId("b").build())
+                .build())
+            .build());
+        when(streams.getShardIterator(argThat((GetShardIteratorRequest r) -> r != null && r.shardId().equals("a"))))
+            .thenReturn(GetShardIteratorResponse.builder().shardIterator("a1").build());
+        when(streams.getShardIterator(argThat((GetShardIteratorRequest r) -> r != null && r.shardId().equals("b")
+                && r.shardIteratorType() == ShardIteratorType.LATEST)))
+            .thenReturn(GetShardIteratorResponse.builder().shardIterator("b1").build())
+            .thenReturn(GetShardIteratorResponse.builder().shardIterator("b2").build());
+        when(streams.getRecords(argThat((GetRecordsRequest r) -> r != null && r.shardIterator().equals("a1"))))
+            .thenReturn(records("product:1", "a2"));
+        when(streams.getRecords(argThat((GetRecordsRequest r) -> r != null && r.shardIterator().equals("a2"))))
+            .thenReturn(records(null, "a2"));
+        when(streams.getRecords(argThat((GetRecordsRequest r) -> r != null && r.shardIterator().equals("b1"))))
+            .thenThrow(ExpiredIteratorException.builder().message("expired").build());
+        when(streams.getRecords(argThat((GetRecordsRequest r) -> r != null && r.shardIterator().equals("b2"))))
+            .thenReturn(records("product:2", "b3"));
+        DynamoDbStreamsInvalidationBus sharded = new DynamoDbStreamsInvalidationBus(
+            DynamoDbStreamsInvalidationBusConfig.builder()
+                .withStreamsClient(streams)
+                .streamArn(InMemoryDynamoDbClient.STREAM_ARN)
+                .pollInterval(Duration.ofHours(1))
+                .build());
+        List<String> invalidated = new ArrayList<>();
+        sharded.subscribe(new InvalidationListener() {
+            @Override
+            public void onInvalidate(Collection<String> keys) {
+                invalidated.addAll(keys);
+            }
+
+            @Override
+            public void onInvalidateAll() {
+            }
+        });
+
+        // When
+        try {
+            sharded.poll();
+            sharded.poll();
+        } finally {
+            sharded.close();
+        }
+
+        // Then
+        assertEquals(List.of("product:1", "product:2"), invalidated);
+    }
+
+    private static GetRecordsResponse records(String key, String nextIterator) {
+        GetRecordsResponse.Builder response = GetRecordsResponse.builder().nextShardIterator(nextIterator);
+        if (key == null) {
+            return response.records(List.of()).build();
+        }
+        return response.records(Record.builder()
+            .dynamodb(StreamRecord.builder()
+                .keys(Map.of("key", AttributeValue.builder().s(key).build()))
+                .sequenceNumber("1")
+                .build())
+            .build()).build();
+    }
+}
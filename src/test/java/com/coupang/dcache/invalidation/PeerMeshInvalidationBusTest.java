@@ -0,0 +1,176 @@
+package com.coupang.dcache.invalidation;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PeerMeshInvalidationBusTest {
+    private PeerMeshInvalidationBus nodeA;
+    private PeerMeshInvalidationBus nodeB;
+    private final BlockingQueue<List<String>> receivedByB = new LinkedBlockingQueue<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        InetSocketAddress anyPort = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        nodeA = new PeerMeshInvalidationBus(PeerMeshInvalidationBusConfig.builder()
+            .nodeId("a")
+            .bindAddress(anyPort)
+            .secret("s3cret")
+            .batchDelay(Duration.ofMillis(20))
+            .build());
+        nodeB = new PeerMeshInvalidationBus(PeerMeshInvalidationBusConfig.builder()
+            .nodeId("b")
+            .bindAddress(anyPort)
+            .secret("s3cret")
+            .peer(nodeA.getLocalAddress())
+            .build());
+        nodeA.addPeer(nodeB.getLocalAddress());
+        nodeB.subscribe(new InvalidationListener() {
+            @Override
+            public void onInvalidate(Collection<String> keys) {
+                receivedByB.add(new ArrayList<>(keys));
+            }
+
+            @Override
+            public void onInvalidateAll() {
+                receivedByB.add(List.of("*"));
+            }
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        nodeA.close();
+        nodeB.close();
+    }
+
+    @Test
+    void shouldDeliverInvalidationToPeer() throws Exception {
+        // When
+        nodeA.publish("product:1");
+
+        // Then
+        assertEquals(List.of("product:1"), receivedByB.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void shouldBatchAndDeduplicateKeys() throws Exception {
+        // When
+        for (int i = 0; i < 100; i++) {
+            nodeA.publish("product:" + (i % 3));
+        }
+
+        // Then
+        List<String> batch = receivedByB.poll(5, TimeUnit.SECONDS);
+        assertNotNull(batch);
+        assertEquals(3, batch.size());
+        assertNull(receivedByB.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void shouldDeliverInvalidateAll() throws Exception {
+        // When
+        nodeA.publishAll();
+
+        // Then
+        assertEquals(List.of("*"), receivedByB.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void shouldDeliverKeyLongerThan64KiB() throws Exception {
+        // Given
+        String key = "x".repeat(70_000) + "\u00e9";
+
+        // When
+        nodeA.publish(key);
+        nodeA.publish("product:1");
+
+        // Then
+        List<String> batch = receivedByB.poll(5, TimeUnit.SECONDS);
+        assertNotNull(batch);
+        assertEquals(2, batch.size());
+        assertTrue(batch.contains(key));
+    }
+
+    @Test
+    void shouldStopSendingToRemovedPeerWhileFlushing() throws Exception {
+        // Given
+        nodeA.publish("product:1");
+        assertEquals(List.of("product:1"), receivedByB.poll(5, TimeUnit.SECONDS));
+
+        // When: removed while the flusher may be sending to it
+        nodeA.publish("product:2");
+        nodeA.removePeer(nodeB.getLocalAddress());
+        receivedByB.poll(200, TimeUnit.MILLISECONDS);
+        nodeA.publish("product:3");
+
+        // Then
+        assertNull(receivedByB.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void shouldIgnoreNodeWithoutSecret() throws Exception {
+        // Given
+        PeerMeshInvalidationBus intruder = new PeerMeshInvalidationBus(PeerMeshInvalidationBusConfig.builder()
+            .nodeId("intruder")
+            .bindAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+            .secret("guess")
+            .peer(nodeB.getLocalAddress())
+            .build());
+
+        // When
+        try {
+            intruder.publishAll();
+            intruder.flush();
+        } finally {
+            intruder.close();
+        }
+
+        // Then
+        assertNull(receivedByB.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void shouldListenOnLoopbackByDefault() {
+        assertTrue(PeerMeshInvalidationBusConfig.builder().build().getBindAddress().getAddress().isLoopbackAddress());
+    }
+
+    @Test
+    void shouldKeepDeliveringWhileAnotherPeerStopsReading() throws Exception {
+        // Given: a peer that accepts connections but never reads
+        try (ServerSocket stalled = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            nodeA.addPeer((InetSocketAddress) stalled.getLocalSocketAddress());
+            List<String> large = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                large.add(i + "x".repeat(1_000_000));
+            }
+
+            // When
+            large.forEach(nodeA::publish);
+            Thread.sleep(200);
+            nodeA.publish("product:1");
+
+            // Then
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            boolean delivered = false;
+            while (!delivered && System.nanoTime() < deadline) {
+                List<String> batch = receivedByB.poll(100, TimeUnit.MILLISECONDS);
+                delivered = batch != null && batch.contains("product:1");
+            }
+            assertTrue(delivered);
+        }
+    }
+}
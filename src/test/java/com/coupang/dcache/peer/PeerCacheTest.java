@@ -0,0 +1,466 @@
+package com.coupang.dcache.peer;
+
+import com.coupang.dcache.HotKeyCacheConfig;
+import com.google.common.base.Ticker;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataOutputStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PeerCacheTest {
+    private final List<PeerCache> nodes = new ArrayList<>();
+    private final AtomicLong nanos = new AtomicLong();
+    private final Ticker ticker = new Ticker() {
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+    };
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < 3; i++) {
+            nodes.add(new PeerCache(config().build()));
+        }
+        join();
+    }
+
+    @AfterEach
+    void tearDown() {
+        nodes.forEach(PeerCache::close);
+    }
+
+    @Test
+    void shouldStoreEachKeyOnlyOnItsOwner() {
+        // When
+        for (int i = 0; i < 300; i++) {
+            nodes.get(0).put("product:" + i, ("value-" + i).getBytes(), 60);
+        }
+
+        // Then: every node reads every key, and each key is stored once
+        for (PeerCache node : nodes) {
+            assertArrayEquals("value-42".getBytes(), node.get("product:42").orElseThrow());
+            assertTrue(node.getOwnedKeys() > 50, "Keys should spread over all nodes");
+        }
+        assertEquals(300, nodes.stream().mapToLong(PeerCache::getOwnedKeys).sum());
+        assertEquals(nodes.get(1).ownerOf("product:7"), nodes.get(2).ownerOf("product:7"));
+    }
+
+    @Test
+    void shouldLoadMissingKeyOnceAcrossNodes() throws Exception {
+        // Given
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(30);
+
+        // When: ten concurrent misses on each node
+        List<Future<byte[]>> results = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            PeerCache node = nodes.get(i % 3);
+            results.add(executor.submit(() -> {
+                start.await();
+                return node.getOrLoad("product:1", 60, () -> {
+                    loads.incrementAndGet();
+                    sleep(200);
+                    return "loaded".getBytes();
+                });
+            }));
+        }
+        start.countDown();
+
+        // Then
+        for (Future<byte[]> result : results) {
+            assertArrayEquals("loaded".getBytes(), result.get());
+        }
+        executor.shutdown();
+        assertEquals(1, loads.get());
+        PeerCache owner = ownerOf("product:1");
+        assertEquals(1, owner.getFills());
+        assertTrue(owner.getFillWaits() > 0);
+    }
+
+    @Test
+    void shouldLetWaitersLoadWhenFillIsGivenBack() throws Exception {
+        // Given: another node is filling the key with a loader about to fail
+        String key = keyOwnedBy(nodes.get(0));
+        CountDownLatch loading = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> filler = executor.submit(() -> assertThrows(IllegalStateException.class,
+            () -> nodes.get(1).getOrLoad(key, 60, () -> {
+                loading.countDown();
+                sleep(200);
+                throw new IllegalStateException("Origin unavailable");
+            })));
+        loading.await();
+
+        // When
+        byte[] value = nodes.get(2).getOrLoad(key, 60, () -> "second".getBytes());
+
+        // Then: the waiter was held, then loaded and cached the value itself
+        filler.get();
+        executor.shutdown();
+        assertArrayEquals("second".getBytes(), value);
+        assertEquals(1, nodes.get(0).getFillWaits());
+        assertArrayEquals("second".getBytes(), nodes.get(1).get(key).orElseThrow());
+    }
+
+    @Test
+    void shouldPipelineConcurrentRequestsOverOneConnection() throws Exception {
+        // Given
+        nodes.forEach(PeerCache::close);
+        nodes.clear();
+        for (int i = 0; i < 2; i++) {
+            nodes.add(new PeerCache(config().connectionsPerPeer(1).build()));
+        }
+        join();
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; keys.size() < 200; i++) {
+            if (ownerOf("item:" + i) == nodes.get(1)) {
+                keys.add("item:" + i);
+                nodes.get(1).put("item:" + i, ("value-" + i).getBytes(), 60);
+            }
+        }
+
+        // When
+        ExecutorService executor = Executors.newFixedThreadPool(20);
+        List<Future<Optional<byte[]>>> results = new ArrayList<>();
+        for (String key : keys) {
+            results.add(executor.submit(() -> nodes.get(0).get(key)));
+        }
+
+        // Then: each response matched its request
+        for (int i = 0; i < keys.size(); i++) {
+            String expected = "value-" + keys.get(i).substring("item:".length());
+            assertEquals(expected, new String(results.get(i).get().orElseThrow()));
+        }
+        executor.shutdown();
+        assertEquals(0, nodes.get(0).getPeerErrors());
+    }
+
+    @Test
+    void shouldReadKeysOfSeveralOwnersAtOnce() {
+        // Given
+        Map<String, byte[]> expected = new HashMap<>();
+        for (int i = 0; i < 20; i++) {
+            expected.put("product:" + i, ("value-" + i).getBytes());
+            nodes.get(1).put("product:" + i, ("value-" + i).getBytes(), 60);
+        }
+        List<String> keys = new ArrayList<>(expected.keySet());
+        keys.add("product:missing");
+
+        // When
+        Map<String, byte[]> values = nodes.get(0).getAll(keys);
+
+        // Then
+        assertEquals(expected.keySet(), values.keySet());
+        expected.forEach((key, value) -> assertArrayEquals(value, values.get(key)));
+    }
+
+    @Test
+    void shouldMirrorHotKeysOwnedByOtherNodes() {
+        // Given
+        nodes.forEach(PeerCache::close);
+        nodes.clear();
+        for (int i = 0; i < 2; i++) {
+            nodes.add(new PeerCache(config()
+                .hotKeys(HotKeyCacheConfig.builder().minHits(3).hotThreshold(0.5).localTtl(60).build())
+                .build()));
+        }
+        join();
+        PeerCache reader = nodes.get(0);
+        String key = keyOwnedBy(nodes.get(1));
+        nodes.get(1).put(key, "v1".getBytes(), 60);
+
+        // When
+        for (int i = 0; i < 10; i++) {
+            reader.get(key);
+        }
+        long requests = reader.getPeerRequests();
+
+        // Then: later reads are served locally until this node writes the key
+        assertArrayEquals("v1".getBytes(), reader.get(key).orElseThrow());
+        assertEquals(requests, reader.getPeerRequests());
+        assertTrue(reader.getMirrorHits() > 0);
+
+        reader.put(key, "v2".getBytes(), 60);
+        assertArrayEquals("v2".getBytes(), reader.get(key).orElseThrow());
+    }
+
+    @Test
+    void shouldExpireOwnedValues() {
+        // Given
+        String key = keyOwnedBy(nodes.get(1));
+        nodes.get(0).put(key, "value".getBytes(), 1);
+        assertTrue(nodes.get(0).get(key).isPresent());
+
+        // When
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(1));
+
+        // Then
+        assertFalse(nodes.get(0).get(key).isPresent());
+        assertEquals(0, nodes.get(1).getOwnedKeys());
+    }
+
+    @Test
+    void shouldInvalidateOnOwnerAndClearEveryMember() {
+        // Given
+        for (int i = 0; i < 30; i++) {
+            nodes.get(0).put("product:" + i, "value".getBytes(), 60);
+        }
+
+        // When
+        nodes.get(1).invalidate("product:3");
+
+        // Then
+        assertFalse(nodes.get(2).get("product:3").isPresent());
+        assertTrue(nodes.get(2).get("product:4").isPresent());
+
+        // When
+        nodes.get(2).invalidateAll();
+
+        // Then
+        assertEquals(0, nodes.stream().mapToLong(PeerCache::getOwnedKeys).sum());
+    }
+
+    @Test
+    void shouldLoadWithoutCachingWhenOwnerIsDown() {
+        // Given
+        PeerCache down = nodes.get(2);
+        String key = keyOwnedBy(down);
+        down.close();
+        PeerCache node = nodes.get(0);
+
+        // When
+        Optional<byte[]> cached = node.get(key);
+        byte[] loaded = node.getOrLoad(key, 60, () -> "loaded".getBytes());
+
+        // Then
+        assertFalse(cached.isPresent());
+        assertArrayEquals("loaded".getBytes(), loaded);
+        assertTrue(node.getPeerErrors() >= 2);
+
+        // When: the member is removed, its keys move to the remaining nodes
+        node.setMembers(List.of(nodes.get(1).getAdvertisedAddress()));
+        node.put(key, "moved".getBytes(), 60);
+
+        // Then
+        assertArrayEquals("moved".getBytes(), node.get(key).orElseThrow());
+    }
+
+    @Test
+    void shouldMoveFewKeysWhenMemberJoins() {
+        // Given
+        List<InetSocketAddress> members = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            members.add(InetSocketAddress.createUnresolved("10.0.0." + i, 7891));
+        }
+        ConsistentHashRing before = new ConsistentHashRing(members.subList(0, 3), 160);
+        ConsistentHashRing after = new ConsistentHashRing(members, 160);
+
+        // When
+        int moved = 0;
+        int toNewMember = 0;
+        for (int i = 0; i < 10_000; i++) {
+            String key = "product:" + i;
+            if (!before.owner(key).equals(after.owner(key))) {
+                moved++;
+                if (after.owner(key).equals(members.get(3))) {
+                    toNewMember++;
+                }
+            }
+        }
+
+        // Then: about a quarter of the keys move, all of them to the new member
+        assertEquals(moved, toNewMember);
+        assertTrue(moved > 1_800 && moved < 3_200, "Moved " + moved + " keys");
+    }
+
+    @Test
+    void shouldCloseConnectionSendingOversizedFrame() throws Exception {
+        // Given
+        PeerCache node = nodes.get(0);
+        String key = keyOwnedBy(node);
+        node.put(key, "value".getBytes(), 60);
+
+        // When: a GET whose key claims a negative, then an oversized length
+        for (int length : new int[] {-1, Integer.MAX_VALUE}) {
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), node.getLocalAddress().getPort())) {
+                socket.setSoTimeout(2000);
+                DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                out.writeByte(PeerProtocol.VERSION);
+                out.writeInt(0);
+                out.writeByte(PeerProtocol.GET);
+                out.writeInt(1);
+                out.writeInt(length);
+                out.flush();
+
+                // Then: the node hangs up without answering
+                assertEquals(-1, socket.getInputStream().read());
+            }
+        }
+        assertArrayEquals("value".getBytes(), nodes.get(1).get(key).orElseThrow());
+    }
+
+    @Test
+    void shouldRejectPeersWithoutSharedSecret() {
+        // Given
+        nodes.forEach(PeerCache::close);
+        nodes.clear();
+        nodes.add(new PeerCache(config().secret("s3cret").build()));
+        nodes.add(new PeerCache(config().secret("s3cret").build()));
+        nodes.add(new PeerCache(config().secret("wrong").build()));
+        join();
+        String key = keyOwnedBy(nodes.get(0));
+
+        // When
+        nodes.get(1).put(key, "value".getBytes(), 60);
+        nodes.get(2).put(key, "forged".getBytes(), 60);
+
+        // Then
+        assertArrayEquals("value".getBytes(), nodes.get(1).get(key).orElseThrow());
+        assertFalse(nodes.get(2).get(key).isPresent());
+        assertTrue(nodes.get(2).getPeerErrors() >= 2);
+    }
+
+    @Test
+    void shouldNotBlockCallersWhileConnectingToUnreachablePeer() {
+        // Given: a member that never answers the connect
+        PeerCache node = new PeerCache(config()
+            .member(new InetSocketAddress("10.255.255.1", 7891))
+            .connectTimeout(Duration.ofSeconds(2))
+            .requestTimeout(Duration.ofMillis(100))
+            .build());
+        nodes.add(node);
+        String key = keyOwnedBy(node, new InetSocketAddress("10.255.255.1", 7891));
+
+        // When
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            assertFalse(node.get(key).isPresent());
+        }
+
+        // Then: each read gave up at its own deadline rather than the connect timeout
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        assertEquals(5, node.getPeerErrors());
+    }
+
+    @Test
+    void shouldBackOffFromPeerThatRefusedConnection() throws Exception {
+        // Given
+        InetSocketAddress refusing;
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            refusing = (InetSocketAddress) socket.getLocalSocketAddress();
+        }
+        ExecutorService readers = Executors.newCachedThreadPool();
+        PeerClient client = new PeerClient(refusing, 1, 200, new byte[0], 1024, readers);
+
+        try {
+            // When
+            ExecutionException first = assertThrows(ExecutionException.class,
+                () -> client.send(PeerProtocol.GET, "key", 0, null).get(2, TimeUnit.SECONDS));
+            CompletableFuture<PeerProtocol.Response> second = client.send(PeerProtocol.GET, "key", 0, null);
+
+            // Then: the second request failed at once, without connecting again
+            assertInstanceOf(ConnectException.class, first.getCause());
+            assertTrue(second.isCompletedExceptionally());
+            ExecutionException failure = assertThrows(ExecutionException.class, second::get);
+            assertTrue(failure.getCause().getMessage().contains("backing off"));
+        } finally {
+            client.close();
+            readers.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldRejectOversizedKeyWithoutBreakingConnection() {
+        // Given
+        PeerCache owner = nodes.get(0);
+        String key = keyOwnedBy(owner);
+        nodes.get(1).put(key, "value".getBytes(), 60);
+        String oversized = "k".repeat(PeerProtocol.MAX_KEY_BYTES + 1);
+        for (int i = 0; ownerOf(oversized) == nodes.get(1); i++) {
+            oversized = "k".repeat(PeerProtocol.MAX_KEY_BYTES + 1) + i;
+        }
+
+        // When
+        nodes.get(1).put(oversized, "value".getBytes(), 60);
+
+        // Then
+        assertFalse(nodes.get(1).get(oversized).isPresent());
+        assertArrayEquals("value".getBytes(), nodes.get(1).get(key).orElseThrow());
+    }
+
+    private PeerCacheConfig.Builder config() {
+        return PeerCacheConfig.builder()
+            .bindAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+            .requestTimeout(Duration.ofMillis(500))
+            .connectTimeout(Duration.ofMillis(200))
+            .ticker(ticker);
+    }
+
+    private void join() {
+        List<InetSocketAddress> members = new ArrayList<>();
+        for (PeerCache node : nodes) {
+            members.add(node.getAdvertisedAddress());
+        }
+        nodes.forEach(node -> node.setMembers(members));
+    }
+
+    private PeerCache ownerOf(String key) {
+        InetSocketAddress owner = nodes.get(0).ownerOf(key);
+        for (PeerCache node : nodes) {
+            if (ConsistentHashRing.id(node.getAdvertisedAddress()).equals(ConsistentHashRing.id(owner))) {
+                return node;
+            }
+        }
+        throw new IllegalStateException("No node owns " + key);
+    }
+
+    private String keyOwnedBy(PeerCache node) {
+        for (int i = 0; ; i++) {
+            if (ownerOf("key:" + i) == node) {
+                return "key:" + i;
+            }
+        }
+    }
+
+    private static String keyOwnedBy(PeerCache node, InetSocketAddress member) {
+        for (int i = 0; ; i++) {
+            if (ConsistentHashRing.id(node.ownerOf("key:" + i)).equals(ConsistentHashRing.id(member))) {
+                return "key:" + i;
+            }
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package com.coupang.dcache.resp;
+
+import com.coupang.dcache.GuavaCache;
+import com.coupang.dcache.GuavaCacheConfig;
+import com.coupang.dcache.TieredCache;
+import com.coupang.dcache.TieredCacheConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RespCacheTest {
+    private final List<RespTestServer> servers = new ArrayList<>();
+    private RespCache cache;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        servers.add(new RespTestServer());
+        cache = new RespCache(config().build());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        cache.close();
+        for (RespTestServer server : servers) {
+            server.close();
+        }
+    }
+
+    @Test
+    void shouldExpireValuesOnTheServer() {
+        // Given
+        cache.put("product:1", "value".getBytes(), 2);
+
+        // When / Then
+        assertArrayEquals("value".getBytes(), cache.get("product:1").orElseThrow());
+        servers.get(0).advance(2000);
+        assertFalse(cache.get("product:1").isPresent());
+        assertEquals(Set.of(), servers.get(0).keys());
+    }
+
+    @Test
+    void shouldReadAndWriteManyKeysInOneRoundTrip() {
+        // Given
+        Map<String, byte[]> values = new HashMap<>();
+        for (int i = 0; i < 10; i++) {
+            values.put("product:" + i, ("value-" + i).getBytes());
+        }
+
+        // When
+        cache.putAll(values, 60);
+        List<String> keys = new ArrayList<>(values.keySet());
+        keys.add("product:missing");
+        Map<String, byte[]> read = cache.getAll(keys);
+
+        // Then
+        assertEquals(values.keySet(), read.keySet());
+        values.forEach((key, value) -> assertArrayEquals(value, read.get(key)));
+        RespTestServer server = servers.get(0);
+        assertEquals(10, server.getCommandCount("SET"));
+        assertEquals(1, server.getCommandCount("MGET"));
+        assertEquals(0, server.getCommandCount("GET"));
+    }
+
+    @Test
+    void shouldPipelineConcurrentCommandsOverOneConnection() throws Exception {
+        // Given
+        cache.close();
+        cache = new RespCache(config().connectionsPerNode(1).build());
+        for (int i = 0; i < 200; i++) {
+            cache.put("product:" + i, ("value-" + i).getBytes(), 60);
+        }
+
+        // When
+        ExecutorService executor = Executors.newFixedThreadPool(20);
+        List<Future<Optional<byte[]>>> results = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            String key = "product:" + i;
+            results.add(executor.submit(() -> cache.get(key)));
+        }
+
+        // Then: every reply was matched to its command
+        for (int i = 0; i < 200; i++) {
+            assertEquals("value-" + i, new String(results.get(i).get().orElseThrow()));
+        }
+        executor.shutdown();
+        assertEquals(1, servers.get(0).getConnections());
+    }
+
+    @Test
+    void shouldReadValuesLargerThanTheReadBuffer() {
+        // Given
+        byte[] large = new byte[300 * 1024];
+        for (int i = 0; i < large.length; i++) {
+            large[i] = (byte) i;
+        }
+
+        // When
+        cache.put("large", large, 60);
+
+        // Then
+        assertArrayEquals(large, cache.get("large").orElseThrow());
+    }
+
+    @Test
+    void shouldInvalidateOnlyKeysUnderPrefix() {
+        // Given
+        RespCache other = new RespCache(config().keyPrefix("other:").build());
+        try {
+            cache.put("product:1", "value".getBytes(), 60);
+            cache.put("product:2", "value".getBytes(), 60);
+            other.put("product:1", "value".getBytes(), 60);
+
+            // When
+            cache.invalidate("product:1");
+            assertFalse(cache.get("product:1").isPresent());
+            cache.invalidateAll();
+
+            // Then
+            assertFalse(cache.get("product:2").isPresent());
+            assertTrue(other.get("product:1").isPresent());
+        } finally {
+            other.close();
+        }
+    }
+
+    @Test
+    void shouldRouteKeysToTheirClusterSlots() throws Exception {
+        // Given
+        cache.close();
+        servers.add(new RespTestServer());
+        servers.add(new RespTestServer());
+        RespTestServer.cluster(servers);
+        cache = new RespCache(config().cluster(true).build());
+        Map<String, byte[]> values = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            values.put("product:" + i, ("value-" + i).getBytes());
+        }
+
+        // When
+        cache.putAll(values, 60);
+        Map<String, byte[]> read = cache.getAll(values.keySet());
+
+        // Then: each server holds its own slots' keys, and no command was redirected
+        assertEquals(values.keySet(), read.keySet());
+        Set<Integer> slots = new HashSet<>();
+        for (String key : values.keySet()) {
+            slots.add(ClusterSlots.slot("dcache:" + key));
+        }
+        long mgets = 0;
+        for (RespTestServer server : servers) {
+            assertFalse(server.keys().isEmpty());
+            mgets += server.getCommandCount("MGET");
+        }
+        assertEquals(slots.size(), mgets);
+        assertEquals(0, cache.getRedirects());
+        assertEquals(100, servers.stream().mapToInt(server -> server.keys().size()).sum());
+    }
+
+    @Test
+    void shouldFollowMovedSlots() throws Exception {
+        // Given
+        cache.close();
+        servers.add(new RespTestServer());
+        RespTestServer.cluster(servers);
+        cache = new RespCache(config().cluster(true).build());
+        String key = "product:1";
+        int slot = ClusterSlots.slot("dcache:" + key);
+        cache.put(key, "value".getBytes(), 60);
+        RespTestServer from = servers.get(slot < ClusterSlots.SLOTS / 2 ? 0 : 1);
+        RespTestServer to = servers.get(slot < ClusterSlots.SLOTS / 2 ? 1 : 0);
+
+        // When
+        from.migrate(slot, to);
+
+        // Then
+        assertArrayEquals("value".getBytes(), cache.get(key).orElseThrow());
+        assertEquals(1, cache.getRedirects());
+        assertArrayEquals("value".getBytes(), cache.get(key).orElseThrow());
+        assertEquals(1, cache.getRedirects());
+    }
+
+    @Test
+    void shouldServeAsRemoteTierUnderGuavaCache() {
+        // Given
+        GuavaCache local = new GuavaCache(GuavaCacheConfig.builder().defaultTtl(60).maximumSize(100).build());
+        TieredCache tiered = new TieredCache(TieredCacheConfig.builder()
+            .localCache(local)
+            .remoteCache(cache)
+            .build());
+        tiered.put("product:1", "value".getBytes(), 60);
+        local.invalidateAll();
+
+        // When
+        Optional<byte[]> value = tiered.get("product:1");
+
+        // Then: read from the server, then kept in L1
+        assertArrayEquals("value".getBytes(), value.orElseThrow());
+        assertTrue(local.get("product:1").isPresent());
+        assertEquals(1, servers.get(0).getCommandCount("GET"));
+    }
+
+    @Test
+    void shouldAuthenticateNewConnections() throws Exception {
+        // Given
+        cache.close();
+        servers.get(0).requirePassword("secret");
+        cache = new RespCache(config().password("secret").build());
+
+        // When
+        cache.put("product:1", "value".getBytes(), 60);
+
+        // Then
+        assertArrayEquals("value".getBytes(), cache.get("product:1").orElseThrow());
+    }
+
+    @Test
+    void shouldMissOnReadsAndThrowOnWritesWhenServerIsDown() throws Exception {
+        // Given
+        servers.get(0).close();
+
+        // When / Then
+        assertFalse(cache.get("product:1").isPresent());
+        assertEquals(Map.of(), cache.getAll(List.of("product:1", "product:2")));
+        assertThrows(RuntimeException.class, () -> cache.put("product:1", "value".getBytes(), 60));
+    }
+
+    @Test
+    void shouldReconnectAfterCommandTimesOut() throws Exception {
+        // Given
+        cache.close();
+        cache = new RespCache(config().connectionsPerNode(1).commandTimeout(Duration.ofMillis(200)).build());
+        cache.put("product:1", "one".getBytes(), 60);
+        cache.put("product:2", "two".getBytes(), 60);
+        servers.get(0).stall();
+
+        // When
+        Optional<byte[]> timedOut = cache.get("product:1");
+        servers.get(0).resume();
+        Optional<byte[]> next = cache.get("product:2");
+
+        // Then: the late reply to the first get is not taken for the second's
+        assertFalse(timedOut.isPresent());
+        assertArrayEquals("two".getBytes(), next.orElseThrow());
+        assertEquals(2, servers.get(0).getConnections());
+    }
+
+    @Test
+    void shouldTimeOutWriteToServerThatStoppedReading() throws Exception {
+        // Given: a server that accepts connections but never reads from them
+        try (ServerSocket stalled = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            cache.close();
+            cache = new RespCache(RespCacheConfig.builder()
+                .node(new InetSocketAddress(InetAddress.getLoopbackAddress(), stalled.getLocalPort()))
+                .connectionsPerNode(1)
+                .commandTimeout(Duration.ofMillis(200))
+                .build());
+            byte[] large = new byte[32 * 1024 * 1024];
+
+            // When / Then
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                assertThrows(RuntimeException.class, () -> cache.put("product:1", large, 60));
+                assertFalse(cache.get("product:1").isPresent());
+            });
+        }
+    }
+
+    @Test
+    void shouldComputeClusterSlotsLikeRedis() {
+        assertEquals(12182, ClusterSlots.slot("foo"));
+        assertEquals(12739, ClusterSlots.slot("123456789"));
+        assertEquals(ClusterSlots.slot("user1000"), ClusterSlots.slot("{user1000}.following"));
+        assertEquals(ClusterSlots.slot("{}.a"), ClusterSlots.slot("{}.a"));
+        assertNotEquals(ClusterSlots.slot("{}.a"), ClusterSlots.slot("{}.b"));
+    }
+
+    private RespCacheConfig.Builder config() {
+        return RespCacheConfig.builder()
+            .node(servers.get(0).getAddress())
+            .commandTimeout(Duration.ofSeconds(2));
+    }
+}
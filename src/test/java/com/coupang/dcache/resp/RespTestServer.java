@@ -0,0 +1,412 @@
+package com.coupang.dcache.resp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * RESP server stand-in for tests: a small subset of Redis, enough for
+ * {@link RespCache}, including cluster slot ownership and {@code MOVED}
+ * replies. Expiry follows a clock the test can move forward.
+ */
+class RespTestServer implements Closeable {
+    private static final class Entry {
+        private final byte[] value;
+        private final long expiresAtMillis;
+
+        private Entry(byte[] value, long expiresAtMillis) {
+            this.value = value;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService threads = Executors.newCachedThreadPool();
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+    private final Map<String, Entry> data = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> commandCounts = new ConcurrentHashMap<>();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicLong clockMillis = new AtomicLong();
+    // Owner of each slot in cluster mode, null otherwise
+    private volatile RespTestServer[] slotOwners;
+    private volatile String password;
+    private volatile CountDownLatch stalled;
+
+    RespTestServer() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        threads.execute(this::acceptLoop);
+    }
+
+    InetSocketAddress getAddress() {
+        return new InetSocketAddress("127.0.0.1", serverSocket.getLocalPort());
+    }
+
+    void requirePassword(String password) {
+        this.password = password;
+    }
+
+    /**
+     * Puts the servers into one cluster, splitting the slots evenly between them.
+     */
+    static void cluster(List<RespTestServer> servers) {
+        RespTestServer[] owners = new RespTestServer[ClusterSlots.SLOTS];
+        for (int slot = 0; slot < ClusterSlots.SLOTS; slot++) {
+            owners[slot] = servers.get(slot * servers.size() / ClusterSlots.SLOTS);
+        }
+        servers.forEach(server -> server.slotOwners = owners);
+    }
+
+    /**
+     * Moves a slot and its keys to another server of the cluster, as a
+     * resharding would.
+     */
+    void migrate(int slot, RespTestServer target) {
+        for (Map.Entry<String, Entry> entry : data.entrySet()) {
+            if (ClusterSlots.slot(entry.getKey()) == slot) {
+                target.data.put(entry.getKey(), entry.getValue());
+                data.remove(entry.getKey());
+            }
+        }
+        slotOwners[slot] = target;
+    }
+
+    /**
+     * Holds back every reply until {@link #resume()}, like a stuck server.
+     */
+    void stall() {
+        stalled = new CountDownLatch(1);
+    }
+
+    void resume() {
+        CountDownLatch latch = stalled;
+        stalled = null;
+        if (latch != null) {
+            latch.countDown();
+        }
+    }
+
+    void advance(long millis) {
+        clockMillis.addAndGet(millis);
+    }
+
+    long getCommandCount(String command) {
+        AtomicLong count = commandCounts.get(command);
+        return count == null ? 0 : count.get();
+    }
+
+    int getConnections() {
+        return connections.get();
+    }
+
+    Set<String> keys() {
+        return data.keySet();
+    }
+
+    @Override
+    public void close() throws IOException {
+        resume();
+        serverSocket.close();
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        threads.shutdownNow();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                sockets.add(socket);
+                connections.incrementAndGet();
+                threads.execute(() -> serve(socket));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket;
+             InputStream in = new BufferedInputStream(s.getInputStream());
+             OutputStream out = new BufferedOutputStream(s.getOutputStream())) {
+            boolean authenticated = password == null;
+            while (true) {
+                List<byte[]> command = readCommand(in);
+                String name = new String(command.get(0), StandardCharsets.UTF_8).toUpperCase();
+                commandCounts.computeIfAbsent(name, ignored -> new AtomicLong()).incrementAndGet();
+                CountDownLatch latch = stalled;
+                if (latch != null) {
+                    latch.await();
+                }
+                if (name.equals("AUTH")) {
+                    authenticated = password != null && password.equals(string(command.get(1)));
+                    out.write((authenticated ? "+OK\r\n" : "-WRONGPASS invalid password\r\n").getBytes(StandardCharsets.UTF_8));
+                } else if (!authenticated) {
+                    out.write("-NOAUTH Authentication required.\r\n".getBytes(StandardCharsets.UTF_8));
+                } else {
+                    execute(name, command, out);
+                }
+                // Replies to pipelined commands go out together, as a real server's would
+                if (in.available() == 0) {
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            // Connection closed
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            sockets.remove(socket);
+        }
+    }
+
+    private void execute(String name, List<byte[]> command, OutputStream out) throws IOException {
+        switch (name) {
+            case "PING":
+                simple(out, "PONG");
+                return;
+            case "ASKING":
+                simple(out, "OK");
+                return;
+            case "CLUSTER":
+                clusterSlots(out);
+                return;
+            case "SCAN":
+                scan(command, out);
+                return;
+            default:
+                break;
+        }
+
+        // Key commands are checked against the slot layout in cluster mode
+        RespTestServer[] owners = slotOwners;
+        if (owners != null) {
+            int slot = -1;
+            for (int i = 1; i < keyEnd(name, command); i++) {
+                int keySlot = ClusterSlots.slot(command.get(i));
+                if (slot >= 0 && keySlot != slot) {
+                    error(out, "CROSSSLOT Keys in request don't hash to the same slot");
+                    return;
+                }
+                slot = keySlot;
+            }
+            if (slot >= 0 && owners[slot] != this) {
+                InetSocketAddress owner = owners[slot].getAddress();
+                error(out, "MOVED " + slot + " " + owner.getHostString() + ":" + owner.getPort());
+                return;
+            }
+        }
+
+        switch (name) {
+            case "GET":
+                bulk(out, lookup(string(command.get(1))));
+                return;
+            case "MGET":
+                out.write(("*" + (command.size() - 1) + "\r\n").getBytes(StandardCharsets.UTF_8));
+                for (int i = 1; i < command.size(); i++) {
+                    bulk(out, lookup(string(command.get(i))));
+                }
+                return;
+            case "SET":
+                long expiresAt = Long.MAX_VALUE;
+                for (int i = 3; i + 1 < command.size(); i += 2) {
+                    String option = string(command.get(i)).toUpperCase();
+                    long amount = Long.parseLong(string(command.get(i + 1)));
+                    expiresAt = clockMillis.get() + (option.equals("EX") ? amount * 1000 : amount);
+                }
+                data.put(string(command.get(1)), new Entry(command.get(2), expiresAt));
+                simple(out, "OK");
+                return;
+            case "DEL":
+            case "UNLINK":
+                int deleted = 0;
+                for (int i = 1; i < command.size(); i++) {
+                    if (data.remove(string(command.get(i))) != null) {
+                        deleted++;
+                    }
+                }
+                out.write((":" + deleted + "\r\n").getBytes(StandardCharsets.UTF_8));
+                return;
+            default:
+                error(out, "ERR unknown command '" + name + "'");
+        }
+    }
+
+    private void clusterSlots(OutputStream out) throws IOException {
+        RespTestServer[] owners = slotOwners;
+        if (owners == null) {
+            error(out, "ERR This instance has cluster support disabled");
+            return;
+        }
+        List<int[]> ranges = new ArrayList<>();
+        List<RespTestServer> rangeOwners = new ArrayList<>();
+        for (int slot = 0; slot < owners.length; slot++) {
+            if (slot > 0 && owners[slot] == owners[slot - 1]) {
+                ranges.get(ranges.size() - 1)[1] = slot;
+            } else {
+                ranges.add(new int[] {slot, slot});
+                rangeOwners.add(owners[slot]);
+            }
+        }
+        out.write(("*" + ranges.size() + "\r\n").getBytes(StandardCharsets.UTF_8));
+        for (int i = 0; i < ranges.size(); i++) {
+            InetSocketAddress owner = rangeOwners.get(i).getAddress();
+            out.write(("*3\r\n:" + ranges.get(i)[0] + "\r\n:" + ranges.get(i)[1] + "\r\n*2\r\n")
+                .getBytes(StandardCharsets.UTF_8));
+            bulk(out, owner.getHostString().getBytes(StandardCharsets.UTF_8));
+            out.write((":" + owner.getPort() + "\r\n").getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void scan(List<byte[]> command, OutputStream out) throws IOException {
+        // Everything in one page
+        Pattern pattern = Pattern.compile(".*");
+        for (int i = 2; i + 1 < command.size(); i += 2) {
+            if (string(command.get(i)).equalsIgnoreCase("MATCH")) {
+                pattern = glob(string(command.get(i + 1)));
+            }
+        }
+        List<String> keys = new ArrayList<>();
+        for (String key : data.keySet()) {
+            if (pattern.matcher(key).matches() && lookup(key) != null) {
+                keys.add(key);
+            }
+        }
+        out.write("*2\r\n".getBytes(StandardCharsets.UTF_8));
+        bulk(out, "0".getBytes(StandardCharsets.UTF_8));
+        out.write(("*" + keys.size() + "\r\n").getBytes(StandardCharsets.UTF_8));
+        for (String key : keys) {
+            bulk(out, key.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private byte[] lookup(String key) {
+        Entry entry = data.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (clockMillis.get() >= entry.expiresAtMillis) {
+            data.remove(key, entry);
+            return null;
+        }
+        return entry.value;
+    }
+
+    private static int keyEnd(String name, List<byte[]> command) {
+        switch (name) {
+            case "GET":
+            case "SET":
+                return 2;
+            case "MGET":
+            case "DEL":
+            case "UNLINK":
+                return command.size();
+            default:
+                return 1;
+        }
+    }
+
+    private static Pattern glob(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '\\' && i + 1 < glob.length()) {
+                regex.append(Pattern.quote(String.valueOf(glob.charAt(++i))));
+            } else if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    private static List<byte[]> readCommand(InputStream in) throws IOException {
+        expect(in, '*');
+        int count = (int) readNumber(in);
+        List<byte[]> args = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            expect(in, '$');
+            byte[] arg = new byte[(int) readNumber(in)];
+            int read = 0;
+            while (read < arg.length) {
+                int n = in.read(arg, read, arg.length - read);
+                if (n < 0) {
+                    throw new EOFException();
+                }
+                read += n;
+            }
+            expect(in, '\r');
+            expect(in, '\n');
+            args.add(arg);
+        }
+        return args;
+    }
+
+    private static long readNumber(InputStream in) throws IOException {
+        StringBuilder digits = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\r') {
+            if (c < 0) {
+                throw new EOFException();
+            }
+            digits.append((char) c);
+        }
+        expect(in, '\n');
+        return Long.parseLong(digits.toString());
+    }
+
+    private static void expect(InputStream in, char expected) throws IOException {
+        int c = in.read();
+        if (c < 0) {
+            throw new EOFException();
+        }
+        if (c != expected) {
+            throw new IOException("Protocol error: expected '" + expected + "' but got '" + (char) c + "'");
+        }
+    }
+
+    private static void simple(OutputStream out, String value) throws IOException {
+        out.write(("+" + value + "\r\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void error(OutputStream out, String message) throws IOException {
+        out.write(("-" + message + "\r\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void bulk(OutputStream out, byte[] value) throws IOException {
+        if (value == null) {
+            out.write("$-1\r\n".getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        out.write(("$" + value.length + "\r\n").getBytes(StandardCharsets.UTF_8));
+        out.write(value);
+        out.write("\r\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String string(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,164 @@
+package com.coupang.dcache.spring;
+
+import com.coupang.dcache.DynamoDbCache;
+import com.coupang.dcache.DynamoDbCacheConfig;
+import com.coupang.dcache.GuavaCache;
+import com.coupang.dcache.GuavaCacheConfig;
+import com.coupang.dcache.InMemoryDynamoDbClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DCacheSpringCacheTest {
+    private GuavaCache backingCache;
+    private DCacheCacheManager cacheManager;
+
+    @BeforeEach
+    void setUp() {
+        backingCache = new GuavaCache(GuavaCacheConfig.builder()
+            .defaultTtl(60)
+            .maximumSize(1000)
+            .build());
+        cacheManager = new DCacheCacheManager(backingCache, new JdkValueSerializer(), 60,
+            Map.of("products", 300), true);
+    }
+
+    @Test
+    void shouldPutAndGetValue() {
+        // Given
+        Cache cache = cacheManager.getCache("products");
+
+        // When
+        cache.put(42, List.of("a", "b"));
+
+        // Then
+        assertEquals(List.of("a", "b"), cache.get(42).get());
+        assertTrue(backingCache.get("products:42").isPresent());
+        assertEquals(300, ((DCacheSpringCache) cache).getTtl());
+        assertEquals(60, ((DCacheSpringCache) cacheManager.getCache("users")).getTtl());
+    }
+
+    @Test
+    void shouldCacheNullValue() {
+        // Given
+        Cache cache = cacheManager.getCache("products");
+
+        // When
+        cache.put("missing", null);
+
+        // Then
+        Cache.ValueWrapper cached = cache.get("missing");
+        assertNotNull(cached);
+        assertNull(cached.get());
+        assertNull(cache.get("unknown"));
+    }
+
+    @Test
+    void shouldRoundTripWithJackson() {
+        // Given
+        DCacheCacheManager jacksonManager = new DCacheCacheManager(backingCache,
+            new JacksonValueSerializer(new String[0]), 60, Map.of(), true);
+        Cache cache = jacksonManager.getCache("prices");
+
+        // When
+        cache.put("kr", Map.of("amount", 1000L));
+
+        // Then
+        assertEquals(Map.of("amount", 1000L), cache.get("kr").get());
+    }
+
+    @Test
+    void shouldLoadOncePerKeyWhenSynchronized() throws Exception {
+        // Given
+        Cache cache = cacheManager.getCache("products");
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        // When
+        List<Future<String>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < 4; i++) {
+                results.add(executor.submit(() -> cache.get("slow", () -> {
+                    loads.incrementAndGet();
+                    loading.await(5, TimeUnit.SECONDS);
+                    return "loaded";
+                })));
+            }
+            Thread.sleep(100);
+            loading.countDown();
+
+            // Then
+            for (Future<String> result : results) {
+                assertEquals("loaded", result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void shouldClearOnlyOwnEntriesOnTaggableCache() {
+        // Given
+        DynamoDbCache dynamoDbCache = new DynamoDbCache(DynamoDbCacheConfig.builder()
+            .tableName("test-table")
+            .region("us-east-1")
+            .withDynamoDbClient(new InMemoryDynamoDbClient())
+            .build());
+        DCacheCacheManager manager = new DCacheCacheManager(dynamoDbCache, new JdkValueSerializer(), 60,
+            Map.of(), true);
+        Cache products = manager.getCache("products");
+        Cache users = manager.getCache("users");
+        products.put(1, "product");
+        users.put(1, "user");
+
+        // When
+        products.clear();
+
+        // Then
+        assertNull(products.get(1));
+        assertEquals("user", users.get(1).get());
+    }
+
+    @Test
+    void shouldClearWithoutWritingAnItemPerPut() {
+        // Given
+        InMemoryDynamoDbClient dynamoDbClient = new InMemoryDynamoDbClient();
+        DynamoDbCache dynamoDbCache = new DynamoDbCache(DynamoDbCacheConfig.builder()
+            .tableName("test-table")
+            .region("us-east-1")
+            .withDynamoDbClient(dynamoDbClient)
+            .build());
+        Cache products = new DCacheCacheManager(dynamoDbCache, new JdkValueSerializer(), 60, Map.of(), true)
+            .getCache("products");
+        for (int i = 0; i < 100; i++) {
+            products.put(i, "product " + i);
+        }
+
+        // When
+        products.clear();
+        products.put(1, "new product");
+
+        // Then
+        assertEquals(102, dynamoDbClient.size());
+        assertEquals("new product", products.get(1).get());
+        assertNull(products.get(2));
+        Cache otherNode = new DCacheCacheManager(dynamoDbCache, new JdkValueSerializer(), 60, Map.of(), true)
+            .getCache("products");
+        assertEquals("new product", otherNode.get(1).get());
+        assertNull(otherNode.get(2));
+    }
+}